@@ -51,7 +51,15 @@ public class FcSignatureComposer {
 
     public static String composeStringToSign(String method, String path,
         Map<String, String> headers) {
-        StringBuilder sb = new StringBuilder();
+        return appendStringToSign(new StringBuilder(), method, path, headers).toString();
+    }
+
+    /**
+     * Same as {@link #composeStringToSign(String, String, Map)} but appends to
+     * {@code sb}, for signers that take a {@link CharSequence}.
+     */
+    public static StringBuilder appendStringToSign(StringBuilder sb, String method, String path,
+        Map<String, String> headers) {
         sb.append(method).append(HEADER_SEPARATOR);
         if (headers.get("Content-MD5") != null) {
             sb.append(headers.get("Content-MD5"));
@@ -65,12 +73,17 @@ public class FcSignatureComposer {
             sb.append(headers.get("Date"));
         }
         sb.append(HEADER_SEPARATOR);
-        sb.append(buildCanonicalHeaders(headers, "x-fc"));
+        appendCanonicalHeaders(sb, headers, "x-fc");
         sb.append(path);
-        return sb.toString();
+        return sb;
     }
 
     public static String buildCanonicalHeaders(Map<String, String> headers, String headerBegin) {
+        return appendCanonicalHeaders(new StringBuilder(), headers, headerBegin).toString();
+    }
+
+    private static StringBuilder appendCanonicalHeaders(StringBuilder headerBuilder,
+        Map<String, String> headers, String headerBegin) {
         Map<String, String> sortMap = new TreeMap<String, String>();
         for (Map.Entry<String, String> e : headers.entrySet()) {
             String key = e.getKey().toLowerCase();
@@ -79,15 +92,18 @@ public class FcSignatureComposer {
                 sortMap.put(key, val);
             }
         }
-        StringBuilder headerBuilder = new StringBuilder();
         for (Map.Entry<String, String> e : sortMap.entrySet()) {
             headerBuilder.append(e.getKey());
             headerBuilder.append(':').append(e.getValue());
             headerBuilder.append(HEADER_SEPARATOR);
         }
-        return headerBuilder.toString();
+        return headerBuilder;
     }
 
+    /**
+     * Signs with a freshly initialized {@link Mac}. Clients signing many requests
+     * should keep an {@link HmacSigner} instead.
+     */
     public static String signString(String source, String accessSecret)
         throws InvalidKeyException, IllegalStateException {
         try {
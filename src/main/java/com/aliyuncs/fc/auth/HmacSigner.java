@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.auth;
+
+import com.aliyuncs.fc.utils.Base64Helper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes request signatures for one pair of credentials. Each thread gets its
+ * own initialized {@link Mac} and scratch buffers, so signing needs no provider
+ * lookup, key setup or intermediate byte arrays. Instances are thread safe; create
+ * a new one when the credentials change.
+ */
+public class HmacSigner {
+
+    private static final String ALGORITHM_NAME = "HmacSHA256";
+
+    private final String accessKeyId;
+    private final String accessKeySecret;
+    private final SecretKeySpec key;
+    private final Mac prototype;
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State(newMac());
+        }
+    };
+
+    public HmacSigner(String accessKeyId, String accessKeySecret)
+        throws NoSuchAlgorithmException, InvalidKeyException {
+        Preconditions.checkArgument(accessKeyId != null && accessKeyId.length() > 0,
+            "Access key cannot be blank");
+        Preconditions.checkArgument(accessKeySecret != null && accessKeySecret.length() > 0,
+            "Secret key cannot be blank");
+        this.accessKeyId = accessKeyId;
+        this.accessKeySecret = accessKeySecret;
+        this.key = new SecretKeySpec(accessKeySecret.getBytes(Charsets.UTF_8), ALGORITHM_NAME);
+        this.prototype = Mac.getInstance(ALGORITHM_NAME);
+        this.prototype.init(key);
+    }
+
+    public String getAccessKeyId() {
+        return accessKeyId;
+    }
+
+    /**
+     * Whether this signer was built for the given credentials.
+     */
+    public boolean matches(String accessKeyId, String accessKeySecret) {
+        return this.accessKeyId.equals(accessKeyId) && this.accessKeySecret.equals(accessKeySecret);
+    }
+
+    /**
+     * Returns the base64 encoded HMAC-SHA256 of the UTF-8 encoding of
+     * {@code stringToSign}.
+     */
+    public String sign(CharSequence stringToSign) {
+        State s = state.get();
+        int length = s.encode(stringToSign);
+        Mac mac = s.mac;
+        mac.update(s.input, 0, length);
+        try {
+            mac.doFinal(s.digest, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        int chars = Base64Helper.encode(s.digest, 0, s.digest.length, s.output, 0);
+        return new String(s.output, 0, chars);
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM_NAME);
+                mac.init(key);
+                return mac;
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            } catch (InvalidKeyException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    private static final class State {
+
+        final Mac mac;
+        final byte[] digest;
+        final char[] output;
+        byte[] input = new byte[1024];
+
+        State(Mac mac) {
+            this.mac = mac;
+            this.digest = new byte[mac.getMacLength()];
+            this.output = new char[Base64Helper.encodedLength(digest.length)];
+        }
+
+        /**
+         * UTF-8 encodes {@code chars} into {@link #input}, growing it when needed.
+         * Unpaired surrogates become '?', as with {@link String#getBytes}.
+         */
+        int encode(CharSequence chars) {
+            int length = chars.length();
+            if (input.length < length * 3) {
+                input = new byte[Math.max(length * 3, input.length * 2)];
+            }
+            byte[] buffer = input;
+            int pos = 0;
+            for (int i = 0; i < length; i++) {
+                char c = chars.charAt(i);
+                if (c < 0x80) {
+                    buffer[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[pos++] = (byte) (0xc0 | c >> 6);
+                    buffer[pos++] = (byte) (0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, chars.charAt(++i));
+                    buffer[pos++] = (byte) (0xf0 | cp >> 18);
+                    buffer[pos++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                    buffer[pos++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                    buffer[pos++] = (byte) (0x80 | cp & 0x3f);
+                } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    buffer[pos++] = '?';
+                } else {
+                    buffer[pos++] = (byte) (0xe0 | c >> 12);
+                    buffer[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    buffer[pos++] = (byte) (0x80 | c & 0x3f);
+                }
+            }
+            return pos;
+        }
+    }
+}
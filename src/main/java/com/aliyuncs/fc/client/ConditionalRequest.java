@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.client;
+
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.http.HttpRequest;
+import com.aliyuncs.fc.http.RequestBody;
+import java.util.Map;
+
+/**
+ * A request sent in place of another with extra headers, e.g. If-None-Match, which
+ * leaves the headers of the original untouched.
+ */
+class ConditionalRequest extends HttpRequest {
+
+    private final HttpRequest original;
+
+    ConditionalRequest(HttpRequest original, String header, String value) {
+        this.original = original;
+        if (original.getHeaders() != null) {
+            headers.putAll(original.getHeaders());
+        }
+        setHeader(header, value);
+    }
+
+    HttpRequest getOriginal() {
+        return original;
+    }
+
+    public String getPath() {
+        return original.getPath();
+    }
+
+    public Map<String, String> getQueryParams() {
+        return original.getQueryParams();
+    }
+
+    public byte[] getPayload() {
+        return original.getPayload();
+    }
+
+    public RequestBody getBody() {
+        return original.getBody();
+    }
+
+    public void validate() throws ClientException {
+        original.validate();
+    }
+
+    public String getServiceName() {
+        return original.getServiceName();
+    }
+
+    public String getFunctionName() {
+        return original.getFunctionName();
+    }
+
+    public boolean isContentMd5Enabled() {
+        return original.isContentMd5Enabled();
+    }
+}
@@ -22,33 +22,139 @@ package com.aliyuncs.fc.client;
 import com.aliyuncs.fc.constants.HeaderKeys;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonParseException;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.SocketTimeoutException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.aliyuncs.fc.auth.FcSignatureComposer;
+import com.aliyuncs.fc.auth.HmacSigner;
+import com.aliyuncs.fc.config.AdaptiveConcurrencyLimiter;
+import com.aliyuncs.fc.config.AdaptiveConcurrencyLimiter.Permit;
 import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
 import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.exceptions.ErrorCodes;
 import com.aliyuncs.fc.exceptions.ServerException;
+import com.aliyuncs.fc.http.AsyncTransport;
+import com.aliyuncs.fc.http.ConnectionPool;
 import com.aliyuncs.fc.http.HttpRequest;
 import com.aliyuncs.fc.http.HttpResponse;
-import com.google.gson.Gson;
+import com.aliyuncs.fc.http.NioTransport;
+import com.aliyuncs.fc.http.PooledTransport;
+import com.aliyuncs.fc.http.RequestBody;
+import com.aliyuncs.fc.http.RequestTiming;
+import com.aliyuncs.fc.http.StreamingTransport;
+import com.aliyuncs.fc.http.Transport;
+import com.aliyuncs.fc.http.TransportRequest;
 import com.aliyuncs.fc.auth.AcsURLEncoder;
+import com.aliyuncs.fc.metrics.MetricsCollector;
 import com.aliyuncs.fc.model.PrepareUrl;
+import com.aliyuncs.fc.request.InvokeFunctionRequest;
 import com.aliyuncs.fc.utils.ParameterHelper;
 
-public class DefaultFcClient {
+public class DefaultFcClient implements Closeable {
+    /**
+     * @deprecated retries are controlled by {@link Config#setRetryPolicy(RetryPolicy)}
+     */
+    @Deprecated
     public final static Boolean AUTO_RETRY = true;
+    /**
+     * @deprecated use {@link RetryPolicy#setMaxAttempts(int)}
+     */
+    @Deprecated
     public final static int MAX_RETRIES = 3;
+    private static final ConcurrentMap<Class<?>, String> OPERATIONS =
+        new ConcurrentHashMap<Class<?>, String>();
     private final Config config;
+    private final Transport transport;
+    private final InterceptorChain interceptors;
+    private volatile AsyncTransport asyncTransport;
+    private final Semaphore asyncPermits;
+    private final ConcurrentLinkedQueue<AsyncCall> queuedCalls =
+        new ConcurrentLinkedQueue<AsyncCall>();
+    private final AtomicBoolean startingQueuedCalls = new AtomicBoolean();
+    private final Executor callbackExecutor;
+    private final ExecutorService ownedCallbackExecutor;
+    private volatile HmacSigner signer;
+    private ScheduledExecutorService retryScheduler;
 
     public DefaultFcClient(Config config) {
+        this(config, new PooledTransport(new ConnectionPool(config.getMaxConnectionsPerEndpoint(),
+            config.getConnectionIdleTimeoutMillis(), config.getConnectionTimeToLiveMillis()),
+            config.getBufferPool()));
+    }
+
+    /**
+     * Creates a client that sends its requests through the given transport. The client
+     * takes ownership of the transport and closes it when it is closed itself.
+     * Asynchronous calls go through the same transport if it is an
+     * {@link AsyncTransport}, otherwise through a {@link NioTransport} created on first use.
+     */
+    public DefaultFcClient(Config config, Transport transport) {
+        Preconditions.checkArgument(transport != null, "Transport cannot be null");
         this.config = config;
+        this.transport = transport;
+        this.interceptors = new InterceptorChain(config.getInterceptors());
+        if (transport instanceof AsyncTransport) {
+            this.asyncTransport = (AsyncTransport) transport;
+        }
+        this.asyncPermits = new Semaphore(config.getMaxAsyncRequests());
+        if (config.getCallbackExecutor() != null) {
+            this.callbackExecutor = config.getCallbackExecutor();
+            this.ownedCallbackExecutor = null;
+        } else {
+            this.ownedCallbackExecutor = newCallbackExecutor();
+            this.callbackExecutor = ownedCallbackExecutor;
+        }
+    }
+
+    /**
+     * Threads are started as callbacks need them and end after a minute idle. Callbacks
+     * of requests that complete after the client was closed run on the completing thread.
+     */
+    private static ExecutorService newCallbackExecutor() {
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("fc-callback-%d").build(), new RejectedExecutionHandler() {
+                public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+                    task.run();
+                }
+            });
+    }
+
+    public Transport getTransport() {
+        return transport;
     }
 
     public String composeUrl(String endpoint, Map<String, String> queries)
@@ -105,6 +211,11 @@ public class DefaultFcClient {
     }
 
     public Map<String, String> getHeader(Map<String, String> header, byte[] payload, String form) {
+        return getHeader(header, payload == null ? null : ParameterHelper.md5Sum(payload), form);
+    }
+
+    private Map<String, String> getHeader(Map<String, String> header, String contentMd5,
+        String form) {
         if (header == null) {
             header = new HashMap<String, String>();
         }
@@ -112,8 +223,10 @@ public class DefaultFcClient {
         header.put("Accept", "application/json");
         header.put("Content-Type", form);
         header.put("x-fc-account-id", config.getUid());
-        if (payload != null) {
-            header.put("Content-MD5", ParameterHelper.md5Sum(payload));
+        if (contentMd5 != null) {
+            header.put("Content-MD5", contentMd5);
+        } else {
+            header.remove("Content-MD5");
         }
         if (!Strings.isNullOrEmpty(config.getSecurityToken())) {
             header.put("x-fc-security-token", config.getSecurityToken());
@@ -123,91 +236,711 @@ public class DefaultFcClient {
 
     public PrepareUrl signRequest(HttpRequest request, String form, String method)
         throws InvalidKeyException, IllegalStateException, UnsupportedEncodingException, NoSuchAlgorithmException {
-
-        Map<String, String> imutableMap = null;
-        if (request.getHeaders() != null) {
-            imutableMap = request.getHeaders();
-        } else {
-            imutableMap = new HashMap<String, String>();
+        Map<String, String> headers = request.getHeaders();
+        if (headers == null) {
+            headers = new HashMap<String, String>();
         }
-        String accessKeyId = config.getAccessKeyID();
-        String accessSecret = config.getAccessKeySecret();
+        return signRequest(request, headers, new Body(request), form, method);
+    }
 
-        Preconditions.checkArgument(!Strings.isNullOrEmpty(accessKeyId), "Access key cannot be blank");
-        Preconditions.checkArgument(!Strings.isNullOrEmpty(accessSecret), "Secret key cannot be blank");
+    /**
+     * Signs the request into the given headers, which the caller may pass as a copy so
+     * that a request shared between threads or calls is not modified.
+     */
+    private PrepareUrl signRequest(HttpRequest request, Map<String, String> headers, Body body,
+        String form, String method)
+        throws InvalidKeyException, IllegalStateException, UnsupportedEncodingException, NoSuchAlgorithmException {
+
+        Map<String, String> imutableMap = headers;
+        HmacSigner signer = getSigner();
         imutableMap = FcSignatureComposer.refreshSignParameters(imutableMap);
 
         // Get relevant path
         String uri = request.getPath();
 
         // Set all headers
-        imutableMap = getHeader(imutableMap, request.getPayload(), form);
+        imutableMap = getHeader(imutableMap, body.contentMd5, form);
 
         // Sign URL
-        String strToSign = FcSignatureComposer.composeStringToSign(method, uri, imutableMap);
-        String signature = FcSignatureComposer.signString(strToSign, accessSecret);
+        String signature = signer.sign(
+            FcSignatureComposer.appendStringToSign(new StringBuilder(256), method, uri, imutableMap));
 
         // Set signature
-        imutableMap.put("Authorization", "FC " + accessKeyId + ":" + signature);
+        imutableMap.put("Authorization", "FC " + signer.getAccessKeyId() + ":" + signature);
         String allPath = composeUrl(config.getEndpoint() + request.getPath(),
             request.getQueryParams());
         return new PrepareUrl(allPath);
     }
 
+    /**
+     * Returns the signer for the credentials currently set on the config, replacing
+     * the cached one when they have changed.
+     */
+    private HmacSigner getSigner() throws NoSuchAlgorithmException, InvalidKeyException {
+        String accessKeyId = config.getAccessKeyID();
+        String accessSecret = config.getAccessKeySecret();
+        HmacSigner current = signer;
+        if (current != null && current.matches(accessKeyId, accessSecret)) {
+            return current;
+        }
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(accessKeyId), "Access key cannot be blank");
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(accessSecret), "Secret key cannot be blank");
+        current = new HmacSigner(accessKeyId, accessSecret);
+        signer = current;
+        return current;
+    }
+
+    /**
+     * @return a copy of the request headers for signing
+     */
+    private static Map<String, String> copyHeaders(HttpRequest request) {
+        Map<String, String> headers = request.getHeaders();
+        return headers == null ? new HashMap<String, String>()
+            : new HashMap<String, String>(headers);
+    }
+
+    private TransportRequest newTransportRequest(PrepareUrl prepareUrl,
+        Map<String, String> headers, Body body, String method, long deadline) {
+        return new TransportRequest(method, prepareUrl.getUrl(), headers, null)
+            .setBody(body.payload)
+            .setConnectTimeoutMillis(capTimeout(config.getConnectTimeoutMillis(), deadline))
+            .setReadTimeoutMillis(capTimeout(config.getReadTimeoutMillis(), deadline));
+    }
+
+    /**
+     * Shortens a timeout, where zero means none, so that it expires by the deadline.
+     */
+    private static int capTimeout(int timeoutMillis, long deadline) {
+        if (deadline == Long.MAX_VALUE) {
+            return timeoutMillis;
+        }
+        long remaining = Math.max(deadline - System.currentTimeMillis(), 1);
+        if (timeoutMillis > 0 && timeoutMillis <= remaining) {
+            return timeoutMillis;
+        }
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    private static long deadlineOf(RetryPolicy policy) {
+        long deadlineMillis = policy.getDeadlineMillis();
+        return deadlineMillis == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + deadlineMillis;
+    }
+
+    /**
+     * Sends the request, retrying it as the {@link Config#getRetryPolicy() retry policy}
+     * allows, and returns the successful response.
+     */
     public HttpResponse doAction(HttpRequest request, String form, String method)
         throws ClientException, ServerException {
+        return doAction(request, form, method, false);
+    }
+
+    /**
+     * Like {@link #doAction(HttpRequest, String, String)}, but returns as soon as the
+     * headers of a successful response have arrived. Its body is left in
+     * {@link HttpResponse#getContentStream()}, which the caller must close. A
+     * transport that is not a {@link StreamingTransport} receives the whole body
+     * first, which the stream then reads from memory.
+     */
+    public HttpResponse doActionStreaming(HttpRequest request, String form, String method)
+        throws ClientException, ServerException {
+        return doAction(request, form, method, true);
+    }
+
+    private HttpResponse doAction(HttpRequest request, String form, String method,
+        boolean streaming) throws ClientException, ServerException {
         request.validate();
+        RetryPolicy policy = config.getRetryPolicy();
+        long deadline = deadlineOf(policy);
+        Body body = new Body(request);
+        for (int attempt = 1; ; attempt++) {
+            HttpResponse response = null;
+            IOException failure = null;
+            Permit permit = acquirePermit(request);
+            long startNanos = System.nanoTime();
+            RequestTiming timing = new RequestTiming(operationOf(request));
+            try {
+                interceptors.onRequest(request, attempt);
+                Map<String, String> headers = copyHeaders(request);
+                PrepareUrl prepareUrl = signRequest(request, headers, body, form, method);
+                TransportRequest transportRequest =
+                    newTransportRequest(prepareUrl, headers, body, method, deadline)
+                        .setTiming(timing);
+                timing.mark(RequestTiming.Phase.SIGN, startNanos);
+                HttpResponse received = streaming ? executeStreaming(transportRequest)
+                    : transport.execute(transportRequest);
+                received.setTiming(timing);
+                interceptors.onResponse(request, received, attempt);
+                response = received;
+            } catch (InvalidKeyException exp) {
+                throw translateException(exp);
+            } catch (UnsupportedEncodingException exp) {
+                throw translateException(exp);
+            } catch (IOException exp) {
+                failure = exp;
+                interceptors.onFailure(request, exp, attempt);
+            } catch (NoSuchAlgorithmException exp) {
+                throw translateException(exp);
+            } finally {
+                if (permit != null && response == null) {
+                    permit.cancel();
+                }
+            }
+            RuntimeException error = failure != null ? translateException(failure)
+                : toException(response);
+            recordAttempt(request, response, error, attempt, startNanos);
+            if (response != null) {
+                releasePermit(permit, response, error);
+            }
+            if (error == null) {
+                policy.onSuccess();
+                return response;
+            }
+            long delay = body.isRepeatable() ? retryDelayMillis(policy, attempt, method,
+                response, failure, error, deadline) : -1;
+            if (delay < 0) {
+                throw error;
+            }
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ClientException("SDK.Interrupted",
+                        "Interrupted while waiting to retry the request");
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the request for a streamed response. Error responses are read into
+     * memory, to be parsed like any other.
+     */
+    private HttpResponse executeStreaming(TransportRequest request) throws IOException {
+        if (!(transport instanceof StreamingTransport)) {
+            HttpResponse response = transport.execute(request);
+            byte[] content = response.getContent();
+            response.setContentStream(new ByteArrayInputStream(
+                content == null ? new byte[0] : content));
+            return response;
+        }
+        HttpResponse response = ((StreamingTransport) transport).executeStreaming(request);
+        if (response.getStatus() >= 300) {
+            InputStream content = response.getContentStream();
+            try {
+                response.setContent(ByteStreams.toByteArray(content));
+            } finally {
+                content.close();
+            }
+            response.setContentStream(null);
+        }
+        return response;
+    }
+
+    /**
+     * Waits for a permit from the concurrency limiter if the request invokes a function.
+     * @return the permit, or null if the request is not limited
+     */
+    private Permit acquirePermit(HttpRequest request) {
+        AdaptiveConcurrencyLimiter limiter = config.getConcurrencyLimiter();
+        String key = limiterKey(request);
+        return limiter == null || key == null ? null : limiter.acquire(key);
+    }
+
+    private static String limiterKey(HttpRequest request) {
+        if (!(request instanceof InvokeFunctionRequest)) {
+            return null;
+        }
+        InvokeFunctionRequest invoke = (InvokeFunctionRequest) request;
+        return invoke.getServiceName() + "/" + invoke.getFunctionName();
+    }
+
+    /**
+     * Reports the outcome of an attempt that got a response to the concurrency limiter.
+     */
+    private static void releasePermit(Permit permit, HttpResponse response,
+        RuntimeException error) {
+        if (permit == null) {
+            return;
+        }
+        if (response.getStatus() == 429
+            || ErrorCodes.RESOURCE_THROTTLED.equals(errorCode(error))) {
+            permit.onThrottled();
+        } else if (response.getStatus() < 500) {
+            permit.onSuccess();
+        } else {
+            permit.cancel();
+        }
+    }
+
+    /**
+     * @return how long to wait before sending the request again, or -1 if it must
+     * not be retried
+     */
+    private static long retryDelayMillis(RetryPolicy policy, int attempt, String method,
+        HttpResponse response, IOException failure, RuntimeException error, long deadline) {
+        if (attempt >= policy.getMaxAttempts()) {
+            return -1;
+        }
+        boolean retryable = failure != null ? policy.isRetryable(method, failure)
+            : policy.isRetryable(response.getStatus(), errorCode(error));
+        if (!retryable) {
+            return -1;
+        }
+        long delay = policy.delayMillis(attempt,
+            response == null ? -1 : retryAfterMillis(response));
+        if (delay >= deadline - System.currentTimeMillis() || !policy.acquireRetry()) {
+            return -1;
+        }
+        return delay;
+    }
+
+    /**
+     * Tells the metrics collector, if there is one, how an attempt went.
+     */
+    private void recordAttempt(HttpRequest request, HttpResponse response,
+        RuntimeException error, int attempt, long startNanos) {
+        MetricsCollector metrics = config.getMetricsCollector();
+        if (metrics == null) {
+            return;
+        }
+        String code = null;
+        if (error != null) {
+            code = errorCode(error);
+            if (code == null) {
+                code = error.getClass().getSimpleName();
+            }
+        }
+        metrics.onAttempt(operationOf(request), request.getServiceName(),
+            request.getFunctionName(), response == null ? 0 : response.getStatus(), code,
+            attempt, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return the name of the request class without its "Request" suffix
+     */
+    private static String operationOf(HttpRequest request) {
+        if (request instanceof ConditionalRequest) {
+            request = ((ConditionalRequest) request).getOriginal();
+        }
+        Class<?> type = request.getClass();
+        String operation = OPERATIONS.get(type);
+        if (operation == null) {
+            operation = type.getSimpleName();
+            if (operation.endsWith("Request") && operation.length() > "Request".length()) {
+                operation = operation.substring(0, operation.length() - "Request".length());
+            }
+            OPERATIONS.putIfAbsent(type, operation);
+        }
+        return operation;
+    }
+
+    private static String errorCode(RuntimeException error) {
+        if (error instanceof ServerException) {
+            return ((ServerException) error).getErrorCode();
+        } else if (error instanceof ClientException) {
+            return ((ClientException) error).getErrorCode();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the Retry-After header, given either in seconds or as an HTTP date.
+     * @return the delay the server asked for, or -1 if it did not
+     */
+    private static long retryAfterMillis(HttpResponse response) {
+        String value = response.getHeaders() == null ? null
+            : response.getHeaderValue(HeaderKeys.RETRY_AFTER);
+        if (Strings.isNullOrEmpty(value)) {
+            return -1;
+        }
+        value = value.trim();
         try {
-            PrepareUrl prepareUrl = signRequest(request, form, method);
-            int retryTimes = 1;
-            HttpResponse response = HttpResponse.getResponse(prepareUrl.getUrl(), request, method, config.getConnectTimeoutMillis(),
-                config.getReadTimeoutMillis());
-
-            while (500 <= response.getStatus() && AUTO_RETRY && retryTimes < MAX_RETRIES) {
-                prepareUrl = signRequest(request, form, method);
-                response = HttpResponse.getResponse(prepareUrl.getUrl(), request, method,
-                    config.getConnectTimeoutMillis(), config.getReadTimeoutMillis());
-                retryTimes++;
-            }
-            if (response.getStatus() >= 500) {
-                String requestId = response.getHeaderValue(HeaderKeys.REQUEST_ID);
-                String stringContent = response.getContent() == null ? "" : new String(response.getContent());
-                ServerException se;
+            return Math.max(Long.parseLong(value), 0) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                Date date = ParameterHelper.parseRFC2616(value);
+                return date == null ? -1 : Math.max(date.getTime() - System.currentTimeMillis(), 0);
+            } catch (ParseException ex) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Sends the request without blocking the calling thread. The returned future
+     * completes with the same response, or fails with the same ClientException or
+     * ServerException, as {@link #doAction(HttpRequest, String, String)}.
+     *
+     * At most {@link Config#getMaxAsyncRequests()} requests are in flight at once;
+     * further requests wait in a queue, without blocking the caller, until one of them
+     * completes. Delays between retries do not hold a thread.
+     */
+    public ListenableFuture<HttpResponse> doActionAsync(HttpRequest request, String form,
+        String method) {
+        return doActionAsync(request, form, method, config.getRetryPolicy(), 0);
+    }
+
+    /**
+     * Like {@link #doActionAsync(HttpRequest, String, String)}, but retries as the given
+     * policy allows and gives up once timeoutMillis have passed, or the deadline of the
+     * policy if that comes first. Time spent waiting in the queue counts.
+     * @param timeoutMillis time allowed for all attempts together, 0 for no limit
+     */
+    public ListenableFuture<HttpResponse> doActionAsync(HttpRequest request, String form,
+        String method, RetryPolicy retryPolicy, long timeoutMillis) {
+        Preconditions.checkArgument(retryPolicy != null, "Retry policy cannot be null");
+        Preconditions.checkArgument(timeoutMillis >= 0, "Timeout cannot be negative");
+        SettableFuture<HttpResponse> result = SettableFuture.create();
+        Body body;
+        try {
+            request.validate();
+            body = new Body(request);
+        } catch (RuntimeException e) {
+            result.setException(e);
+            return result;
+        }
+        long deadline = deadlineOf(retryPolicy);
+        if (timeoutMillis > 0) {
+            deadline = Math.min(deadline, System.currentTimeMillis() + timeoutMillis);
+        }
+        AsyncCall call = new AsyncCall(request, body, form, method, retryPolicy, deadline, result);
+        if (asyncPermits.tryAcquire()) {
+            call.start();
+        } else {
+            queuedCalls.add(call);
+            // A permit may have been released before the call was queued
+            startQueuedCalls();
+        }
+        return result;
+    }
+
+    /**
+     * Starts queued calls while there are permits for them. One thread at a time does
+     * so, which also keeps calls that fail right away from starting the next one
+     * recursively.
+     */
+    private void startQueuedCalls() {
+        do {
+            if (!startingQueuedCalls.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                while (!queuedCalls.isEmpty() && asyncPermits.tryAcquire()) {
+                    AsyncCall call = queuedCalls.poll();
+                    if (call == null) {
+                        asyncPermits.release();
+                    } else {
+                        call.start();
+                    }
+                }
+            } finally {
+                startingQueuedCalls.set(false);
+            }
+        } while (!queuedCalls.isEmpty() && asyncPermits.availablePermits() > 0);
+    }
+
+    private AsyncTransport getAsyncTransport() throws IOException {
+        AsyncTransport async = asyncTransport;
+        if (async == null) {
+            synchronized (this) {
+                async = asyncTransport;
+                if (async == null) {
+                    async = new NioTransport(config.getAsyncIoThreads(),
+                        config.getConnectionIdleTimeoutMillis(),
+                        config.getConnectionTimeToLiveMillis(), config.getBufferPool());
+                    asyncTransport = async;
+                }
+            }
+        }
+        return async;
+    }
+
+    private synchronized ScheduledExecutorService getRetryScheduler() {
+        if (retryScheduler == null) {
+            retryScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("fc-retry-%d").build());
+        }
+        return retryScheduler;
+    }
+
+    /**
+     * @return the exception an error response is reported with, or null for a
+     * successful response
+     */
+    private static RuntimeException toException(HttpResponse response) {
+        if (response.getStatus() == 304) {
+            // Answer to a conditional GET, the caller holds the unchanged resource
+            return null;
+        }
+        if (response.getStatus() >= 500) {
+            String requestId = response.getHeaderValue(HeaderKeys.REQUEST_ID);
+            ServerException se = null;
+            try {
+                if (response.getContent() != null) {
+                    se = ParameterHelper.JsonToObject(response.getContent(), ServerException.class);
+                }
+            } catch (JsonParseException e) {
+                // reported as the generic error below
+            }
+            if (se == null) {
+                se = new ServerException("InternalServiceError", "Failed to parse response content", requestId);
+            }
+            se.setStatusCode(response.getStatus());
+            se.setRequestId(requestId);
+            return se;
+        } else if (response.getStatus() >= 300) {
+            ClientException ce;
+            if (response.getContent() == null) {
+                ce = new ClientException("SDK.ServerUnreachable", "Failed to get response content from server");
+            } else {
                 try {
-                    se = new Gson().fromJson(stringContent, ServerException.class);
+                    ce = ParameterHelper.JsonToObject(response.getContent(), ClientException.class);
                 } catch (JsonParseException e) {
-                    se = new ServerException("InternalServiceError", "Failed to parse response content", requestId);
-                }
-                se.setStatusCode(response.getStatus());
-                se.setRequestId(requestId);
-                throw se;
-            } else if (response.getStatus() >= 300) {
-                ClientException ce;
-                if (response.getContent() == null) {
-                    ce = new ClientException("SDK.ServerUnreachable", "Failed to get response content from server");
-                } else {
-                    try {
-                        ce = new Gson().fromJson(new String(response.getContent()), ClientException.class);
-                    } catch (JsonParseException e) {
-                        ce = new ClientException("SDK.ResponseNotParsable", "Failed to parse response content", e);
+                    ce = new ClientException("SDK.ResponseNotParsable", "Failed to parse response content", e);
+                }
+            }
+            if (ce == null) {
+                ce = new ClientException("SDK.UnknownError", "Unknown client error");
+            }
+            ce.setStatusCode(response.getStatus());
+            ce.setRequestId(response.getHeaderValue(HeaderKeys.REQUEST_ID));
+            return ce;
+        }
+        return null;
+    }
+
+    private static RuntimeException translateException(Exception exp) {
+        if (exp instanceof RuntimeException) {
+            return (RuntimeException) exp;
+        } else if (exp instanceof InvalidKeyException) {
+            return new ClientException("SDK.InvalidAccessSecret", "Speicified access secret is not valid.");
+        } else if (exp instanceof SocketTimeoutException) {
+            return new ClientException("SDK.ServerUnreachable", "SocketTimeoutException has occurred on a socket read or accept.");
+        } else if (exp instanceof IOException) {
+            return new ClientException("SDK.ServerUnreachable", "Server unreachable: " + exp.toString());
+        } else if (exp instanceof NoSuchAlgorithmException) {
+            return new ClientException("SDK.InvalidMD5Algorithm", "MD5 hash is not supported by client side.");
+        }
+        return new ClientException(exp);
+    }
+
+    /**
+     * Closes the transports and the connections they hold. Retries still waiting
+     * to be sent are dropped.
+     */
+    public void close() throws IOException {
+        try {
+            transport.close();
+        } finally {
+            synchronized (this) {
+                if (retryScheduler != null) {
+                    retryScheduler.shutdownNow();
+                }
+                try {
+                    if (asyncTransport != null && asyncTransport != transport) {
+                        asyncTransport.close();
+                    }
+                } finally {
+                    if (ownedCallbackExecutor != null) {
+                        ownedCallbackExecutor.shutdown();
                     }
                 }
-                if (ce == null) {
-                    ce = new ClientException("SDK.UnknownError", "Unknown client error");
+            }
+        }
+    }
+
+    /**
+     * One asynchronous request. A failed attempt is sent again from its callback,
+     * right away or through the retry scheduler, so attempts never overlap.
+     */
+    private final class AsyncCall implements FutureCallback<HttpResponse> {
+
+        private final HttpRequest request;
+        private final Body body;
+        private final String form;
+        private final String method;
+        private final RetryPolicy policy;
+        private final long deadline;
+        private final SettableFuture<HttpResponse> result;
+        private int attempt;
+        private Permit permit;
+        private long startNanos;
+        private RequestTiming timing;
+
+        AsyncCall(HttpRequest request, Body body, String form, String method, RetryPolicy policy,
+            long deadline, SettableFuture<HttpResponse> result) {
+            this.request = request;
+            this.body = body;
+            this.form = form;
+            this.method = method;
+            this.policy = policy;
+            this.deadline = deadline;
+            this.result = result;
+        }
+
+        /**
+         * Sends the first attempt, holding one of the client's async permits until the
+         * call completes.
+         */
+        void start() {
+            result.addListener(new Runnable() {
+                public void run() {
+                    asyncPermits.release();
+                    startQueuedCalls();
                 }
-                ce.setStatusCode(response.getStatus());
-                ce.setRequestId(response.getHeaderValue(HeaderKeys.REQUEST_ID));
-                throw ce;
+            }, MoreExecutors.directExecutor());
+            send();
+        }
+
+        void send() {
+            if (result.isDone()) {
+                return;
             }
-            return response;
-        } catch (InvalidKeyException exp) {
-            throw new ClientException("SDK.InvalidAccessSecret", "Speicified access secret is not valid.");
-        } catch (SocketTimeoutException exp){
-            throw new ClientException("SDK.ServerUnreachable", "SocketTimeoutException has occurred on a socket read or accept.");
-        } catch (IOException exp) {
-            throw new ClientException("SDK.ServerUnreachable", "Server unreachable: " + exp.toString());
-        } catch (NoSuchAlgorithmException exp) {
-            throw new ClientException("SDK.InvalidMD5Algorithm", "MD5 hash is not supported by client side.");
+            attempt++;
+            AdaptiveConcurrencyLimiter limiter = config.getConcurrencyLimiter();
+            String key = limiterKey(request);
+            if (limiter == null || key == null) {
+                send(null);
+                return;
+            }
+            Futures.addCallback(limiter.acquireAsync(key), new FutureCallback<Permit>() {
+                public void onSuccess(Permit permit) {
+                    send(permit);
+                }
+
+                public void onFailure(Throwable t) {
+                    result.setException(t);
+                }
+            }, callbackExecutor);
+        }
+
+        private void send(Permit permit) {
+            this.permit = permit;
+            if (result.isDone()) {
+                if (permit != null) {
+                    permit.cancel();
+                }
+                return;
+            }
+            ListenableFuture<HttpResponse> future;
+            startNanos = System.nanoTime();
+            timing = new RequestTiming(operationOf(request));
+            try {
+                interceptors.onRequest(request, attempt);
+                Map<String, String> headers = copyHeaders(request);
+                PrepareUrl prepareUrl = signRequest(request, headers, body, form, method);
+                TransportRequest transportRequest =
+                    newTransportRequest(prepareUrl, headers, body, method, deadline)
+                        .setTiming(timing);
+                timing.mark(RequestTiming.Phase.SIGN, startNanos);
+                future = getAsyncTransport().executeAsync(transportRequest);
+            } catch (Exception e) {
+                if (permit != null) {
+                    permit.cancel();
+                }
+                result.setException(translateException(e));
+                return;
+            }
+            // Off the transport's I/O thread: parsing, retries and the listeners of the
+            // result must not hold up other requests
+            Futures.addCallback(future, this, callbackExecutor);
+        }
+
+        public void onSuccess(HttpResponse response) {
+            RuntimeException error;
+            try {
+                response.setTiming(timing);
+                interceptors.onResponse(request, response, attempt);
+                error = toException(response);
+            } catch (RuntimeException e) {
+                if (permit != null) {
+                    permit.cancel();
+                }
+                result.setException(e);
+                return;
+            }
+            recordAttempt(request, response, error, attempt, startNanos);
+            releasePermit(permit, response, error);
+            if (error == null) {
+                policy.onSuccess();
+                result.set(response);
+                return;
+            }
+            retryOrFail(body.isRepeatable()
+                ? retryDelayMillis(policy, attempt, method, response, null, error, deadline)
+                : -1, error);
+        }
+
+        public void onFailure(Throwable t) {
+            if (permit != null) {
+                permit.cancel();
+            }
+            if (!(t instanceof Exception)) {
+                result.setException(t);
+                return;
+            }
+            if (t instanceof IOException) {
+                try {
+                    interceptors.onFailure(request, (IOException) t, attempt);
+                } catch (RuntimeException e) {
+                    result.setException(e);
+                    return;
+                }
+            }
+            RuntimeException error = translateException((Exception) t);
+            recordAttempt(request, null, error, attempt, startNanos);
+            long delay = t instanceof IOException && body.isRepeatable()
+                ? retryDelayMillis(policy, attempt, method, null, (IOException) t, error, deadline)
+                : -1;
+            retryOrFail(delay, error);
+        }
+
+        private void retryOrFail(long delay, RuntimeException error) {
+            if (delay < 0) {
+                result.setException(error);
+            } else if (delay == 0) {
+                send();
+            } else {
+                try {
+                    getRetryScheduler().schedule(new Runnable() {
+                        public void run() {
+                            send();
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    result.setException(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * The body of a request and its Content-MD5, computed once and reused for every
+     * attempt.
+     */
+    private static final class Body {
+
+        final RequestBody payload;
+        final String contentMd5;
+
+        Body(HttpRequest request) {
+            this.payload = request.getBody();
+            try {
+                this.contentMd5 = payload == null || !request.isContentMd5Enabled()
+                    ? null : payload.contentMd5();
+            } catch (IOException e) {
+                throw new ClientException("SDK.PayloadNotReadable",
+                    "Failed to read the request payload", e);
+            }
+        }
+
+        /**
+         * @return false if the body was consumed by an attempt and cannot be sent again
+         */
+        boolean isRepeatable() {
+            return payload == null || payload.isRepeatable();
         }
     }
 }
@@ -3,30 +3,45 @@ package com.aliyuncs.fc.client;
 import com.aliyuncs.fc.constants.HeaderKeys;
 import com.aliyuncs.fc.request.*;
 import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
 import com.aliyuncs.fc.exceptions.ClientException;
 import com.aliyuncs.fc.exceptions.ServerException;
+import com.aliyuncs.fc.http.HttpRequest;
 import com.aliyuncs.fc.http.HttpResponse;
+import com.aliyuncs.fc.http.RequestTiming;
+import com.aliyuncs.fc.http.Transport;
+import com.aliyuncs.fc.metrics.MetricsCollector;
 import com.aliyuncs.fc.model.FunctionMetadata;
 import com.aliyuncs.fc.model.FunctionCodeMetadata;
 import com.aliyuncs.fc.model.ServiceMetadata;
 import com.aliyuncs.fc.model.TriggerMetadata;
 import com.aliyuncs.fc.response.*;
-import com.google.gson.Gson;
+import com.aliyuncs.fc.client.PagedIterable.Page;
+import com.aliyuncs.fc.client.PagedIterable.PageFetcher;
+import com.aliyuncs.fc.utils.Base64Helper;
+import com.aliyuncs.fc.utils.ParameterHelper;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Map;
-import sun.misc.BASE64Decoder;
 
 /**
  * TODO: add javadoc
  */
-public class FunctionComputeClient {
+public class FunctionComputeClient implements Closeable {
 
     private final static String CONTENT_TYPE_APPLICATION_JSON = "application/json";
     private final static String CONTENT_TYPE_APPLICATION_STREAM = "application/octet-stream";
 
     private final DefaultFcClient client;
-    private static final Gson GSON = new Gson();
     private final Config config;
+    private volatile MetadataCache metadataCache;
+    private final RequestCoalescer coalescer = new RequestCoalescer();
 
     public FunctionComputeClient(String region, String uid, String accessKeyId, String accessKeySecret) {
         this.config = new Config(region, uid, accessKeyId, accessKeySecret, null, false);
@@ -38,6 +53,16 @@ public class FunctionComputeClient {
         client = new DefaultFcClient(config);
     }
 
+    /**
+     * Creates a client that sends its requests through the given transport, e.g. a
+     * {@link com.aliyuncs.fc.http.UrlConnectionTransport} or a test double. The client
+     * closes the transport when it is closed.
+     */
+    public FunctionComputeClient(Config config, Transport transport) {
+        this.config = config;
+        client = new DefaultFcClient(config, transport);
+    }
+
     public Config getConfig() {
         return config;
     }
@@ -50,215 +75,791 @@ public class FunctionComputeClient {
         config.setEndpoint(endpoint);
     }
 
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Caches the responses of getService, getFunction and getTrigger, and their async
+     * variants, in the given cache, or stops caching when it is null, the default.
+     * Updates and deletes sent through this client invalidate what they change;
+     * changes made elsewhere are seen once the cached entry expires.
+     * @param metadataCache the cache, which may be shared by clients of one account
+     */
+    public void setMetadataCache(MetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * @return the counters of GETs that were collapsed into identical ones in flight
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Sends a GET, sharing the call with identical ones in flight unless the config
+     * turns coalescing off.
+     */
+    private HttpResponse get(HttpRequest request) throws ClientException, ServerException {
+        if (!config.isCoalesceReads()) {
+            return client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "GET");
+        }
+        return coalescer.execute(client, config.getEndpoint(), request,
+            CONTENT_TYPE_APPLICATION_JSON);
+    }
+
+    private ListenableFuture<HttpResponse> getAsync(HttpRequest request) {
+        if (!config.isCoalesceReads()) {
+            return client.doActionAsync(request, CONTENT_TYPE_APPLICATION_JSON, "GET");
+        }
+        return coalescer.executeAsync(client, config.getEndpoint(), request,
+            CONTENT_TYPE_APPLICATION_JSON);
+    }
+
+    private String cacheKey(HttpRequest request) {
+        return config.getEndpoint() + request.getPath();
+    }
+
+    /**
+     * @return the request to send, which revalidates the expired entry if there is one
+     * with an ETag
+     */
+    private static HttpRequest prepareCachedGet(HttpRequest request,
+        MetadataCache.Entry cached) {
+        if (cached != null && cached.etag != null) {
+            return new ConditionalRequest(request, HeaderKeys.IF_NONE_MATCH, cached.etag);
+        }
+        return request;
+    }
+
+    private HttpResponse cachedGet(HttpRequest request)
+        throws ClientException, ServerException {
+        MetadataCache cache = metadataCache;
+        if (cache == null) {
+            return get(request);
+        }
+        String key = cacheKey(request);
+        MetadataCache.Entry cached = cache.lookup(key);
+        if (cached != null && cache.hit(cached)) {
+            return cached.response;
+        }
+        long began = cache.generation();
+        return cache.update(key, cached, began, get(prepareCachedGet(request, cached)));
+    }
+
+    private ListenableFuture<HttpResponse> cachedGetAsync(HttpRequest request) {
+        final MetadataCache cache = metadataCache;
+        if (cache == null) {
+            return getAsync(request);
+        }
+        final String key = cacheKey(request);
+        final MetadataCache.Entry cached = cache.lookup(key);
+        if (cached != null && cache.hit(cached)) {
+            return Futures.immediateFuture(cached.response);
+        }
+        final long began = cache.generation();
+        return Futures.transform(
+            getAsync(prepareCachedGet(request, cached)),
+            new Function<HttpResponse, HttpResponse>() {
+                public HttpResponse apply(HttpResponse response) {
+                    return cache.update(key, cached, began, response);
+                }
+            });
+    }
+
+    /**
+     * Sends an update or delete and invalidates the cached resource, and with
+     * tree set everything below it, whether or not the call succeeds.
+     */
+    private HttpResponse invalidating(HttpRequest request, String method, boolean tree)
+        throws ClientException, ServerException {
+        try {
+            return client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, method);
+        } finally {
+            invalidate(request, tree);
+        }
+    }
+
+    private ListenableFuture<HttpResponse> invalidatingAsync(final HttpRequest request,
+        String method, final boolean tree) {
+        ListenableFuture<HttpResponse> future =
+            client.doActionAsync(request, CONTENT_TYPE_APPLICATION_JSON, method);
+        // Listeners run in the order they are added, so this one runs before the
+        // caller sees the response
+        future.addListener(new Runnable() {
+            public void run() {
+                invalidate(request, tree);
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    private void invalidate(HttpRequest request, boolean tree) {
+        MetadataCache cache = metadataCache;
+        if (cache == null) {
+            return;
+        }
+        if (tree) {
+            cache.invalidateTree(cacheKey(request));
+        } else {
+            cache.invalidate(cacheKey(request));
+        }
+    }
+
+    private static <T> T fromJson(HttpResponse response, Class<T> type) {
+        return ParameterHelper.JsonToObject(response.getContent(), type);
+    }
+
+    /**
+     * The raw content for a parsed response, or null when the config asks not to keep it.
+     */
+    private byte[] retainedContent(HttpResponse response) {
+        return config.isRetainResponseContent() ? response.getContent() : null;
+    }
+
+    /**
+     * Gives a conversion's typed response a copy of the call's timing, with the time
+     * the conversion took as its PARSE phase, and reports it to the metrics collector.
+     */
+    private <T extends HttpResponse> Function<HttpResponse, T> timed(
+        final Function<HttpResponse, T> conversion) {
+        return new Function<HttpResponse, T>() {
+            public T apply(HttpResponse response) {
+                long start = System.nanoTime();
+                T converted = conversion.apply(response);
+                if (response.getTiming() != null) {
+                    RequestTiming timing = response.getTiming().copy();
+                    timing.mark(RequestTiming.Phase.PARSE, start);
+                    converted.setTiming(timing);
+                    MetricsCollector metrics = config.getMetricsCollector();
+                    if (metrics != null) {
+                        metrics.onTiming(timing);
+                    }
+                }
+                return converted;
+            }
+        };
+    }
+
+    private final Function<HttpResponse, DeleteServiceResponse> toDeleteServiceResponse =
+        timed(new Function<HttpResponse, DeleteServiceResponse>() {
+            public DeleteServiceResponse apply(HttpResponse response) {
+                DeleteServiceResponse deleteServiceResponse = new DeleteServiceResponse();
+                deleteServiceResponse.setHeaders(response.getHeaders());
+                deleteServiceResponse.setStatus(response.getStatus());
+                return deleteServiceResponse;
+            }
+        });
+
     public DeleteServiceResponse deleteService(DeleteServiceRequest request)
         throws ClientException, ServerException {
+        return toDeleteServiceResponse.apply(invalidating(request, "DELETE", true));
+    }
 
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "DELETE");
-        DeleteServiceResponse deleteServiceResponse = new DeleteServiceResponse();
-        deleteServiceResponse.setHeaders(response.getHeaders());
-        deleteServiceResponse.setStatus(response.getStatus());
-        return deleteServiceResponse;
+    public ListenableFuture<DeleteServiceResponse> deleteServiceAsync(
+        DeleteServiceRequest request) {
+        return Futures.transform(
+            invalidatingAsync(request, "DELETE", true),
+            toDeleteServiceResponse);
     }
 
+    private final Function<HttpResponse, DeleteFunctionResponse>
+        toDeleteFunctionResponse =
+        timed(new Function<HttpResponse, DeleteFunctionResponse>() {
+            public DeleteFunctionResponse apply(HttpResponse response) {
+                DeleteFunctionResponse deleteFunctionResponse = new DeleteFunctionResponse();
+                deleteFunctionResponse.setHeader(response.getHeaders());
+                deleteFunctionResponse.setStatus(response.getStatus());
+                return deleteFunctionResponse;
+            }
+        });
+
     public DeleteFunctionResponse deleteFunction(DeleteFunctionRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "DELETE");
-        DeleteFunctionResponse deleteFunctionResponse = new DeleteFunctionResponse();
-        deleteFunctionResponse.setHeader(response.getHeaders());
-        deleteFunctionResponse.setStatus(response.getStatus());
-        return deleteFunctionResponse;
+        return toDeleteFunctionResponse.apply(invalidating(request, "DELETE", true));
+    }
+
+    public ListenableFuture<DeleteFunctionResponse> deleteFunctionAsync(
+        DeleteFunctionRequest request) {
+        return Futures.transform(
+            invalidatingAsync(request, "DELETE", true),
+            toDeleteFunctionResponse);
     }
 
+    private final Function<HttpResponse, GetServiceResponse> toGetServiceResponse =
+        timed(new Function<HttpResponse, GetServiceResponse>() {
+            public GetServiceResponse apply(HttpResponse response) {
+                ServiceMetadata serviceMetadata = fromJson(response, ServiceMetadata.class);
+                GetServiceResponse getServiceResponse = new GetServiceResponse();
+                getServiceResponse.setServiceMetadata(serviceMetadata);
+                getServiceResponse.setHeader(response.getHeaders());
+                getServiceResponse.setContent(retainedContent(response));
+                getServiceResponse.setStatus(response.getStatus());
+                return getServiceResponse;
+            }
+        });
+
     public GetServiceResponse getService(GetServiceRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "GET");
-        ServiceMetadata serviceMetadata = GSON.fromJson(
-            new String(response.getContent()), ServiceMetadata.class);
-        GetServiceResponse getServiceResponse = new GetServiceResponse();
-        getServiceResponse.setServiceMetadata(serviceMetadata);
-        getServiceResponse.setHeader(response.getHeaders());
-        getServiceResponse.setContent(response.getContent());
-        getServiceResponse.setStatus(response.getStatus());
-        return getServiceResponse;
+        return toGetServiceResponse.apply(cachedGet(request));
+    }
+
+    public ListenableFuture<GetServiceResponse> getServiceAsync(GetServiceRequest request) {
+        return Futures.transform(
+            cachedGetAsync(request),
+            toGetServiceResponse);
     }
 
+    private final Function<HttpResponse, GetFunctionResponse> toGetFunctionResponse =
+        timed(new Function<HttpResponse, GetFunctionResponse>() {
+            public GetFunctionResponse apply(HttpResponse response) {
+                FunctionMetadata functionMetadata = fromJson(response, FunctionMetadata.class);
+                GetFunctionResponse getFunctionResponse = new GetFunctionResponse();
+                getFunctionResponse.setFunctionMetadata(functionMetadata);
+                getFunctionResponse.setHeader(response.getHeaders());
+                getFunctionResponse.setContent(retainedContent(response));
+                getFunctionResponse.setStatus(response.getStatus());
+                return getFunctionResponse;
+            }
+        });
+
     public GetFunctionResponse getFunction(GetFunctionRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "GET");
-        FunctionMetadata functionMetadata = GSON.fromJson(
-            new String(response.getContent()), FunctionMetadata.class);
-        GetFunctionResponse getFunctionResponse = new GetFunctionResponse();
-        getFunctionResponse.setFunctionMetadata(functionMetadata);
-        getFunctionResponse.setHeader(response.getHeaders());
-        getFunctionResponse.setContent(response.getContent());
-        getFunctionResponse.setStatus(response.getStatus());
-        return getFunctionResponse;
+        return toGetFunctionResponse.apply(cachedGet(request));
     }
 
+    public ListenableFuture<GetFunctionResponse> getFunctionAsync(GetFunctionRequest request) {
+        return Futures.transform(
+            cachedGetAsync(request),
+            toGetFunctionResponse);
+    }
+
+    private final Function<HttpResponse, GetFunctionCodeResponse>
+        toGetFunctionCodeResponse =
+        timed(new Function<HttpResponse, GetFunctionCodeResponse>() {
+            public GetFunctionCodeResponse apply(HttpResponse response) {
+                FunctionCodeMetadata functionCodeMetadata = fromJson(response, FunctionCodeMetadata.class);
+                GetFunctionCodeResponse getFunctionCodeResponse = new GetFunctionCodeResponse();
+                getFunctionCodeResponse.setFunctionCodeMetadata(functionCodeMetadata);
+                getFunctionCodeResponse.setHeader(response.getHeaders());
+                getFunctionCodeResponse.setContent(retainedContent(response));
+                getFunctionCodeResponse.setStatus(response.getStatus());
+                return getFunctionCodeResponse;
+            }
+        });
+
     public GetFunctionCodeResponse getFunctionCode(GetFunctionCodeRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "GET");
-        FunctionCodeMetadata functionCodeMetadata = GSON.fromJson(
-            new String(response.getContent()), FunctionCodeMetadata.class);
-        GetFunctionCodeResponse getFunctionCodeResponse = new GetFunctionCodeResponse();
-        getFunctionCodeResponse.setFunctionCodeMetadata(functionCodeMetadata);
-        getFunctionCodeResponse.setHeader(response.getHeaders());
-        getFunctionCodeResponse.setContent(response.getContent());
-        getFunctionCodeResponse.setStatus(response.getStatus());
-        return getFunctionCodeResponse;
+        return toGetFunctionCodeResponse.apply(get(request));
+    }
+
+    public ListenableFuture<GetFunctionCodeResponse> getFunctionCodeAsync(
+        GetFunctionCodeRequest request) {
+        return Futures.transform(
+            getAsync(request),
+            toGetFunctionCodeResponse);
     }
 
+    private final Function<HttpResponse, CreateServiceResponse> toCreateServiceResponse =
+        timed(new Function<HttpResponse, CreateServiceResponse>() {
+            public CreateServiceResponse apply(HttpResponse response) {
+                ServiceMetadata serviceMetadata = fromJson(response, ServiceMetadata.class);
+                CreateServiceResponse createServiceResponse = new CreateServiceResponse();
+                createServiceResponse.setServiceMetadata(serviceMetadata);
+                createServiceResponse.setHeaders(response.getHeaders());
+                createServiceResponse.setContent(retainedContent(response));
+                createServiceResponse.setStatus(response.getStatus());
+                return createServiceResponse;
+            }
+        });
+
     public CreateServiceResponse createService(CreateServiceRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "POST");
-        ServiceMetadata serviceMetadata = GSON.fromJson(
-            new String(response.getContent()), ServiceMetadata.class);
-        CreateServiceResponse createServiceResponse = new CreateServiceResponse();
-        createServiceResponse.setServiceMetadata(serviceMetadata);
-        createServiceResponse.setHeaders(response.getHeaders());
-        createServiceResponse.setContent(response.getContent());
-        createServiceResponse.setStatus(response.getStatus());
-        return createServiceResponse;
+        return toCreateServiceResponse.apply(
+            client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "POST"));
+    }
+
+    public ListenableFuture<CreateServiceResponse> createServiceAsync(
+        CreateServiceRequest request) {
+        return Futures.transform(
+            client.doActionAsync(request, CONTENT_TYPE_APPLICATION_JSON, "POST"),
+            toCreateServiceResponse);
     }
 
+    private final Function<HttpResponse, CreateFunctionResponse>
+        toCreateFunctionResponse =
+        timed(new Function<HttpResponse, CreateFunctionResponse>() {
+            public CreateFunctionResponse apply(HttpResponse response) {
+                FunctionMetadata functionMetadata = fromJson(response, FunctionMetadata.class);
+                CreateFunctionResponse createFunctionResponse = new CreateFunctionResponse();
+                createFunctionResponse.setFunctionMetadata(functionMetadata);
+                createFunctionResponse.setHeader(response.getHeaders());
+                createFunctionResponse.setContent(retainedContent(response));
+                createFunctionResponse.setStatus(response.getStatus());
+                return createFunctionResponse;
+            }
+        });
+
     public CreateFunctionResponse createFunction(CreateFunctionRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "POST");
-        FunctionMetadata functionMetadata = GSON.fromJson(
-            new String(response.getContent()), FunctionMetadata.class);
-        CreateFunctionResponse createFunctionResponse = new CreateFunctionResponse();
-        createFunctionResponse.setFunctionMetadata(functionMetadata);
-        createFunctionResponse.setHeader(response.getHeaders());
-        createFunctionResponse.setContent(response.getContent());
-        createFunctionResponse.setStatus(response.getStatus());
-        return createFunctionResponse;
+        return toCreateFunctionResponse.apply(
+            client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "POST"));
     }
 
+    public ListenableFuture<CreateFunctionResponse> createFunctionAsync(
+        CreateFunctionRequest request) {
+        return Futures.transform(
+            client.doActionAsync(request, CONTENT_TYPE_APPLICATION_JSON, "POST"),
+            toCreateFunctionResponse);
+    }
+
+    private final Function<HttpResponse, UpdateServiceResponse> toUpdateServiceResponse =
+        timed(new Function<HttpResponse, UpdateServiceResponse>() {
+            public UpdateServiceResponse apply(HttpResponse response) {
+                ServiceMetadata serviceMetadata = fromJson(response, ServiceMetadata.class);
+                UpdateServiceResponse updateServiceResponse = new UpdateServiceResponse();
+                updateServiceResponse.setServiceMetadata(serviceMetadata);
+                updateServiceResponse.setHeader(response.getHeaders());
+                updateServiceResponse.setContent(retainedContent(response));
+                updateServiceResponse.setStatus(response.getStatus());
+                return updateServiceResponse;
+            }
+        });
+
     public UpdateServiceResponse updateService(UpdateServiceRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "PUT");
-        ServiceMetadata serviceMetadata = GSON.fromJson(
-            new String(response.getContent()), ServiceMetadata.class);
-        UpdateServiceResponse updateServiceResponse = new UpdateServiceResponse();
-        updateServiceResponse.setServiceMetadata(serviceMetadata);
-        updateServiceResponse.setHeader(response.getHeaders());
-        updateServiceResponse.setContent(response.getContent());
-        updateServiceResponse.setStatus(response.getStatus());
-        return updateServiceResponse;
+        return toUpdateServiceResponse.apply(invalidating(request, "PUT", false));
+    }
+
+    public ListenableFuture<UpdateServiceResponse> updateServiceAsync(
+        UpdateServiceRequest request) {
+        return Futures.transform(
+            invalidatingAsync(request, "PUT", false),
+            toUpdateServiceResponse);
     }
 
+    private final Function<HttpResponse, UpdateFunctionResponse>
+        toUpdateFunctionResponse =
+        timed(new Function<HttpResponse, UpdateFunctionResponse>() {
+            public UpdateFunctionResponse apply(HttpResponse response) {
+                FunctionMetadata functionMetadata = fromJson(response, FunctionMetadata.class);
+                UpdateFunctionResponse updateFunctionResponse = new UpdateFunctionResponse();
+                updateFunctionResponse.setFunctionMetadata(functionMetadata);
+                updateFunctionResponse.setHeader(response.getHeaders());
+                updateFunctionResponse.setContent(retainedContent(response));
+                updateFunctionResponse.setStatus(response.getStatus());
+                return updateFunctionResponse;
+            }
+        });
+
     public UpdateFunctionResponse updateFunction(UpdateFunctionRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "PUT");
-        FunctionMetadata functionMetadata = GSON.fromJson(
-            new String(response.getContent()), FunctionMetadata.class);
-        UpdateFunctionResponse updateFunctionResponse = new UpdateFunctionResponse();
-        updateFunctionResponse.setFunctionMetadata(functionMetadata);
-        updateFunctionResponse.setHeader(response.getHeaders());
-        updateFunctionResponse.setContent(response.getContent());
-        updateFunctionResponse.setStatus(response.getStatus());
-        return updateFunctionResponse;
+        return toUpdateFunctionResponse.apply(invalidating(request, "PUT", false));
+    }
+
+    public ListenableFuture<UpdateFunctionResponse> updateFunctionAsync(
+        UpdateFunctionRequest request) {
+        return Futures.transform(
+            invalidatingAsync(request, "PUT", false),
+            toUpdateFunctionResponse);
     }
 
+    private final Function<HttpResponse, ListServicesResponse> toListServicesResponse =
+        timed(new Function<HttpResponse, ListServicesResponse>() {
+            public ListServicesResponse apply(HttpResponse response) {
+                ListServicesResponse listServicesResponse = fromJson(response, ListServicesResponse.class);
+                listServicesResponse.setHeader(response.getHeaders());
+                listServicesResponse.setContent(retainedContent(response));
+                listServicesResponse.setStatus(response.getStatus());
+                return listServicesResponse;
+            }
+        });
+
     public ListServicesResponse listServices(ListServicesRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "GET");
-        ListServicesResponse listServicesResponse = GSON.fromJson(
-            new String(response.getContent()), ListServicesResponse.class);
-        listServicesResponse.setHeader(response.getHeaders());
-        listServicesResponse.setContent(response.getContent());
-        listServicesResponse.setStatus(response.getStatus());
-        return listServicesResponse;
+        return toListServicesResponse.apply(get(request));
     }
 
+    public ListenableFuture<ListServicesResponse> listServicesAsync(ListServicesRequest request) {
+        return Futures.transform(
+            getAsync(request),
+            toListServicesResponse);
+    }
+
+    private static final Function<ListServicesResponse, Page<ServiceMetadata>> TO_SERVICES_PAGE =
+        new Function<ListServicesResponse, Page<ServiceMetadata>>() {
+            public Page<ServiceMetadata> apply(ListServicesResponse response) {
+                return new Page<ServiceMetadata>(response.getServices(), response.getNextToken());
+            }
+        };
+
+    /**
+     * Iterates over all services, fetching pages of {@link Config#getListPageSize()}
+     * services as they are consumed.
+     */
+    public Iterable<ServiceMetadata> iterateServices() {
+        return iterateServices(new ListServicesRequest());
+    }
+
+    /**
+     * Iterates over all services matching the request, starting at its startKey and
+     * nextToken. The request's limit, or {@link Config#getListPageSize()}, sets the
+     * page size. The next page is fetched in the background while one is consumed.
+     */
+    public Iterable<ServiceMetadata> iterateServices(final ListServicesRequest request) {
+        request.validate();
+        return new PagedIterable<ServiceMetadata>(new PageFetcher<ServiceMetadata>() {
+            public ListenableFuture<Page<ServiceMetadata>> fetch(String nextToken) {
+                ListServicesRequest page = new ListServicesRequest()
+                    .setPrefix(request.getPrefix())
+                    .setStartKey(request.getStartKey())
+                    .setLimit(pageSize(request.getLimit()))
+                    .setNextToken(nextToken == null ? request.getNextToken() : nextToken);
+                return Futures.transform(listServicesAsync(page), TO_SERVICES_PAGE);
+            }
+        }, config.getListPrefetchPages());
+    }
+
+    private final Function<HttpResponse, ListFunctionsResponse> toListFunctionsResponse =
+        timed(new Function<HttpResponse, ListFunctionsResponse>() {
+            public ListFunctionsResponse apply(HttpResponse response) {
+                ListFunctionsResponse listFunctionsResponse = fromJson(response, ListFunctionsResponse.class);
+                listFunctionsResponse.setHeader(response.getHeaders());
+                listFunctionsResponse.setContent(retainedContent(response));
+                listFunctionsResponse.setStatus(response.getStatus());
+                return listFunctionsResponse;
+            }
+        });
+
     public ListFunctionsResponse listFunctions(ListFunctionsRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "GET");
-        ListFunctionsResponse listFunctionsResponse = GSON.fromJson(
-            new String(response.getContent()), ListFunctionsResponse.class);
-        listFunctionsResponse.setHeader(response.getHeaders());
-        listFunctionsResponse.setContent(response.getContent());
-        listFunctionsResponse.setStatus(response.getStatus());
-        return listFunctionsResponse;
+        return toListFunctionsResponse.apply(get(request));
+    }
+
+    public ListenableFuture<ListFunctionsResponse> listFunctionsAsync(
+        ListFunctionsRequest request) {
+        return Futures.transform(
+            getAsync(request),
+            toListFunctionsResponse);
     }
 
+    private static final Function<ListFunctionsResponse, Page<FunctionMetadata>>
+        TO_FUNCTIONS_PAGE = new Function<ListFunctionsResponse, Page<FunctionMetadata>>() {
+            public Page<FunctionMetadata> apply(ListFunctionsResponse response) {
+                return new Page<FunctionMetadata>(response.getFunctions(),
+                    response.getNextToken());
+            }
+        };
+
+    /**
+     * Iterates over all functions of the service whose name starts with the prefix,
+     * fetching pages of {@link Config#getListPageSize()} functions as they are consumed.
+     * @param prefix name prefix, null for all functions
+     */
+    public Iterable<FunctionMetadata> iterateFunctions(String serviceName, String prefix) {
+        return iterateFunctions(new ListFunctionsRequest(serviceName).setPrefix(prefix));
+    }
+
+    /**
+     * Iterates over all functions matching the request, starting at its startKey and
+     * nextToken. The request's limit, or {@link Config#getListPageSize()}, sets the
+     * page size. The next page is fetched in the background while one is consumed.
+     */
+    public Iterable<FunctionMetadata> iterateFunctions(final ListFunctionsRequest request) {
+        request.validate();
+        return new PagedIterable<FunctionMetadata>(new PageFetcher<FunctionMetadata>() {
+            public ListenableFuture<Page<FunctionMetadata>> fetch(String nextToken) {
+                ListFunctionsRequest page = new ListFunctionsRequest(request.getServiceName())
+                    .setPrefix(request.getPrefix())
+                    .setStartKey(request.getStartKey())
+                    .setLimit(pageSize(request.getLimit()))
+                    .setNextToken(nextToken == null ? request.getNextToken() : nextToken);
+                return Futures.transform(listFunctionsAsync(page), TO_FUNCTIONS_PAGE);
+            }
+        }, config.getListPrefetchPages());
+    }
+
+    private final Function<HttpResponse, CreateTriggerResponse> toCreateTriggerResponse =
+        timed(new Function<HttpResponse, CreateTriggerResponse>() {
+            public CreateTriggerResponse apply(HttpResponse response) {
+                TriggerMetadata triggerMetadata = fromJson(response, TriggerMetadata.class);
+                CreateTriggerResponse createTriggerResponse = new CreateTriggerResponse();
+                createTriggerResponse.setTriggerMetadata(triggerMetadata);
+                createTriggerResponse.setHeader(response.getHeaders());
+                createTriggerResponse.setContent(retainedContent(response));
+                createTriggerResponse.setStatus(response.getStatus());
+                return createTriggerResponse;
+            }
+        });
+
     public CreateTriggerResponse createTrigger(CreateTriggerRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "POST");
-        TriggerMetadata triggerMetadata = GSON.fromJson(
-            new String(response.getContent()), TriggerMetadata.class);
-        CreateTriggerResponse createTriggerResponse = new CreateTriggerResponse();
-        createTriggerResponse.setTriggerMetadata(triggerMetadata);
-        createTriggerResponse.setHeader(response.getHeaders());
-        createTriggerResponse.setContent(response.getContent());
-        createTriggerResponse.setStatus(response.getStatus());
-        return createTriggerResponse;
+        return toCreateTriggerResponse.apply(
+            client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "POST"));
+    }
+
+    public ListenableFuture<CreateTriggerResponse> createTriggerAsync(
+        CreateTriggerRequest request) {
+        return Futures.transform(
+            client.doActionAsync(request, CONTENT_TYPE_APPLICATION_JSON, "POST"),
+            toCreateTriggerResponse);
     }
 
+    private final Function<HttpResponse, DeleteTriggerResponse> toDeleteTriggerResponse =
+        timed(new Function<HttpResponse, DeleteTriggerResponse>() {
+            public DeleteTriggerResponse apply(HttpResponse response) {
+                DeleteTriggerResponse deleteTriggerResponse = new DeleteTriggerResponse();
+                deleteTriggerResponse.setHeader(response.getHeaders());
+                deleteTriggerResponse.setStatus(response.getStatus());
+                return deleteTriggerResponse;
+            }
+        });
+
     public DeleteTriggerResponse deleteTrigger(DeleteTriggerRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "DELETE");
-        DeleteTriggerResponse deleteTriggerResponse = new DeleteTriggerResponse();
-        deleteTriggerResponse.setHeader(response.getHeaders());
-        deleteTriggerResponse.setStatus(response.getStatus());
-        return deleteTriggerResponse;
+        return toDeleteTriggerResponse.apply(invalidating(request, "DELETE", true));
     }
 
+    public ListenableFuture<DeleteTriggerResponse> deleteTriggerAsync(
+        DeleteTriggerRequest request) {
+        return Futures.transform(
+            invalidatingAsync(request, "DELETE", true),
+            toDeleteTriggerResponse);
+    }
+
+    private final Function<HttpResponse, UpdateTriggerResponse> toUpdateTriggerResponse =
+        timed(new Function<HttpResponse, UpdateTriggerResponse>() {
+            public UpdateTriggerResponse apply(HttpResponse response) {
+                TriggerMetadata triggerMetadata = fromJson(response, TriggerMetadata.class);
+                UpdateTriggerResponse updateTriggerResponse = new UpdateTriggerResponse();
+                updateTriggerResponse.setTriggerMetadata(triggerMetadata);
+                updateTriggerResponse.setHeader(response.getHeaders());
+                updateTriggerResponse.setContent(retainedContent(response));
+                updateTriggerResponse.setStatus(response.getStatus());
+                return updateTriggerResponse;
+            }
+        });
+
     public UpdateTriggerResponse updateTrigger(UpdateTriggerRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "PUT");
-        TriggerMetadata triggerMetadata = GSON.fromJson(
-            new String(response.getContent()), TriggerMetadata.class);
-        UpdateTriggerResponse updateTriggerResponse = new UpdateTriggerResponse();
-        updateTriggerResponse.setTriggerMetadata(triggerMetadata);
-        updateTriggerResponse.setHeader(response.getHeaders());
-        updateTriggerResponse.setContent(response.getContent());
-        updateTriggerResponse.setStatus(response.getStatus());
-        return updateTriggerResponse;
+        return toUpdateTriggerResponse.apply(invalidating(request, "PUT", false));
+    }
+
+    public ListenableFuture<UpdateTriggerResponse> updateTriggerAsync(
+        UpdateTriggerRequest request) {
+        return Futures.transform(
+            invalidatingAsync(request, "PUT", false),
+            toUpdateTriggerResponse);
     }
 
+    private final Function<HttpResponse, GetTriggerResponse> toGetTriggerResponse =
+        timed(new Function<HttpResponse, GetTriggerResponse>() {
+            public GetTriggerResponse apply(HttpResponse response) {
+                TriggerMetadata triggerMetadata = fromJson(response, TriggerMetadata.class);
+                GetTriggerResponse getTriggerResponse = new GetTriggerResponse();
+                getTriggerResponse.setTriggerMetadata(triggerMetadata);
+                getTriggerResponse.setHeader(response.getHeaders());
+                getTriggerResponse.setContent(retainedContent(response));
+                getTriggerResponse.setStatus(response.getStatus());
+                return getTriggerResponse;
+            }
+        });
+
     public GetTriggerResponse getTrigger(GetTriggerRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "GET");
-        TriggerMetadata triggerMetadata = GSON.fromJson(
-            new String(response.getContent()), TriggerMetadata.class);
-        GetTriggerResponse getTriggerResponse = new GetTriggerResponse();
-        getTriggerResponse.setTriggerMetadata(triggerMetadata);
-        getTriggerResponse.setHeader(response.getHeaders());
-        getTriggerResponse.setContent(response.getContent());
-        getTriggerResponse.setStatus(response.getStatus());
-        return getTriggerResponse;
+        return toGetTriggerResponse.apply(cachedGet(request));
+    }
+
+    public ListenableFuture<GetTriggerResponse> getTriggerAsync(GetTriggerRequest request) {
+        return Futures.transform(
+            cachedGetAsync(request),
+            toGetTriggerResponse);
     }
 
+    private final Function<HttpResponse, ListTriggersResponse> toListTriggersResponse =
+        timed(new Function<HttpResponse, ListTriggersResponse>() {
+            public ListTriggersResponse apply(HttpResponse response) {
+                ListTriggersResponse listTriggersResponse = fromJson(response, ListTriggersResponse.class);
+                listTriggersResponse.setHeader(response.getHeaders());
+                listTriggersResponse.setContent(retainedContent(response));
+                listTriggersResponse.setStatus(response.getStatus());
+                return listTriggersResponse;
+            }
+        });
+
     public ListTriggersResponse listTriggers(ListTriggersRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_JSON, "GET");
-        ListTriggersResponse listTriggersResponse = GSON.fromJson(
-            new String(response.getContent()), ListTriggersResponse.class);
-        listTriggersResponse.setHeader(response.getHeaders());
-        listTriggersResponse.setContent(response.getContent());
-        listTriggersResponse.setStatus(response.getStatus());
-        return listTriggersResponse;
+        return toListTriggersResponse.apply(get(request));
+    }
+
+    public ListenableFuture<ListTriggersResponse> listTriggersAsync(ListTriggersRequest request) {
+        return Futures.transform(
+            getAsync(request),
+            toListTriggersResponse);
+    }
+
+    private static final Function<ListTriggersResponse, Page<TriggerMetadata>> TO_TRIGGERS_PAGE =
+        new Function<ListTriggersResponse, Page<TriggerMetadata>>() {
+            public Page<TriggerMetadata> apply(ListTriggersResponse response) {
+                return new Page<TriggerMetadata>(response.getTriggers(), response.getNextToken());
+            }
+        };
+
+    /**
+     * Iterates over all triggers of the function, fetching pages of
+     * {@link Config#getListPageSize()} triggers as they are consumed.
+     */
+    public Iterable<TriggerMetadata> iterateTriggers(String serviceName, String functionName) {
+        return iterateTriggers(new ListTriggersRequest(serviceName, functionName));
+    }
+
+    /**
+     * Iterates over all triggers matching the request, starting at its startKey and
+     * nextToken. The request's limit, or {@link Config#getListPageSize()}, sets the
+     * page size. The next page is fetched in the background while one is consumed.
+     */
+    public Iterable<TriggerMetadata> iterateTriggers(final ListTriggersRequest request) {
+        request.validate();
+        return new PagedIterable<TriggerMetadata>(new PageFetcher<TriggerMetadata>() {
+            public ListenableFuture<Page<TriggerMetadata>> fetch(String nextToken) {
+                ListTriggersRequest page = new ListTriggersRequest(request.getServiceName(),
+                    request.getFunctionName())
+                    .setPrefix(request.getPrefix())
+                    .setStartKey(request.getStartKey())
+                    .setLimit(pageSize(request.getLimit()))
+                    .setNextToken(nextToken == null ? request.getNextToken() : nextToken);
+                return Futures.transform(listTriggersAsync(page), TO_TRIGGERS_PAGE);
+            }
+        }, config.getListPrefetchPages());
+    }
+
+    private int pageSize(Integer limit) {
+        return limit != null ? limit : config.getListPageSize();
+    }
+
+    private final Function<HttpResponse, InvokeFunctionResponse>
+        toInvokeFunctionResponse =
+        timed(new Function<HttpResponse, InvokeFunctionResponse>() {
+            public InvokeFunctionResponse apply(HttpResponse response) {
+                InvokeFunctionResponse invokeFunctionResponse = new InvokeFunctionResponse();
+                invokeFunctionResponse.setContent(response.getContent());
+                invokeFunctionResponse.setPayload(response.getContent());
+                invokeFunctionResponse.setContentPool(response.getContentPool());
+
+                invokeFunctionResponse.setHeader(response.getHeaders());
+                invokeFunctionResponse.setStatus(response.getStatus());
+                invokeFunctionResponse.setLogResult(logResultOf(response));
+                return invokeFunctionResponse;
+            }
+        });
+
+    /**
+     * @return the decoded log tail the service returns for a LogType of Tail, or null
+     */
+    private static String logResultOf(HttpResponse response) {
+        Map<String, String> headers = response.getHeaders();
+        if (headers == null || !headers.containsKey(HeaderKeys.INVOCATION_LOG_RESULT)) {
+            return null;
+        }
+        try {
+            return new String(Base64Helper.decode(headers.get(HeaderKeys.INVOCATION_LOG_RESULT)));
+        } catch (IllegalArgumentException e) {
+            throw new ClientException(e);
+        }
     }
 
     public InvokeFunctionResponse invokeFunction(InvokeFunctionRequest request)
         throws ClientException, ServerException {
-        HttpResponse response = client.doAction(request, CONTENT_TYPE_APPLICATION_STREAM, "POST");
-        InvokeFunctionResponse invokeFunctionResponse = new InvokeFunctionResponse();
-        invokeFunctionResponse.setContent(response.getContent());
-        invokeFunctionResponse.setPayload(response.getContent());
+        return toInvokeFunctionResponse.apply(
+            client.doAction(request, CONTENT_TYPE_APPLICATION_STREAM, "POST"));
+    }
 
-        invokeFunctionResponse.setHeader(response.getHeaders());
-        invokeFunctionResponse.setStatus(response.getStatus());
-        Map<String, String> headers = response.getHeaders();
-        if (headers != null && headers.containsKey(HeaderKeys.INVOCATION_LOG_RESULT)) {
-            try {
-                String logResult = new String(new BASE64Decoder().decodeBuffer(headers.get(HeaderKeys.INVOCATION_LOG_RESULT)));
-                invokeFunctionResponse.setLogResult(logResult);
-            } catch (IOException e) {
-                throw new ClientException(e);
-            }
+    /**
+     * Invokes the function and returns once the response headers have arrived, with
+     * the payload left on the connection to be read from
+     * {@link InvokeFunctionStreamResponse#getPayloadStream()} or copied with
+     * transferTo. Large results can be piped to a file or socket this way without
+     * being held in memory. The caller must close the response. Error responses
+     * are thrown as by {@link #invokeFunction(InvokeFunctionRequest)}.
+     */
+    public InvokeFunctionStreamResponse invokeFunctionStreaming(InvokeFunctionRequest request)
+        throws ClientException, ServerException {
+        HttpResponse response =
+            client.doActionStreaming(request, CONTENT_TYPE_APPLICATION_STREAM, "POST");
+        InvokeFunctionStreamResponse streamResponse = new InvokeFunctionStreamResponse();
+        streamResponse.setPayloadStream(response.getContentStream());
+        try {
+            streamResponse.setHeader(response.getHeaders());
+            streamResponse.setStatus(response.getStatus());
+            streamResponse.setLogResult(logResultOf(response));
+            streamResponse.setTiming(response.getTiming());
+        } catch (RuntimeException e) {
+            Closeables.closeQuietly(response.getContentStream());
+            throw e;
         }
-        return invokeFunctionResponse;
+        return streamResponse;
+    }
+
+    /**
+     * Invokes the function without blocking the calling thread. The returned future
+     * completes with the response, or fails with the ClientException or ServerException
+     * that {@link #invokeFunction(InvokeFunctionRequest)} would throw. At most
+     * {@link Config#getMaxAsyncRequests()} requests are in flight per client, further
+     * ones are queued until one completes. Listeners attached without an executor run on
+     * the client's callback executor, see {@link Config#setCallbackExecutor}.
+     */
+    public ListenableFuture<InvokeFunctionResponse> invokeFunctionAsync(
+        InvokeFunctionRequest request) {
+        return Futures.transform(
+            client.doActionAsync(request, CONTENT_TYPE_APPLICATION_STREAM, "POST"),
+            toInvokeFunctionResponse);
+    }
+
+    /**
+     * Invokes the function once per payload, with the default {@link InvokeAllOptions}.
+     * @see #invokeAll(String, String, Iterable, InvokeAllOptions)
+     */
+    public InvokeAllResults invokeAll(String serviceName, String functionName,
+        Iterable<byte[]> payloads) {
+        return invokeAll(serviceName, functionName, payloads, new InvokeAllOptions());
+    }
+
+    /**
+     * Invokes the function once per payload, a bounded number at a time, and returns
+     * the results in input order as they are iterated. Nothing is sent before the
+     * results are iterated. Each invocation is retried and timed out on its own, and
+     * a failed one does not stop the others; see {@link InvokeAllResults}.
+     */
+    public InvokeAllResults invokeAll(final String serviceName, final String functionName,
+        Iterable<byte[]> payloads, final InvokeAllOptions options) {
+        Preconditions.checkArgument(payloads != null, "Payloads cannot be null");
+        Preconditions.checkArgument(options != null, "Options cannot be null");
+        final RetryPolicy retryPolicy = options.getRetryPolicy() != null
+            ? options.getRetryPolicy() : config.getRetryPolicy();
+        return new InvokeAllResults(payloads.iterator(), new InvokeAllResults.Invoker() {
+            public ListenableFuture<InvokeFunctionResponse> invoke(byte[] payload) {
+                InvokeFunctionRequest request = new InvokeFunctionRequest(serviceName,
+                    functionName).setPayload(payload);
+                if (options.getInvocationType() != null) {
+                    request.setInvocationType(options.getInvocationType());
+                }
+                if (options.getLogType() != null) {
+                    request.setLogType(options.getLogType());
+                }
+                return Futures.transform(
+                    client.doActionAsync(request, CONTENT_TYPE_APPLICATION_STREAM, "POST",
+                        retryPolicy, options.getTimeoutMillis()),
+                    toInvokeFunctionResponse);
+            }
+        }, options);
+    }
+
+    /**
+     * Releases the connections kept open by this client. The client must not be
+     * used after it has been closed.
+     */
+    public void close() throws IOException {
+        client.close();
     }
 }
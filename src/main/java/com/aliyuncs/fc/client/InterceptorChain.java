@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.client;
+
+import com.aliyuncs.fc.http.HttpRequest;
+import com.aliyuncs.fc.http.HttpResponse;
+import com.aliyuncs.fc.http.RequestInterceptor;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The interceptors of a client, fixed when the client is created so that running
+ * them allocates nothing.
+ */
+final class InterceptorChain {
+
+    private final RequestInterceptor[] stages;
+
+    InterceptorChain(List<RequestInterceptor> stages) {
+        this.stages = stages.toArray(new RequestInterceptor[stages.size()]);
+    }
+
+    void onRequest(HttpRequest request, int attempt) {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].onRequest(request, attempt);
+        }
+    }
+
+    void onResponse(HttpRequest request, HttpResponse response, int attempt) {
+        for (int i = stages.length - 1; i >= 0; i--) {
+            stages[i].onResponse(request, response, attempt);
+        }
+    }
+
+    void onFailure(HttpRequest request, IOException failure, int attempt) {
+        for (int i = stages.length - 1; i >= 0; i--) {
+            stages[i].onFailure(request, failure, attempt);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.client;
+
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.exceptions.ServerException;
+import com.aliyuncs.fc.model.FunctionInventory;
+import com.aliyuncs.fc.model.FunctionMetadata;
+import com.aliyuncs.fc.model.ServiceInventory;
+import com.aliyuncs.fc.model.ServiceMetadata;
+import com.aliyuncs.fc.model.TriggerMetadata;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the services of an account, the functions of every service and the
+ * triggers of every function into one tree.
+ *
+ * Services are listed on the calling thread. Listing the functions of a service and
+ * the triggers of a function are separate tasks run by parallelism worker threads,
+ * so the round trips of different services and functions overlap instead of adding
+ * up. A listener can follow the crawl as functions and services complete.
+ */
+public class InventoryCrawler {
+
+    private final FunctionComputeClient client;
+    private final int parallelism;
+    private InventoryListener listener;
+
+    public InventoryCrawler(FunctionComputeClient client, int parallelism) {
+        Preconditions.checkArgument(client != null, "Client cannot be null");
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive");
+        this.client = client;
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public InventoryCrawler setListener(InventoryListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Receives the inventory as it is collected. Called from the worker threads, so
+     * implementations must be thread safe.
+     */
+    public interface InventoryListener {
+
+        /**
+         * A function and all its triggers have been listed.
+         * @param functionsDone functions completed so far, across all services
+         * @param functionsListed functions found so far, across all services
+         */
+        void onFunction(ServiceInventory service, FunctionInventory function, int functionsDone,
+            int functionsListed);
+
+        /**
+         * A service with all its functions and their triggers has been listed.
+         * @param servicesDone services completed so far
+         * @param servicesListed services found so far
+         */
+        void onService(ServiceInventory service, int servicesDone, int servicesListed);
+    }
+
+    /**
+     * Walks the whole account and returns its services in the order they were listed.
+     * The first failed list call fails the crawl; tasks not started yet are dropped.
+     */
+    public List<ServiceInventory> crawl() throws ClientException, ServerException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("fc-inventory-%d").build());
+        try {
+            return new Crawl(executor).run();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private final class Crawl {
+
+        private final ExecutorService executor;
+        private final SettableFuture<Void> done = SettableFuture.create();
+        // Tasks submitted or running, plus one for the service listing
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicInteger servicesListed = new AtomicInteger();
+        private final AtomicInteger servicesDone = new AtomicInteger();
+        private final AtomicInteger functionsListed = new AtomicInteger();
+        private final AtomicInteger functionsDone = new AtomicInteger();
+
+        Crawl(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        List<ServiceInventory> run() {
+            List<ServiceInventory> services = new ArrayList<ServiceInventory>();
+            try {
+                for (ServiceMetadata service : client.iterateServices()) {
+                    if (done.isDone()) {
+                        break;
+                    }
+                    final ServiceInventory inventory = new ServiceInventory(service);
+                    services.add(inventory);
+                    servicesListed.incrementAndGet();
+                    submit(new Runnable() {
+                        public void run() {
+                            listFunctions(inventory);
+                        }
+                    });
+                }
+            } catch (RuntimeException e) {
+                done.setException(e);
+            }
+            finishTask();
+            try {
+                Uninterruptibles.getUninterruptibly(done);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+            return Collections.unmodifiableList(services);
+        }
+
+        private void listFunctions(final ServiceInventory service) {
+            // One for the listing itself, one more per function until its triggers are in
+            final AtomicInteger remaining = new AtomicInteger(1);
+            String serviceName = service.getService().getServiceName();
+            for (FunctionMetadata function : client.iterateFunctions(serviceName, null)) {
+                if (done.isDone()) {
+                    return;
+                }
+                final FunctionInventory inventory = new FunctionInventory(function);
+                service.addFunction(inventory);
+                functionsListed.incrementAndGet();
+                remaining.incrementAndGet();
+                submit(new Runnable() {
+                    public void run() {
+                        listTriggers(service, inventory, remaining);
+                    }
+                });
+            }
+            completePart(service, remaining);
+        }
+
+        private void listTriggers(ServiceInventory service, FunctionInventory function,
+            AtomicInteger remaining) {
+            List<TriggerMetadata> triggers = new ArrayList<TriggerMetadata>();
+            for (TriggerMetadata trigger : client.iterateTriggers(
+                service.getService().getServiceName(), function.getFunction().getFunctionName())) {
+                triggers.add(trigger);
+            }
+            function.setTriggers(triggers);
+            int completed = functionsDone.incrementAndGet();
+            if (listener != null) {
+                listener.onFunction(service, function, completed, functionsListed.get());
+            }
+            completePart(service, remaining);
+        }
+
+        private void completePart(ServiceInventory service, AtomicInteger remaining) {
+            if (remaining.decrementAndGet() == 0) {
+                int completed = servicesDone.incrementAndGet();
+                if (listener != null) {
+                    listener.onService(service, completed, servicesListed.get());
+                }
+            }
+        }
+
+        private void submit(final Runnable task) {
+            pending.incrementAndGet();
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (!done.isDone()) {
+                            task.run();
+                        }
+                    } catch (Throwable t) {
+                        done.setException(t);
+                    } finally {
+                        finishTask();
+                    }
+                }
+            });
+        }
+
+        private void finishTask() {
+            if (pending.decrementAndGet() == 0) {
+                done.set(null);
+            }
+        }
+    }
+}
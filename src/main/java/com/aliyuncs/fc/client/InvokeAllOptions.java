@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.client;
+
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.google.common.base.Preconditions;
+
+/**
+ * How {@link FunctionComputeClient#invokeAll} invokes a function over many payloads.
+ */
+public class InvokeAllOptions {
+
+    private int maxInFlight = 16;
+    private int maxBufferedResults = 0;
+    private long timeoutMillis = 0;
+    private RetryPolicy retryPolicy;
+    private String invocationType;
+    private String logType;
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets how many invocations run at the same time, 16 by default. The client still
+     * sends at most {@link Config#getMaxAsyncRequests()} at once.
+     * @param maxInFlight
+     * @return
+     */
+    public InvokeAllOptions setMaxInFlight(int maxInFlight) {
+        Preconditions.checkArgument(maxInFlight > 0, "Max in flight must be positive");
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * @return the number of results that may wait to be consumed, by default as many
+     * as {@link #getMaxInFlight()}
+     */
+    public int getMaxBufferedResults() {
+        return maxBufferedResults > 0 ? maxBufferedResults : maxInFlight;
+    }
+
+    /**
+     * Sets how many completed results may wait for the consumer. Results are returned
+     * in input order, so a slow invocation holds back those after it; while it runs,
+     * later invocations keep starting until this many results are waiting.
+     * @param maxBufferedResults
+     * @return
+     */
+    public InvokeAllOptions setMaxBufferedResults(int maxBufferedResults) {
+        Preconditions.checkArgument(maxBufferedResults > 0,
+            "Max buffered results must be positive");
+        this.maxBufferedResults = maxBufferedResults;
+        return this;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Sets the time each invocation may take with all its retries, 0, the default, for
+     * no limit beyond the deadline of the retry policy.
+     * @param timeoutMillis
+     * @return
+     */
+    public InvokeAllOptions setTimeoutMillis(long timeoutMillis) {
+        Preconditions.checkArgument(timeoutMillis >= 0, "Timeout cannot be negative");
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets how each invocation is retried, or null, the default, for the retry policy
+     * of the client's config.
+     * @param retryPolicy
+     * @return
+     */
+    public InvokeAllOptions setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public String getInvocationType() {
+        return invocationType;
+    }
+
+    public InvokeAllOptions setInvocationType(String invocationType) {
+        this.invocationType = invocationType;
+        return this;
+    }
+
+    public String getLogType() {
+        return logType;
+    }
+
+    public InvokeAllOptions setLogType(String logType) {
+        this.logType = logType;
+        return this;
+    }
+}
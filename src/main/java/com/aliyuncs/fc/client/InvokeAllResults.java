@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.client;
+
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.exceptions.InvokeAllException;
+import com.aliyuncs.fc.response.InvokeFunctionResponse;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The results of {@link FunctionComputeClient#invokeAll}, one per payload, in input
+ * order.
+ *
+ * Invocations are started lazily from the thread iterating the results: as many as
+ * {@link InvokeAllOptions#getMaxInFlight()} run at once, and new ones start as
+ * running ones complete, until {@link InvokeAllOptions#getMaxBufferedResults()}
+ * completed results wait behind a slower one. The payloads are read on the iterating
+ * thread too, no further ahead than that. A failed invocation is returned as a failed
+ * result and the others carry on; {@link #throwIfFailed()} reports the failures
+ * together. Not thread safe.
+ */
+public final class InvokeAllResults extends AbstractIterator<InvokeResult> implements Closeable {
+
+    /**
+     * Starts the invocation of one payload.
+     */
+    interface Invoker {
+
+        ListenableFuture<InvokeFunctionResponse> invoke(byte[] payload);
+    }
+
+    private final Iterator<byte[]> payloads;
+    private final Invoker invoker;
+    private final int maxInFlight;
+    private final int maxWindow;
+    // Invocations started and not consumed yet, in input order
+    private final ArrayDeque<ListenableFuture<InvokeFunctionResponse>> window =
+        new ArrayDeque<ListenableFuture<InvokeFunctionResponse>>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Object signal = new Object();
+    private final Runnable onDone = new Runnable() {
+        public void run() {
+            running.decrementAndGet();
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        }
+    };
+    private final Map<Integer, RuntimeException> failures =
+        new LinkedHashMap<Integer, RuntimeException>();
+    private int consumed;
+    private boolean closed;
+
+    InvokeAllResults(Iterator<byte[]> payloads, Invoker invoker, InvokeAllOptions options) {
+        this.payloads = payloads;
+        this.invoker = invoker;
+        this.maxInFlight = options.getMaxInFlight();
+        this.maxWindow = options.getMaxInFlight() + options.getMaxBufferedResults();
+    }
+
+    @Override
+    protected InvokeResult computeNext() {
+        if (closed) {
+            return endOfData();
+        }
+        startAll();
+        ListenableFuture<InvokeFunctionResponse> head = window.peek();
+        if (head == null) {
+            return endOfData();
+        }
+        while (!head.isDone()) {
+            synchronized (signal) {
+                while (!head.isDone() && !canStart()) {
+                    try {
+                        signal.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new ClientException("SDK.Interrupted",
+                            "Interrupted while waiting for an invocation to complete");
+                    }
+                }
+            }
+            startAll();
+        }
+        window.poll();
+        InvokeResult result = resultOf(consumed++, head);
+        if (!result.isSuccess()) {
+            failures.put(result.getIndex(), result.getError());
+        }
+        startAll();
+        return result;
+    }
+
+    private static InvokeResult resultOf(int index, ListenableFuture<InvokeFunctionResponse> future) {
+        try {
+            return new InvokeResult(index, Uninterruptibles.getUninterruptibly(future), null);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            return new InvokeResult(index, null, cause instanceof RuntimeException
+                ? (RuntimeException) cause : new ClientException(cause));
+        } catch (CancellationException e) {
+            return new InvokeResult(index, null, e);
+        }
+    }
+
+    private boolean canStart() {
+        return running.get() < maxInFlight && window.size() < maxWindow && payloads.hasNext();
+    }
+
+    private void startAll() {
+        while (canStart()) {
+            byte[] payload = payloads.next();
+            running.incrementAndGet();
+            ListenableFuture<InvokeFunctionResponse> future;
+            try {
+                future = invoker.invoke(payload);
+            } catch (RuntimeException e) {
+                future = Futures.immediateFailedFuture(e);
+            }
+            window.add(future);
+            future.addListener(onDone, MoreExecutors.directExecutor());
+        }
+    }
+
+    /**
+     * @return the number of results returned so far
+     */
+    public int getCompletedCount() {
+        return consumed;
+    }
+
+    /**
+     * @return the number of invocations running right now
+     */
+    public int getInFlightCount() {
+        return running.get();
+    }
+
+    public int getFailedCount() {
+        return failures.size();
+    }
+
+    /**
+     * @return the errors of the failed results returned so far, by index, in order
+     */
+    public Map<Integer, RuntimeException> getFailures() {
+        return new LinkedHashMap<Integer, RuntimeException>(failures);
+    }
+
+    /**
+     * Returns the remaining results, then throws if any result failed.
+     * @throws InvokeAllException listing the failures
+     */
+    public void throwIfFailed() throws InvokeAllException {
+        while (hasNext()) {
+            next();
+        }
+        if (!failures.isEmpty()) {
+            throw new InvokeAllException(consumed, getFailures());
+        }
+    }
+
+    /**
+     * Cancels the invocations still running and starts no more.
+     */
+    public void close() {
+        closed = true;
+        ListenableFuture<InvokeFunctionResponse> future;
+        while ((future = window.poll()) != null) {
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.client;
+
+import com.aliyuncs.fc.response.InvokeFunctionResponse;
+
+/**
+ * The outcome of one invocation of {@link FunctionComputeClient#invokeAll}: either
+ * the response or the ClientException or ServerException it failed with.
+ */
+public final class InvokeResult {
+
+    private final int index;
+    private final InvokeFunctionResponse response;
+    private final RuntimeException error;
+
+    InvokeResult(int index, InvokeFunctionResponse response, RuntimeException error) {
+        this.index = index;
+        this.response = response;
+        this.error = error;
+    }
+
+    /**
+     * @return the position of the payload in the input, starting from 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return the response, or null if the invocation failed
+     */
+    public InvokeFunctionResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the payload the function returned
+     * @throws RuntimeException the error, if the invocation failed
+     */
+    public byte[] getPayload() {
+        if (error != null) {
+            throw error;
+        }
+        return response.getPayload();
+    }
+
+    /**
+     * @return the ClientException or ServerException the invocation failed with, or
+     * null if it succeeded
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "InvokeResult[" + index + (error == null ? " ok" : " " + error) + "]";
+    }
+}
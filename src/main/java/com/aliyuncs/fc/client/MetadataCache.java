@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.client;
+
+import com.aliyuncs.fc.constants.HeaderKeys;
+import com.aliyuncs.fc.http.HttpResponse;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read-through cache of getService, getFunction and getTrigger responses for
+ * {@link FunctionComputeClient#setMetadataCache(MetadataCache)}.
+ *
+ * A cached response is served without a round trip for ttlMillis. After that the
+ * next read revalidates it with a conditional GET carrying its ETag in
+ * If-None-Match, which costs a bodyless 304 while the resource is unchanged. At
+ * most maximumSize responses are kept, evicting the least recently used. The
+ * client's own update and delete calls invalidate what they change. Thread safe.
+ */
+public class MetadataCache {
+
+    private final Cache<String, Entry> entries;
+    /**
+     * The generation each key was last invalidated in, under the key itself and, for
+     * a tree, under the key followed by "/". A read that began in an earlier
+     * generation may have fetched what the invalidation replaced, so it is not
+     * stored.
+     */
+    private final Cache<String, Long> invalidated;
+    private final AtomicLong generation = new AtomicLong();
+    /**
+     * Reads that began before this generation are not stored, since the record of
+     * an invalidation after them may have been evicted.
+     */
+    private final AtomicLong oldestKnown = new AtomicLong();
+    private final long ttlNanos;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+
+    public MetadataCache(long maximumSize, long ttlMillis) {
+        Preconditions.checkArgument(maximumSize > 0, "Maximum size must be positive");
+        Preconditions.checkArgument(ttlMillis >= 0, "TTL cannot be negative");
+        this.entries = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        this.invalidated = CacheBuilder.newBuilder().maximumSize(maximumSize)
+            .removalListener(new RemovalListener<String, Long>() {
+                public void onRemoval(RemovalNotification<String, Long> removed) {
+                    if (removed.getCause() != RemovalCause.REPLACED) {
+                        raiseOldestKnown(removed.getValue());
+                    }
+                }
+            })
+            .build();
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * @return reads served from the cache without a round trip
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return reads that fetched the resource in full, because it was not cached or
+     * had changed
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return reads of an expired entry that the service confirmed unchanged with a 304
+     */
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    public synchronized void invalidateAll() {
+        raiseOldestKnown(generation.incrementAndGet());
+        entries.invalidateAll();
+    }
+
+    /**
+     * Drops the cached resource at the key, e.g. the endpoint followed by the path of
+     * a function. Reads of it already in flight are not stored.
+     */
+    public synchronized void invalidate(String key) {
+        invalidated.put(key, generation.incrementAndGet());
+        entries.invalidate(key);
+    }
+
+    /**
+     * Drops the cached resource at the key and everything below it, e.g. a service
+     * with its functions and triggers. Reads of them already in flight are not stored.
+     */
+    public synchronized void invalidateTree(String key) {
+        String prefix = key + "/";
+        long current = generation.incrementAndGet();
+        invalidated.put(key, current);
+        invalidated.put(prefix, current);
+        entries.invalidate(key);
+        for (Iterator<String> it = entries.asMap().keySet().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the generation to pass to {@link #update} for a read that begins now
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * @return the cached entry, fresh or not, or null
+     */
+    Entry lookup(String key) {
+        return entries.getIfPresent(key);
+    }
+
+    /**
+     * Counts a hit when the entry can be served without a round trip.
+     */
+    boolean hit(Entry entry) {
+        if (!entry.isFresh()) {
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Records the response to a read that went to the service, unless the key was
+     * invalidated after the read began.
+     * @param cached the entry the read was revalidating, or null
+     * @param began the {@link #generation()} when the read began
+     * @return the response to serve
+     */
+    synchronized HttpResponse update(String key, Entry cached, long began,
+        HttpResponse response) {
+        boolean current = !invalidatedSince(key, began);
+        if (response.getStatus() == 304 && cached != null) {
+            revalidations.incrementAndGet();
+            if (current) {
+                cached.expiresAt = System.nanoTime() + ttlNanos;
+                entries.put(key, cached);
+            }
+            return cached.response;
+        }
+        misses.incrementAndGet();
+        String etag = etagOf(response);
+        if (current && (etag != null || ttlNanos > 0)) {
+            entries.put(key, new Entry(response, etag, System.nanoTime() + ttlNanos));
+        }
+        return response;
+    }
+
+    private boolean invalidatedSince(String key, long began) {
+        if (began < oldestKnown.get() || after(invalidated.getIfPresent(key), began)) {
+            return true;
+        }
+        for (int i = key.indexOf('/'); i >= 0; i = key.indexOf('/', i + 1)) {
+            if (after(invalidated.getIfPresent(key.substring(0, i + 1)), began)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean after(Long invalidatedIn, long began) {
+        return invalidatedIn != null && invalidatedIn > began;
+    }
+
+    private void raiseOldestKnown(long oldest) {
+        long known;
+        do {
+            known = oldestKnown.get();
+        } while (known < oldest && !oldestKnown.compareAndSet(known, oldest));
+    }
+
+    private static String etagOf(HttpResponse response) {
+        if (response.getHeaders() == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+            if (HeaderKeys.ETAG.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    static final class Entry {
+
+        final HttpResponse response;
+        final String etag;
+        volatile long expiresAt;
+
+        Entry(HttpResponse response, String etag, long expiresAt) {
+            this.response = response;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh() {
+            return System.nanoTime() - expiresAt < 0;
+        }
+    }
+}
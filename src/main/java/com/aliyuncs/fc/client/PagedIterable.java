@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The items of a paginated list API, fetched lazily as they are iterated.
+ *
+ * Each iterator requests the first page when it is created. As soon as a page
+ * arrives, the request for the next one is sent in the background, so the network
+ * wait overlaps with consuming the current page. At most prefetchPages pages are
+ * fetched ahead of the page being consumed. Errors are thrown by the iterator when
+ * it reaches the page that failed. Iterators are not thread safe.
+ */
+public class PagedIterable<T> implements Iterable<T> {
+
+    private final PageFetcher<T> fetcher;
+    private final int prefetchPages;
+
+    public PagedIterable(PageFetcher<T> fetcher, int prefetchPages) {
+        Preconditions.checkArgument(fetcher != null, "Page fetcher cannot be null");
+        Preconditions.checkArgument(prefetchPages > 0, "Prefetch pages must be positive");
+        this.fetcher = fetcher;
+        this.prefetchPages = prefetchPages;
+    }
+
+    public Iterator<T> iterator() {
+        return new PageIterator();
+    }
+
+    /**
+     * Sends the request for one page.
+     */
+    public interface PageFetcher<T> {
+
+        /**
+         * @param nextToken token returned with the previous page, null for the first page
+         */
+        ListenableFuture<Page<T>> fetch(String nextToken);
+    }
+
+    public static final class Page<T> {
+
+        private final List<T> items;
+        private final String nextToken;
+
+        /**
+         * @param items items of the page, may be null
+         * @param nextToken token of the next page, null or empty on the last page
+         */
+        public Page(T[] items, String nextToken) {
+            this.items = items == null ? Collections.<T>emptyList() : Arrays.asList(items);
+            this.nextToken = nextToken;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        public String getNextToken() {
+            return nextToken;
+        }
+    }
+
+    private static final class Slot<T> {
+
+        final ListenableFuture<Page<T>> future;
+        boolean handled;
+
+        Slot(ListenableFuture<Page<T>> future) {
+            this.future = future;
+        }
+    }
+
+    private final class PageIterator extends AbstractIterator<T> {
+
+        // Pages requested but not consumed yet, in order
+        private final ArrayDeque<Slot<T>> pages = new ArrayDeque<Slot<T>>();
+        // Token of a page whose successor is held back until a page is consumed
+        private String deferredToken;
+        private Iterator<T> current = Collections.<T>emptyList().iterator();
+        private boolean consuming;
+
+        PageIterator() {
+            synchronized (this) {
+                fetch(null);
+            }
+        }
+
+        @Override
+        protected T computeNext() {
+            while (!current.hasNext()) {
+                Slot<T> slot;
+                synchronized (this) {
+                    slot = pages.poll();
+                    if (slot == null) {
+                        return endOfData();
+                    }
+                }
+                Page<T> page;
+                try {
+                    page = Uninterruptibles.getUninterruptibly(slot.future);
+                } catch (ExecutionException e) {
+                    throw Throwables.propagate(e.getCause());
+                }
+                synchronized (this) {
+                    consuming = true;
+                    onFetched(slot);
+                    if (deferredToken != null && hasRoom()) {
+                        String token = deferredToken;
+                        deferredToken = null;
+                        fetch(token);
+                    }
+                }
+                current = page.getItems().iterator();
+            }
+            return current.next();
+        }
+
+        /**
+         * Whether another page may be requested: the pages ahead of the one being
+         * consumed, or all pages before consumption starts, stay within the bound.
+         */
+        private boolean hasRoom() {
+            return pages.size() + (consuming ? 1 : 0) <= prefetchPages;
+        }
+
+        private void fetch(String nextToken) {
+            final Slot<T> slot = new Slot<T>(fetcher.fetch(nextToken));
+            pages.add(slot);
+            slot.future.addListener(new Runnable() {
+                public void run() {
+                    synchronized (PageIterator.this) {
+                        onFetched(slot);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        /**
+         * Requests the page after the given one, or defers it while enough pages are
+         * ahead. Runs once per page, from whichever of the listener and the consumer
+         * gets to it first.
+         */
+        private void onFetched(Slot<T> slot) {
+            if (slot.handled || !slot.future.isDone()) {
+                return;
+            }
+            slot.handled = true;
+            String nextToken;
+            try {
+                nextToken = Uninterruptibles.getUninterruptibly(slot.future).getNextToken();
+            } catch (ExecutionException e) {
+                return;
+            }
+            if (Strings.isNullOrEmpty(nextToken)) {
+                return;
+            }
+            if (hasRoom()) {
+                fetch(nextToken);
+            } else {
+                deferredToken = nextToken;
+            }
+        }
+    }
+}
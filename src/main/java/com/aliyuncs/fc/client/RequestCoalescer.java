@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.client;
+
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.http.HttpRequest;
+import com.aliyuncs.fc.http.HttpResponse;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses identical concurrent GETs of a {@link FunctionComputeClient} into one
+ * HTTP call. A GET whose method, path, query and headers, other than those the client
+ * sets when signing, match one in flight waits
+ * for that call and receives its response, or its exception, instead of sending its
+ * own. Callers share the returned HttpResponse, which is not modified after it is
+ * parsed. Thread safe.
+ */
+public class RequestCoalescer {
+
+    private final ConcurrentMap<String, ListenableFuture<HttpResponse>> inFlight =
+        new ConcurrentHashMap<String, ListenableFuture<HttpResponse>>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+
+    /**
+     * Headers the client sets when it signs a request, which say nothing about what
+     * the GET asks for and which a request signed earlier still carries.
+     */
+    private static final Set<String> SIGNING_HEADERS = ImmutableSet.of("Date",
+        "Authorization", "Content-MD5", "User-Agent", "Accept", "Content-Type",
+        "x-fc-account-id", "x-fc-security-token");
+
+    /**
+     * @return the GETs that were sent to the service
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * @return the GETs that were answered by a call already in flight
+     */
+    public long getCollapsedCount() {
+        return collapsed.get();
+    }
+
+    /**
+     * @return the distinct GETs in flight right now
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    HttpResponse execute(DefaultFcClient client, String endpoint, HttpRequest request,
+        String contentType) {
+        String key = keyOf(endpoint, request);
+        SettableFuture<HttpResponse> call = SettableFuture.create();
+        ListenableFuture<HttpResponse> leader = inFlight.putIfAbsent(key, call);
+        if (leader != null) {
+            collapsed.incrementAndGet();
+            return await(leader);
+        }
+        sent.incrementAndGet();
+        try {
+            HttpResponse response = client.doAction(request, contentType, "GET");
+            // Leave the map first, so a later caller does not join a completed call
+            inFlight.remove(key, call);
+            call.set(response);
+            return response;
+        } catch (RuntimeException e) {
+            inFlight.remove(key, call);
+            call.setException(e);
+            throw e;
+        } catch (Error e) {
+            inFlight.remove(key, call);
+            call.setException(e);
+            throw e;
+        }
+    }
+
+    ListenableFuture<HttpResponse> executeAsync(DefaultFcClient client, String endpoint,
+        HttpRequest request, String contentType) {
+        final String key = keyOf(endpoint, request);
+        final SettableFuture<HttpResponse> call = SettableFuture.create();
+        ListenableFuture<HttpResponse> leader = inFlight.putIfAbsent(key, call);
+        if (leader != null) {
+            collapsed.incrementAndGet();
+            return Futures.nonCancellationPropagating(leader);
+        }
+        sent.incrementAndGet();
+        ListenableFuture<HttpResponse> response;
+        try {
+            response = client.doActionAsync(request, contentType, "GET");
+        } catch (RuntimeException e) {
+            inFlight.remove(key, call);
+            call.setException(e);
+            throw e;
+        } catch (Error e) {
+            inFlight.remove(key, call);
+            call.setException(e);
+            throw e;
+        }
+        Futures.addCallback(response,
+            new FutureCallback<HttpResponse>() {
+                public void onSuccess(HttpResponse response) {
+                    inFlight.remove(key, call);
+                    call.set(response);
+                }
+
+                public void onFailure(Throwable t) {
+                    inFlight.remove(key, call);
+                    call.setException(t);
+                }
+            });
+        return Futures.nonCancellationPropagating(call);
+    }
+
+    private static HttpResponse await(ListenableFuture<HttpResponse> leader) {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClientException("SDK.Interrupted", "Interrupted while waiting for the response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ClientException("SDK.UnknownError", cause.toString());
+        }
+    }
+
+    private static String keyOf(String endpoint, HttpRequest request) {
+        StringBuilder key = new StringBuilder(endpoint)
+            .append(request.getPath());
+        appendSorted(key.append('?'), request.getQueryParams());
+        appendSorted(key.append('#'), request.getHeaders());
+        return key.toString();
+    }
+
+    private static void appendSorted(StringBuilder key, Map<String, String> params) {
+        if (params != null) {
+            TreeMap<String, String> sorted = new TreeMap<String, String>(params);
+            sorted.keySet().removeAll(SIGNING_HEADERS);
+            key.append(sorted);
+        }
+    }
+}
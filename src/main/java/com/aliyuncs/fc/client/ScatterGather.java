@@ -0,0 +1,518 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.client;
+
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.constants.HeaderKeys;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.response.InvokeFunctionResponse;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.io.Closeables;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a map-reduce job on Function Compute: splits a large input of records into
+ * chunks, invokes a mapper function per chunk in parallel, and folds the outputs in
+ * input order through a reducer, local or another function.
+ *
+ * Records are read lazily. A chunk holds consecutive records separated by newlines,
+ * as many as fit in {@link #setMaxChunkBytes(int)}; a larger record is sent alone.
+ * Chunks are invoked through {@link FunctionComputeClient#invokeAll}, so at most
+ * {@link #setMaxInFlight(int)} run at once and the input is read no further ahead
+ * than the results are folded. Each invocation is retried by the retry policy; a chunk
+ * that still fails, or whose mapper throws, is run again up to
+ * {@link #setChunkAttempts(int)} times in all before the job fails.
+ *
+ * A job runs at a time per instance. Its progress can be read from any thread.
+ */
+public class ScatterGather {
+
+    private final FunctionComputeClient client;
+    private final String serviceName;
+    private final String mapperName;
+    private int maxChunkBytes = 1024 * 1024;
+    private int chunkAttempts = 3;
+    private final InvokeAllOptions options = new InvokeAllOptions();
+    private ProgressListener listener;
+
+    private final AtomicLong recordsRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicInteger chunksStarted = new AtomicInteger();
+    private final AtomicInteger chunksReduced = new AtomicInteger();
+    private final AtomicInteger chunksRetried = new AtomicInteger();
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    public ScatterGather(FunctionComputeClient client, String serviceName, String mapperName) {
+        Preconditions.checkArgument(client != null, "Client cannot be null");
+        Preconditions.checkArgument(serviceName != null, "Service name cannot be null");
+        Preconditions.checkArgument(mapperName != null, "Mapper function name cannot be null");
+        this.client = client;
+        this.serviceName = serviceName;
+        this.mapperName = mapperName;
+    }
+
+    /**
+     * Folds mapper outputs into the result of the job. Called on the thread running
+     * the job, in input order.
+     */
+    public interface Reducer<R> {
+
+        /**
+         * @param accumulated the initial value, or what the previous call returned
+         * @param output what the mapper returned for the next chunk
+         */
+        R reduce(R accumulated, byte[] output);
+    }
+
+    /**
+     * Told about every chunk once its output has been reduced. Called on the thread
+     * running the job.
+     */
+    public interface ProgressListener {
+
+        void onChunkReduced(int chunkIndex, Progress progress);
+    }
+
+    /**
+     * How far a job has got.
+     */
+    public static final class Progress {
+
+        private final long recordsRead;
+        private final long bytesRead;
+        private final int chunksStarted;
+        private final int chunksReduced;
+        private final int chunksRetried;
+        private final long elapsedNanos;
+
+        Progress(long recordsRead, long bytesRead, int chunksStarted, int chunksReduced,
+            int chunksRetried, long elapsedNanos) {
+            this.recordsRead = recordsRead;
+            this.bytesRead = bytesRead;
+            this.chunksStarted = chunksStarted;
+            this.chunksReduced = chunksReduced;
+            this.chunksRetried = chunksRetried;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRecordsRead() {
+            return recordsRead;
+        }
+
+        /**
+         * @return the size of the records read, without separators
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * @return the chunks sent to the mapper, retries not counted
+         */
+        public int getChunksStarted() {
+            return chunksStarted;
+        }
+
+        public int getChunksReduced() {
+            return chunksReduced;
+        }
+
+        /**
+         * @return how many times a failed chunk was run again
+         */
+        public int getChunksRetried() {
+            return chunksRetried;
+        }
+
+        /**
+         * @return chunks started and not reduced yet: running, or done and waiting for
+         * an earlier chunk
+         */
+        public int getChunksPending() {
+            return chunksStarted - chunksReduced;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        /**
+         * @return records read per second so far
+         */
+        public double getRecordsPerSecond() {
+            return elapsedNanos == 0 ? 0 : recordsRead * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d records, %d bytes, %d/%d chunks reduced, %d retried, %dms",
+                recordsRead, bytesRead, chunksReduced, chunksStarted, chunksRetried,
+                getElapsedMillis());
+        }
+    }
+
+    public int getMaxChunkBytes() {
+        return maxChunkBytes;
+    }
+
+    /**
+     * Sets the size a chunk of records may reach, 1 MB by default.
+     * @param maxChunkBytes
+     * @return
+     */
+    public ScatterGather setMaxChunkBytes(int maxChunkBytes) {
+        Preconditions.checkArgument(maxChunkBytes > 0, "Max chunk bytes must be positive");
+        this.maxChunkBytes = maxChunkBytes;
+        return this;
+    }
+
+    /**
+     * Sets how many mapper invocations run at once, 16 by default.
+     * @param maxInFlight
+     * @return
+     */
+    public ScatterGather setMaxInFlight(int maxInFlight) {
+        options.setMaxInFlight(maxInFlight);
+        return this;
+    }
+
+    /**
+     * Sets how many mapper outputs may wait for a slower chunk before them to be
+     * reduced, by default as many as run at once.
+     * @param maxBufferedChunks
+     * @return
+     */
+    public ScatterGather setMaxBufferedChunks(int maxBufferedChunks) {
+        options.setMaxBufferedResults(maxBufferedChunks);
+        return this;
+    }
+
+    /**
+     * Sets how many times a chunk is run before its failure fails the job, 3 by default.
+     * @param chunkAttempts
+     * @return
+     */
+    public ScatterGather setChunkAttempts(int chunkAttempts) {
+        Preconditions.checkArgument(chunkAttempts > 0, "Chunk attempts must be positive");
+        this.chunkAttempts = chunkAttempts;
+        return this;
+    }
+
+    /**
+     * Sets the time each invocation may take with its retries, 0, the default, for no
+     * limit.
+     * @param timeoutMillis
+     * @return
+     */
+    public ScatterGather setTimeoutMillis(long timeoutMillis) {
+        options.setTimeoutMillis(timeoutMillis);
+        return this;
+    }
+
+    /**
+     * Sets how invocations are retried, null, the default, for the retry policy of the
+     * client's config.
+     * @param retryPolicy
+     * @return
+     */
+    public ScatterGather setRetryPolicy(RetryPolicy retryPolicy) {
+        options.setRetryPolicy(retryPolicy);
+        return this;
+    }
+
+    public ScatterGather setListener(ProgressListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * @return the progress of the running job, or of the last one
+     */
+    public Progress getProgress() {
+        long start = startNanos;
+        long end = endNanos;
+        return new Progress(recordsRead.get(), bytesRead.get(), chunksStarted.get(),
+            chunksReduced.get(), chunksRetried.get(),
+            start == 0 ? 0 : (end != 0 ? end : System.nanoTime()) - start);
+    }
+
+    /**
+     * A reducer that is itself a function of the same service. It is invoked once per
+     * mapper output with the accumulated value, if there is one yet, and the output
+     * separated by a newline, and returns the new accumulated value.
+     */
+    public Reducer<byte[]> remoteReducer(final String functionName) {
+        Preconditions.checkArgument(functionName != null, "Reducer function name cannot be null");
+        return new Reducer<byte[]>() {
+            public byte[] reduce(byte[] accumulated, byte[] output) {
+                byte[] payload = output;
+                if (accumulated != null) {
+                    payload = new byte[accumulated.length + 1 + output.length];
+                    System.arraycopy(accumulated, 0, payload, 0, accumulated.length);
+                    payload[accumulated.length] = '\n';
+                    System.arraycopy(output, 0, payload, accumulated.length + 1, output.length);
+                }
+                return invokeWithAttempts(functionName, -1, payload);
+            }
+        };
+    }
+
+    /**
+     * Runs the job over the records and returns the reduced result.
+     * @throws ClientException if a chunk failed on every attempt
+     */
+    public <R> R run(Iterator<byte[]> records, R initial, Reducer<R> reducer) {
+        Preconditions.checkArgument(records != null, "Records cannot be null");
+        Preconditions.checkArgument(reducer != null, "Reducer cannot be null");
+        recordsRead.set(0);
+        bytesRead.set(0);
+        chunksStarted.set(0);
+        chunksReduced.set(0);
+        chunksRetried.set(0);
+        endNanos = 0;
+        startNanos = System.nanoTime();
+        // Chunks in flight or waiting to be reduced, kept to run them again
+        final Map<Integer, byte[]> pending = new HashMap<Integer, byte[]>();
+        final Iterator<byte[]> chunks = new ChunkIterator(records);
+        InvokeAllResults results = client.invokeAll(serviceName, mapperName,
+            new Iterable<byte[]>() {
+                public Iterator<byte[]> iterator() {
+                    // Counts a chunk as started when it is launched, not when read ahead
+                    return new UnmodifiableIterator<byte[]>() {
+                        public boolean hasNext() {
+                            return chunks.hasNext();
+                        }
+
+                        public byte[] next() {
+                            byte[] chunk = chunks.next();
+                            pending.put(chunksStarted.getAndIncrement(), chunk);
+                            return chunk;
+                        }
+                    };
+                }
+            }, options);
+        try {
+            R accumulated = initial;
+            while (results.hasNext()) {
+                InvokeResult result = results.next();
+                byte[] chunk = pending.remove(result.getIndex());
+                byte[] output = isSuccess(result) ? result.getResponse().getPayload()
+                    : retryChunk(result, chunk);
+                accumulated = reducer.reduce(accumulated, output);
+                chunksReduced.incrementAndGet();
+                if (listener != null) {
+                    listener.onChunkReduced(result.getIndex(), getProgress());
+                }
+            }
+            return accumulated;
+        } finally {
+            results.close();
+            endNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Runs the job over the lines of the stream, without their line terminators.
+     * The stream is not closed.
+     */
+    public <R> R run(InputStream input, R initial, Reducer<R> reducer) throws IOException {
+        LineIterator lines = new LineIterator(input);
+        R result = run(lines, initial, reducer);
+        lines.rethrow();
+        return result;
+    }
+
+    /**
+     * Runs the job over the lines of the file, without their line terminators.
+     */
+    public <R> R run(File file, R initial, Reducer<R> reducer) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return run(input, initial, reducer);
+        } finally {
+            Closeables.closeQuietly(input);
+        }
+    }
+
+    private byte[] retryChunk(InvokeResult failed, byte[] chunk) {
+        if (chunkAttempts == 1) {
+            throw chunkFailed(mapperName, failed.getIndex(), failed);
+        }
+        chunksRetried.incrementAndGet();
+        return invokeWithAttempts(mapperName, failed.getIndex(), chunk, chunkAttempts - 1);
+    }
+
+    private byte[] invokeWithAttempts(String functionName, int chunkIndex, byte[] payload) {
+        return invokeWithAttempts(functionName, chunkIndex, payload, chunkAttempts);
+    }
+
+    /**
+     * Invokes the function on the calling thread, with the retry policy and timeout of
+     * the job, as often as the given number of attempts allows.
+     */
+    private byte[] invokeWithAttempts(String functionName, int chunkIndex, byte[] payload,
+        int attempts) {
+        InvokeResult result = null;
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            if (attempt > 1 && chunkIndex >= 0) {
+                chunksRetried.incrementAndGet();
+            }
+            InvokeAllResults single = client.invokeAll(serviceName, functionName,
+                Collections.singletonList(payload), options);
+            try {
+                result = single.next();
+            } finally {
+                single.close();
+            }
+            if (isSuccess(result)) {
+                return result.getResponse().getPayload();
+            }
+        }
+        throw chunkFailed(functionName, chunkIndex, result);
+    }
+
+    private ClientException chunkFailed(String functionName, int chunkIndex,
+        InvokeResult result) {
+        String what = chunkIndex < 0 ? "Reducing" : "Chunk " + chunkIndex;
+        String reason = result.getError() != null ? String.valueOf(result.getError())
+            : "function " + functionName + " failed with "
+                + errorTypeOf(result.getResponse()) + ": "
+                + new String(result.getResponse().getPayload());
+        return new ClientException("SDK.ChunkFailed", what + " failed after " + chunkAttempts
+            + " attempts, " + reason, result.getError());
+    }
+
+    /**
+     * @return whether the invocation succeeded and the function did not throw
+     */
+    private static boolean isSuccess(InvokeResult result) {
+        return result.isSuccess() && errorTypeOf(result.getResponse()) == null;
+    }
+
+    private static String errorTypeOf(InvokeFunctionResponse response) {
+        Map<String, String> headers = response.getHeader();
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (HeaderKeys.INVOCATION_ERROR_TYPE.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Packs records into newline separated chunks, reading one record ahead.
+     */
+    private final class ChunkIterator extends AbstractIterator<byte[]> {
+
+        private final Iterator<byte[]> records;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private byte[] next;
+
+        ChunkIterator(Iterator<byte[]> records) {
+            this.records = records;
+        }
+
+        @Override
+        protected byte[] computeNext() {
+            buffer.reset();
+            while (next != null || records.hasNext()) {
+                byte[] record = next != null ? next : records.next();
+                next = null;
+                int size = buffer.size() == 0 ? record.length : buffer.size() + 1 + record.length;
+                if (buffer.size() > 0 && size > maxChunkBytes) {
+                    next = record;
+                    break;
+                }
+                if (buffer.size() > 0) {
+                    buffer.write('\n');
+                }
+                buffer.write(record, 0, record.length);
+                recordsRead.incrementAndGet();
+                bytesRead.addAndGet(record.length);
+            }
+            if (buffer.size() == 0 && next == null) {
+                return endOfData();
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    /**
+     * The lines of a stream. A read error ends the lines and is thrown by rethrow().
+     */
+    private static final class LineIterator extends AbstractIterator<byte[]> {
+
+        private final InputStream input;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private IOException error;
+
+        LineIterator(InputStream input) {
+            this.input = new BufferedInputStream(input);
+        }
+
+        @Override
+        protected byte[] computeNext() {
+            line.reset();
+            try {
+                int b;
+                while ((b = input.read()) != -1 && b != '\n') {
+                    line.write(b);
+                }
+                if (b == -1 && line.size() == 0) {
+                    return endOfData();
+                }
+            } catch (IOException e) {
+                error = e;
+                return endOfData();
+            }
+            byte[] bytes = line.toByteArray();
+            int length = bytes.length;
+            if (length > 0 && bytes[length - 1] == '\r') {
+                byte[] trimmed = new byte[length - 1];
+                System.arraycopy(bytes, 0, trimmed, 0, trimmed.length);
+                return trimmed;
+            }
+            return bytes;
+        }
+
+        void rethrow() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+}
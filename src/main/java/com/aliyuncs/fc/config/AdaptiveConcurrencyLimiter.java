@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.config;
+
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Limits how many invocations of each function are in flight, and learns the limit
+ * from how the function responds (AIMD).
+ *
+ * Every successful invocation that used at least half of the limit raises it by
+ * one per round trip. A throttled invocation, or one that took more than
+ * latencyTolerance times the lowest recent latency, cuts it by backoffRatio, at most
+ * once per round trip. Invocations beyond the limit wait locally in a bounded queue
+ * instead of being sent, so throttling slows callers down rather than turning into
+ * retries. Thread safe; limits are kept per key, which the client builds from the
+ * service and function name.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final long MIN_RTT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<String, Limit>();
+    private int initialLimit = 16;
+    private int minLimit = 1;
+    private int maxLimit = 1000;
+    private double backoffRatio = 0.9;
+    private double latencyTolerance = 2.0;
+    private int maxQueueLength = 1000;
+    private long maxWaitMillis = 5000;
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    /**
+     * Sets the concurrency a function starts with before anything is learned about it.
+     * @param initialLimit
+     * @return
+     */
+    public AdaptiveConcurrencyLimiter setInitialLimit(int initialLimit) {
+        Preconditions.checkArgument(initialLimit > 0, "Initial limit must be positive");
+        this.initialLimit = initialLimit;
+        return this;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public AdaptiveConcurrencyLimiter setMinLimit(int minLimit) {
+        Preconditions.checkArgument(minLimit > 0, "Min limit must be positive");
+        this.minLimit = minLimit;
+        return this;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public AdaptiveConcurrencyLimiter setMaxLimit(int maxLimit) {
+        Preconditions.checkArgument(maxLimit > 0, "Max limit must be positive");
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    /**
+     * Sets the factor the limit is multiplied with when a function is overloaded.
+     * @param backoffRatio
+     * @return
+     */
+    public AdaptiveConcurrencyLimiter setBackoffRatio(double backoffRatio) {
+        Preconditions.checkArgument(backoffRatio > 0 && backoffRatio < 1,
+            "Backoff ratio must be between 0 and 1");
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    /**
+     * Sets how many times slower than the lowest latency seen in the last 30 seconds
+     * an invocation may be before it counts as a sign of overload. Zero disables the
+     * latency signal, leaving throttling as the only one.
+     * @param latencyTolerance
+     * @return
+     */
+    public AdaptiveConcurrencyLimiter setLatencyTolerance(double latencyTolerance) {
+        Preconditions.checkArgument(latencyTolerance == 0 || latencyTolerance > 1,
+            "Latency tolerance must be zero or greater than 1");
+        this.latencyTolerance = latencyTolerance;
+        return this;
+    }
+
+    public int getMaxQueueLength() {
+        return maxQueueLength;
+    }
+
+    /**
+     * Sets how many invocations of one function may wait for a permit. Further
+     * invocations are rejected right away.
+     * @param maxQueueLength
+     * @return
+     */
+    public AdaptiveConcurrencyLimiter setMaxQueueLength(int maxQueueLength) {
+        Preconditions.checkArgument(maxQueueLength >= 0, "Max queue length cannot be negative");
+        this.maxQueueLength = maxQueueLength;
+        return this;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a blocking invocation waits for a permit before
+     * it is rejected. Asynchronous invocations wait in the queue until a permit frees up.
+     * @param maxWaitMillis
+     * @return
+     */
+    public AdaptiveConcurrencyLimiter setMaxWaitMillis(long maxWaitMillis) {
+        Preconditions.checkArgument(maxWaitMillis >= 0, "Max wait cannot be negative");
+        this.maxWaitMillis = maxWaitMillis;
+        return this;
+    }
+
+    /**
+     * @return the current concurrency limit for the key
+     */
+    public int getLimit(String key) {
+        Limit limit = limits.get(key);
+        return limit == null ? initialLimit : limit.currentLimit();
+    }
+
+    /**
+     * @return how many permits for the key are currently held
+     */
+    public int getInFlight(String key) {
+        Limit limit = limits.get(key);
+        return limit == null ? 0 : limit.currentInFlight();
+    }
+
+    /**
+     * Waits, at most maxWaitMillis, for a permit to send a request.
+     * @throws ClientException if the queue is full or no permit freed up in time
+     */
+    public Permit acquire(String key) throws ClientException {
+        ListenableFuture<Permit> future = acquireAsync(key);
+        try {
+            return future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (!future.cancel(false)) {
+                return getGranted(future);
+            }
+            throw rejected(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!future.cancel(false)) {
+                getGranted(future).cancel();
+            }
+            throw new ClientException("SDK.Interrupted", "Interrupted while waiting for a permit");
+        } catch (ExecutionException e) {
+            throw (ClientException) e.getCause();
+        }
+    }
+
+    /**
+     * The permit of a waiter that could not be cancelled because it was just granted.
+     */
+    private static Permit getGranted(ListenableFuture<Permit> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            throw (ClientException) e.getCause();
+        }
+    }
+
+    /**
+     * Returns a future that completes with a permit once one is free, or fails with
+     * a ClientException if the queue is full. Cancelling the future gives up the
+     * place in the queue.
+     */
+    public ListenableFuture<Permit> acquireAsync(String key) {
+        Limit limit = limits.get(key);
+        if (limit == null) {
+            Limit created = new Limit(key);
+            limit = limits.putIfAbsent(key, created);
+            if (limit == null) {
+                limit = created;
+            }
+        }
+        return limit.acquire();
+    }
+
+    private static ClientException rejected(String key) {
+        return new ClientException("SDK.ConcurrencyLimitExceeded",
+            "Too many concurrent invocations of " + key);
+    }
+
+    /**
+     * The right to send one request. Exactly one of its methods must be called when
+     * the request is done.
+     */
+    public interface Permit {
+
+        /**
+         * The request got a response; its latency is measured from when the permit
+         * was granted.
+         */
+        void onSuccess();
+
+        /**
+         * The request was throttled by the service.
+         */
+        void onThrottled();
+
+        /**
+         * The request failed in a way that says nothing about the function's capacity.
+         */
+        void cancel();
+    }
+
+    private final class Limit {
+
+        private final String key;
+        private final ArrayDeque<SettableFuture<Permit>> waiters =
+            new ArrayDeque<SettableFuture<Permit>>();
+        private double limit = initialLimit;
+        private int inFlight;
+        private long minRttNanos = Long.MAX_VALUE;
+        private long minRttExpiresAt;
+        private long lastDecreaseAt;
+
+        Limit(String key) {
+            this.key = key;
+        }
+
+        synchronized int currentLimit() {
+            return (int) limit;
+        }
+
+        synchronized int currentInFlight() {
+            return inFlight;
+        }
+
+        ListenableFuture<Permit> acquire() {
+            SettableFuture<Permit> future = SettableFuture.create();
+            synchronized (this) {
+                if (waiters.isEmpty() && inFlight < (int) limit) {
+                    inFlight++;
+                } else {
+                    if (waiters.size() >= maxQueueLength) {
+                        removeCancelled();
+                    }
+                    if (waiters.size() >= maxQueueLength) {
+                        future.setException(rejected(key));
+                    } else {
+                        waiters.add(future);
+                    }
+                    return future;
+                }
+            }
+            future.set(new LimitPermit(this));
+            return future;
+        }
+
+        private void removeCancelled() {
+            for (Iterator<SettableFuture<Permit>> it = waiters.iterator(); it.hasNext(); ) {
+                if (it.next().isDone()) {
+                    it.remove();
+                }
+            }
+        }
+
+        void release(long rttNanos, boolean throttled, boolean sample) {
+            List<SettableFuture<Permit>> granted = new ArrayList<SettableFuture<Permit>>();
+            synchronized (this) {
+                inFlight--;
+                long now = System.nanoTime();
+                if (throttled) {
+                    decrease(now);
+                } else if (sample) {
+                    if (rttNanos < minRttNanos || now - minRttExpiresAt > 0) {
+                        minRttNanos = rttNanos;
+                        minRttExpiresAt = now + MIN_RTT_WINDOW_NANOS;
+                    }
+                    if (latencyTolerance > 0 && rttNanos > minRttNanos * latencyTolerance) {
+                        decrease(now);
+                    } else if (inFlight + 1 >= limit / 2) {
+                        limit = Math.min(maxLimit, limit + 1 / limit);
+                    }
+                }
+                while (inFlight < (int) limit && !waiters.isEmpty()) {
+                    inFlight++;
+                    granted.add(waiters.poll());
+                }
+            }
+            for (SettableFuture<Permit> waiter : granted) {
+                LimitPermit permit = new LimitPermit(this);
+                if (!waiter.set(permit)) {
+                    permit.cancel();
+                }
+            }
+        }
+
+        private void decrease(long now) {
+            long interval = minRttNanos == Long.MAX_VALUE ? 0 : minRttNanos;
+            if (now - lastDecreaseAt >= interval) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecreaseAt = now;
+            }
+        }
+    }
+
+    private static final class LimitPermit implements Permit {
+
+        private final Limit limit;
+        private final long grantedAt = System.nanoTime();
+
+        LimitPermit(Limit limit) {
+            this.limit = limit;
+        }
+
+        public void onSuccess() {
+            limit.release(System.nanoTime() - grantedAt, false, true);
+        }
+
+        public void onThrottled() {
+            limit.release(0, true, false);
+        }
+
+        public void cancel() {
+            limit.release(0, false, false);
+        }
+    }
+}
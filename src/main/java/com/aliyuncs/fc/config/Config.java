@@ -1,10 +1,17 @@
 package com.aliyuncs.fc.config;
 
+import com.aliyuncs.fc.http.ByteArrayPool;
+import com.aliyuncs.fc.http.RequestInterceptor;
+import com.aliyuncs.fc.metrics.MetricsCollector;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Executor;
 
 /**
  * TODO: add javadoc
@@ -23,6 +30,21 @@ public class Config {
     private String uid;
     private int connectTimeoutMillis = 60000;
     private int readTimeoutMillis = 60000;
+    private int maxConnectionsPerEndpoint = 64;
+    private long connectionIdleTimeoutMillis = 4000;
+    private long connectionTimeToLiveMillis = 0;
+    private int maxAsyncRequests = 256;
+    private int asyncIoThreads = 2;
+    private Executor callbackExecutor;
+    private boolean retainResponseContent = true;
+    private RetryPolicy retryPolicy = new RetryPolicy();
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private int listPageSize = 100;
+    private int listPrefetchPages = 1;
+    private boolean coalesceReads = true;
+    private ByteArrayPool bufferPool = new ByteArrayPool();
+    private MetricsCollector metricsCollector;
+    private final List<RequestInterceptor> interceptors = new ArrayList<RequestInterceptor>();
 
     private String host;
     private String userAgent;
@@ -153,6 +175,259 @@ public class Config {
         return this;
     }
 
+    public int getMaxConnectionsPerEndpoint() {
+        return maxConnectionsPerEndpoint;
+    }
+
+    /**
+     * Sets the maximum number of keep-alive connections the client opens to one endpoint.
+     * Requests wait for a free connection, at most connectTimeoutMillis, once the limit
+     * is reached.
+     * @param maxConnectionsPerEndpoint
+     * @return
+     */
+    public Config setMaxConnectionsPerEndpoint(int maxConnectionsPerEndpoint) {
+        Preconditions.checkArgument(maxConnectionsPerEndpoint > 0,
+            "Max connections per endpoint must be positive");
+        this.maxConnectionsPerEndpoint = maxConnectionsPerEndpoint;
+        return this;
+    }
+
+    public long getConnectionIdleTimeoutMillis() {
+        return connectionIdleTimeoutMillis;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a keep-alive connection may stay unused before
+     * it is closed, 4 seconds by default: less than the 5 seconds many servers and
+     * load balancers keep an idle connection open. A timeout of zero keeps idle
+     * connections open until the server closes them.
+     * @param connectionIdleTimeoutMillis
+     * @return
+     */
+    public Config setConnectionIdleTimeoutMillis(long connectionIdleTimeoutMillis) {
+        Preconditions.checkArgument(connectionIdleTimeoutMillis >= 0,
+            "Connection idle timeout cannot be negative");
+        this.connectionIdleTimeoutMillis = connectionIdleTimeoutMillis;
+        return this;
+    }
+
+    public long getConnectionTimeToLiveMillis() {
+        return connectionTimeToLiveMillis;
+    }
+
+    /**
+     * Sets the maximum lifetime, in milliseconds, of a keep-alive connection. Older
+     * connections are not reused, which lets DNS changes of the endpoint take effect.
+     * A value of zero means connections live as long as they are usable.
+     * @param connectionTimeToLiveMillis
+     * @return
+     */
+    public Config setConnectionTimeToLiveMillis(long connectionTimeToLiveMillis) {
+        Preconditions.checkArgument(connectionTimeToLiveMillis >= 0,
+            "Connection time to live cannot be negative");
+        this.connectionTimeToLiveMillis = connectionTimeToLiveMillis;
+        return this;
+    }
+
+    public int getMaxAsyncRequests() {
+        return maxAsyncRequests;
+    }
+
+    /**
+     * Sets the maximum number of asynchronous requests a client keeps in flight. Once
+     * the limit is reached, further requests are queued, without blocking the caller,
+     * until a request completes.
+     * @param maxAsyncRequests
+     * @return
+     */
+    public Config setMaxAsyncRequests(int maxAsyncRequests) {
+        Preconditions.checkArgument(maxAsyncRequests > 0, "Max async requests must be positive");
+        this.maxAsyncRequests = maxAsyncRequests;
+        return this;
+    }
+
+    public int getAsyncIoThreads() {
+        return asyncIoThreads;
+    }
+
+    /**
+     * Sets how many selector threads carry the asynchronous requests of a client.
+     * @param asyncIoThreads
+     * @return
+     */
+    public Config setAsyncIoThreads(int asyncIoThreads) {
+        Preconditions.checkArgument(asyncIoThreads > 0, "Async I/O threads must be positive");
+        this.asyncIoThreads = asyncIoThreads;
+        return this;
+    }
+
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * Sets the executor that completes the futures of asynchronous requests, and so
+     * runs response parsing, retries and listeners attached without an executor. By
+     * default each client uses its own pool of daemon threads. The selector threads
+     * never run callbacks, so a slow one cannot hold up other requests.
+     * @param callbackExecutor
+     * @return
+     */
+    public Config setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
+    public boolean isRetainResponseContent() {
+        return retainResponseContent;
+    }
+
+    /**
+     * Sets whether parsed responses, e.g. ListFunctionsResponse, keep the raw JSON they
+     * were parsed from in getContent(). Turning it off lets large list pages be
+     * garbage collected as soon as they are parsed. Invoke responses always keep
+     * their content, which is the function result.
+     * @param retainResponseContent
+     * @return
+     */
+    public Config setRetainResponseContent(boolean retainResponseContent) {
+        this.retainResponseContent = retainResponseContent;
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets how failed requests are retried. By default a request is sent up to three
+     * times, with exponential backoff, when it is throttled, fails with a 5xx status
+     * or cannot reach the server. Use {@link RetryPolicy#noRetry()} to send it only once.
+     * @param retryPolicy
+     * @return
+     */
+    public Config setRetryPolicy(RetryPolicy retryPolicy) {
+        Preconditions.checkArgument(retryPolicy != null, "Retry policy cannot be null");
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Sets the limiter that caps concurrent invocations of each function, or null,
+     * the default, to send every invocation right away. Clients sharing the limiter
+     * share what it has learned about each function.
+     * @param concurrencyLimiter
+     * @return
+     */
+    public Config setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    public int getListPageSize() {
+        return listPageSize;
+    }
+
+    /**
+     * Sets how many items the iterate* methods of the client request per page, unless
+     * the request sets its own limit.
+     * @param listPageSize
+     * @return
+     */
+    public Config setListPageSize(int listPageSize) {
+        Preconditions.checkArgument(listPageSize > 0, "List page size must be positive");
+        this.listPageSize = listPageSize;
+        return this;
+    }
+
+    public int getListPrefetchPages() {
+        return listPrefetchPages;
+    }
+
+    /**
+     * Sets how many pages the iterate* methods of the client fetch ahead of the page
+     * being consumed. An iterator holds at most this many pages plus the current one.
+     * @param listPrefetchPages
+     * @return
+     */
+    public Config setListPrefetchPages(int listPrefetchPages) {
+        Preconditions.checkArgument(listPrefetchPages > 0, "List prefetch pages must be positive");
+        this.listPrefetchPages = listPrefetchPages;
+        return this;
+    }
+
+    public boolean isCoalesceReads() {
+        return coalesceReads;
+    }
+
+    /**
+     * Sets whether concurrent GETs with the same path, query and headers share one
+     * HTTP call and its response. On by default.
+     * @param coalesceReads
+     * @return
+     */
+    public Config setCoalesceReads(boolean coalesceReads) {
+        this.coalesceReads = coalesceReads;
+        return this;
+    }
+
+    public ByteArrayPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Sets the pool of byte arrays the default transports read responses and write
+     * requests through. Its counters show how many bytes the client still allocates.
+     * Clients sharing the pool share its arrays; a pool of
+     * {@code new ByteArrayPool(0)} keeps no arrays and only counts allocations.
+     * @param bufferPool
+     * @return
+     */
+    public Config setBufferPool(ByteArrayPool bufferPool) {
+        Preconditions.checkArgument(bufferPool != null, "Buffer pool cannot be null");
+        this.bufferPool = bufferPool;
+        return this;
+    }
+
+    public MetricsCollector getMetricsCollector() {
+        return metricsCollector;
+    }
+
+    /**
+     * Sets the collector told about every attempt the client sends, e.g. an
+     * {@link com.aliyuncs.fc.metrics.FcMetrics}, or null, the default, to collect nothing.
+     * @param metricsCollector
+     * @return
+     */
+    public Config setMetricsCollector(MetricsCollector metricsCollector) {
+        this.metricsCollector = metricsCollector;
+        return this;
+    }
+
+    /**
+     * @return the interceptors in the order requests pass through them
+     */
+    public List<RequestInterceptor> getInterceptors() {
+        return Collections.unmodifiableList(interceptors);
+    }
+
+    /**
+     * Adds a stage to the end of the pipeline requests pass through. Clients take the
+     * interceptors added by the time they are created.
+     * @param interceptor
+     * @return
+     */
+    public Config addInterceptor(RequestInterceptor interceptor) {
+        Preconditions.checkArgument(interceptor != null, "Interceptor cannot be null");
+        interceptors.add(interceptor);
+        return this;
+    }
+
     public String getHost() {
         return host;
     }
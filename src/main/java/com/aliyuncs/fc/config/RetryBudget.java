@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.config;
+
+import com.google.common.base.Preconditions;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A token bucket that limits retries to a share of the traffic. Every retry takes
+ * retryCost tokens and every successful request puts one token back, up to the
+ * capacity. While the service keeps failing the bucket drains and requests fail
+ * after their first attempt instead of multiplying the load; it refills once
+ * requests succeed again. Thread safe.
+ */
+public class RetryBudget {
+
+    private final int capacity;
+    private final int retryCost;
+    private final AtomicInteger tokens;
+
+    /**
+     * With the defaults of 500 tokens and a retry cost of 5, at most 100 retries
+     * can be made in a row, and sustained retries stay below one per five successes.
+     */
+    public RetryBudget() {
+        this(500, 5);
+    }
+
+    public RetryBudget(int capacity, int retryCost) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        Preconditions.checkArgument(retryCost >= 0, "Retry cost cannot be negative");
+        this.capacity = capacity;
+        this.retryCost = retryCost;
+        this.tokens = new AtomicInteger(capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getRetryCost() {
+        return retryCost;
+    }
+
+    /**
+     * @return tokens currently available
+     */
+    public int getTokens() {
+        return tokens.get();
+    }
+
+    /**
+     * Takes the tokens for one retry.
+     * @return false, without taking any tokens, if the budget is exhausted
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = tokens.get();
+            if (current < retryCost) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - retryCost)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Puts back one token for a successful request.
+     */
+    public void onSuccess() {
+        while (true) {
+            int current = tokens.get();
+            if (current >= capacity || tokens.compareAndSet(current, current + 1)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.config;
+
+import com.aliyuncs.fc.exceptions.ErrorCodes;
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Decides whether a failed request is sent again and how long to wait first.
+ *
+ * A response is retried when its status code or error code is retryable. A request
+ * that failed without a response is retried when the connection could not be
+ * established, or, for idempotent methods, whatever the I/O error was. Delays grow
+ * exponentially from baseDelayMillis and are capped at maxDelayMillis, with full
+ * jitter: the actual delay is uniformly random between zero and that value. A
+ * Retry-After header raises the delay to what the server asked for. All attempts
+ * together must finish within deadlineMillis, and retries draw on a shared
+ * {@link RetryBudget}.
+ */
+public class RetryPolicy {
+
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(
+        Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS"));
+
+    private final Random random = new Random();
+    private int maxAttempts = 3;
+    private long baseDelayMillis = 100;
+    private long maxDelayMillis = 20000;
+    private long deadlineMillis = 0;
+    private Set<Integer> retryableStatusCodes = new HashSet<Integer>(
+        Arrays.asList(429, 500, 502, 503, 504));
+    private Set<String> retryableErrorCodes = new HashSet<String>(
+        Arrays.asList(ErrorCodes.RESOURCE_THROTTLED, ErrorCodes.RESOURCE_EXHAUSTED));
+    private boolean retryIOErrors = true;
+    private RetryBudget retryBudget = new RetryBudget();
+
+    /**
+     * A policy that sends every request exactly once.
+     */
+    public static RetryPolicy noRetry() {
+        return new RetryPolicy().setMaxAttempts(1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets how many times a request is sent at most, the first attempt included.
+     * @param maxAttempts
+     * @return
+     */
+    public RetryPolicy setMaxAttempts(int maxAttempts) {
+        Preconditions.checkArgument(maxAttempts > 0, "Max attempts must be positive");
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    /**
+     * Sets the upper bound, in milliseconds, of the delay before the first retry. It
+     * doubles for every further retry.
+     * @param baseDelayMillis
+     * @return
+     */
+    public RetryPolicy setBaseDelayMillis(long baseDelayMillis) {
+        Preconditions.checkArgument(baseDelayMillis >= 0, "Base delay cannot be negative");
+        this.baseDelayMillis = baseDelayMillis;
+        return this;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * Sets the largest delay, in milliseconds, between two attempts. A longer
+     * Retry-After is still honoured.
+     * @param maxDelayMillis
+     * @return
+     */
+    public RetryPolicy setMaxDelayMillis(long maxDelayMillis) {
+        Preconditions.checkArgument(maxDelayMillis >= 0, "Max delay cannot be negative");
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a request may take over all its attempts and
+     * the delays between them. No retry is made that could not start before the
+     * deadline, and each attempt's timeouts are shortened to the time left. Zero
+     * means no deadline.
+     * @param deadlineMillis
+     * @return
+     */
+    public RetryPolicy setDeadlineMillis(long deadlineMillis) {
+        Preconditions.checkArgument(deadlineMillis >= 0, "Deadline cannot be negative");
+        this.deadlineMillis = deadlineMillis;
+        return this;
+    }
+
+    public Set<Integer> getRetryableStatusCodes() {
+        return Collections.unmodifiableSet(retryableStatusCodes);
+    }
+
+    /**
+     * Sets the HTTP status codes that are retried, by default 429, 500, 502, 503 and 504.
+     * @param statusCodes
+     * @return
+     */
+    public RetryPolicy setRetryableStatusCodes(Integer... statusCodes) {
+        this.retryableStatusCodes = new HashSet<Integer>(Arrays.asList(statusCodes));
+        return this;
+    }
+
+    public Set<String> getRetryableErrorCodes() {
+        return Collections.unmodifiableSet(retryableErrorCodes);
+    }
+
+    /**
+     * Sets the error codes of a ServerException or ClientException that are retried
+     * whatever their status code, by default ResourceThrottled and ResourceExhausted.
+     * @param errorCodes
+     * @return
+     */
+    public RetryPolicy setRetryableErrorCodes(String... errorCodes) {
+        this.retryableErrorCodes = new HashSet<String>(Arrays.asList(errorCodes));
+        return this;
+    }
+
+    public boolean isRetryIOErrors() {
+        return retryIOErrors;
+    }
+
+    /**
+     * Sets whether requests that failed without a response are retried.
+     * @param retryIOErrors
+     * @return
+     */
+    public RetryPolicy setRetryIOErrors(boolean retryIOErrors) {
+        this.retryIOErrors = retryIOErrors;
+        return this;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * Sets the budget retries draw on. Clients sharing this policy share the budget.
+     * Null lets every retryable failure be retried.
+     * @param retryBudget
+     * @return
+     */
+    public RetryPolicy setRetryBudget(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+        return this;
+    }
+
+    /**
+     * @param statusCode status code of the response
+     * @param errorCode error code parsed from the response, may be null
+     * @return whether the response is worth retrying
+     */
+    public boolean isRetryable(int statusCode, String errorCode) {
+        return retryableStatusCodes.contains(statusCode)
+            || (errorCode != null && retryableErrorCodes.contains(errorCode));
+    }
+
+    /**
+     * A request whose connection could not be established never reached the server
+     * and is always safe to send again. Other failures may have happened after the
+     * server acted on the request, so only idempotent methods are retried.
+     * @param method HTTP method of the request
+     * @param failure the error the attempt failed with
+     * @return whether the request is worth retrying
+     */
+    public boolean isRetryable(String method, IOException failure) {
+        if (!retryIOErrors) {
+            return false;
+        }
+        if (failure instanceof InterruptedIOException
+            && !(failure instanceof SocketTimeoutException)) {
+            return false;
+        }
+        return failure instanceof ConnectException
+            || IDEMPOTENT_METHODS.contains(method.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * @param attempt number of attempts made so far, at least 1
+     * @param retryAfterMillis the delay the server asked for, or -1 if it did not
+     * @return how long to wait before the next attempt
+     */
+    public long delayMillis(int attempt, long retryAfterMillis) {
+        long ceiling = baseDelayMillis;
+        for (int i = 1; i < attempt && ceiling < maxDelayMillis; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxDelayMillis);
+        long delay = ceiling == 0 ? 0 : (long) (random.nextDouble() * ceiling);
+        return Math.max(delay, retryAfterMillis);
+    }
+
+    /**
+     * Takes a retry from the budget.
+     * @return false if the budget is exhausted and the request must not be retried
+     */
+    public boolean acquireRetry() {
+        RetryBudget budget = retryBudget;
+        return budget == null || budget.tryAcquire();
+    }
+
+    /**
+     * Records a request that completed without needing a further retry.
+     */
+    public void onSuccess() {
+        RetryBudget budget = retryBudget;
+        if (budget != null) {
+            budget.onSuccess();
+        }
+    }
+}
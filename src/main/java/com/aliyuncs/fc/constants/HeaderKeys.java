@@ -10,4 +10,8 @@ public class HeaderKeys {
     public static final String INVOCATION_TYPE = "X-Fc-Invocation-Type";
     public static final String INVOCATION_LOG_TYPE = "X-Fc-Log-Type";
     public static final String INVOCATION_LOG_RESULT = "X-Fc-Log-Result";
+    public static final String INVOCATION_ERROR_TYPE = "X-Fc-Error-Type";
+    public static final String RETRY_AFTER = "Retry-After";
+    public static final String ETAG = "ETag";
+    public static final String IF_NONE_MATCH = "If-None-Match";
 }
@@ -6,4 +6,6 @@ package com.aliyuncs.fc.exceptions;
 public class ErrorCodes {
     public static final String SERVICE_NOT_FOUND = "ServiceNotFound";
     public static final String INVALID_ARGUMENT = "InvalidArgument";
+    public static final String RESOURCE_THROTTLED = "ResourceThrottled";
+    public static final String RESOURCE_EXHAUSTED = "ResourceExhausted";
 }
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.exceptions;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Thrown when some invocations of a batch failed. The first failure is the cause.
+ */
+public class InvokeAllException extends ClientException {
+
+    private static final long serialVersionUID = -4188291950062353219L;
+
+    private final int invocations;
+    private final Map<Integer, RuntimeException> failures;
+
+    /**
+     * @param failures the errors by position of the payload in the input, in order
+     */
+    public InvokeAllException(int invocations, Map<Integer, RuntimeException> failures) {
+        super("SDK.InvokeAllFailed", failures.size() + " of " + invocations
+            + " invocations failed, the first at index " + failures.keySet().iterator().next(),
+            failures.values().iterator().next());
+        this.invocations = invocations;
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    public int getInvocationCount() {
+        return invocations;
+    }
+
+    /**
+     * @return the errors by position of the payload in the input
+     */
+    public Map<Integer, RuntimeException> getFailures() {
+        return failures;
+    }
+}
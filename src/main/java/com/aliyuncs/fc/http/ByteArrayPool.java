@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe pool of heap byte arrays the transports read and write
+ * through, so that a response does not leave a trail of scratch arrays and
+ * doubling copies behind for the young generation to collect.
+ *
+ * Arrays come in power-of-two size classes from {@value #MIN_SIZE} bytes to
+ * {@value #MAX_SIZE} bytes. {@link #acquire(int)} returns an array of at least the
+ * requested size, and {@link #release(byte[])} files an array of any length under
+ * the largest class it can serve, so response bodies handed back through
+ * {@link HttpResponse#release()} are reused as scratch space. The pool keeps at
+ * most maxPooledBytes; arrays beyond that are left to the garbage collector.
+ *
+ * The counters are cumulative; sample them twice to get allocation and reuse rates.
+ */
+public final class ByteArrayPool {
+
+    public static final int MIN_SIZE = 1024;
+    public static final int MAX_SIZE = 1024 * 1024;
+    public static final long DEFAULT_MAX_POOLED_BYTES = 16L * 1024 * 1024;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+
+    private final long maxPooledBytes;
+    private final List<Queue<byte[]>> free;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong allocationCount = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+    private final AtomicLong reusedBytes = new AtomicLong();
+    private final AtomicLong discardCount = new AtomicLong();
+
+    public ByteArrayPool() {
+        this(DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    /**
+     * @param maxPooledBytes how many bytes the pool keeps at most, 0 to keep none and
+     * only count allocations
+     */
+    public ByteArrayPool(long maxPooledBytes) {
+        Preconditions.checkArgument(maxPooledBytes >= 0, "Max pooled bytes cannot be negative");
+        this.maxPooledBytes = maxPooledBytes;
+        this.free = new ArrayList<Queue<byte[]>>(CLASSES);
+        for (int i = 0; i < CLASSES; i++) {
+            free.add(new ConcurrentLinkedQueue<byte[]>());
+        }
+    }
+
+    /**
+     * Returns an array of at least {@code minSize} bytes, with undefined content.
+     * Arrays larger than {@value #MAX_SIZE} bytes are allocated to the exact size.
+     */
+    public byte[] acquire(int minSize) {
+        Preconditions.checkArgument(minSize >= 0, "Size cannot be negative");
+        if (minSize > MAX_SIZE) {
+            return allocate(minSize);
+        }
+        int index = ceilingClass(minSize);
+        byte[] array = free.get(index).poll();
+        if (array == null) {
+            return allocate(MIN_SIZE << index);
+        }
+        pooledBytes.addAndGet(-array.length);
+        reuseCount.incrementAndGet();
+        reusedBytes.addAndGet(array.length);
+        return array;
+    }
+
+    /**
+     * Gives an array back for reuse. The caller must not touch it afterwards. Arrays
+     * shorter than {@value #MIN_SIZE} bytes, and arrays that would take the pool over
+     * its limit, are dropped.
+     */
+    public void release(byte[] array) {
+        if (array == null || array.length < MIN_SIZE) {
+            return;
+        }
+        if (pooledBytes.addAndGet(array.length) > maxPooledBytes) {
+            pooledBytes.addAndGet(-array.length);
+            discardCount.incrementAndGet();
+            return;
+        }
+        free.get(floorClass(array.length)).offer(array);
+    }
+
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * @return bytes currently held by the pool
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * @return arrays the pool had to allocate because none was free
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    /**
+     * @return bytes of the arrays counted by {@link #getAllocationCount()}
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return acquisitions served by a pooled array
+     */
+    public long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    /**
+     * @return bytes of the arrays counted by {@link #getReuseCount()}
+     */
+    public long getReusedBytes() {
+        return reusedBytes.get();
+    }
+
+    /**
+     * @return released arrays dropped because the pool was full
+     */
+    public long getDiscardCount() {
+        return discardCount.get();
+    }
+
+    /**
+     * Drops all pooled arrays.
+     */
+    public void clear() {
+        for (Queue<byte[]> queue : free) {
+            byte[] array;
+            while ((array = queue.poll()) != null) {
+                pooledBytes.addAndGet(-array.length);
+            }
+        }
+    }
+
+    private byte[] allocate(int size) {
+        allocationCount.incrementAndGet();
+        allocatedBytes.addAndGet(size);
+        return new byte[size];
+    }
+
+    private static int ceilingClass(int size) {
+        if (size <= MIN_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    private static int floorClass(int size) {
+        return Math.min(31 - Integer.numberOfLeadingZeros(size) - MIN_SHIFT, CLASSES - 1);
+    }
+}
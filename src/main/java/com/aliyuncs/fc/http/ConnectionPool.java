@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Keeps HTTP/1.1 connections open between requests so that consecutive calls
+ * to the same endpoint skip the TCP and TLS handshakes.
+ *
+ * Connections are grouped by endpoint (scheme, host and port). At most
+ * maxConnectionsPerEndpoint connections are leased at the same time for one
+ * endpoint, idle connections are closed after idleTimeoutMillis and every
+ * connection is retired once it is older than timeToLiveMillis. A value of
+ * zero disables the idle timeout or the time to live respectively.
+ */
+public class ConnectionPool implements Closeable {
+
+    private final int maxConnectionsPerEndpoint;
+    private final long idleTimeoutMillis;
+    private final long timeToLiveMillis;
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    public ConnectionPool(int maxConnectionsPerEndpoint, long idleTimeoutMillis,
+        long timeToLiveMillis) {
+        Preconditions.checkArgument(maxConnectionsPerEndpoint > 0,
+            "Max connections per endpoint must be positive");
+        Preconditions.checkArgument(idleTimeoutMillis >= 0, "Idle timeout cannot be negative");
+        Preconditions.checkArgument(timeToLiveMillis >= 0, "Time to live cannot be negative");
+        this.maxConnectionsPerEndpoint = maxConnectionsPerEndpoint;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.timeToLiveMillis = timeToLiveMillis;
+
+        long period = Math.min(
+            idleTimeoutMillis > 0 ? idleTimeoutMillis : Long.MAX_VALUE,
+            timeToLiveMillis > 0 ? timeToLiveMillis : Long.MAX_VALUE);
+        if (period == Long.MAX_VALUE) {
+            this.evictor = null;
+        } else {
+            period = Math.max(period / 2, 1000);
+            this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("fc-connection-evictor-%d").build());
+            this.evictor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    evictExpired();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public int getMaxConnectionsPerEndpoint() {
+        return maxConnectionsPerEndpoint;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    /**
+     * @return number of idle connections currently kept open across all endpoints
+     */
+    public int getIdleCount() {
+        int count = 0;
+        for (Route route : routes.values()) {
+            count += route.idle.size();
+        }
+        return count;
+    }
+
+    /**
+     * Leases a connection to the endpoint of the given URL, reusing an idle one when
+     * possible. Blocks for at most connectTimeoutMillis when the endpoint has already
+     * reached its connection limit. The wait, and the DNS lookup and handshakes of a
+     * new connection, are added to the timing.
+     */
+    PooledConnection acquire(URL url, int connectTimeoutMillis, RequestTiming timing)
+        throws IOException {
+        long start = System.nanoTime();
+        if (closed) {
+            throw new IOException("Connection pool has been closed");
+        }
+        String key = routeKey(url);
+        Route route = routes.get(key);
+        if (route == null) {
+            Route created = new Route(maxConnectionsPerEndpoint);
+            route = routes.putIfAbsent(key, created);
+            if (route == null) {
+                route = created;
+            }
+        }
+
+        try {
+            boolean acquired = connectTimeoutMillis > 0
+                ? route.permits.tryAcquire(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                : acquireUninterruptibly(route.permits);
+            if (!acquired) {
+                throw new IOException("Timed out waiting for a connection to " + key);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + key);
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            PooledConnection conn;
+            while ((conn = route.idle.pollFirst()) != null) {
+                // A connection the server closed while idle would fail a request that
+                // may not be safe to send again, so it is not handed out
+                if (!conn.isExpired(now, idleTimeoutMillis, timeToLiveMillis)
+                    && !conn.isStale()) {
+                    timing.mark(RequestTiming.Phase.CONNECTION_ACQUIRE, start);
+                    timing.setConnectionReused(true);
+                    return conn;
+                }
+                conn.close();
+            }
+            timing.mark(RequestTiming.Phase.CONNECTION_ACQUIRE, start);
+            timing.setConnectionReused(false);
+            return connect(url, key, connectTimeoutMillis, timing);
+        } catch (IOException e) {
+            route.permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            route.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a leased connection. Connections that are not reusable, e.g. because
+     * the response was not fully read or the server asked to close, are closed.
+     */
+    void release(PooledConnection conn, boolean reusable) {
+        Route route = routes.get(conn.getRoute());
+        if (reusable && !closed && route != null) {
+            conn.markReleased();
+            route.idle.offerFirst(conn);
+            if (closed) {
+                closeIdle(route);
+            }
+        } else {
+            conn.close();
+        }
+        if (route != null) {
+            route.permits.release();
+        }
+    }
+
+    /**
+     * Closes idle connections that exceeded the idle timeout or the time to live.
+     */
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Route route : routes.values()) {
+            for (PooledConnection conn : route.idle) {
+                if (conn.isExpired(now, idleTimeoutMillis, timeToLiveMillis)
+                    && route.idle.remove(conn)) {
+                    conn.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the eviction thread. Connections that are
+     * leased at the time of the call are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        for (Route route : routes.values()) {
+            closeIdle(route);
+        }
+    }
+
+    private static boolean acquireUninterruptibly(Semaphore permits) {
+        permits.acquireUninterruptibly();
+        return true;
+    }
+
+    private static void closeIdle(Route route) {
+        PooledConnection conn;
+        while ((conn = route.idle.pollFirst()) != null) {
+            conn.close();
+        }
+    }
+
+    private static String routeKey(URL url) {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        return url.getProtocol().toLowerCase(Locale.ENGLISH) + "://"
+            + url.getHost().toLowerCase(Locale.ENGLISH) + ":" + port;
+    }
+
+    /**
+     * Opens a connection the way HttpURLConnection would, through the proxy the
+     * default ProxySelector chooses for the URL: https goes through a CONNECT tunnel
+     * of an HTTP proxy, plain http requests are forwarded by it.
+     */
+    private static PooledConnection connect(URL url, String key, int connectTimeoutMillis,
+        RequestTiming timing) throws IOException {
+        String host = url.getHost();
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        boolean https = "https".equalsIgnoreCase(url.getProtocol());
+        URI uri = toUri(url);
+        Proxy proxy = selectProxy(uri);
+        long mark = System.nanoTime();
+        InetSocketAddress address;
+        if (proxy.type() == Proxy.Type.HTTP) {
+            InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+            address = proxyAddress.isUnresolved()
+                ? new InetSocketAddress(proxyAddress.getHostName(), proxyAddress.getPort())
+                : proxyAddress;
+        } else if (proxy.type() == Proxy.Type.SOCKS) {
+            // Resolved by the proxy
+            address = InetSocketAddress.createUnresolved(host, port);
+        } else {
+            address = new InetSocketAddress(host, port);
+        }
+        mark = timing.mark(RequestTiming.Phase.DNS, mark);
+        Socket socket = proxy.type() == Proxy.Type.SOCKS ? new Socket(proxy) : new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            try {
+                socket.connect(address, connectTimeoutMillis);
+            } catch (IOException e) {
+                if (proxy.type() != Proxy.Type.DIRECT && uri != null) {
+                    ProxySelector.getDefault().connectFailed(uri, proxy.address(), e);
+                }
+                throw e;
+            }
+            if (https && proxy.type() == Proxy.Type.HTTP) {
+                socket.setSoTimeout(connectTimeoutMillis);
+                HttpWire.openTunnel(socket.getOutputStream(), socket.getInputStream(), host,
+                    port);
+            }
+            mark = timing.mark(RequestTiming.Phase.CONNECT, mark);
+            if (https) {
+                SSLSocket sslSocket = (SSLSocket) HttpsURLConnection.getDefaultSSLSocketFactory()
+                    .createSocket(socket, host, port, true);
+                socket = sslSocket;
+                sslSocket.startHandshake();
+                Hostnames.verify(host, sslSocket.getSession());
+                timing.mark(RequestTiming.Phase.TLS, mark);
+            }
+            return new PooledConnection(key, socket, !https && proxy.type() == Proxy.Type.HTTP);
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            throw e;
+        }
+    }
+
+    private static URI toUri(URL url) {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static Proxy selectProxy(URI uri) {
+        ProxySelector selector = ProxySelector.getDefault();
+        if (selector == null || uri == null) {
+            return Proxy.NO_PROXY;
+        }
+        List<Proxy> proxies = selector.select(uri);
+        return proxies == null || proxies.isEmpty() ? Proxy.NO_PROXY : proxies.get(0);
+    }
+
+    private static class Route {
+
+        final Semaphore permits;
+        final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+
+        Route(int maxConnections) {
+            this.permits = new Semaphore(maxConnections, true);
+        }
+    }
+}
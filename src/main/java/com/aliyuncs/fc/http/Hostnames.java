@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import java.io.IOException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Host name verification for transports that set up TLS themselves.
+ */
+final class Hostnames {
+
+    private Hostnames() {
+    }
+
+    /**
+     * Checks the server certificate against the host name, accepting DNS subject
+     * alternative names (with a single leading wildcard label) and, when there are
+     * none, the common name. HttpsURLConnection does the same check internally.
+     */
+    static void verify(String host, SSLSession session) throws IOException {
+        Certificate[] certs = session.getPeerCertificates();
+        if (certs.length == 0 || !(certs[0] instanceof X509Certificate)) {
+            throw new SSLPeerUnverifiedException("No X.509 certificate presented by " + host);
+        }
+        X509Certificate cert = (X509Certificate) certs[0];
+        String target = host.toLowerCase(Locale.ENGLISH);
+        boolean hasDnsNames = false;
+        try {
+            Collection<List<?>> altNames = cert.getSubjectAlternativeNames();
+            if (altNames != null) {
+                for (List<?> altName : altNames) {
+                    Integer type = (Integer) altName.get(0);
+                    if (type == 2) {
+                        hasDnsNames = true;
+                        if (matchesHostname(target, (String) altName.get(1))) {
+                            return;
+                        }
+                    } else if (type == 7 && target.equals(altName.get(1))) {
+                        return;
+                    }
+                }
+            }
+        } catch (CertificateParsingException e) {
+            throw new SSLPeerUnverifiedException("Invalid certificate presented by " + host);
+        }
+        if (!hasDnsNames) {
+            for (String rdn : cert.getSubjectX500Principal().getName().split(",")) {
+                if (rdn.startsWith("CN=") && matchesHostname(target, rdn.substring(3))) {
+                    return;
+                }
+            }
+        }
+        throw new SSLPeerUnverifiedException(
+            "Certificate presented by " + host + " does not match the host name");
+    }
+
+    private static boolean matchesHostname(String host, String pattern) {
+        String name = pattern.toLowerCase(Locale.ENGLISH);
+        if (!name.startsWith("*.")) {
+            return host.equals(name);
+        }
+        int dot = host.indexOf('.');
+        return dot > 0 && host.substring(dot).equals(name.substring(1));
+    }
+}
@@ -23,7 +23,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,37 +40,48 @@ public abstract class HttpRequest {
         headers = new HashMap<String, String>();
     }
 
+    /**
+     * @deprecated connections are opened by a {@link Transport}
+     */
+    @Deprecated
     public HttpURLConnection getHttpConnection(String urls, byte[] content, String method)
         throws IOException {
-        String strUrl = urls;
-        if (null == strUrl || null == method) {
-            return null;
+        HttpURLConnection httpConn = UrlConnectionTransport.openConnection(urls, headers,
+            content, method);
+        if (httpConn != null) {
+            httpConn.setConnectTimeout(Const.CONNECT_TIMEOUT);
+            httpConn.setReadTimeout(Const.READ_TIMEOUT);
         }
-        URL url = null;
-        String[] urlArray = null;
-        if ("POST".equals(method) && null == content) {
-            urlArray = strUrl.split("\\?");
-            url = new URL(urlArray[0]);
-        } else {
-            url = new URL(strUrl);
-        }
-        System.setProperty("sun.net.http.allowRestrictedHeaders", "true");
-        HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-        httpConn.setRequestMethod(method);
-        httpConn.setDoOutput(true);
-        httpConn.setDoInput(true);
-        httpConn.setUseCaches(false);
-        httpConn.setConnectTimeout(Const.CONNECT_TIMEOUT);
-        httpConn.setReadTimeout(Const.READ_TIMEOUT);
+        return httpConn;
+    }
 
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-            httpConn.setRequestProperty(entry.getKey(), entry.getValue());
-        }
+    /**
+     * @return the body to send, by default the payload, or null if there is none
+     */
+    public RequestBody getBody() {
+        byte[] payload = getPayload();
+        return payload == null ? null : RequestBody.create(payload);
+    }
 
-        if ("POST".equals(method) && null != urlArray && urlArray.length == 2) {
-            httpConn.getOutputStream().write(urlArray[1].getBytes());
-        }
-        return httpConn;
+    /**
+     * @return the service the request is about, or null
+     */
+    public String getServiceName() {
+        return null;
+    }
+
+    /**
+     * @return the function the request is about, or null
+     */
+    public String getFunctionName() {
+        return null;
+    }
+
+    /**
+     * @return whether the body is sent with a Content-MD5 header
+     */
+    public boolean isContentMd5Enabled() {
+        return true;
     }
 
     public void setHeader(String key, String value) {
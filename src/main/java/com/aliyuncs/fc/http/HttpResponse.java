@@ -18,21 +18,18 @@ Z * Licensed to the Apache Software Foundation (ASF) under one
  */
 package com.aliyuncs.fc.http;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.SocketTimeoutException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 public class HttpResponse {
 
     private int status;
     private byte[] content;
+    private InputStream contentStream;
+    private ByteArrayPool contentPool;
+    private RequestTiming timing;
     private Map<String, String> headers;
     public HttpResponse() {
     }
@@ -52,6 +49,57 @@ public class HttpResponse {
         return this.content;
     }
 
+    public void setContentStream(InputStream contentStream) {
+        this.contentStream = contentStream;
+    }
+
+    /**
+     * @return the body of a streamed response, still to be read and closed, or null
+     * if the body is in {@link #getContent()}
+     */
+    public InputStream getContentStream() {
+        return this.contentStream;
+    }
+
+
+    public ByteArrayPool getContentPool() {
+        return this.contentPool;
+    }
+
+    /**
+     * Sets the pool {@link #release()} hands the content back to.
+     */
+    public void setContentPool(ByteArrayPool contentPool) {
+        this.contentPool = contentPool;
+    }
+
+    /**
+     * Hands the content back to the buffer pool of the transport that read it, where
+     * later requests reuse it as scratch space. Call it once neither the content nor
+     * anything parsed from it without copying, such as an invoke payload, is used
+     * any more; getContent() returns null afterwards. Responses without a pool are
+     * left to the garbage collector.
+     */
+    public void release() {
+        byte[] released = this.content;
+        ByteArrayPool pool = this.contentPool;
+        this.content = null;
+        this.contentPool = null;
+        if (pool != null) {
+            pool.release(released);
+        }
+    }
+
+    /**
+     * @return where the time of the request went, or null if it was not recorded
+     */
+    public RequestTiming getTiming() {
+        return this.timing;
+    }
+
+    public void setTiming(RequestTiming timing) {
+        this.timing = timing;
+    }
 
     public String getHeaderValue(String name) {
         String value = this.headers.get(name);
@@ -65,82 +113,18 @@ public class HttpResponse {
         return headers;
     }
 
-    private static byte[] readContent(InputStream content)
-        throws IOException {
-
-        if (content == null) {
-            return null;
-        }
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        byte[] buff = new byte[1024];
-
-        while (true) {
-            final int read = content.read(buff);
-            if (read == -1) {
-                break;
-            }
-            outputStream.write(buff, 0, read);
-        }
-
-        return outputStream.toByteArray();
-    }
-
-    private static void parseHttpConn(HttpResponse response, HttpURLConnection httpConn,
-        InputStream content) throws IOException {
-        byte[] buff = readContent(content);
-        response.setStatus(httpConn.getResponseCode());
-        Map<String, List<String>> headers = httpConn.getHeaderFields();
-        for (Entry<String, List<String>> entry : headers.entrySet()) {
-            String key = entry.getKey();
-            if (null == key) {
-                continue;
-            }
-            List<String> values = entry.getValue();
-            StringBuilder builder = new StringBuilder(values.get(0));
-            for (int i = 1; i < values.size(); i++) {
-                builder.append(",");
-                builder.append(values.get(i));
-            }
-            response.putHeaderParameter(key, builder.toString());
-        }
-
-        response.setContent(buff);
-    }
-
-    // Get http response
+    /**
+     * @deprecated requests are sent by a {@link Transport}, use
+     * {@link UrlConnectionTransport#execute(TransportRequest)}
+     */
+    @Deprecated
     public static HttpResponse getResponse(String urls, HttpRequest request,
         String method, int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
-        OutputStream out = null;
-        InputStream content = null;
-        HttpResponse response = null;
-        HttpURLConnection httpConn = request
-            .getHttpConnection(urls, request.getPayload(), method);
-        httpConn.setConnectTimeout(connectTimeoutMillis);
-        httpConn.setReadTimeout(readTimeoutMillis);
-
-        try {
-            httpConn.connect();
-            if (null != request.getPayload() && request.getPayload().length > 0) {
-                out = httpConn.getOutputStream();
-                out.write(request.getPayload());
-            }
-            content = httpConn.getInputStream();
-            response = new HttpResponse();
-            parseHttpConn(response, httpConn, content);
-            return response;
-        } catch (SocketTimeoutException e) {
-            throw e;
-        } catch (IOException e) {
-            content = httpConn.getErrorStream();
-            response = new HttpResponse();
-            parseHttpConn(response, httpConn, content);
-            return response;
-        } finally {
-            if (content != null) {
-                content.close();
-            }
-            httpConn.disconnect();
-        }
+        return new UrlConnectionTransport().execute(
+            new TransportRequest(method, urls, request.getHeaders(), null)
+                .setBody(request.getBody())
+                .setConnectTimeoutMillis(connectTimeoutMillis)
+                .setReadTimeoutMillis(readTimeoutMillis));
     }
 
     public int getStatus() {
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Incremental HTTP/1.1 response decoder for non-blocking transports. Bytes are
+ * fed as they arrive from the network until {@link #feed(ByteBuffer)} reports
+ * that the response is complete.
+ */
+final class HttpResponseParser {
+
+    private enum State {
+        STATUS_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, BODY_TO_EOF, DONE
+    }
+
+    private final String method;
+    private final ByteArrayPool pool;
+    private final StringBuilder line = new StringBuilder(64);
+    private State state = State.STATUS_LINE;
+    private String statusLine;
+    private int status;
+    private Map<String, String> headers = new LinkedHashMap<String, String>();
+    private boolean keepAlive;
+    private byte[] body;
+    private int bodyOffset;
+    private long chunkRemaining;
+    private PooledOutputStream bodyStream;
+
+    HttpResponseParser(String method, ByteArrayPool pool) {
+        this.method = method;
+        this.pool = pool;
+    }
+
+    /**
+     * Consumes bytes from the buffer. Bytes after the end of the response are left
+     * in the buffer.
+     *
+     * @return true once the complete response has been read
+     */
+    boolean feed(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining() && state != State.DONE) {
+            switch (state) {
+                case STATUS_LINE:
+                    if (readLine(buf)) {
+                        statusLine = takeLine();
+                        status = HttpWire.parseStatus(statusLine);
+                        state = State.HEADERS;
+                    }
+                    break;
+                case HEADERS:
+                    if (readLine(buf)) {
+                        String header = takeLine();
+                        if (header.length() > 0) {
+                            HttpWire.addHeader(headers, header);
+                        } else {
+                            onHeadersComplete();
+                        }
+                    }
+                    break;
+                case BODY:
+                    int n = Math.min(buf.remaining(), body.length - bodyOffset);
+                    buf.get(body, bodyOffset, n);
+                    bodyOffset += n;
+                    if (bodyOffset == body.length) {
+                        state = State.DONE;
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    if (readLine(buf)) {
+                        String size = takeLine();
+                        int ext = size.indexOf(';');
+                        try {
+                            chunkRemaining = Long.parseLong(
+                                (ext < 0 ? size : size.substring(0, ext)).trim(), 16);
+                        } catch (NumberFormatException e) {
+                            throw new ProtocolException("Malformed chunk size: " + size);
+                        }
+                        state = chunkRemaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                    }
+                    break;
+                case CHUNK_DATA:
+                    int count = (int) Math.min(buf.remaining(), chunkRemaining);
+                    copy(buf, count);
+                    chunkRemaining -= count;
+                    if (chunkRemaining == 0) {
+                        state = State.CHUNK_END;
+                    }
+                    break;
+                case CHUNK_END:
+                    if (readLine(buf)) {
+                        takeLine();
+                        state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILERS:
+                    if (readLine(buf) && takeLine().length() == 0) {
+                        body = bodyStream.toByteArray();
+                        state = State.DONE;
+                    }
+                    break;
+                case BODY_TO_EOF:
+                    copy(buf, buf.remaining());
+                    break;
+                default:
+                    throw new IllegalStateException(state.name());
+            }
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * Called when the server closed the connection.
+     *
+     * @return true if the response is complete
+     */
+    boolean finish() throws IOException {
+        if (state == State.BODY_TO_EOF) {
+            body = bodyStream.toByteArray();
+            state = State.DONE;
+        }
+        if (state != State.DONE) {
+            throw new EOFException("Connection closed before the response was complete");
+        }
+        return true;
+    }
+
+    /**
+     * Gives the arrays of a body still being collected back to the pool, when the
+     * response is abandoned.
+     */
+    void discard() {
+        if (bodyStream != null) {
+            bodyStream.release();
+        }
+    }
+
+    boolean isStarted() {
+        return state != State.STATUS_LINE || line.length() > 0;
+    }
+
+    boolean isComplete() {
+        return state == State.DONE;
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    HttpResponse getResponse() {
+        HttpResponse response = new HttpResponse();
+        response.setStatus(status);
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            response.putHeaderParameter(entry.getKey(), entry.getValue());
+        }
+        response.setContent(body);
+        response.setContentPool(pool);
+        return response;
+    }
+
+    private void onHeadersComplete() throws IOException {
+        if (status >= 100 && status < 200) {
+            // Interim response, the final one follows
+            headers = new LinkedHashMap<String, String>();
+            state = State.STATUS_LINE;
+            return;
+        }
+        keepAlive = HttpWire.isKeepAlive(statusLine, headers);
+        if (!HttpWire.hasBody(method, status)) {
+            body = new byte[0];
+            state = State.DONE;
+        } else if (HttpWire.isChunked(headers)) {
+            bodyStream = new PooledOutputStream(pool);
+            state = State.CHUNK_SIZE;
+        } else {
+            String contentLength = HttpWire.headerValue(headers, "Content-Length");
+            if (contentLength != null) {
+                long length = HttpWire.parseLength(contentLength);
+                if (length > Integer.MAX_VALUE) {
+                    throw new ProtocolException("Response body too large: " + length);
+                }
+                body = new byte[(int) length];
+                state = length == 0 ? State.DONE : State.BODY;
+            } else {
+                keepAlive = false;
+                bodyStream = new PooledOutputStream(pool);
+                state = State.BODY_TO_EOF;
+            }
+        }
+    }
+
+    private boolean readLine(ByteBuffer buf) {
+        while (buf.hasRemaining()) {
+            byte b = buf.get();
+            if (b == '\n') {
+                return true;
+            }
+            line.append((char) (b & 0xff));
+        }
+        return false;
+    }
+
+    private String takeLine() {
+        int len = line.length();
+        if (len > 0 && line.charAt(len - 1) == '\r') {
+            len--;
+        }
+        String value = line.substring(0, len);
+        line.setLength(0);
+        return value;
+    }
+
+    private void copy(ByteBuffer buf, int count) {
+        if (buf.hasArray()) {
+            bodyStream.write(buf.array(), buf.arrayOffset() + buf.position(), count);
+            buf.position(buf.position() + count);
+        } else {
+            byte[] tmp = pool.acquire(Math.min(count, RequestBody.COPY_BUFFER_SIZE));
+            try {
+                while (count > 0) {
+                    int n = Math.min(count, tmp.length);
+                    buf.get(tmp, 0, n);
+                    bodyStream.write(tmp, 0, n);
+                    count -= n;
+                }
+            } finally {
+                pool.release(tmp);
+            }
+        }
+    }
+}
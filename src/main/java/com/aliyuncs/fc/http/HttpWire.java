@@ -0,0 +1,527 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import com.google.common.base.Charsets;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Minimal HTTP/1.1 message codec used by the pooled transport.
+ */
+final class HttpWire {
+
+    private static final String CRLF = "\r\n";
+    private static final byte[] CRLF_BYTES = CRLF.getBytes(Charsets.ISO_8859_1);
+    static final byte[] LAST_CHUNK = ("0" + CRLF + CRLF).getBytes(Charsets.ISO_8859_1);
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(
+        Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS"));
+
+    private HttpWire() {
+    }
+
+    static void writeRequest(OutputStream out, String method, URL url,
+        Map<String, String> headers, RequestBody body, ByteArrayPool pool) throws IOException {
+        writeRequest(out, method, url, headers, body, pool, false);
+    }
+
+    /**
+     * @param absoluteForm whether to send the full URL as request target, as an HTTP
+     * proxy forwarding a plain http request expects
+     */
+    static void writeRequest(OutputStream out, String method, URL url,
+        Map<String, String> headers, RequestBody body, ByteArrayPool pool,
+        boolean absoluteForm) throws IOException {
+        long length = body == null ? 0 : body.getContentLength();
+        out.write(encodeHead(method, url, headers, length, absoluteForm));
+        if (length < 0) {
+            writeChunked(out, body, pool);
+        } else if (length > 0) {
+            body.writeTo(out, pool);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the body in chunks of what one read of it returns.
+     */
+    static void writeChunked(OutputStream out, RequestBody body, ByteArrayPool pool)
+        throws IOException {
+        ReadableByteChannel channel = body.open();
+        byte[] bytes = pool.acquire(RequestBody.COPY_BUFFER_SIZE);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, RequestBody.COPY_BUFFER_SIZE);
+            int read;
+            while ((read = channel.read(buffer)) >= 0) {
+                if (read > 0) {
+                    out.write(Integer.toHexString(read).getBytes(Charsets.ISO_8859_1));
+                    out.write(CRLF_BYTES);
+                    out.write(bytes, 0, read);
+                    out.write(CRLF_BYTES);
+                }
+                buffer.clear();
+            }
+            out.write(LAST_CHUNK);
+        } finally {
+            pool.release(bytes);
+            channel.close();
+        }
+    }
+
+    /**
+     * Encodes request line and headers, including Host and Content-Length, or
+     * Transfer-Encoding when the content length is -1.
+     * @throws IllegalArgumentException if a header contains CR, LF or a character
+     * outside ISO-8859-1
+     */
+    static byte[] encodeHead(String method, URL url, Map<String, String> headers,
+        long contentLength) {
+        return encodeHead(method, url, headers, contentLength, false);
+    }
+
+    static byte[] encodeHead(String method, URL url, Map<String, String> headers,
+        long contentLength, boolean absoluteForm) {
+        StringBuilder sb = new StringBuilder(512);
+        String target = url.getFile();
+        sb.append(method).append(' ');
+        if (absoluteForm) {
+            sb.append(url.getProtocol()).append("://").append(url.getAuthority());
+        }
+        sb.append(target.length() == 0 ? "/" : target).append(" HTTP/1.1").append(CRLF);
+        sb.append("Host: ").append(url.getHost());
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            sb.append(':').append(url.getPort());
+        }
+        sb.append(CRLF);
+        if (headers != null) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                String key = entry.getKey();
+                if ("Host".equalsIgnoreCase(key) || "Content-Length".equalsIgnoreCase(key)
+                    || "Connection".equalsIgnoreCase(key)
+                    || "Transfer-Encoding".equalsIgnoreCase(key)) {
+                    continue;
+                }
+                String value = entry.getValue();
+                checkHeader("name", key, key);
+                checkHeader("value", key, value);
+                sb.append(key).append(": ").append(value).append(CRLF);
+            }
+        }
+        if (contentLength < 0) {
+            sb.append("Transfer-Encoding: chunked").append(CRLF);
+        } else if (contentLength > 0 || "POST".equals(method) || "PUT".equals(method)) {
+            sb.append("Content-Length: ").append(contentLength).append(CRLF);
+        }
+        sb.append(CRLF);
+        return sb.toString().getBytes(Charsets.ISO_8859_1);
+    }
+
+    /**
+     * Rejects a header that would end its line early, and so smuggle a header or a
+     * whole request onto the connection, or that ISO-8859-1 cannot carry as signed.
+     */
+    private static void checkHeader(String part, String name, String text) {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\r' || c == '\n' || c > 0xff) {
+                throw new IllegalArgumentException(String.format(
+                    "Invalid character 0x%04x in the %s of header %s", (int) c, part, name));
+            }
+        }
+    }
+
+    /**
+     * Reads status, headers and body into the response. Bodies of unknown length are
+     * collected in arrays from the pool, and the content can be released to it.
+     *
+     * @return true if the connection can be reused for another request
+     */
+    static boolean readResponse(InputStream in, String method, HttpResponse response,
+        ByteArrayPool pool) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        boolean keepAlive = readHead(in, response, headers);
+        if (!hasBody(method, response.getStatus())) {
+            response.setContent(new byte[0]);
+            return keepAlive;
+        }
+        response.setContentPool(pool);
+        if (isChunked(headers)) {
+            response.setContent(readChunked(in, pool));
+            return keepAlive;
+        }
+        String contentLength = headerValue(headers, "Content-Length");
+        if (contentLength != null) {
+            response.setContent(readFixed(in, parseLength(contentLength)));
+            return keepAlive;
+        }
+        response.setContent(readToEnd(in, pool));
+        return false;
+    }
+
+    /**
+     * Reads status and headers into the response and returns a stream of the body,
+     * which ends where the body ends.
+     *
+     * @param headers receives the headers as sent
+     * @return the body, which reports whether the connection can be reused once it
+     * has been read to the end
+     */
+    static BodyInputStream readResponseHead(InputStream in, String method,
+        HttpResponse response, Map<String, String> headers) throws IOException {
+        boolean keepAlive = readHead(in, response, headers);
+        if (!hasBody(method, response.getStatus())) {
+            return new BodyInputStream(in, 0, false, keepAlive);
+        }
+        if (isChunked(headers)) {
+            return new BodyInputStream(in, 0, true, keepAlive);
+        }
+        String contentLength = headerValue(headers, "Content-Length");
+        if (contentLength != null) {
+            return new BodyInputStream(in, parseLength(contentLength), false, keepAlive);
+        }
+        return new BodyInputStream(in, -1, false, false);
+    }
+
+    /**
+     * @return true if the connection may stay open after the body
+     */
+    private static boolean readHead(InputStream in, HttpResponse response,
+        Map<String, String> headers) throws IOException {
+        String statusLine;
+        int status;
+        do {
+            statusLine = readLine(in);
+            if (statusLine == null) {
+                throw new EOFException("Connection closed before the response status line");
+            }
+            status = parseStatus(statusLine);
+            headers.clear();
+            readHeaders(in, headers);
+        } while (status >= 100 && status < 200);
+
+        response.setStatus(status);
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            response.putHeaderParameter(entry.getKey(), entry.getValue());
+        }
+        return isKeepAlive(statusLine, headers);
+    }
+
+    /**
+     * Asks an HTTP proxy for a tunnel to host:port. The response is read a byte at a
+     * time so that nothing sent through the tunnel afterwards is consumed.
+     */
+    static void openTunnel(OutputStream out, InputStream in, String host, int port)
+        throws IOException {
+        String authority = host + ":" + port;
+        out.write(("CONNECT " + authority + " HTTP/1.1" + CRLF + "Host: " + authority + CRLF
+            + CRLF).getBytes(Charsets.ISO_8859_1));
+        out.flush();
+        String statusLine = readLine(in);
+        if (statusLine == null) {
+            throw new EOFException("Proxy closed the connection before responding to CONNECT");
+        }
+        int status = parseStatus(statusLine);
+        String line;
+        while ((line = readLine(in)) != null && line.length() > 0) {
+        }
+        if (status / 100 != 2) {
+            throw new IOException("Proxy refused to tunnel to " + authority + ": " + statusLine);
+        }
+    }
+
+    static boolean isKeepAlive(String statusLine, Map<String, String> headers) {
+        String connection = headerValue(headers, "Connection");
+        if (connection != null) {
+            if ("close".equalsIgnoreCase(connection.trim())) {
+                return false;
+            } else if ("keep-alive".equalsIgnoreCase(connection.trim())) {
+                return true;
+            }
+        }
+        return !statusLine.startsWith("HTTP/1.0");
+    }
+
+    static boolean isIdempotent(String method) {
+        return IDEMPOTENT_METHODS.contains(method.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Whether a request that failed on a reused keep-alive connection before any
+     * response arrived may be sent again on a fresh one. The server may have closed
+     * the connection while it was idle, but once the whole request was written it
+     * may also have acted on it, so only idempotent methods are resent then; other
+     * failures are left to the client's retry policy.
+     * @param written whether the request was completely written
+     */
+    static boolean isResendable(String method, RequestBody body, boolean written) {
+        return (body == null || body.isRepeatable()) && (!written || isIdempotent(method));
+    }
+
+    static boolean hasBody(String method, int status) {
+        return !"HEAD".equals(method) && status != 204 && status != 304;
+    }
+
+    static boolean isChunked(Map<String, String> headers) {
+        String transferEncoding = headerValue(headers, "Transfer-Encoding");
+        return transferEncoding != null && transferEncoding.toLowerCase().contains("chunked");
+    }
+
+    static int parseStatus(String statusLine) throws IOException {
+        // HTTP/1.1 200 OK
+        int start = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || start < 0 || statusLine.length() < start + 4) {
+            throw new ProtocolException("Malformed status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(start + 1, start + 4));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Malformed status line: " + statusLine);
+        }
+    }
+
+    private static void readHeaders(InputStream in, Map<String, String> headers)
+        throws IOException {
+        String line;
+        while ((line = readLine(in)) != null && line.length() > 0) {
+            addHeader(headers, line);
+        }
+        if (line == null) {
+            throw new EOFException("Connection closed while reading response headers");
+        }
+    }
+
+    static void addHeader(Map<String, String> headers, String line) {
+        int colon = line.indexOf(':');
+        if (colon <= 0) {
+            return;
+        }
+        String key = line.substring(0, colon).trim();
+        String value = line.substring(colon + 1).trim();
+        String previous = headers.get(key);
+        headers.put(key, previous == null ? value : previous + "," + value);
+    }
+
+    static String headerValue(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    static long parseLength(String value) throws IOException {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Malformed Content-Length: " + value);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int len = sb.length();
+                if (len > 0 && sb.charAt(len - 1) == '\r') {
+                    sb.setLength(len - 1);
+                }
+                return sb.toString();
+            }
+            sb.append((char) b);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private static byte[] readFixed(InputStream in, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new ProtocolException("Response body too large: " + length);
+        }
+        byte[] buff = new byte[(int) length];
+        int offset = 0;
+        while (offset < buff.length) {
+            int read = in.read(buff, offset, buff.length - offset);
+            if (read == -1) {
+                throw new EOFException("Connection closed before the response body was complete");
+            }
+            offset += read;
+        }
+        return buff;
+    }
+
+    private static byte[] readChunked(InputStream in, ByteArrayPool pool) throws IOException {
+        PooledOutputStream outputStream = new PooledOutputStream(pool);
+        byte[] buff = pool.acquire(RequestBody.COPY_BUFFER_SIZE);
+        try {
+            while (true) {
+                long size = readChunkSize(in);
+                if (size == 0) {
+                    return outputStream.toByteArray();
+                }
+                while (size > 0) {
+                    int read = in.read(buff, 0, (int) Math.min(size, buff.length));
+                    if (read == -1) {
+                        throw new EOFException("Connection closed while reading a chunk");
+                    }
+                    outputStream.write(buff, 0, read);
+                    size -= read;
+                }
+                readLine(in);
+            }
+        } finally {
+            pool.release(buff);
+            outputStream.release();
+        }
+    }
+
+    /**
+     * Reads a chunk size line, and the trailers after the last chunk.
+     */
+    private static long readChunkSize(InputStream in) throws IOException {
+        String line = readLine(in);
+        if (line == null) {
+            throw new EOFException("Connection closed while reading a chunk");
+        }
+        int ext = line.indexOf(';');
+        long size;
+        try {
+            size = Long.parseLong((ext < 0 ? line : line.substring(0, ext)).trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Malformed chunk size: " + line);
+        }
+        if (size == 0) {
+            // Skip optional trailers
+            String trailer;
+            while ((trailer = readLine(in)) != null && trailer.length() > 0) {
+            }
+        }
+        return size;
+    }
+
+    private static byte[] readToEnd(InputStream in, ByteArrayPool pool) throws IOException {
+        PooledOutputStream outputStream = new PooledOutputStream(pool);
+        byte[] buff = pool.acquire(RequestBody.COPY_BUFFER_SIZE);
+        try {
+            int read;
+            while ((read = in.read(buff)) != -1) {
+                outputStream.write(buff, 0, read);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            pool.release(buff);
+            outputStream.release();
+        }
+    }
+
+    /**
+     * A response body read straight from the connection, ending where the body
+     * ends: after Content-Length bytes, after the last chunk, or at the end of the
+     * stream.
+     */
+    static final class BodyInputStream extends InputStream {
+
+        private final InputStream in;
+        private final boolean chunked;
+        private final boolean keepAlive;
+        // Bytes left of the body or of the current chunk, -1 to read until EOF
+        private long remaining;
+        private boolean done;
+
+        BodyInputStream(InputStream in, long length, boolean chunked, boolean keepAlive) {
+            this.in = in;
+            this.chunked = chunked;
+            this.keepAlive = keepAlive;
+            this.remaining = length;
+            this.done = length == 0 && !chunked;
+        }
+
+        /**
+         * @return true once the whole body has been read
+         */
+        boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return true if the connection can be reused after the whole body was read
+         */
+        boolean isKeepAlive() {
+            return keepAlive;
+        }
+
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (chunked && remaining == 0) {
+                remaining = readChunkSize(in);
+                if (remaining == 0) {
+                    done = true;
+                    return -1;
+                }
+            }
+            if (remaining < 0) {
+                int read = in.read(b, off, len);
+                done = read == -1;
+                return read;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("Connection closed before the response body was complete");
+            }
+            remaining -= read;
+            if (remaining == 0) {
+                if (chunked) {
+                    readLine(in);
+                } else {
+                    done = true;
+                }
+            }
+            return read;
+        }
+
+        public int available() throws IOException {
+            return done || remaining <= 0 ? 0 : (int) Math.min(in.available(), remaining);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+/**
+ * A non-blocking connection owned by one {@link NioTransport} I/O thread. For https
+ * routes the bytes pass through an {@link SSLEngine}; callers only see plain HTTP.
+ * Not thread safe.
+ */
+final class NioConnection {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    final String route;
+    final SocketChannel channel;
+    final long createdAt;
+    SelectionKey key;
+    NioTransport.Exchange exchange;
+    long lastUsedAt;
+    boolean connected;
+    boolean reused;
+
+    private final String host;
+    private final SSLEngine engine;
+    private final DirectBufferPool bufferPool;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+    private boolean handshakeDone;
+
+    NioConnection(String route, String host, SocketChannel channel, SSLEngine engine,
+        DirectBufferPool bufferPool) {
+        this.route = route;
+        this.host = host;
+        this.channel = channel;
+        this.engine = engine;
+        this.bufferPool = bufferPool;
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    /**
+     * Called once the TCP connection is established.
+     */
+    void beginHandshake() throws IOException {
+        connected = true;
+        if (engine == null) {
+            handshakeDone = true;
+            return;
+        }
+        int packetSize = engine.getSession().getPacketBufferSize();
+        netIn = bufferPool.acquire(packetSize);
+        netOut = bufferPool.acquire(packetSize);
+        appIn = bufferPool.acquire(engine.getSession().getApplicationBufferSize());
+        engine.beginHandshake();
+    }
+
+    /**
+     * Drives the TLS handshake as far as the socket allows.
+     *
+     * @return true once the handshake has finished and the peer has been verified
+     */
+    boolean handshake() throws IOException {
+        if (handshakeDone) {
+            return true;
+        }
+        if (!flush()) {
+            return false;
+        }
+        while (true) {
+            HandshakeStatus status = engine.getHandshakeStatus();
+            switch (status) {
+                case NEED_TASK:
+                    runTasks();
+                    break;
+                case NEED_WRAP:
+                    checkNotClosed(engine.wrap(EMPTY, netOut));
+                    if (!flush()) {
+                        return false;
+                    }
+                    break;
+                case FINISHED:
+                case NOT_HANDSHAKING:
+                    Hostnames.verify(host, engine.getSession());
+                    handshakeDone = true;
+                    return true;
+                default:
+                    if (!unwrapHandshake()) {
+                        return false;
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Selection interest while {@link #handshake()} is waiting on the socket.
+     */
+    int handshakeInterest() {
+        return netOut != null && netOut.position() > 0
+            ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+    }
+
+    /**
+     * Writes as much of {@code src} as the socket accepts.
+     *
+     * @return true when all of {@code src} has been handed to the socket
+     */
+    boolean write(ByteBuffer src) throws IOException {
+        if (engine == null) {
+            channel.write(src);
+            return !src.hasRemaining();
+        }
+        if (!flush()) {
+            return false;
+        }
+        while (src.hasRemaining()) {
+            checkNotClosed(engine.wrap(src, netOut));
+            if (!flush()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if bytes go to the socket as they are, without TLS
+     */
+    boolean isPlain() {
+        return engine == null;
+    }
+
+    /**
+     * Sends part of a file straight from the file system cache on a plain connection.
+     *
+     * @return the number of bytes the socket accepted
+     */
+    long transferFrom(FileChannel file, long position, long count) throws IOException {
+        return file.transferTo(position, count, channel);
+    }
+
+    /**
+     * Reads decrypted bytes into {@code dst}.
+     *
+     * @return the number of bytes read, 0 when nothing is available yet, or -1 at
+     * the end of the stream
+     */
+    int read(ByteBuffer dst) throws IOException {
+        if (engine == null) {
+            return channel.read(dst);
+        }
+        boolean eof = channel.read(netIn) < 0;
+        netIn.flip();
+        try {
+            while (netIn.hasRemaining()) {
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+                    runTasks();
+                }
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    eof = true;
+                    break;
+                }
+                if (result.getStatus() != SSLEngineResult.Status.OK) {
+                    break;
+                }
+                if (engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+                    engine.wrap(EMPTY, netOut);
+                    flush();
+                }
+                if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                    break;
+                }
+            }
+        } finally {
+            netIn.compact();
+        }
+        appIn.flip();
+        int count = Math.min(appIn.remaining(), dst.remaining());
+        if (count > 0) {
+            ByteBuffer slice = appIn.duplicate();
+            slice.limit(slice.position() + count);
+            dst.put(slice);
+            appIn.position(appIn.position() + count);
+        }
+        appIn.compact();
+        return count == 0 && eof ? -1 : count;
+    }
+
+    boolean isExpired(long now, long idleTimeoutMillis, long timeToLiveMillis) {
+        if (idleTimeoutMillis > 0 && now - lastUsedAt > idleTimeoutMillis) {
+            return true;
+        }
+        return timeToLiveMillis > 0 && now - createdAt > timeToLiveMillis;
+    }
+
+    void close() {
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+        }
+        bufferPool.release(netIn);
+        bufferPool.release(netOut);
+        bufferPool.release(appIn);
+        netIn = null;
+        netOut = null;
+        appIn = null;
+    }
+
+    private boolean unwrapHandshake() throws IOException {
+        netIn.flip();
+        SSLEngineResult result;
+        try {
+            result = engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+        checkNotClosed(result);
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+            throw new SSLException("Unexpected application data during TLS handshake");
+        }
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW
+            || result.bytesConsumed() == 0
+            && engine.getHandshakeStatus() == HandshakeStatus.NEED_UNWRAP) {
+            int read = channel.read(netIn);
+            if (read < 0) {
+                throw new EOFException("Connection closed during TLS handshake");
+            }
+            return read > 0;
+        }
+        return true;
+    }
+
+    private boolean flush() throws IOException {
+        if (netOut == null || netOut.position() == 0) {
+            return true;
+        }
+        netOut.flip();
+        try {
+            channel.write(netOut);
+            return !netOut.hasRemaining();
+        } finally {
+            netOut.compact();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private static void checkNotClosed(SSLEngineResult result) throws IOException {
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+            throw new EOFException("TLS session closed by peer");
+        }
+    }
+}
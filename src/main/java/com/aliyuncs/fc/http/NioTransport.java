@@ -0,0 +1,787 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+/**
+ * Non-blocking transport built on {@link Selector}s and using only the JDK. A small,
+ * fixed number of I/O threads multiplex all in-flight requests, so many concurrent
+ * calls need no thread each. Each I/O thread keeps its own keep-alive connections
+ * per endpoint and moves bytes through pooled direct buffers. https endpoints are
+ * served through an {@link SSLEngine} from the default {@link SSLContext}.
+ *
+ * Streamed request bodies are read on the I/O thread as the socket accepts them,
+ * so an InputStream body should not block for long. File bodies on http
+ * connections are sent with {@link FileChannel#transferTo}.
+ */
+public class NioTransport implements AsyncTransport {
+
+    private static final long SELECT_TIMEOUT_MILLIS = 100;
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+    // Eight hex digits and CRLF before the chunk data, CRLF after it
+    private static final int CHUNK_HEADER_SIZE = 10;
+    private static final int CHUNK_OVERHEAD = CHUNK_HEADER_SIZE + 2;
+
+    private final IoLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final DirectBufferPool bufferPool = new DirectBufferPool(BUFFER_SIZE,
+        MAX_POOLED_BUFFERS);
+    private final ByteArrayPool arrayPool;
+    private final long idleTimeoutMillis;
+    private final long timeToLiveMillis;
+    private volatile SSLContext sslContext;
+    private volatile boolean closed = false;
+
+    public NioTransport() throws IOException {
+        this(1, 60000, 0);
+    }
+
+    /**
+     * @param ioThreads number of selector threads
+     * @param idleTimeoutMillis how long an unused keep-alive connection is kept, 0 to
+     * keep it until the server closes it
+     * @param timeToLiveMillis maximum age of a connection, 0 for no limit
+     */
+    public NioTransport(int ioThreads, long idleTimeoutMillis, long timeToLiveMillis)
+        throws IOException {
+        this(ioThreads, idleTimeoutMillis, timeToLiveMillis, new ByteArrayPool());
+    }
+
+    /**
+     * @param ioThreads number of selector threads
+     * @param idleTimeoutMillis how long an unused keep-alive connection is kept, 0 to
+     * keep it until the server closes it
+     * @param timeToLiveMillis maximum age of a connection, 0 for no limit
+     * @param arrayPool the arrays response bodies of unknown length are collected in
+     */
+    public NioTransport(int ioThreads, long idleTimeoutMillis, long timeToLiveMillis,
+        ByteArrayPool arrayPool) throws IOException {
+        Preconditions.checkArgument(ioThreads > 0, "ioThreads must be positive");
+        Preconditions.checkArgument(arrayPool != null, "arrayPool cannot be null");
+        this.arrayPool = arrayPool;
+        Preconditions.checkArgument(idleTimeoutMillis >= 0,
+            "idleTimeoutMillis cannot be negative");
+        Preconditions.checkArgument(timeToLiveMillis >= 0, "timeToLiveMillis cannot be negative");
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.loops = new IoLoop[ioThreads];
+        try {
+            for (int i = 0; i < ioThreads; i++) {
+                loops[i] = new IoLoop("fc-nio-transport-" + i);
+            }
+        } catch (IOException e) {
+            for (IoLoop loop : loops) {
+                if (loop != null) {
+                    loop.selector.close();
+                }
+            }
+            throw e;
+        }
+        for (IoLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    public ListenableFuture<HttpResponse> executeAsync(TransportRequest request) {
+        SettableFuture<HttpResponse> future = SettableFuture.create();
+        try {
+            URL url = new URL(request.getUrl());
+            String protocol = url.getProtocol().toLowerCase(Locale.ENGLISH);
+            boolean https = "https".equals(protocol);
+            if (!https && !"http".equals(protocol)) {
+                throw new IOException("NioTransport does not support " + url.getProtocol());
+            }
+            int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+            long mark = System.nanoTime();
+            InetSocketAddress address = new InetSocketAddress(url.getHost(), port);
+            request.getTiming().mark(RequestTiming.Phase.DNS, mark);
+            if (address.isUnresolved()) {
+                throw new UnknownHostException(url.getHost());
+            }
+            RequestBody body = request.getBody();
+            byte[] head = HttpWire.encodeHead(request.getMethod(), url, request.getHeaders(),
+                body == null ? 0 : body.getContentLength());
+            Exchange exchange = new Exchange(request, protocol + "://"
+                + url.getHost().toLowerCase(Locale.ENGLISH) + ":" + port, url.getHost(),
+                https, address, head, body, arrayPool, future);
+            if (closed) {
+                throw new IOException("Transport has been closed");
+            }
+            int index = (nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length;
+            loops[index].submit(exchange);
+        } catch (IOException e) {
+            future.setException(e);
+        } catch (IllegalArgumentException e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
+    public HttpResponse execute(TransportRequest request) throws IOException {
+        try {
+            return executeAsync(request).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Number of keep-alive connections currently waiting for reuse, across all I/O
+     * threads.
+     */
+    public int getIdleCount() {
+        int count = 0;
+        for (IoLoop loop : loops) {
+            count += loop.idleCount;
+        }
+        return count;
+    }
+
+    /**
+     * Stops the I/O threads. Requests still in flight fail with an IOException.
+     */
+    public void close() throws IOException {
+        closed = true;
+        for (IoLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        try {
+            for (IoLoop loop : loops) {
+                loop.thread.join(SELECT_TIMEOUT_MILLIS * 10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private SSLEngine createEngine(String host, int port) throws IOException {
+        SSLContext context = sslContext;
+        if (context == null) {
+            try {
+                context = SSLContext.getDefault();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            sslContext = context;
+        }
+        SSLEngine engine = context.createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        return engine;
+    }
+
+    /**
+     * One selector thread with the exchanges and idle connections it owns. Apart
+     * from {@link #submit(Exchange)} everything runs on {@link #thread}.
+     */
+    private final class IoLoop implements Runnable {
+
+        final Selector selector;
+        final Thread thread;
+        final Queue<Exchange> pending = new ConcurrentLinkedQueue<Exchange>();
+        final Set<Exchange> active = new HashSet<Exchange>();
+        final Map<String, ArrayDeque<NioConnection>> idle =
+            new HashMap<String, ArrayDeque<NioConnection>>();
+        volatile int idleCount;
+        ByteBuffer readBuffer;
+        long lastEviction;
+
+        IoLoop(String name) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        void submit(Exchange exchange) {
+            pending.add(exchange);
+            selector.wakeup();
+            if (closed) {
+                // The loop may have drained the queue on its way out before the exchange
+                // was added
+                failPending(new IOException("Transport has been closed"));
+            }
+        }
+
+        private void failPending(IOException e) {
+            Exchange exchange;
+            while ((exchange = pending.poll()) != null) {
+                exchange.future.setException(e);
+            }
+        }
+
+        public void run() {
+            readBuffer = bufferPool.acquire(BUFFER_SIZE);
+            try {
+                while (!closed) {
+                    selector.select(SELECT_TIMEOUT_MILLIS);
+                    long now = System.currentTimeMillis();
+                    Exchange exchange;
+                    while ((exchange = pending.poll()) != null) {
+                        active.add(exchange);
+                        try {
+                            start(exchange, now);
+                        } catch (RuntimeException e) {
+                            fail(exchange, e);
+                        }
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        try {
+                            process(connection, key, now);
+                        } catch (RuntimeException e) {
+                            // A cancelled key, an SSLEngine error or a failing body
+                            // stream ends this exchange only, not the loop
+                            failConnection(connection, e);
+                        }
+                    }
+                    expire(now);
+                }
+            } catch (IOException e) {
+                // Selector failure, fail everything below
+            } catch (ClosedSelectorException e) {
+            } finally {
+                closed = true;
+                IOException closedException = new IOException("Transport has been closed");
+                for (Exchange exchange : new ArrayList<Exchange>(active)) {
+                    fail(exchange, closedException);
+                }
+                failPending(closedException);
+                for (ArrayDeque<NioConnection> connections : idle.values()) {
+                    for (NioConnection connection : connections) {
+                        connection.close();
+                    }
+                }
+                idle.clear();
+                idleCount = 0;
+                bufferPool.release(readBuffer);
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+
+        private void start(Exchange exchange, long now) {
+            NioConnection connection = exchange.retried ? null : takeIdle(exchange.route, now);
+            exchange.mark(RequestTiming.Phase.CONNECTION_ACQUIRE);
+            exchange.timing.setConnectionReused(connection != null);
+            try {
+                if (connection == null) {
+                    SSLEngine engine = exchange.https
+                        ? createEngine(exchange.host, exchange.address.getPort()) : null;
+                    SocketChannel channel = SocketChannel.open();
+                    connection = new NioConnection(exchange.route, exchange.host, channel,
+                        engine, bufferPool);
+                    attach(connection, exchange);
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    exchange.setDeadline(now, exchange.request.getConnectTimeoutMillis());
+                    if (channel.connect(exchange.address)) {
+                        exchange.mark(RequestTiming.Phase.CONNECT);
+                        connection.beginHandshake();
+                        connection.key = channel.register(selector, SelectionKey.OP_WRITE,
+                            connection);
+                        exchange.setDeadline(now, exchange.request.getReadTimeoutMillis());
+                    } else {
+                        connection.key = channel.register(selector, SelectionKey.OP_CONNECT,
+                            connection);
+                    }
+                } else {
+                    attach(connection, exchange);
+                    connection.key.interestOps(SelectionKey.OP_WRITE);
+                    exchange.setDeadline(now, exchange.request.getReadTimeoutMillis());
+                }
+            } catch (IOException e) {
+                failOrRetry(exchange, e, now);
+            }
+        }
+
+        private void attach(NioConnection connection, Exchange exchange) {
+            connection.exchange = exchange;
+            exchange.connection = connection;
+        }
+
+        private void process(NioConnection connection, SelectionKey key, long now) {
+            Exchange exchange = connection.exchange;
+            if (exchange == null) {
+                // An idle connection only becomes ready when the server closed it
+                removeIdle(connection);
+                connection.close();
+                return;
+            }
+            try {
+                if (!connection.connected) {
+                    if (!connection.channel.finishConnect()) {
+                        return;
+                    }
+                    exchange.mark(RequestTiming.Phase.CONNECT);
+                    connection.beginHandshake();
+                    exchange.setDeadline(now, exchange.request.getReadTimeoutMillis());
+                }
+                if (!connection.handshake()) {
+                    key.interestOps(connection.handshakeInterest());
+                    exchange.setDeadline(now, exchange.request.getReadTimeoutMillis());
+                    return;
+                }
+                if (!exchange.written) {
+                    if (exchange.out == null && !connection.reused && !connection.isPlain()) {
+                        exchange.mark(RequestTiming.Phase.TLS);
+                    }
+                    if (!writeRequest(connection, exchange)) {
+                        key.interestOps(SelectionKey.OP_WRITE);
+                        exchange.setDeadline(now, exchange.request.getReadTimeoutMillis());
+                        return;
+                    }
+                    exchange.mark(RequestTiming.Phase.WRITE);
+                    key.interestOps(SelectionKey.OP_READ);
+                    exchange.setDeadline(now, exchange.request.getReadTimeoutMillis());
+                    return;
+                }
+                if (key.isReadable()) {
+                    readResponse(connection, exchange, now);
+                }
+            } catch (IOException e) {
+                failOrRetry(exchange, e, now);
+            }
+        }
+
+        private boolean writeRequest(NioConnection connection, Exchange exchange)
+            throws IOException {
+            if (exchange.out == null) {
+                exchange.out = bufferPool.acquire(BUFFER_SIZE);
+                exchange.out.flip();
+            }
+            ByteBuffer out = exchange.out;
+            while (true) {
+                if (!out.hasRemaining()) {
+                    out.clear();
+                    exchange.fill(out, connection);
+                    out.flip();
+                    if (!out.hasRemaining()) {
+                        break;
+                    }
+                }
+                if (!connection.write(out)) {
+                    return false;
+                }
+            }
+            if (!exchange.transferFile(connection)) {
+                return false;
+            }
+            exchange.closeBody();
+            exchange.written = true;
+            bufferPool.release(out);
+            exchange.out = null;
+            return true;
+        }
+
+        private void readResponse(NioConnection connection, Exchange exchange, long now)
+            throws IOException {
+            while (true) {
+                readBuffer.clear();
+                int read = connection.read(readBuffer);
+                if (read < 0) {
+                    if (exchange.parser.finish()) {
+                        complete(exchange, false, now);
+                    }
+                    return;
+                }
+                if (read == 0) {
+                    break;
+                }
+                readBuffer.flip();
+                if (!exchange.parser.isStarted()) {
+                    exchange.mark(RequestTiming.Phase.TIME_TO_FIRST_BYTE);
+                }
+                if (exchange.parser.feed(readBuffer)) {
+                    complete(exchange,
+                        exchange.parser.isKeepAlive() && !readBuffer.hasRemaining(), now);
+                    return;
+                }
+            }
+            exchange.setDeadline(now, exchange.request.getReadTimeoutMillis());
+        }
+
+        private void expire(long now) {
+            List<Exchange> expired = null;
+            for (Exchange exchange : active) {
+                if (exchange.deadline > 0 && now > exchange.deadline) {
+                    if (expired == null) {
+                        expired = new ArrayList<Exchange>();
+                    }
+                    expired.add(exchange);
+                }
+            }
+            if (expired != null) {
+                for (Exchange exchange : expired) {
+                    fail(exchange, new SocketTimeoutException(exchange.connection != null
+                        && !exchange.connection.connected ? "connect timed out"
+                        : "Read timed out"));
+                }
+            }
+            if (now - lastEviction < 1000) {
+                return;
+            }
+            lastEviction = now;
+            Iterator<ArrayDeque<NioConnection>> routes = idle.values().iterator();
+            while (routes.hasNext()) {
+                ArrayDeque<NioConnection> connections = routes.next();
+                Iterator<NioConnection> it = connections.iterator();
+                while (it.hasNext()) {
+                    NioConnection connection = it.next();
+                    if (connection.isExpired(now, idleTimeoutMillis, timeToLiveMillis)) {
+                        it.remove();
+                        idleCount--;
+                        connection.close();
+                    }
+                }
+                if (connections.isEmpty()) {
+                    routes.remove();
+                }
+            }
+        }
+
+        private NioConnection takeIdle(String route, long now) {
+            ArrayDeque<NioConnection> connections = idle.get(route);
+            if (connections == null) {
+                return null;
+            }
+            NioConnection connection;
+            while ((connection = connections.pollFirst()) != null) {
+                idleCount--;
+                if (connection.key.isValid()
+                    && !connection.isExpired(now, idleTimeoutMillis, timeToLiveMillis)) {
+                    connection.reused = true;
+                    return connection;
+                }
+                connection.close();
+            }
+            return null;
+        }
+
+        private void removeIdle(NioConnection connection) {
+            ArrayDeque<NioConnection> connections = idle.get(connection.route);
+            if (connections != null && connections.remove(connection)) {
+                idleCount--;
+            }
+        }
+
+        private void complete(Exchange exchange, boolean reusable, long now) {
+            exchange.mark(RequestTiming.Phase.BODY_READ);
+            active.remove(exchange);
+            NioConnection connection = exchange.connection;
+            connection.exchange = null;
+            exchange.connection = null;
+            if (reusable && !closed) {
+                connection.lastUsedAt = now;
+                connection.key.interestOps(SelectionKey.OP_READ);
+                ArrayDeque<NioConnection> connections = idle.get(connection.route);
+                if (connections == null) {
+                    connections = new ArrayDeque<NioConnection>();
+                    idle.put(connection.route, connections);
+                }
+                connections.addFirst(connection);
+                idleCount++;
+            } else {
+                connection.close();
+            }
+            exchange.future.set(exchange.parser.getResponse());
+        }
+
+        /**
+         * A keep-alive connection may have been closed by the server while idle. If
+         * that shows up before any of the response arrived, the request is sent once
+         * more on a fresh connection, provided it was not completely written or is
+         * idempotent: a request the server received in full may have been acted on.
+         */
+        private void failOrRetry(Exchange exchange, IOException e, long now) {
+            NioConnection connection = exchange.connection;
+            if (connection != null && connection.reused && !exchange.retried
+                && !exchange.parser.isStarted() && !(e instanceof SocketTimeoutException)
+                && exchange.isRepeatable()
+                && (!exchange.written || HttpWire.isIdempotent(exchange.request.getMethod()))) {
+                connection.exchange = null;
+                connection.close();
+                bufferPool.release(exchange.out);
+                exchange.out = null;
+                exchange.reset();
+                start(exchange, now);
+                return;
+            }
+            fail(exchange, e);
+        }
+
+        private void failConnection(NioConnection connection, Exception e) {
+            Exchange exchange = connection.exchange;
+            if (exchange != null) {
+                fail(exchange, e);
+            } else {
+                removeIdle(connection);
+                connection.close();
+            }
+        }
+
+        private void fail(Exchange exchange, Exception e) {
+            active.remove(exchange);
+            if (exchange.connection != null) {
+                exchange.connection.exchange = null;
+                exchange.connection.close();
+                exchange.connection = null;
+            }
+            bufferPool.release(exchange.out);
+            exchange.out = null;
+            exchange.closeBody();
+            exchange.parser.discard();
+            exchange.future.setException(e);
+        }
+    }
+
+    /**
+     * One request and its response, attached to a connection while in flight.
+     */
+    static final class Exchange {
+
+        final TransportRequest request;
+        final String route;
+        final String host;
+        final boolean https;
+        final InetSocketAddress address;
+        final SettableFuture<HttpResponse> future;
+        final RequestTiming timing;
+        private final byte[] head;
+        private final RequestBody body;
+        private final ByteArrayPool arrayPool;
+        private int headOffset;
+        private ReadableByteChannel source;
+        private long bodyOffset;
+        private boolean bodyDone;
+        HttpResponseParser parser;
+        NioConnection connection;
+        ByteBuffer out;
+        boolean written;
+        boolean retried;
+        long deadline;
+        private long mark;
+
+        Exchange(TransportRequest request, String route, String host, boolean https,
+            InetSocketAddress address, byte[] head, RequestBody body, ByteArrayPool arrayPool,
+            SettableFuture<HttpResponse> future) {
+            this.request = request;
+            this.route = route;
+            this.host = host;
+            this.https = https;
+            this.address = address;
+            this.head = head;
+            this.body = body;
+            this.bodyDone = body == null || body.getContentLength() == 0;
+            this.arrayPool = arrayPool;
+            this.future = future;
+            this.parser = new HttpResponseParser(request.getMethod(), arrayPool);
+            this.timing = request.getTiming();
+            this.mark = System.nanoTime();
+        }
+
+        /**
+         * Ends a phase of the exchange, the next one starts now.
+         */
+        void mark(RequestTiming.Phase phase) {
+            mark = timing.mark(phase, mark);
+        }
+
+        boolean isRepeatable() {
+            return body == null || body.isRepeatable();
+        }
+
+        /**
+         * Copies the next part of the request into {@code dst}, leaving out a file
+         * body that {@link #transferFile(NioConnection)} hands to the socket directly.
+         */
+        void fill(ByteBuffer dst, NioConnection connection) throws IOException {
+            int count = Math.min(dst.remaining(), head.length - headOffset);
+            dst.put(head, headOffset, count);
+            headOffset += count;
+            if (headOffset < head.length || bodyDone || isZeroCopy(connection)) {
+                return;
+            }
+            if (source == null) {
+                source = body.open();
+            }
+            if (body.getContentLength() >= 0) {
+                // Never send more than the declared length
+                int limit = dst.limit();
+                long left = body.getContentLength() - bodyOffset;
+                if (left < dst.remaining()) {
+                    dst.limit(dst.position() + (int) left);
+                }
+                int read;
+                try {
+                    read = source.read(dst);
+                } finally {
+                    dst.limit(limit);
+                }
+                if (read < 0) {
+                    body.checkLength(bodyOffset);
+                } else {
+                    bodyOffset += read;
+                    bodyDone = bodyOffset == body.getContentLength();
+                }
+            } else {
+                fillChunk(dst);
+            }
+        }
+
+        /**
+         * Frames what fits of the next read as one chunk, with a fixed width size so
+         * that the room for it is known before reading.
+         */
+        private void fillChunk(ByteBuffer dst) throws IOException {
+            int start = dst.position();
+            int room = dst.remaining() - CHUNK_OVERHEAD - HttpWire.LAST_CHUNK.length;
+            if (room <= 0) {
+                return;
+            }
+            ByteBuffer data = dst.duplicate();
+            data.position(start + CHUNK_HEADER_SIZE);
+            data.limit(data.position() + room);
+            int read = source.read(data);
+            if (read < 0) {
+                dst.put(HttpWire.LAST_CHUNK);
+                bodyDone = true;
+            } else if (read > 0) {
+                String size = Integer.toHexString(read);
+                for (int i = size.length(); i < CHUNK_HEADER_SIZE - 2; i++) {
+                    dst.put((byte) '0');
+                }
+                for (int i = 0; i < size.length(); i++) {
+                    dst.put((byte) size.charAt(i));
+                }
+                dst.put((byte) '\r').put((byte) '\n');
+                dst.position(dst.position() + read);
+                dst.put((byte) '\r').put((byte) '\n');
+            }
+        }
+
+        private boolean isZeroCopy(NioConnection connection) {
+            return body.getFile() != null && connection.isPlain();
+        }
+
+        /**
+         * Hands a file body to a plain connection without copying it through memory.
+         *
+         * @return true when nothing of the body is left to send
+         */
+        boolean transferFile(NioConnection connection) throws IOException {
+            if (bodyDone || !isZeroCopy(connection)) {
+                return true;
+            }
+            if (source == null) {
+                source = body.open();
+            }
+            FileChannel file = (FileChannel) source;
+            long length = body.getContentLength();
+            while (bodyOffset < length) {
+                long count = connection.transferFrom(file, bodyOffset, length - bodyOffset);
+                if (count == 0) {
+                    if (bodyOffset >= file.size()) {
+                        body.checkLength(bodyOffset);
+                    }
+                    return false;
+                }
+                bodyOffset += count;
+            }
+            bodyDone = true;
+            return true;
+        }
+
+        void closeBody() {
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                }
+                source = null;
+            }
+        }
+
+        /**
+         * Prepares the exchange to be sent again on another connection.
+         */
+        void reset() {
+            retried = true;
+            written = false;
+            headOffset = 0;
+            closeBody();
+            bodyOffset = 0;
+            bodyDone = body == null || body.getContentLength() == 0;
+            parser.discard();
+            parser = new HttpResponseParser(request.getMethod(), arrayPool);
+            connection = null;
+        }
+
+        void setDeadline(long now, int timeoutMillis) {
+            this.deadline = timeoutMillis > 0 ? now + timeoutMillis : 0;
+        }
+    }
+}
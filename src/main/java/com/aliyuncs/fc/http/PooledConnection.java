@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * A single keep-alive socket owned by a {@link ConnectionPool}. Instances are
+ * handed to one request at a time and returned to the pool once the response
+ * body has been fully consumed.
+ */
+class PooledConnection {
+
+    private final String route;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final boolean forwarding;
+    private final long createdAt;
+    private long lastUsedAt;
+    private boolean reused;
+
+    PooledConnection(String route, Socket socket) throws IOException {
+        this(route, socket, false);
+    }
+
+    /**
+     * @param forwarding whether the socket goes to an HTTP proxy that forwards each
+     * request, rather than to the endpoint or through a tunnel
+     */
+    PooledConnection(String route, Socket socket, boolean forwarding) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.forwarding = forwarding;
+        this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    String getRoute() {
+        return route;
+    }
+
+    InputStream getInputStream() {
+        return in;
+    }
+
+    OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * Blocks until the first byte of the response has arrived, or the server has
+     * closed the connection, without consuming anything.
+     */
+    void awaitResponse() throws IOException {
+        in.mark(1);
+        if (in.read() != -1) {
+            in.reset();
+        }
+    }
+
+    /**
+     * @return whether requests must carry the full URL for the proxy to forward them
+     */
+    boolean isForwarding() {
+        return forwarding;
+    }
+
+    /**
+     * Checks whether the server closed this connection while it was idle. A read that
+     * times out after a millisecond means the connection is still open; the end of
+     * the stream, an error, or data nobody asked for mean it cannot be used.
+     */
+    boolean isStale() {
+        try {
+            int readTimeout = socket.getSoTimeout();
+            socket.setSoTimeout(1);
+            try {
+                in.mark(1);
+                int b = in.read();
+                if (b != -1) {
+                    in.reset();
+                }
+                return true;
+            } catch (SocketTimeoutException e) {
+                return false;
+            } finally {
+                socket.setSoTimeout(readTimeout);
+            }
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    void setReadTimeout(int readTimeoutMillis) throws IOException {
+        socket.setSoTimeout(readTimeoutMillis);
+    }
+
+    /**
+     * @return true if this connection has already served at least one request,
+     * in which case the server may have closed it while it was idle
+     */
+    boolean isReused() {
+        return reused;
+    }
+
+    void markReleased() {
+        this.lastUsedAt = System.currentTimeMillis();
+        this.reused = true;
+    }
+
+    boolean isExpired(long now, long idleTimeoutMillis, long timeToLiveMillis) {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return true;
+        }
+        if (idleTimeoutMillis > 0 && now - lastUsedAt > idleTimeoutMillis) {
+            return true;
+        }
+        return timeToLiveMillis > 0 && now - createdAt > timeToLiveMillis;
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+        }
+    }
+}
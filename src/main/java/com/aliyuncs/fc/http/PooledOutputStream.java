@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects bytes of unknown total length in arrays taken from a {@link ByteArrayPool}.
+ * Unlike a ByteArrayOutputStream it never copies what it has already collected;
+ * {@link #toByteArray()} copies once into an array of the exact size and gives the
+ * segments back to the pool.
+ */
+final class PooledOutputStream extends OutputStream {
+
+    private static final int FIRST_SEGMENT_SIZE = 8192;
+
+    private final ByteArrayPool pool;
+    private final List<byte[]> segments = new ArrayList<byte[]>(4);
+    private byte[] current;
+    private int position;
+    private int size;
+
+    PooledOutputStream(ByteArrayPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureSpace();
+        current[position++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            ensureSpace();
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(b, off, current, position, count);
+            position += count;
+            off += count;
+            len -= count;
+            size += count;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the collected bytes and releases the segments; the stream is empty
+     * afterwards.
+     */
+    byte[] toByteArray() {
+        byte[] result = new byte[size];
+        int offset = 0;
+        for (byte[] segment : segments) {
+            int count = Math.min(segment.length, size - offset);
+            System.arraycopy(segment, 0, result, offset, count);
+            offset += count;
+        }
+        release();
+        return result;
+    }
+
+    /**
+     * Gives the segments back to the pool without copying them.
+     */
+    void release() {
+        for (byte[] segment : segments) {
+            pool.release(segment);
+        }
+        segments.clear();
+        current = null;
+        position = 0;
+        size = 0;
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    private void ensureSpace() {
+        if (current != null && position < current.length) {
+            return;
+        }
+        // Each segment doubles the capacity, up to the largest pooled size
+        int next = current == null ? FIRST_SEGMENT_SIZE
+            : Math.min(current.length * 2, ByteArrayPool.MAX_SIZE);
+        current = pool.acquire(next);
+        segments.add(current);
+        position = 0;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import com.google.common.base.Preconditions;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+
+/**
+ * Transport that keeps connections open between requests, see {@link ConnectionPool}.
+ * This is the transport DefaultFcClient uses unless another one is supplied.
+ */
+public class PooledTransport implements StreamingTransport {
+
+    private final ConnectionPool pool;
+    private final ByteArrayPool bufferPool;
+
+    public PooledTransport(ConnectionPool pool) {
+        this(pool, new ByteArrayPool());
+    }
+
+    /**
+     * @param bufferPool the arrays requests are written and responses read through
+     */
+    public PooledTransport(ConnectionPool pool, ByteArrayPool bufferPool) {
+        Preconditions.checkArgument(pool != null, "Connection pool cannot be null");
+        Preconditions.checkArgument(bufferPool != null, "Buffer pool cannot be null");
+        this.pool = pool;
+        this.bufferPool = bufferPool;
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    public ByteArrayPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public HttpResponse execute(TransportRequest request) throws IOException {
+        URL url = new URL(request.getUrl());
+        RequestTiming timing = request.getTiming();
+        while (true) {
+            PooledConnection conn = pool.acquire(url, request.getConnectTimeoutMillis(), timing);
+            HttpResponse response = new HttpResponse();
+            boolean reusable = false;
+            boolean written = false;
+            try {
+                long mark = System.nanoTime();
+                conn.setReadTimeout(request.getReadTimeoutMillis());
+                HttpWire.writeRequest(conn.getOutputStream(), request.getMethod(), url,
+                    request.getHeaders(), request.getBody(), bufferPool, conn.isForwarding());
+                written = true;
+                mark = timing.mark(RequestTiming.Phase.WRITE, mark);
+                conn.awaitResponse();
+                mark = timing.mark(RequestTiming.Phase.TIME_TO_FIRST_BYTE, mark);
+                reusable = HttpWire.readResponse(conn.getInputStream(), request.getMethod(),
+                    response, bufferPool);
+                timing.mark(RequestTiming.Phase.BODY_READ, mark);
+                return response;
+            } catch (SocketTimeoutException e) {
+                throw e;
+            } catch (IOException e) {
+                // The server may close an idle keep-alive connection at any time, retry
+                // on another connection if nothing has been received on this one and
+                // the request can safely be sent again
+                if (!conn.isReused() || response.getStatus() != 0
+                    || !HttpWire.isResendable(request.getMethod(), request.getBody(), written)) {
+                    throw e;
+                }
+            } finally {
+                pool.release(conn, reusable);
+            }
+        }
+    }
+
+    /**
+     * Sends the request and returns once the response headers have arrived. The
+     * connection goes back to the pool as soon as the body has been read to the end,
+     * and is closed if the content stream is closed before that.
+     */
+    public HttpResponse executeStreaming(TransportRequest request) throws IOException {
+        URL url = new URL(request.getUrl());
+        RequestTiming timing = request.getTiming();
+        while (true) {
+            PooledConnection conn = pool.acquire(url, request.getConnectTimeoutMillis(), timing);
+            HttpResponse response = new HttpResponse();
+            boolean written = false;
+            boolean handedOff = false;
+            try {
+                long mark = System.nanoTime();
+                conn.setReadTimeout(request.getReadTimeoutMillis());
+                HttpWire.writeRequest(conn.getOutputStream(), request.getMethod(), url,
+                    request.getHeaders(), request.getBody(), bufferPool, conn.isForwarding());
+                written = true;
+                mark = timing.mark(RequestTiming.Phase.WRITE, mark);
+                conn.awaitResponse();
+                timing.mark(RequestTiming.Phase.TIME_TO_FIRST_BYTE, mark);
+                HttpWire.BodyInputStream body = HttpWire.readResponseHead(conn.getInputStream(),
+                    request.getMethod(), response, new LinkedHashMap<String, String>());
+                response.setContentStream(new ResponseStream(conn, body));
+                // From here on the content stream gives the connection back
+                handedOff = true;
+                return response;
+            } catch (SocketTimeoutException e) {
+                throw e;
+            } catch (IOException e) {
+                if (!conn.isReused() || response.getStatus() != 0
+                    || !HttpWire.isResendable(request.getMethod(), request.getBody(), written)) {
+                    throw e;
+                }
+            } finally {
+                if (!handedOff) {
+                    pool.release(conn, false);
+                }
+            }
+        }
+    }
+
+    public void close() {
+        pool.close();
+    }
+
+    /**
+     * Reads a streamed body and gives the connection back once done with it.
+     */
+    private final class ResponseStream extends FilterInputStream {
+
+        private final PooledConnection conn;
+        private final HttpWire.BodyInputStream body;
+        private boolean released;
+
+        ResponseStream(PooledConnection conn, HttpWire.BodyInputStream body) {
+            super(body);
+            this.conn = conn;
+            this.body = body;
+        }
+
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (released) {
+                if (body.isDone()) {
+                    return -1;
+                }
+                throw new IOException("Response body has been closed");
+            }
+            int read;
+            try {
+                read = body.read(b, off, len);
+            } catch (IOException e) {
+                release(false);
+                throw e;
+            }
+            if (body.isDone()) {
+                release(body.isKeepAlive());
+            }
+            return read;
+        }
+
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return read < 0 ? 0 : read;
+        }
+
+        public void close() {
+            // A body left unread would be taken for the next response, so the
+            // connection is only reused once the body has been read to the end
+            release(body.isDone() && body.isKeepAlive());
+        }
+
+        private void release(boolean reusable) {
+            if (!released) {
+                released = true;
+                pool.release(conn, reusable);
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import com.aliyuncs.fc.utils.Base64Helper;
+import com.google.common.base.Preconditions;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The body of a request, read by the {@link Transport} while it is sent instead of
+ * being held in one byte array. A body of known length goes out with a
+ * Content-Length, one of unknown length with chunked transfer encoding.
+ *
+ * Bodies made from bytes, a ByteBuffer or a File are repeatable, so a failed
+ * request can be retried. A body made from an InputStream can be sent only once.
+ */
+public abstract class RequestBody {
+
+    static final int COPY_BUFFER_SIZE = 8192;
+
+    RequestBody() {
+    }
+
+    public static RequestBody create(byte[] bytes) {
+        Preconditions.checkArgument(bytes != null, "Bytes cannot be null");
+        return new BytesBody(bytes);
+    }
+
+    /**
+     * A body with the remaining bytes of the buffer, which may be direct. The
+     * buffer's position and limit are not changed, nor should its content be until
+     * the request completes.
+     */
+    public static RequestBody create(ByteBuffer buffer) {
+        Preconditions.checkArgument(buffer != null, "Buffer cannot be null");
+        return new BufferBody(buffer.slice());
+    }
+
+    /**
+     * A body with the content of the file, whose length must not change until the
+     * request completes. Non-blocking transports hand the file to the socket
+     * without copying it through the heap where the connection allows.
+     */
+    public static RequestBody create(File file) {
+        Preconditions.checkArgument(file != null, "File cannot be null");
+        Preconditions.checkArgument(file.isFile(), "File " + file + " does not exist");
+        return new FileBody(file);
+    }
+
+    /**
+     * A body read from the stream, which is closed once sent.
+     * @param contentLength the number of bytes the stream holds, or -1 if unknown
+     */
+    public static RequestBody create(InputStream in, long contentLength) {
+        Preconditions.checkArgument(in != null, "Input stream cannot be null");
+        Preconditions.checkArgument(contentLength >= -1, "Content length cannot be negative");
+        return new StreamBody(in, contentLength);
+    }
+
+    /**
+     * @return the length in bytes, or -1 if unknown
+     */
+    public abstract long getContentLength();
+
+    /**
+     * @return true if {@link #open()} can be called more than once
+     */
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * Opens the content from its start. The caller closes the channel.
+     */
+    public abstract ReadableByteChannel open() throws IOException;
+
+    /**
+     * The Base64 MD5 digest of the content for the Content-MD5 header, computed in
+     * one pass over the content without buffering it.
+     * @return the digest, or null for a body that can be read only once
+     */
+    public String contentMd5() throws IOException {
+        if (!isRepeatable()) {
+            return null;
+        }
+        MessageDigest md5 = newMd5();
+        ReadableByteChannel channel = open();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                md5.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            channel.close();
+        }
+        return Base64Helper.encode(md5.digest());
+    }
+
+    /**
+     * Writes the whole content to the stream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        copy(out, new byte[COPY_BUFFER_SIZE]);
+    }
+
+    /**
+     * Writes the whole content to the stream through a scratch array from the pool.
+     */
+    void writeTo(OutputStream out, ByteArrayPool pool) throws IOException {
+        byte[] bytes = pool.acquire(COPY_BUFFER_SIZE);
+        try {
+            copy(out, bytes);
+        } finally {
+            pool.release(bytes);
+        }
+    }
+
+    private void copy(OutputStream out, byte[] bytes) throws IOException {
+        ReadableByteChannel channel = open();
+        try {
+            long written = 0;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int read;
+            while ((read = channel.read(buffer)) >= 0) {
+                out.write(bytes, 0, read);
+                written += read;
+                buffer.clear();
+            }
+            checkLength(written);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the whole content into an array, for transports that cannot stream.
+     */
+    public byte[] toByteArray() throws IOException {
+        long length = getContentLength();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+            length > 0 && length < Integer.MAX_VALUE ? (int) length : COPY_BUFFER_SIZE);
+        writeTo(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the file the content is read from, or null
+     */
+    File getFile() {
+        return null;
+    }
+
+    /**
+     * Fails if the content did not have the length it was declared with.
+     */
+    void checkLength(long read) throws IOException {
+        long length = getContentLength();
+        if (length >= 0 && read != length) {
+            throw new EOFException("Request body has " + read + " bytes but a content length of "
+                + length);
+        }
+    }
+
+    static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class BytesBody extends RequestBody {
+
+        private final byte[] bytes;
+
+        BytesBody(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public long getContentLength() {
+            return bytes.length;
+        }
+
+        public ReadableByteChannel open() {
+            return new BufferChannel(ByteBuffer.wrap(bytes));
+        }
+
+        public String contentMd5() {
+            return Base64Helper.encode(newMd5().digest(bytes));
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(bytes);
+        }
+
+        void writeTo(OutputStream out, ByteArrayPool pool) throws IOException {
+            out.write(bytes);
+        }
+
+        public byte[] toByteArray() {
+            return bytes;
+        }
+    }
+
+    private static final class BufferBody extends RequestBody {
+
+        private final ByteBuffer buffer;
+
+        BufferBody(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public long getContentLength() {
+            return buffer.remaining();
+        }
+
+        public ReadableByteChannel open() {
+            return new BufferChannel(buffer.duplicate());
+        }
+
+        public String contentMd5() {
+            MessageDigest md5 = newMd5();
+            md5.update(buffer.duplicate());
+            return Base64Helper.encode(md5.digest());
+        }
+    }
+
+    private static final class FileBody extends RequestBody {
+
+        private final File file;
+        private final long length;
+
+        FileBody(File file) {
+            this.file = file;
+            this.length = file.length();
+        }
+
+        public long getContentLength() {
+            return length;
+        }
+
+        public ReadableByteChannel open() throws IOException {
+            return new FileInputStream(file).getChannel();
+        }
+
+        File getFile() {
+            return file;
+        }
+    }
+
+    private static final class StreamBody extends RequestBody {
+
+        private final long length;
+        private InputStream in;
+
+        StreamBody(InputStream in, long length) {
+            this.in = in;
+            this.length = length;
+        }
+
+        public long getContentLength() {
+            return length;
+        }
+
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        public synchronized ReadableByteChannel open() throws IOException {
+            if (in == null) {
+                throw new IOException("Request body stream has already been sent");
+            }
+            ReadableByteChannel channel = Channels.newChannel(in);
+            in = null;
+            return channel;
+        }
+    }
+
+    /**
+     * Reads a buffer, so heap and direct buffers are sent without another copy.
+     */
+    private static final class BufferChannel implements ReadableByteChannel {
+
+        private final ByteBuffer buffer;
+        private boolean open = true;
+
+        BufferChannel(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read(ByteBuffer dst) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(dst.remaining(), buffer.remaining());
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + count);
+            dst.put(slice);
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        public void close() {
+            open = false;
+        }
+    }
+}
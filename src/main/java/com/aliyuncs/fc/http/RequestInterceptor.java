@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import java.io.IOException;
+
+/**
+ * A stage of the pipeline every attempt of a request passes through, sync or async.
+ * Stages see the request in the order they were added to the config, before it is
+ * signed, so headers they set are signed with it. They see the response in the
+ * reverse order, before it is checked for errors, so they may rewrite it.
+ *
+ * Stages are shared by all calls of a client and must be thread-safe. They run on
+ * the thread that sends or completes the attempt, which for async calls is an I/O
+ * thread, and must not block. A stage that throws fails the call without retrying it.
+ */
+public interface RequestInterceptor {
+
+    /**
+     * @param attempt the number of the attempt, starting from 1
+     */
+    void onRequest(HttpRequest request, int attempt);
+
+    /**
+     * @param response the response, with its {@link HttpResponse#getTiming() timing}
+     */
+    void onResponse(HttpRequest request, HttpResponse response, int attempt);
+
+    /**
+     * Called when an attempt got no response.
+     */
+    void onFailure(HttpRequest request, IOException failure, int attempt);
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import java.util.Locale;
+
+/**
+ * Where the time of one request went, phase by phase. The client signs the request
+ * and parses the response, the transport records the phases in between as far as it
+ * can tell them apart; phases it cannot see stay at zero. Retries of an attempt on a
+ * fresh connection add to the phases they repeat.
+ */
+public final class RequestTiming {
+
+    public enum Phase {
+        /** Composing and signing the request. */
+        SIGN,
+        /** Waiting for a pooled connection, or for an I/O thread to pick the request up. */
+        CONNECTION_ACQUIRE,
+        /** Resolving the host name of a new connection. */
+        DNS,
+        /** The TCP handshake of a new connection. */
+        CONNECT,
+        /** The TLS handshake of a new connection. */
+        TLS,
+        /** Sending the request head and body. */
+        WRITE,
+        /** From the end of the request to the first byte of the response. */
+        TIME_TO_FIRST_BYTE,
+        /** Reading the rest of the response. */
+        BODY_READ,
+        /** Turning the response into its typed form. */
+        PARSE
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final String operation;
+    private final long[] nanos = new long[PHASES.length];
+    private boolean connectionReused;
+
+    /**
+     * @param operation the name of the request, e.g. "InvokeFunction", or null
+     */
+    public RequestTiming(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * @return a record with the same phases, to be added to separately
+     */
+    public RequestTiming copy() {
+        RequestTiming copy = new RequestTiming(operation);
+        System.arraycopy(nanos, 0, copy.nanos, 0, nanos.length);
+        copy.connectionReused = connectionReused;
+        return copy;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Adds time to a phase.
+     */
+    public void record(Phase phase, long nanos) {
+        this.nanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Adds the time since {@code sinceNanos} to a phase.
+     * @return the current {@link System#nanoTime()}, where the next phase starts
+     */
+    public long mark(Phase phase, long sinceNanos) {
+        long now = System.nanoTime();
+        nanos[phase.ordinal()] += now - sinceNanos;
+        return now;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * @return the sum of all phases
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * @return whether the request went over a kept-alive connection, in which case
+     * DNS, CONNECT and TLS are zero
+     */
+    public boolean isConnectionReused() {
+        return connectionReused;
+    }
+
+    public void setConnectionReused(boolean connectionReused) {
+        this.connectionReused = connectionReused;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(operation == null ? "Request" : operation);
+        for (Phase phase : PHASES) {
+            builder.append(' ').append(phase.name().toLowerCase(Locale.ENGLISH)).append('=')
+                .append(String.format("%.3fms", nanos[phase.ordinal()] / 1000000.0));
+        }
+        return builder.append(connectionReused ? " reused" : "").toString();
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import java.io.IOException;
+
+/**
+ * A {@link Transport} that can hand over the response body while it is still being
+ * received. The returned response carries status and headers, and its
+ * {@link HttpResponse#getContentStream() content stream} reads the body from the
+ * connection. The caller must close that stream, which releases the connection.
+ */
+public interface StreamingTransport extends Transport {
+
+    HttpResponse executeStreaming(TransportRequest request) throws IOException;
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sends a signed request over the network and returns the raw response.
+ *
+ * DefaultFcClient builds, signs and retries requests and maps error responses to
+ * exceptions; a Transport only moves bytes. Implementations must be thread safe.
+ * Responses with any status code, including 4xx and 5xx, are returned rather than
+ * thrown; an IOException means no complete response was received.
+ */
+public interface Transport extends Closeable {
+
+    HttpResponse execute(TransportRequest request) throws IOException;
+}
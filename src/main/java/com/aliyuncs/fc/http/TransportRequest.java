@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A fully signed request as handed to a {@link Transport}.
+ */
+public class TransportRequest {
+
+    private final String method;
+    private final String url;
+    private final Map<String, String> headers;
+    private RequestBody body;
+    private int connectTimeoutMillis;
+    private int readTimeoutMillis;
+    private RequestTiming timing;
+
+    public TransportRequest(String method, String url, Map<String, String> headers,
+        byte[] payload) {
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.body = payload == null ? null : RequestBody.create(payload);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return request body, null if the request has no body
+     */
+    public RequestBody getBody() {
+        return body;
+    }
+
+    /**
+     * Replaces the request body, e.g. with one that is streamed.
+     */
+    public TransportRequest setBody(RequestBody body) {
+        this.body = body;
+        return this;
+    }
+
+    /**
+     * Returns the request body as an array, reading a streamed body into memory.
+     * Transports that can stream use {@link #getBody()} instead.
+     * @return request body, null if the request has no body
+     */
+    public byte[] getPayload() throws IOException {
+        return body == null ? null : body.toByteArray();
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public TransportRequest setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public TransportRequest setReadTimeoutMillis(int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @return the record the transport adds the phases of the request to, created on
+     * first use if none was set
+     */
+    public RequestTiming getTiming() {
+        if (timing == null) {
+            timing = new RequestTiming(null);
+        }
+        return timing;
+    }
+
+    public TransportRequest setTiming(RequestTiming timing) {
+        this.timing = timing;
+        return this;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.http;
+
+import com.google.common.base.Preconditions;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Transport built on {@link HttpURLConnection}, opening and disconnecting one
+ * connection per request.
+ */
+public class UrlConnectionTransport implements StreamingTransport {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ByteArrayPool bufferPool;
+
+    public UrlConnectionTransport() {
+        this(new ByteArrayPool());
+    }
+
+    /**
+     * @param bufferPool the arrays requests are written and responses read through
+     */
+    public UrlConnectionTransport(ByteArrayPool bufferPool) {
+        Preconditions.checkArgument(bufferPool != null, "Buffer pool cannot be null");
+        this.bufferPool = bufferPool;
+    }
+
+    public ByteArrayPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public HttpResponse execute(TransportRequest request) throws IOException {
+        InputStream content = null;
+        HttpURLConnection httpConn = connect(request);
+        try {
+            long mark = System.nanoTime();
+            content = responseStream(httpConn);
+            mark = request.getTiming().mark(RequestTiming.Phase.TIME_TO_FIRST_BYTE, mark);
+            HttpResponse response = new HttpResponse();
+            parseHttpConn(response, httpConn, content);
+            request.getTiming().mark(RequestTiming.Phase.BODY_READ, mark);
+            return response;
+        } finally {
+            if (content != null) {
+                content.close();
+            }
+            httpConn.disconnect();
+        }
+    }
+
+    /**
+     * Sends the request and returns once the response headers have arrived. The
+     * connection is released when the content stream is closed.
+     */
+    public HttpResponse executeStreaming(TransportRequest request) throws IOException {
+        final HttpURLConnection httpConn = connect(request);
+        try {
+            long mark = System.nanoTime();
+            InputStream content = responseStream(httpConn);
+            request.getTiming().mark(RequestTiming.Phase.TIME_TO_FIRST_BYTE, mark);
+            HttpResponse response = new HttpResponse();
+            parseHeaders(response, httpConn);
+            if (content == null) {
+                content = new ByteArrayInputStream(EMPTY);
+            }
+            response.setContentStream(new FilterInputStream(content) {
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        httpConn.disconnect();
+                    }
+                }
+            });
+            return response;
+        } catch (IOException e) {
+            httpConn.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the connection and sends the request with its body. The connection hides
+     * its DNS lookup and handshakes, they are all timed as CONNECT.
+     */
+    private HttpURLConnection connect(TransportRequest request) throws IOException {
+        RequestBody body = request.getBody();
+        long length = body == null ? 0 : body.getContentLength();
+        HttpURLConnection httpConn = openConnection(request.getUrl(), request.getHeaders(),
+            body == null ? null : EMPTY, request.getMethod());
+        httpConn.setConnectTimeout(request.getConnectTimeoutMillis());
+        httpConn.setReadTimeout(request.getReadTimeoutMillis());
+        // Stream the body rather than letting the connection buffer all of it
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            httpConn.setChunkedStreamingMode(0);
+        } else if (length > 0) {
+            httpConn.setFixedLengthStreamingMode((int) length);
+        }
+        try {
+            RequestTiming timing = request.getTiming();
+            long mark = System.nanoTime();
+            httpConn.connect();
+            mark = timing.mark(RequestTiming.Phase.CONNECT, mark);
+            if (length != 0) {
+                OutputStream out = httpConn.getOutputStream();
+                body.writeTo(out, bufferPool);
+            }
+            timing.mark(RequestTiming.Phase.WRITE, mark);
+        } catch (IOException e) {
+            httpConn.disconnect();
+            throw e;
+        }
+        return httpConn;
+    }
+
+    /**
+     * @return the body of the response, or of the error response, or null if there
+     * is none
+     */
+    private static InputStream responseStream(HttpURLConnection httpConn) throws IOException {
+        try {
+            return httpConn.getInputStream();
+        } catch (SocketTimeoutException e) {
+            throw e;
+        } catch (IOException e) {
+            return httpConn.getErrorStream();
+        }
+    }
+
+    public void close() {
+    }
+
+    static HttpURLConnection openConnection(String urls, Map<String, String> headers,
+        byte[] content, String method) throws IOException {
+        String strUrl = urls;
+        if (null == strUrl || null == method) {
+            return null;
+        }
+        URL url = null;
+        String[] urlArray = null;
+        if ("POST".equals(method) && null == content) {
+            urlArray = strUrl.split("\\?");
+            url = new URL(urlArray[0]);
+        } else {
+            url = new URL(strUrl);
+        }
+        System.setProperty("sun.net.http.allowRestrictedHeaders", "true");
+        HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+        httpConn.setRequestMethod(method);
+        httpConn.setDoOutput(true);
+        httpConn.setDoInput(true);
+        httpConn.setUseCaches(false);
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            httpConn.setRequestProperty(entry.getKey(), entry.getValue());
+        }
+
+        if ("POST".equals(method) && null != urlArray && urlArray.length == 2) {
+            httpConn.getOutputStream().write(urlArray[1].getBytes());
+        }
+        return httpConn;
+    }
+
+    private byte[] readContent(InputStream content, int contentLength)
+        throws IOException {
+
+        if (content == null) {
+            return null;
+        }
+        if (contentLength >= 0) {
+            // Fill an array of the announced size instead of growing a copy
+            byte[] buff = new byte[contentLength];
+            int offset = 0;
+            while (offset < contentLength) {
+                int read = content.read(buff, offset, contentLength - offset);
+                if (read == -1) {
+                    throw new EOFException(
+                        "Connection closed before the response body was complete");
+                }
+                offset += read;
+            }
+            return buff;
+        }
+        PooledOutputStream outputStream = new PooledOutputStream(bufferPool);
+        byte[] buff = bufferPool.acquire(RequestBody.COPY_BUFFER_SIZE);
+        try {
+            while (true) {
+                final int read = content.read(buff);
+                if (read == -1) {
+                    break;
+                }
+                outputStream.write(buff, 0, read);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            bufferPool.release(buff);
+            outputStream.release();
+        }
+    }
+
+    private void parseHttpConn(HttpResponse response, HttpURLConnection httpConn,
+        InputStream content) throws IOException {
+        byte[] buff = readContent(content, httpConn.getContentLength());
+        parseHeaders(response, httpConn);
+        response.setContent(buff);
+        response.setContentPool(bufferPool);
+    }
+
+    private static void parseHeaders(HttpResponse response, HttpURLConnection httpConn)
+        throws IOException {
+        response.setStatus(httpConn.getResponseCode());
+        Map<String, List<String>> headers = httpConn.getHeaderFields();
+        for (Entry<String, List<String>> entry : headers.entrySet()) {
+            String key = entry.getKey();
+            if (null == key) {
+                continue;
+            }
+            List<String> values = entry.getValue();
+            StringBuilder builder = new StringBuilder(values.get(0));
+            for (int i = 1; i < values.size(); i++) {
+                builder.append(",");
+                builder.append(values.get(i));
+            }
+            response.putHeaderParameter(key, builder.toString());
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.metrics;
+
+import com.aliyuncs.fc.http.RequestTiming;
+import com.google.common.base.Objects;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link MetricsCollector} that keeps a {@link LatencyHistogram} per operation,
+ * service, function, status and attempt number, and counts the error codes. Recording
+ * an attempt of a series seen before takes no lock and allocates nothing. The
+ * {@link RequestTiming} phases of successful calls go into one histogram per phase. The data
+ * can be read in-process through {@link #snapshot()} or over JMX once
+ * {@link #registerMBean(String) registered}.
+ */
+public class FcMetrics implements MetricsCollector, FcMetricsMXBean {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final RequestTiming.Phase[] PHASES = RequestTiming.Phase.values();
+
+    private final ConcurrentMap<SeriesKey, LatencyHistogram> series =
+        new ConcurrentHashMap<SeriesKey, LatencyHistogram>();
+    private final ConcurrentMap<String, AtomicLong> errorCodes =
+        new ConcurrentHashMap<String, AtomicLong>();
+    private final ThreadLocal<SeriesKey> probe = new ThreadLocal<SeriesKey>() {
+        @Override
+        protected SeriesKey initialValue() {
+            return new SeriesKey();
+        }
+    };
+    private volatile LatencyHistogram total = new LatencyHistogram();
+    private volatile LatencyHistogram[] phases = newPhaseHistograms();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private volatile long startTimeMillis = System.currentTimeMillis();
+    private ObjectName objectName;
+
+    public void onAttempt(String operation, String serviceName, String functionName, int status,
+        String errorCode, int attempt, long latencyNanos) {
+        SeriesKey key = probe.get().set(operation, serviceName, functionName, status, attempt);
+        LatencyHistogram histogram = series.get(key);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = series.putIfAbsent(key.copy(), created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(latencyNanos);
+        total.record(latencyNanos);
+        if (attempt > 1) {
+            retries.incrementAndGet();
+        }
+        if (errorCode != null) {
+            failedAttempts.incrementAndGet();
+            AtomicLong counter = errorCodes.get(errorCode);
+            if (counter == null) {
+                AtomicLong created = new AtomicLong();
+                counter = errorCodes.putIfAbsent(errorCode, created);
+                if (counter == null) {
+                    counter = created;
+                }
+            }
+            counter.incrementAndGet();
+        }
+    }
+
+    public void onTiming(RequestTiming timing) {
+        LatencyHistogram[] histograms = phases;
+        for (int i = 0; i < PHASES.length; i++) {
+            histograms[i].record(timing.getNanos(PHASES[i]));
+        }
+    }
+
+    /**
+     * @return the metrics collected so far, the series sorted by name
+     */
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.Series> snapshots = new ArrayList<MetricsSnapshot.Series>();
+        for (Map.Entry<SeriesKey, LatencyHistogram> entry : series.entrySet()) {
+            SeriesKey key = entry.getKey();
+            snapshots.add(new MetricsSnapshot.Series(key.operation, key.serviceName,
+                key.functionName, key.status, key.attempt, entry.getValue().snapshot()));
+        }
+        Collections.sort(snapshots, new Comparator<MetricsSnapshot.Series>() {
+            public int compare(MetricsSnapshot.Series a, MetricsSnapshot.Series b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : errorCodes.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        Map<RequestTiming.Phase, LatencyHistogram.Snapshot> phaseSnapshots =
+            new EnumMap<RequestTiming.Phase, LatencyHistogram.Snapshot>(RequestTiming.Phase.class);
+        LatencyHistogram[] histograms = phases;
+        for (int i = 0; i < PHASES.length; i++) {
+            phaseSnapshots.put(PHASES[i], histograms[i].snapshot());
+        }
+        return new MetricsSnapshot(startTimeMillis, System.currentTimeMillis(),
+            total.snapshot(), snapshots, counts, phaseSnapshots, failedAttempts.get(),
+            retries.get());
+    }
+
+    /**
+     * Forgets everything collected so far. Attempts recorded while resetting may be
+     * partly kept.
+     */
+    public void reset() {
+        series.clear();
+        errorCodes.clear();
+        total = new LatencyHistogram();
+        phases = newPhaseHistograms();
+        failedAttempts.set(0);
+        retries.set(0);
+        startTimeMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Publishes these metrics on the platform MBean server as
+     * "com.aliyuncs.fc:type=ClientMetrics,name=<i>name</i>".
+     * @param name
+     * @return the name it was registered under
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        if (objectName != null) {
+            throw new IllegalStateException("Already registered as " + objectName);
+        }
+        ObjectName registered = new ObjectName("com.aliyuncs.fc:type=ClientMetrics,name="
+            + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+        objectName = registered;
+        return registered;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        objectName = null;
+    }
+
+    public long getAttemptCount() {
+        return total.getCount();
+    }
+
+    public long getFailedAttemptCount() {
+        return failedAttempts.get();
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    public double getMeanLatencyMillis() {
+        return total.snapshot().getMeanNanos() / NANOS_PER_MILLI;
+    }
+
+    public double getP50LatencyMillis() {
+        return total.snapshot().getValueAtQuantile(0.5) / NANOS_PER_MILLI;
+    }
+
+    public double getP99LatencyMillis() {
+        return total.snapshot().getValueAtQuantile(0.99) / NANOS_PER_MILLI;
+    }
+
+    public double getMaxLatencyMillis() {
+        return total.snapshot().getMaxNanos() / NANOS_PER_MILLI;
+    }
+
+    public Map<String, Long> getAttemptCounts() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (MetricsSnapshot.Series s : snapshot().getSeries()) {
+            counts.put(s.getName(), s.getLatency().getCount());
+        }
+        return counts;
+    }
+
+    public Map<String, Double> getP99LatencyMillisBySeries() {
+        Map<String, Double> latencies = new TreeMap<String, Double>();
+        for (MetricsSnapshot.Series s : snapshot().getSeries()) {
+            latencies.put(s.getName(), s.getLatency().getValueAtQuantile(0.99) / NANOS_PER_MILLI);
+        }
+        return latencies;
+    }
+
+    public Map<String, Long> getErrorCodeCounts() {
+        return snapshot().getErrorCodeCounts();
+    }
+
+    public Map<String, Double> getP99PhaseMillis() {
+        Map<String, Double> latencies = new TreeMap<String, Double>();
+        LatencyHistogram[] histograms = phases;
+        for (int i = 0; i < PHASES.length; i++) {
+            latencies.put(PHASES[i].name(),
+                histograms[i].snapshot().getValueAtQuantile(0.99) / NANOS_PER_MILLI);
+        }
+        return latencies;
+    }
+
+    private static LatencyHistogram[] newPhaseHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * Identifies a series. Each thread looks series up with its own mutable instance,
+     * which is copied when a new series is added.
+     */
+    private static final class SeriesKey {
+
+        private String operation;
+        private String serviceName;
+        private String functionName;
+        private int status;
+        private int attempt;
+
+        SeriesKey set(String operation, String serviceName, String functionName, int status,
+            int attempt) {
+            this.operation = operation;
+            this.serviceName = serviceName;
+            this.functionName = functionName;
+            this.status = status;
+            this.attempt = attempt;
+            return this;
+        }
+
+        SeriesKey copy() {
+            return new SeriesKey().set(operation, serviceName, functionName, status, attempt);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SeriesKey)) {
+                return false;
+            }
+            SeriesKey other = (SeriesKey) o;
+            return status == other.status && attempt == other.attempt
+                && Objects.equal(operation, other.operation)
+                && Objects.equal(serviceName, other.serviceName)
+                && Objects.equal(functionName, other.functionName);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = operation == null ? 0 : operation.hashCode();
+            hash = 31 * hash + (serviceName == null ? 0 : serviceName.hashCode());
+            hash = 31 * hash + (functionName == null ? 0 : functionName.hashCode());
+            return 31 * (31 * hash + status) + attempt;
+        }
+    }
+}
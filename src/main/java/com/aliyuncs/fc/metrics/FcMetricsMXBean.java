@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.metrics;
+
+import java.util.Map;
+
+/**
+ * The view of {@link FcMetrics} published over JMX. Series are named
+ * "operation service/function status attempt".
+ */
+public interface FcMetricsMXBean {
+
+    long getAttemptCount();
+
+    long getFailedAttemptCount();
+
+    long getRetryCount();
+
+    double getMeanLatencyMillis();
+
+    double getP50LatencyMillis();
+
+    double getP99LatencyMillis();
+
+    double getMaxLatencyMillis();
+
+    Map<String, Long> getAttemptCounts();
+
+    Map<String, Double> getP99LatencyMillisBySeries();
+
+    Map<String, Long> getErrorCodeCounts();
+
+    /**
+     * @return the 99th percentile of each phase of successful calls, by phase name
+     */
+    Map<String, Double> getP99PhaseMillis();
+
+    void reset();
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.metrics;
+
+import com.aliyuncs.fc.http.RequestTiming;
+
+/**
+ * Receives the outcome of every attempt the client sends, including the ones that
+ * are retried. It is called on the thread that completed the attempt, so
+ * implementations must be thread-safe and return quickly.
+ */
+public interface MetricsCollector {
+
+    /**
+     * @param operation the name of the request, e.g. "InvokeFunction"
+     * @param serviceName the service the request is about, or null
+     * @param functionName the function the request is about, or null
+     * @param status the HTTP status of the response, or 0 if none was received
+     * @param errorCode the error code the attempt failed with, or null if it succeeded
+     * @param attempt the number of the attempt, starting from 1
+     * @param latencyNanos how long the attempt took, from signing the request to
+     * receiving the response or failing
+     */
+    void onAttempt(String operation, String serviceName, String functionName, int status,
+        String errorCode, int attempt, long latencyNanos);
+
+    /**
+     * Called by FunctionComputeClient once a successful response has been parsed,
+     * with where the time of its last attempt went.
+     */
+    void onTiming(RequestTiming timing);
+}
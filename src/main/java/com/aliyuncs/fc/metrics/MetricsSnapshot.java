@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.metrics;
+
+import com.aliyuncs.fc.http.RequestTiming;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The metrics {@link FcMetrics} collected up to one point in time.
+ */
+public final class MetricsSnapshot {
+
+    private final long startTimeMillis;
+    private final long snapshotTimeMillis;
+    private final LatencyHistogram.Snapshot total;
+    private final List<Series> series;
+    private final Map<String, Long> errorCodeCounts;
+    private final Map<RequestTiming.Phase, LatencyHistogram.Snapshot> phases;
+    private final long failedAttempts;
+    private final long retries;
+
+    MetricsSnapshot(long startTimeMillis, long snapshotTimeMillis,
+        LatencyHistogram.Snapshot total, List<Series> series, Map<String, Long> errorCodeCounts,
+        Map<RequestTiming.Phase, LatencyHistogram.Snapshot> phases, long failedAttempts,
+        long retries) {
+        this.startTimeMillis = startTimeMillis;
+        this.snapshotTimeMillis = snapshotTimeMillis;
+        this.total = total;
+        this.series = Collections.unmodifiableList(series);
+        this.errorCodeCounts = Collections.unmodifiableMap(errorCodeCounts);
+        this.phases = Collections.unmodifiableMap(phases);
+        this.failedAttempts = failedAttempts;
+        this.retries = retries;
+    }
+
+    /**
+     * @return when collection started, or was last reset
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getSnapshotTimeMillis() {
+        return snapshotTimeMillis;
+    }
+
+    /**
+     * @return the latencies of all attempts
+     */
+    public LatencyHistogram.Snapshot getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the latencies of the attempts, one series per operation, service,
+     * function, status and attempt number
+     */
+    public List<Series> getSeries() {
+        return series;
+    }
+
+    /**
+     * @return how many attempts failed with each error code
+     */
+    public Map<String, Long> getErrorCodeCounts() {
+        return errorCodeCounts;
+    }
+
+    /**
+     * @return how long each phase of the successful calls took
+     */
+    public Map<RequestTiming.Phase, LatencyHistogram.Snapshot> getPhases() {
+        return phases;
+    }
+
+    public long getAttemptCount() {
+        return total.getCount();
+    }
+
+    public long getFailedAttemptCount() {
+        return failedAttempts;
+    }
+
+    /**
+     * @return how many attempts were retries of an earlier one
+     */
+    public long getRetryCount() {
+        return retries;
+    }
+
+    /**
+     * The latencies of the attempts that share an operation, service, function, status
+     * and attempt number.
+     */
+    public static final class Series {
+
+        private final String operation;
+        private final String serviceName;
+        private final String functionName;
+        private final int status;
+        private final int attempt;
+        private final LatencyHistogram.Snapshot latency;
+
+        Series(String operation, String serviceName, String functionName, int status,
+            int attempt, LatencyHistogram.Snapshot latency) {
+            this.operation = operation;
+            this.serviceName = serviceName;
+            this.functionName = functionName;
+            this.status = status;
+            this.attempt = attempt;
+            this.latency = latency;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public String getFunctionName() {
+            return functionName;
+        }
+
+        /**
+         * @return the HTTP status, or 0 for attempts that got no response
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return "operation service/function status attempt"
+         */
+        public String getName() {
+            StringBuilder name = new StringBuilder(operation);
+            if (serviceName != null) {
+                name.append(' ').append(serviceName);
+                if (functionName != null) {
+                    name.append('/').append(functionName);
+                }
+            }
+            return name.append(' ').append(status).append(' ').append(attempt).toString();
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ": " + latency;
+        }
+    }
+}
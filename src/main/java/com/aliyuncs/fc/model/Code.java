@@ -1,12 +1,15 @@
 package com.aliyuncs.fc.model;
 
+import com.aliyuncs.fc.utils.Base64Helper;
+import com.aliyuncs.fc.utils.Base64OutputStream;
 import com.aliyuncs.fc.utils.ZipUtils;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 import com.google.gson.annotations.SerializedName;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.UUID;
-import sun.misc.BASE64Encoder;
 
 /**
  * TODO: add javadoc
@@ -41,7 +44,7 @@ public class Code {
     }
 
     public Code setZipFile(byte[] zipFile) {
-        this.zipFile = new BASE64Encoder().encode(zipFile);
+        this.zipFile = Base64Helper.encode(zipFile);
         return this;
     }
 
@@ -53,12 +56,16 @@ public class Code {
         String tempZipPath = "/tmp/code" + UUID.randomUUID() + ".zip";
         ZipUtils.zipDir(new File(dir), tempZipPath);
         File file = new File(tempZipPath);
-        byte[] buffer = new byte[file.length() > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)file.length()];
-        FileInputStream fis = new FileInputStream(tempZipPath);
-        fis.read(buffer);
-        fis.close();
-        this.zipFile = new BASE64Encoder().encode(buffer);
-        new File(tempZipPath).delete();
+        try {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(
+                Base64Helper.encodedLength((int) Math.min(file.length(), Integer.MAX_VALUE)));
+            Base64OutputStream out = new Base64OutputStream(encoded);
+            Files.copy(file, out);
+            out.close();
+            this.zipFile = new String(encoded.toByteArray(), Charsets.US_ASCII);
+        } finally {
+            file.delete();
+        }
         return this;
     }
 }
@@ -0,0 +1,34 @@
+package com.aliyuncs.fc.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A function together with all its triggers, as collected by
+ * {@link com.aliyuncs.fc.client.InventoryCrawler}.
+ */
+public class FunctionInventory {
+
+    private final FunctionMetadata function;
+    private volatile List<TriggerMetadata> triggers = Collections.emptyList();
+
+    public FunctionInventory(FunctionMetadata function) {
+        this.function = function;
+    }
+
+    public FunctionMetadata getFunction() {
+        return function;
+    }
+
+    /**
+     * @return the triggers of the function, empty until they have been listed
+     */
+    public List<TriggerMetadata> getTriggers() {
+        return triggers;
+    }
+
+    public FunctionInventory setTriggers(List<TriggerMetadata> triggers) {
+        this.triggers = Collections.unmodifiableList(triggers);
+        return this;
+    }
+}
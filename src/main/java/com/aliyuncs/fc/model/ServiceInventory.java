@@ -0,0 +1,35 @@
+package com.aliyuncs.fc.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A service together with all its functions, as collected by
+ * {@link com.aliyuncs.fc.client.InventoryCrawler}.
+ */
+public class ServiceInventory {
+
+    private final ServiceMetadata service;
+    private final List<FunctionInventory> functions = new ArrayList<FunctionInventory>();
+
+    public ServiceInventory(ServiceMetadata service) {
+        this.service = service;
+    }
+
+    public ServiceMetadata getService() {
+        return service;
+    }
+
+    /**
+     * @return the functions of the service, in the order they were listed
+     */
+    public synchronized List<FunctionInventory> getFunctions() {
+        return Collections.unmodifiableList(new ArrayList<FunctionInventory>(functions));
+    }
+
+    public synchronized ServiceInventory addFunction(FunctionInventory function) {
+        functions.add(function);
+        return this;
+    }
+}
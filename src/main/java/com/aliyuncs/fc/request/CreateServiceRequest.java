@@ -87,8 +87,9 @@ public class CreateServiceRequest extends HttpRequest {
     }
 
     public byte[] getPayload() {
-        if (ParameterHelper.ObjectToJson(this) != null) {
-            return ParameterHelper.ObjectToJson(this).getBytes();
+        String json = ParameterHelper.ObjectToJson(this);
+        if (json != null) {
+            return json.getBytes();
         }
         return null;
     }
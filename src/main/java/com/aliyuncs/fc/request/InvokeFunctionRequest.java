@@ -21,6 +21,7 @@ package com.aliyuncs.fc.request;
 import com.aliyuncs.fc.constants.HeaderKeys;
 import com.aliyuncs.fc.exceptions.ClientException;
 import com.aliyuncs.fc.http.HttpRequest;
+import com.aliyuncs.fc.http.RequestBody;
 import com.aliyuncs.fc.constants.Const;
 import com.aliyuncs.fc.response.InvokeFunctionResponse;
 
@@ -37,6 +38,8 @@ public class InvokeFunctionRequest extends HttpRequest {
     private String invocationType;
     private String logType;
     private byte[] payload;
+    private RequestBody body;
+    private boolean contentMd5Enabled = true;
 
     public InvokeFunctionRequest(String serviceName, String functionName) {
         this.serviceName = serviceName;
@@ -71,9 +74,43 @@ public class InvokeFunctionRequest extends HttpRequest {
 
     public InvokeFunctionRequest setPayload(byte[] payload) {
         this.payload = payload;
+        this.body = null;
         return this;
     }
 
+    /**
+     * Sets a payload that is streamed while the request is sent, e.g.
+     * {@link RequestBody#create(java.io.File)}, instead of a byte array.
+     * @param body
+     * @return
+     */
+    public InvokeFunctionRequest setBody(RequestBody body) {
+        this.body = body;
+        this.payload = null;
+        return this;
+    }
+
+    public RequestBody getBody() {
+        return body != null ? body : super.getBody();
+    }
+
+    /**
+     * Sets whether the payload is sent with a Content-MD5 header, on by default.
+     * The digest takes a pass over the payload before it is sent, so large file
+     * payloads may turn it off. A payload read from an InputStream is always sent
+     * without it.
+     * @param contentMd5Enabled
+     * @return
+     */
+    public InvokeFunctionRequest setContentMd5Enabled(boolean contentMd5Enabled) {
+        this.contentMd5Enabled = contentMd5Enabled;
+        return this;
+    }
+
+    public boolean isContentMd5Enabled() {
+        return contentMd5Enabled;
+    }
+
     public Map<String, String> getQueryParams() {
         return null;
     }
@@ -54,6 +54,16 @@ public class InvokeFunctionResponse extends HttpResponse {
         return this;
     }
 
+    /**
+     * Hands the payload back to the client's buffer pool; see
+     * {@link HttpResponse#release()}. getPayload() returns null afterwards.
+     */
+    @Override
+    public void release() {
+        this.payload = null;
+        super.release();
+    }
+
     public String getRequestId() {
         return header.get("X-Fc-Request-Id");
     }
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.response;
+
+import com.aliyuncs.fc.http.HttpResponse;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+
+/**
+ * The result of {@link com.aliyuncs.fc.client.FunctionComputeClient#invokeFunctionStreaming},
+ * whose payload is read from the connection as the caller consumes it rather than
+ * buffered in memory. The response must be closed, which releases the connection;
+ * transferTo closes it once the payload has been copied.
+ */
+public class InvokeFunctionStreamResponse extends HttpResponse implements Closeable {
+
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private Map<String, String> header;
+    private String logResult;
+    private InputStream payloadStream;
+
+    public Map<String, String> getHeader() {
+        return header;
+    }
+
+    public InvokeFunctionStreamResponse setHeader(Map<String, String> header) {
+        this.header = header;
+        return this;
+    }
+
+    public InvokeFunctionStreamResponse setLogResult(String logResult) {
+        this.logResult = logResult;
+        return this;
+    }
+
+    public String getLogResult() {
+        return logResult;
+    }
+
+    public String getRequestId() {
+        return header.get("X-Fc-Request-Id");
+    }
+
+    /**
+     * @return the payload length from Content-Length, or -1 if the service did not
+     * send one
+     */
+    public long getContentLength() {
+        if (header == null) {
+            return -1;
+        }
+        for (Map.Entry<String, String> entry : header.entrySet()) {
+            if ("Content-Length".equalsIgnoreCase(entry.getKey())) {
+                try {
+                    return Long.parseLong(entry.getValue().trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the payload, which can be read once
+     */
+    public InputStream getPayloadStream() {
+        return payloadStream;
+    }
+
+    public InvokeFunctionStreamResponse setPayloadStream(InputStream payloadStream) {
+        this.payloadStream = payloadStream;
+        return this;
+    }
+
+    /**
+     * Copies the payload to the channel, e.g. a socket or a FileChannel, through one
+     * reused buffer, and closes the response.
+     * @return the number of bytes copied
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        try {
+            ReadableByteChannel source = Channels.newChannel(payloadStream);
+            ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+            long transferred = 0;
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    transferred += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return transferred;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Writes the payload to the file, replacing its content, and closes the response.
+     * @return the number of bytes written
+     */
+    public long transferTo(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            return transferTo(out.getChannel());
+        } finally {
+            out.close();
+        }
+    }
+
+    public void close() throws IOException {
+        if (payloadStream != null) {
+            payloadStream.close();
+        }
+    }
+}
@@ -19,17 +19,27 @@
 package com.aliyuncs.fc.utils;
 
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 
-
+/**
+ * Base64 codec (RFC 4648, standard alphabet, no line breaks). All methods are
+ * stateless and safe to call from any thread; the array variants write straight
+ * into a caller supplied buffer. See {@link Base64OutputStream} and
+ * {@link Base64InputStream} for streaming use.
+ */
 public class Base64Helper {
 
-    private static final String BASE64_CODE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
-        + "abcdefghijklmnopqrstuvwxyz" + "0123456789" + "+/";
+    static final int INVALID = -1;
+    static final int PADDING = -2;
+    static final int WHITESPACE = -3;
+
+    private static final char[] BASE64_CODE = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+        + "abcdefghijklmnopqrstuvwxyz" + "0123456789" + "+/").toCharArray();
 
     private static final int[] BASE64_DECODE = {
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -3, -3, -1, -1, -3, -1, -1,
         -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 62, -1, -1, -1, 63,
+        -3, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 62, -1, -1, -1, 63,
         52, 53, 54, 55, 56, 57, 58, 59, 60, 61, -1, -1, -1, -2, -1, -1,
         -1, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14,
         15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, -1, -1, -1, -1, -1,
@@ -45,76 +55,148 @@ public class Base64Helper {
         -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
     };
 
-    private static byte[] zeroPad(int length, byte[] bytes) {
-        byte[] padded = new byte[length];
-        System.arraycopy(bytes, 0, padded, 0, bytes.length);
-        return padded;
+    /**
+     * Number of characters needed to encode {@code length} bytes, padding included.
+     */
+    public static int encodedLength(int length) {
+        if (length < 0 || length > Integer.MAX_VALUE / 4 * 3) {
+            throw new IllegalArgumentException("Cannot base64 encode " + length + " bytes");
+        }
+        return (length + 2) / 3 * 4;
     }
 
-    public synchronized static String encode(byte[] buff) {
-        if (null == buff) {
-            return null;
+    /**
+     * Encodes {@code length} bytes of {@code src} into {@code dst}, which must have
+     * room for {@link #encodedLength(int)} characters.
+     *
+     * @return the number of characters written
+     */
+    public static int encode(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+        int end = offset + length - length % 3;
+        int d = dstOffset;
+        for (int i = offset; i < end; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            dst[d++] = BASE64_CODE[bits >>> 18];
+            dst[d++] = BASE64_CODE[(bits >>> 12) & 0x3f];
+            dst[d++] = BASE64_CODE[(bits >>> 6) & 0x3f];
+            dst[d++] = BASE64_CODE[bits & 0x3f];
+        }
+        int remaining = offset + length - end;
+        if (remaining > 0) {
+            int bits = (src[end] & 0xff) << 16
+                | (remaining == 2 ? (src[end + 1] & 0xff) << 8 : 0);
+            dst[d++] = BASE64_CODE[bits >>> 18];
+            dst[d++] = BASE64_CODE[(bits >>> 12) & 0x3f];
+            dst[d++] = remaining == 2 ? BASE64_CODE[(bits >>> 6) & 0x3f] : '=';
+            dst[d++] = '=';
         }
+        return d - dstOffset;
+    }
 
-        StringBuilder strBuilder = new StringBuilder("");
-        int paddingCount = (3 - (buff.length % 3)) % 3;
-        byte[] stringArray = zeroPad(buff.length + paddingCount, buff);
-        for (int i = 0; i < stringArray.length; i += 3) {
-            int j = ((stringArray[i] & 0xff) << 16) +
-                ((stringArray[i + 1] & 0xff) << 8) +
-                (stringArray[i + 2] & 0xff);
-            strBuilder.append(BASE64_CODE.charAt((j >> 18) & 0x3f));
-            strBuilder.append(BASE64_CODE.charAt((j >> 12) & 0x3f));
-            strBuilder.append(BASE64_CODE.charAt((j >> 6) & 0x3f));
-            strBuilder.append(BASE64_CODE.charAt(j & 0x3f));
+    /**
+     * Same as {@link #encode(byte[], int, int, char[], int)} but writes ASCII bytes.
+     */
+    public static int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        int end = offset + length - length % 3;
+        int d = dstOffset;
+        for (int i = offset; i < end; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            dst[d++] = (byte) BASE64_CODE[bits >>> 18];
+            dst[d++] = (byte) BASE64_CODE[(bits >>> 12) & 0x3f];
+            dst[d++] = (byte) BASE64_CODE[(bits >>> 6) & 0x3f];
+            dst[d++] = (byte) BASE64_CODE[bits & 0x3f];
         }
-        int intPos = strBuilder.length();
-        for (int i = paddingCount; i > 0; i--) {
-            strBuilder.setCharAt(intPos - i, '=');
+        int remaining = offset + length - end;
+        if (remaining > 0) {
+            int bits = (src[end] & 0xff) << 16
+                | (remaining == 2 ? (src[end + 1] & 0xff) << 8 : 0);
+            dst[d++] = (byte) BASE64_CODE[bits >>> 18];
+            dst[d++] = (byte) BASE64_CODE[(bits >>> 12) & 0x3f];
+            dst[d++] = remaining == 2 ? (byte) BASE64_CODE[(bits >>> 6) & 0x3f] : (byte) '=';
+            dst[d++] = '=';
         }
+        return d - dstOffset;
+    }
 
-        return strBuilder.toString();
+    public static String encode(byte[] buff) {
+        if (null == buff) {
+            return null;
+        }
+        char[] chars = new char[encodedLength(buff.length)];
+        encode(buff, 0, buff.length, chars, 0);
+        return new String(chars);
     }
 
-    public synchronized static String encode(String string, String encoding)
+    public static String encode(String string, String encoding)
         throws UnsupportedEncodingException {
         if (null == string || null == encoding) {
             return null;
         }
-        byte[] stringArray = string.getBytes(encoding);
-        return encode(stringArray);
+        return encode(string.getBytes(encoding));
     }
 
-    public synchronized static String decode(String string, String encoding) throws
-        UnsupportedEncodingException {
-        if (null == string || null == encoding) {
+    /**
+     * Decodes a base64 string. Line breaks and other whitespace are skipped and
+     * decoding stops at the first padding character.
+     *
+     * @throws IllegalArgumentException if the input is not valid base64
+     */
+    public static byte[] decode(String string) {
+        if (null == string) {
             return null;
         }
-        int posIndex = 0;
-        int decodeLen = string.endsWith("==") ? (string.length() - 2) :
-            string.endsWith("=") ? (string.length() - 1) : string.length();
-        byte[] buff = new byte[decodeLen * 3 / 4];
-        int count4 = decodeLen - decodeLen % 4;
-        for (int i = 0; i < count4; i += 4) {
-            int c0 = BASE64_DECODE[string.charAt(i)];
-            int c1 = BASE64_DECODE[string.charAt(i + 1)];
-            int c2 = BASE64_DECODE[string.charAt(i + 2)];
-            int c3 = BASE64_DECODE[string.charAt(i + 3)];
-            buff[posIndex++] = (byte) (((c0 << 2) | (c1 >> 4)) & 0xFF);
-            buff[posIndex++] = (byte) ((((c1 & 0xF) << 4) | (c2 >> 2)) & 0xFF);
-            buff[posIndex++] = (byte) ((((c2 & 3) << 6) | c3) & 0xFF);
+        int length = string.length();
+        int padding = 0;
+        while (padding < 2 && length - padding > 0 && string.charAt(length - padding - 1) == '=') {
+            padding++;
         }
-        if (2 <= decodeLen % 4) {
-            int c0 = BASE64_DECODE[string.charAt(count4)];
-            int c1 = BASE64_DECODE[string.charAt(count4 + 1)];
-            buff[posIndex++] = (byte) (((c0 << 2) | (c1 >> 4)) & 0xFF);
-            if (3 == decodeLen % 4) {
-                int c2 = BASE64_DECODE[string.charAt(count4 + 2)];
-                buff[posIndex++] = (byte) ((((c1 & 0xF) << 4) | (c2 >> 2)) & 0xFF);
+        byte[] buff = new byte[(int) ((long) (length - padding) * 3 / 4)];
+        int bits = 0;
+        int count = 0;
+        int pos = 0;
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            int value = digit(c);
+            if (value >= 0) {
+                bits = bits << 6 | value;
+                if (++count == 4) {
+                    buff[pos++] = (byte) (bits >> 16);
+                    buff[pos++] = (byte) (bits >> 8);
+                    buff[pos++] = (byte) bits;
+                    bits = 0;
+                    count = 0;
+                }
+            } else if (value == PADDING) {
+                break;
+            } else if (value != WHITESPACE) {
+                throw new IllegalArgumentException(
+                    "Illegal base64 character " + (int) c + " at index " + i);
             }
         }
-        return new String(buff, encoding);
+        if (count == 1) {
+            throw new IllegalArgumentException("Truncated base64 input");
+        } else if (count == 2) {
+            buff[pos++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            buff[pos++] = (byte) (bits >> 10);
+            buff[pos++] = (byte) (bits >> 2);
+        }
+        return pos == buff.length ? buff : Arrays.copyOf(buff, pos);
     }
 
+    public static String decode(String string, String encoding) throws
+        UnsupportedEncodingException {
+        if (null == string || null == encoding) {
+            return null;
+        }
+        return new String(decode(string), encoding);
+    }
 
+    /**
+     * Value of a base64 digit, or {@link #INVALID}, {@link #PADDING} or
+     * {@link #WHITESPACE}.
+     */
+    static int digit(int c) {
+        return c >= 0 && c < BASE64_DECODE.length ? BASE64_DECODE[c] : INVALID;
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads base64 text from the underlying stream and returns the decoded bytes.
+ * Whitespace is skipped and the stream ends at the first padding character.
+ * Invalid input fails with an IOException.
+ */
+public class Base64InputStream extends FilterInputStream {
+
+    private static final int CHUNK = 4 * 1024;
+
+    private final byte[] encoded = new byte[CHUNK];
+    private final byte[] decoded = new byte[CHUNK / 4 * 3 + 3];
+    private int position;
+    private int limit;
+    private int bits;
+    private int count;
+    private boolean eof;
+
+    public Base64InputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return decoded[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(decoded, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && (position < limit || fill())) {
+            int step = (int) Math.min(n - skipped, limit - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return limit - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Decodes the next chunk of input.
+     *
+     * @return false at the end of the decoded data
+     */
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = 0;
+        while (limit == 0 && !eof) {
+            int read = in.read(encoded, 0, encoded.length);
+            if (read < 0) {
+                finishGroup();
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                int value = Base64Helper.digit(encoded[i] & 0xff);
+                if (value >= 0) {
+                    bits = bits << 6 | value;
+                    if (++count == 4) {
+                        decoded[limit++] = (byte) (bits >> 16);
+                        decoded[limit++] = (byte) (bits >> 8);
+                        decoded[limit++] = (byte) bits;
+                        bits = 0;
+                        count = 0;
+                    }
+                } else if (value == Base64Helper.PADDING) {
+                    finishGroup();
+                    break;
+                } else if (value != Base64Helper.WHITESPACE) {
+                    throw new IOException("Illegal base64 character " + (encoded[i] & 0xff));
+                }
+            }
+        }
+        return limit > 0;
+    }
+
+    private void finishGroup() throws IOException {
+        eof = true;
+        if (count == 1) {
+            throw new IOException("Truncated base64 input");
+        } else if (count == 2) {
+            decoded[limit++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            decoded[limit++] = (byte) (bits >> 10);
+            decoded[limit++] = (byte) (bits >> 2);
+        }
+        count = 0;
+    }
+}
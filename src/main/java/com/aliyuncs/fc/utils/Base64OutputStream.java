@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Base64 encodes everything written to it and passes the ASCII result on to the
+ * underlying stream. {@link #close()} (or {@link #finish()}) writes the padding.
+ */
+public class Base64OutputStream extends FilterOutputStream {
+
+    private static final int CHUNK = 3 * 1024;
+
+    private final byte[] pending = new byte[3];
+    private final byte[] encoded = new byte[CHUNK / 3 * 4];
+    private int pendingCount;
+    private boolean finished;
+
+    public Base64OutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (finished) {
+            throw new IOException("Stream has been finished");
+        }
+        pending[pendingCount++] = (byte) b;
+        if (pendingCount == 3) {
+            out.write(encoded, 0, Base64Helper.encode(pending, 0, 3, encoded, 0));
+            pendingCount = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Stream has been finished");
+        }
+        while (pendingCount > 0 && len > 0) {
+            write(b[off++]);
+            len--;
+        }
+        while (len >= 3) {
+            int count = Math.min(len - len % 3, CHUNK);
+            out.write(encoded, 0, Base64Helper.encode(b, off, count, encoded, 0));
+            off += count;
+            len -= count;
+        }
+        while (len > 0) {
+            write(b[off++]);
+            len--;
+        }
+    }
+
+    /**
+     * Writes the final, padded group without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (pendingCount > 0) {
+            out.write(encoded, 0, Base64Helper.encode(pending, 0, pendingCount, encoded, 0));
+            pendingCount = 0;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.aliyuncs.fc.utils;
+
+/**
+ * Formats the fixed-layout GMT timestamps used by the API without
+ * {@link java.text.SimpleDateFormat}. The RFC 2616 value for the current time,
+ * sent as the Date header of every request, is formatted once per second and
+ * shared by all threads without locking. Years must lie between 0 and 9999.
+ */
+public final class DateProvider {
+
+    private static final String[] DAYS = {"Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed"};
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul",
+        "Aug", "Sep", "Oct", "Nov", "Dec"};
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private static volatile Cached current = new Cached(Long.MIN_VALUE, null);
+
+    private DateProvider() {
+    }
+
+    /**
+     * The current time in RFC 2616 format, e.g. {@code Thu, 01 Jan 2015 00:00:00 GMT}.
+     */
+    public static String currentRFC2616Date() {
+        return rfc2616Date(System.currentTimeMillis());
+    }
+
+    static String rfc2616Date(long nowMillis) {
+        long second = floorDiv(nowMillis, 1000);
+        Cached cached = current;
+        if (cached.second == second) {
+            return cached.value;
+        }
+        String value = formatRFC2616(nowMillis);
+        // Racing threads format the same value, whichever write wins is fine
+        current = new Cached(second, value);
+        return value;
+    }
+
+    /**
+     * Formats like {@code EEE, dd MMM yyyy HH:mm:ss zzz} in GMT.
+     */
+    public static String formatRFC2616(long millis) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        int secondOfDay = (int) ((millis - days * MILLIS_PER_DAY) / 1000);
+        int[] date = civilFromDays(days);
+        char[] out = new char[29];
+        String day = DAYS[(int) (((days % 7) + 7) % 7)];
+        out[0] = day.charAt(0);
+        out[1] = day.charAt(1);
+        out[2] = day.charAt(2);
+        out[3] = ',';
+        out[4] = ' ';
+        put2(out, 5, date[2]);
+        out[7] = ' ';
+        String month = MONTHS[date[1] - 1];
+        out[8] = month.charAt(0);
+        out[9] = month.charAt(1);
+        out[10] = month.charAt(2);
+        out[11] = ' ';
+        put4(out, 12, date[0]);
+        out[16] = ' ';
+        putTime(out, 17, secondOfDay);
+        out[25] = ' ';
+        out[26] = 'G';
+        out[27] = 'M';
+        out[28] = 'T';
+        return new String(out);
+    }
+
+    /**
+     * Formats like {@code yyyy-MM-dd'T'HH:mm:ss'Z'} in GMT.
+     */
+    public static String formatISO8601(long millis) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        int secondOfDay = (int) ((millis - days * MILLIS_PER_DAY) / 1000);
+        int[] date = civilFromDays(days);
+        char[] out = new char[20];
+        put4(out, 0, date[0]);
+        out[4] = '-';
+        put2(out, 5, date[1]);
+        out[7] = '-';
+        put2(out, 8, date[2]);
+        out[10] = 'T';
+        putTime(out, 11, secondOfDay);
+        out[19] = 'Z';
+        return new String(out);
+    }
+
+    /**
+     * Year, month (1-12) and day of month for a day count since 1970-01-01, in the
+     * proleptic Gregorian calendar.
+     */
+    private static int[] civilFromDays(long days) {
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        return new int[]{year, month, day};
+    }
+
+    private static void putTime(char[] out, int offset, int secondOfDay) {
+        put2(out, offset, secondOfDay / 3600);
+        out[offset + 2] = ':';
+        put2(out, offset + 3, secondOfDay / 60 % 60);
+        out[offset + 5] = ':';
+        put2(out, offset + 6, secondOfDay % 60);
+    }
+
+    private static void put2(char[] out, int offset, int value) {
+        out[offset] = (char) ('0' + value / 10);
+        out[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    private static void put4(char[] out, int offset, int value) {
+        put2(out, offset, value / 100 % 100);
+        put2(out, offset + 2, value % 100);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+
+    private static final class Cached {
+
+        final long second;
+        final String value;
+
+        Cached(long second, String value) {
+            this.second = second;
+            this.value = value;
+        }
+    }
+}
@@ -18,8 +18,11 @@
  */
 package com.aliyuncs.fc.utils;
 
+import com.google.common.base.Charsets;
 import com.google.gson.Gson;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
 import java.security.MessageDigest;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -33,6 +36,27 @@ public class ParameterHelper {
     private final static String TIME_ZONE = "GMT";
     private final static String FORMAT_ISO8601 = "yyyy-MM-dd'T'HH:mm:ss'Z'";
     private final static String FORMAT_RFC2616 = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    private final static Gson GSON = new Gson();
+
+    // SimpleDateFormat is not thread safe, so each thread parses with its own copy
+    private final static ThreadLocal<SimpleDateFormat> ISO8601_PARSER =
+        new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                SimpleDateFormat df = new SimpleDateFormat(FORMAT_ISO8601);
+                df.setTimeZone(new SimpleTimeZone(0, TIME_ZONE));
+                return df;
+            }
+        };
+    private final static ThreadLocal<SimpleDateFormat> RFC2616_PARSER =
+        new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                SimpleDateFormat df = new SimpleDateFormat(FORMAT_RFC2616, Locale.ENGLISH);
+                df.setTimeZone(new SimpleTimeZone(0, TIME_ZONE));
+                return df;
+            }
+        };
 
     public ParameterHelper() {
     }
@@ -43,24 +67,21 @@ public class ParameterHelper {
     }
 
     public static String getISO8601Time(Date date) {
-        Date nowDate = date;
         if (null == date) {
-            nowDate = new Date();
+            return DateProvider.formatISO8601(System.currentTimeMillis());
         }
-        SimpleDateFormat df = new SimpleDateFormat(FORMAT_ISO8601);
-        df.setTimeZone(new SimpleTimeZone(0, TIME_ZONE));
-
-        return df.format(nowDate);
+        return DateProvider.formatISO8601(date.getTime());
     }
 
+    /**
+     * Formats the date for the Date header. Without a date the current time is
+     * returned, which is formatted at most once per second.
+     */
     public static String getRFC2616Date(Date date) {
-        Date nowDate = date;
         if (null == date) {
-            nowDate = new Date();
+            return DateProvider.currentRFC2616Date();
         }
-        SimpleDateFormat df = new SimpleDateFormat(FORMAT_RFC2616, Locale.ENGLISH);
-        df.setTimeZone(new SimpleTimeZone(0, TIME_ZONE));
-        return df.format(nowDate);
+        return DateProvider.formatRFC2616(date.getTime());
     }
 
     public static Date parse(String strDate) throws ParseException {
@@ -78,18 +99,14 @@ public class ParameterHelper {
         if (null == strDate || "".equals(strDate)) {
             return null;
         }
-        SimpleDateFormat df = new SimpleDateFormat(FORMAT_ISO8601);
-        df.setTimeZone(new SimpleTimeZone(0, TIME_ZONE));
-        return df.parse(strDate);
+        return ISO8601_PARSER.get().parse(strDate);
     }
 
     public static Date parseRFC2616(String strDate) throws ParseException {
         if (null == strDate || "".equals(strDate) || strDate.length() != FORMAT_RFC2616.length()) {
             return null;
         }
-        SimpleDateFormat df = new SimpleDateFormat(FORMAT_RFC2616, Locale.ENGLISH);
-        df.setTimeZone(new SimpleTimeZone(0, TIME_ZONE));
-        return df.parse(strDate);
+        return RFC2616_PARSER.get().parse(strDate);
     }
 
     public static String md5Sum(byte[] buff) {
@@ -103,8 +120,15 @@ public class ParameterHelper {
     }
 
     public static String ObjectToJson(Object o) {
-        Gson gson = new Gson();
-        String jsonStr = gson.toJson(o);
-        return jsonStr;
+        return GSON.toJson(o);
+    }
+
+    /**
+     * Parses UTF-8 encoded JSON straight from the bytes, without decoding them
+     * into an intermediate String first.
+     */
+    public static <T> T JsonToObject(byte[] json, Class<T> type) {
+        return GSON.fromJson(
+            new InputStreamReader(new ByteArrayInputStream(json), Charsets.UTF_8), type);
     }
 }
\ No newline at end of file
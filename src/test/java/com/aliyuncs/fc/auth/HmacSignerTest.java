@@ -0,0 +1,61 @@
+package com.aliyuncs.fc.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class HmacSignerTest {
+
+    private static final String[] SOURCES = {
+        "",
+        "POST\nmd5\napplication/json\nThu, 01 Jan 2015 00:00:00 GMT\nx-fc-account-id:1\n/path",
+        "GET\n\n\n\n/services/服务/functions/été",
+        "emoji 😀 and lone \ud800 surrogate",
+    };
+
+    @Test
+    public void testMatchesUncachedSignature() throws Exception {
+        HmacSigner signer = new HmacSigner("id", "secret");
+        for (String source : SOURCES) {
+            assertEquals(FcSignatureComposer.signString(source, "secret"),
+                signer.sign(new StringBuilder(source)));
+        }
+        assertTrue(signer.matches("id", "secret"));
+        assertFalse(signer.matches("id", "other"));
+    }
+
+    @Test
+    public void testConcurrentSigning() throws Exception {
+        final HmacSigner signer = new HmacSigner("id", "secret");
+        final String expected = FcSignatureComposer.signString(SOURCES[1], "secret");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        for (int j = 0; j < 1000; j++) {
+                            if (!expected.equals(signer.sign(SOURCES[1]))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
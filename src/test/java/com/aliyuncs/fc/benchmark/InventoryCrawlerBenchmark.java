@@ -0,0 +1,73 @@
+package com.aliyuncs.fc.benchmark;
+
+import com.aliyuncs.fc.client.FunctionComputeClient;
+import com.aliyuncs.fc.client.InventoryCrawler;
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.emulator.FcEmulator;
+import com.aliyuncs.fc.model.ServiceInventory;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wall-clock time of crawling an account of 10 services with 20 functions each,
+ * against the crawler's parallelism. The {@link FcEmulator} delays every call by 20 ms,
+ * as a round trip to the service would, so the time is dominated by how well the
+ * crawler overlaps its list calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class InventoryCrawlerBenchmark {
+
+    private static final int SERVICES = 10;
+    private static final int FUNCTIONS = 20;
+
+    @Param({"1", "4", "16", "64"})
+    public int parallelism;
+
+    private FcEmulator emulator;
+    private FunctionComputeClient client;
+
+    @Setup
+    public void setUp() throws IOException {
+        emulator = new FcEmulator().setLatencyMillis(20).start();
+        for (int s = 0; s < SERVICES; s++) {
+            for (int f = 0; f < FUNCTIONS; f++) {
+                emulator.addFunction("service-" + s, "function-" + f);
+            }
+        }
+        Config config = new Config("cn-shanghai", "1234567890", "benchmark-key",
+            "benchmark-secret", null, false)
+            .setEndpoint(emulator.getEndpoint())
+            .setRetryPolicy(RetryPolicy.noRetry());
+        client = new FunctionComputeClient(config);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        emulator.close();
+    }
+
+    @Benchmark
+    public List<ServiceInventory> crawl() {
+        return new InventoryCrawler(client, parallelism).crawl();
+    }
+}
@@ -0,0 +1,75 @@
+package com.aliyuncs.fc.benchmark;
+
+import com.aliyuncs.fc.client.FunctionComputeClient;
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.emulator.FcEmulator;
+import com.aliyuncs.fc.request.InvokeFunctionRequest;
+import com.aliyuncs.fc.response.InvokeFunctionResponse;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole invokeFunction call, signing, sending and parsing included, against an
+ * {@link FcEmulator} in the same process whose function echoes the payload. The
+ * numbers include the loopback round trip and the server's share of the CPU, so
+ * compare them only with runs on the same machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokeFunctionBenchmark {
+
+    @Param({"1024", "65536"})
+    public int payloadSize;
+
+    private FcEmulator emulator;
+    private FunctionComputeClient client;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        payload = new byte[payloadSize];
+        new Random(7).nextBytes(payload);
+        emulator = new FcEmulator().addFunction("benchmark", "echo").start();
+        Config config = new Config("cn-shanghai", "1234567890", "benchmark-key",
+            "benchmark-secret", null, false)
+            .setEndpoint(emulator.getEndpoint())
+            .setRetryPolicy(RetryPolicy.noRetry());
+        client = new FunctionComputeClient(config);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        emulator.close();
+    }
+
+    @Benchmark
+    public InvokeFunctionResponse invokeFunction() {
+        return client.invokeFunction(
+            new InvokeFunctionRequest("benchmark", "echo").setPayload(payload));
+    }
+
+    @Benchmark
+    public InvokeFunctionResponse invokeFunctionAsync() throws Exception {
+        return client.invokeFunctionAsync(
+            new InvokeFunctionRequest("benchmark", "echo").setPayload(payload)).get();
+    }
+}
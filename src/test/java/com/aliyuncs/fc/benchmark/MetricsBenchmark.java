@@ -0,0 +1,80 @@
+package com.aliyuncs.fc.benchmark;
+
+import com.aliyuncs.fc.http.RequestTiming;
+import com.aliyuncs.fc.metrics.FcMetrics;
+import com.aliyuncs.fc.metrics.LatencyHistogram;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What recording an attempt adds to every request, which should stay well under a
+ * microsecond, also when many threads record into the same series.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private FcMetrics metrics;
+    private LatencyHistogram histogram;
+    private RequestTiming timing;
+    private long latency;
+
+    @Setup
+    public void setUp() {
+        metrics = new FcMetrics();
+        histogram = new LatencyHistogram();
+        timing = new RequestTiming("InvokeFunction");
+        for (RequestTiming.Phase phase : RequestTiming.Phase.values()) {
+            timing.record(phase, 100000);
+        }
+        metrics.onAttempt("InvokeFunction", "benchmark", "hello", 200, null, 1, 1000000);
+    }
+
+    @Benchmark
+    public void recordHistogram() {
+        histogram.record(latency++ & 0xFFFFFF);
+    }
+
+    @Benchmark
+    public void recordAttempt() {
+        metrics.onAttempt("InvokeFunction", "benchmark", "hello", 200, null, 1,
+            latency++ & 0xFFFFFF);
+    }
+
+    @Benchmark
+    public void recordFailedAttempt() {
+        metrics.onAttempt("InvokeFunction", "benchmark", "hello", 429, "ResourceThrottled", 2,
+            latency++ & 0xFFFFFF);
+    }
+
+    @Benchmark
+    public void recordTiming() {
+        metrics.onTiming(timing);
+    }
+
+    @Benchmark
+    public long markPhase() {
+        return timing.mark(RequestTiming.Phase.WRITE, System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordAttemptContended() {
+        metrics.onAttempt("InvokeFunction", "benchmark", "hello", 200, null, 1,
+            latency++ & 0xFFFFFF);
+    }
+}
@@ -0,0 +1,127 @@
+package com.aliyuncs.fc.benchmark;
+
+import com.aliyuncs.fc.auth.FcSignatureComposer;
+import com.aliyuncs.fc.auth.HmacSigner;
+import com.aliyuncs.fc.client.DefaultFcClient;
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.utils.Base64Helper;
+import com.aliyuncs.fc.utils.ParameterHelper;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The work every request does before it is sent: composing and signing the string
+ * to sign, the Content-MD5 and Date headers, and the URL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestSigningBenchmark {
+
+    private static final String PATH = "/2016-08-15/services/benchmark/functions/hello/invocations";
+    private static final String SECRET = "benchmark-secret";
+
+    private final Map<String, String> headers = new HashMap<String, String>();
+    private final Map<String, String> queries = new HashMap<String, String>();
+    private byte[] payload;
+    private String encodedPayload;
+    private String stringToSign;
+    private HmacSigner signer;
+    private DefaultFcClient client;
+    private Date date;
+
+    @Setup
+    public void setUp() throws Exception {
+        payload = new byte[1024];
+        new Random(1).nextBytes(payload);
+        encodedPayload = Base64Helper.encode(payload);
+        date = new Date(1500000000000L);
+
+        headers.put("Content-MD5", ParameterHelper.md5Sum(payload));
+        headers.put("Content-Type", "application/octet-stream");
+        headers.put("Date", ParameterHelper.getRFC2616Date(date));
+        headers.put("Accept", "application/json");
+        headers.put("User-Agent", "java-sdk-benchmark");
+        headers.put("x-fc-account-id", "1234567890");
+        headers.put("x-fc-invocation-type", "Sync");
+        headers.put("x-fc-log-type", "None");
+        stringToSign = FcSignatureComposer.composeStringToSign("POST", PATH, headers);
+
+        queries.put("limit", "100");
+        queries.put("prefix", "hello world/");
+        queries.put("nextToken", "c2VydmljZS1uZXh0LXRva2Vu");
+        queries.put("startKey", "fn-0042");
+
+        signer = new HmacSigner("benchmark-key", SECRET);
+        client = new DefaultFcClient(new Config("cn-shanghai", "1234567890", "benchmark-key",
+            SECRET, null, false));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Benchmark
+    public String composeStringToSign() {
+        return FcSignatureComposer.composeStringToSign("POST", PATH, headers);
+    }
+
+    @Benchmark
+    public String signString() throws Exception {
+        return FcSignatureComposer.signString(stringToSign, SECRET);
+    }
+
+    @Benchmark
+    public String signWithHmacSigner() {
+        return signer.sign(stringToSign);
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return Base64Helper.encode(payload);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64Helper.decode(encodedPayload);
+    }
+
+    @Benchmark
+    public String md5Sum() {
+        return ParameterHelper.md5Sum(payload);
+    }
+
+    @Benchmark
+    public String rfc2616Date() {
+        return ParameterHelper.getRFC2616Date(date);
+    }
+
+    @Benchmark
+    public String composeUrl() throws Exception {
+        return client.composeUrl("http://1234567890.cn-shanghai.fc.aliyuncs.com" + PATH, queries);
+    }
+
+    @Benchmark
+    public String concatQueryString() throws Exception {
+        return client.concatQueryString(queries);
+    }
+}
@@ -0,0 +1,76 @@
+package com.aliyuncs.fc.benchmark;
+
+import com.aliyuncs.fc.response.ListFunctionsResponse;
+import com.aliyuncs.fc.response.ListServicesResponse;
+import com.aliyuncs.fc.utils.ParameterHelper;
+import com.google.common.base.Charsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Gson parsing of list pages as the client parses them, straight from the bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    @Param({"10", "100"})
+    public int pageSize;
+
+    private byte[] functionsPage;
+    private byte[] servicesPage;
+
+    @Setup
+    public void setUp() {
+        StringBuilder functions = new StringBuilder("{\"functions\":[");
+        StringBuilder services = new StringBuilder("{\"services\":[");
+        for (int i = 0; i < pageSize; i++) {
+            if (i > 0) {
+                functions.append(',');
+                services.append(',');
+            }
+            functions.append("{\"functionId\":\"f-").append(i)
+                .append("\",\"functionName\":\"fn-").append(i)
+                .append("\",\"description\":\"benchmark function\",\"runtime\":\"nodejs6\"")
+                .append(",\"handler\":\"index.handler\",\"timeout\":60,\"memorySize\":512")
+                .append(",\"codeSize\":1048576,\"codeChecksum\":\"1234567890123456789\"")
+                .append(",\"createdTime\":\"2017-08-01T12:00:00Z\"")
+                .append(",\"lastModifiedTime\":\"2017-08-02T12:00:00Z\"}");
+            services.append("{\"serviceId\":\"s-").append(i)
+                .append("\",\"serviceName\":\"svc-").append(i)
+                .append("\",\"description\":\"benchmark service\"")
+                .append(",\"role\":\"acs:ram::1234567890:role/fc-logs\"")
+                .append(",\"logConfig\":{\"project\":\"logs\",\"logstore\":\"fc\"}")
+                .append(",\"createdTime\":\"2017-08-01T12:00:00Z\"")
+                .append(",\"lastModifiedTime\":\"2017-08-02T12:00:00Z\"}");
+        }
+        functions.append("],\"nextToken\":\"fn-").append(pageSize).append("\"}");
+        services.append("],\"nextToken\":\"svc-").append(pageSize).append("\"}");
+        functionsPage = functions.toString().getBytes(Charsets.UTF_8);
+        servicesPage = services.toString().getBytes(Charsets.UTF_8);
+    }
+
+    @Benchmark
+    public ListFunctionsResponse parseListFunctions() {
+        return ParameterHelper.JsonToObject(functionsPage, ListFunctionsResponse.class);
+    }
+
+    @Benchmark
+    public ListServicesResponse parseListServices() {
+        return ParameterHelper.JsonToObject(servicesPage, ListServicesResponse.class);
+    }
+}
@@ -0,0 +1,136 @@
+package com.aliyuncs.fc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.emulator.FcEmulator;
+import com.aliyuncs.fc.emulator.InvocationHandler;
+import com.aliyuncs.fc.request.InvokeFunctionRequest;
+import com.aliyuncs.fc.response.InvokeFunctionResponse;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncClientTest {
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private FcEmulator emulator;
+    private FunctionComputeClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        emulator = new FcEmulator().start();
+        emulator.addFunction("svc", "fn");
+        emulator.setHandler("svc", "fn", new InvocationHandler() {
+            public byte[] invoke(String serviceName, String functionName, byte[] payload)
+                throws Exception {
+                int now = running.incrementAndGet();
+                while (now > maxRunning.get() && !maxRunning.compareAndSet(maxRunning.get(), now)) {
+                }
+                try {
+                    Thread.sleep(200);
+                    return payload;
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        });
+        client = new FunctionComputeClient(new Config("cn-shanghai", "1234", "ak", "secret",
+            null, false).setEndpoint(emulator.getEndpoint()).setMaxAsyncRequests(2));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        emulator.close();
+    }
+
+    private ListenableFuture<InvokeFunctionResponse> invoke(String payload) {
+        return client.invokeFunctionAsync(new InvokeFunctionRequest("svc", "fn")
+            .setPayload(payload.getBytes(Charsets.UTF_8)));
+    }
+
+    @Test
+    public void testRequestsOverTheLimitAreQueuedWithoutBlocking() throws Exception {
+        invoke("warm-up").get(10, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        List<ListenableFuture<InvokeFunctionResponse>> futures =
+            new ArrayList<ListenableFuture<InvokeFunctionResponse>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(invoke("payload-" + i));
+        }
+        // Waiting for permits would take four rounds of 200ms
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 400);
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("payload-" + i,
+                new String(futures.get(i).get(10, TimeUnit.SECONDS).getPayload(), Charsets.UTF_8));
+        }
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testRequestCanBeSentFromACompletionCallback() throws Exception {
+        final SettableFuture<InvokeFunctionResponse> chained = SettableFuture.create();
+        for (int i = 0; i < 2; i++) {
+            Futures.addCallback(invoke("first"), new FutureCallback<InvokeFunctionResponse>() {
+                public void onSuccess(InvokeFunctionResponse response) {
+                    chained.setFuture(invoke("second"));
+                }
+
+                public void onFailure(Throwable t) {
+                    chained.setException(t);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        assertEquals("second",
+            new String(chained.get(10, TimeUnit.SECONDS).getPayload(), Charsets.UTF_8));
+    }
+
+    @Test
+    public void testFuturesCompleteOnCallbackThreads() throws Exception {
+        final SettableFuture<String> thread = SettableFuture.create();
+        ListenableFuture<InvokeFunctionResponse> future = invoke("payload");
+        future.addListener(new Runnable() {
+            public void run() {
+                thread.set(Thread.currentThread().getName());
+            }
+        }, MoreExecutors.directExecutor());
+        future.get(10, TimeUnit.SECONDS);
+        String name = thread.get(10, TimeUnit.SECONDS);
+        assertTrue(name, name.startsWith("fc-callback-"));
+    }
+
+    @Test
+    public void testConfiguredCallbackExecutorIsUsed() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        FunctionComputeClient custom = new FunctionComputeClient(new Config("cn-shanghai",
+            "1234", "ak", "secret", null, false).setEndpoint(emulator.getEndpoint())
+            .setCallbackExecutor(new Executor() {
+                public void execute(Runnable task) {
+                    executed.incrementAndGet();
+                    task.run();
+                }
+            }));
+        try {
+            custom.invokeFunctionAsync(new InvokeFunctionRequest("svc", "fn")
+                .setPayload(new byte[1])).get(10, TimeUnit.SECONDS);
+            assertTrue(executed.get() > 0);
+        } finally {
+            custom.close();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.aliyuncs.fc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryBudget;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.exceptions.ServerException;
+import com.aliyuncs.fc.http.AsyncTransport;
+import com.aliyuncs.fc.http.HttpResponse;
+import com.aliyuncs.fc.http.RequestBody;
+import com.aliyuncs.fc.http.TransportRequest;
+import com.aliyuncs.fc.request.GetServiceRequest;
+import com.aliyuncs.fc.request.InvokeFunctionRequest;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import org.junit.Test;
+
+public class DefaultFcClientRetryTest {
+
+    private final ScriptedTransport transport = new ScriptedTransport();
+
+    private DefaultFcClient newClient(RetryPolicy policy) {
+        Config config = new Config("cn-shanghai", "1234", "ak", "secret", null, false)
+            .setEndpoint("http://127.0.0.1:1")
+            .setRetryPolicy(policy.setBaseDelayMillis(1).setMaxDelayMillis(5));
+        return new DefaultFcClient(config, transport);
+    }
+
+    @Test
+    public void testRetriesThrottlingAndServerErrors() {
+        transport.respond(429, "{\"ErrorCode\":\"ResourceThrottled\"}");
+        transport.respond(503, "{\"ErrorCode\":\"ServiceUnavailable\"}");
+        transport.respond(200, "{}");
+        HttpResponse response = newClient(new RetryPolicy())
+            .doAction(new GetServiceRequest("svc"), "application/json", "GET");
+        assertEquals(200, response.getStatus());
+        assertEquals(3, transport.attempts);
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() {
+        for (int i = 0; i < 3; i++) {
+            transport.respond(500, "{\"ErrorCode\":\"InternalServerError\"}");
+        }
+        try {
+            newClient(new RetryPolicy()).doAction(new GetServiceRequest("svc"),
+                "application/json", "GET");
+            fail("expected a ServerException");
+        } catch (ServerException e) {
+            assertEquals(500, e.getStatusCode());
+        }
+        assertEquals(3, transport.attempts);
+    }
+
+    @Test
+    public void testClassifiesByErrorCode() {
+        transport.respond(400, "{\"ErrorCode\":\"InvalidArgument\"}");
+        try {
+            newClient(new RetryPolicy()).doAction(new GetServiceRequest("svc"),
+                "application/json", "GET");
+            fail("expected a ClientException");
+        } catch (ClientException e) {
+            assertEquals("InvalidArgument", e.getErrorCode());
+        }
+        assertEquals(1, transport.attempts);
+
+        transport.attempts = 0;
+        transport.respond(400, "{\"ErrorCode\":\"Retryable\"}");
+        transport.respond(200, "{}");
+        newClient(new RetryPolicy().setRetryableErrorCodes("Retryable"))
+            .doAction(new GetServiceRequest("svc"), "application/json", "GET");
+        assertEquals(2, transport.attempts);
+    }
+
+    @Test
+    public void testRetriesOnlyConnectFailuresForPost() {
+        transport.fail(new ConnectException("refused"));
+        transport.respond(200, "{}");
+        newClient(new RetryPolicy()).doAction(invokeRequest(), "application/octet-stream", "POST");
+        assertEquals(2, transport.attempts);
+
+        transport.attempts = 0;
+        transport.fail(new SocketTimeoutException("read timed out"));
+        transport.respond(200, "{}");
+        try {
+            newClient(new RetryPolicy()).doAction(invokeRequest(), "application/octet-stream",
+                "POST");
+            fail("expected a ClientException");
+        } catch (ClientException e) {
+            assertEquals("SDK.ServerUnreachable", e.getErrorCode());
+        }
+        assertEquals(1, transport.attempts);
+    }
+
+    @Test
+    public void testStreamedPayloadIsNotResent() {
+        transport.fail(new ConnectException("refused"));
+        transport.respond(200, "{}");
+        InvokeFunctionRequest request = new InvokeFunctionRequest("svc", "fn")
+            .setBody(RequestBody.create(new ByteArrayInputStream(new byte[16]), 16));
+        try {
+            newClient(new RetryPolicy()).doAction(request, "application/octet-stream", "POST");
+            fail("expected a ClientException");
+        } catch (ClientException e) {
+            assertEquals("SDK.ServerUnreachable", e.getErrorCode());
+        }
+        assertEquals(1, transport.attempts);
+        assertEquals(null, transport.lastRequest.getHeaders().get("Content-MD5"));
+    }
+
+    @Test
+    public void testRetryAfterBeyondDeadlineIsNotWaitedFor() {
+        transport.respond(503, "{}", "Retry-After", "10");
+        long start = System.currentTimeMillis();
+        try {
+            newClient(new RetryPolicy().setDeadlineMillis(1000))
+                .doAction(new GetServiceRequest("svc"), "application/json", "GET");
+            fail("expected a ServerException");
+        } catch (ServerException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(1, transport.attempts);
+        assertTrue(transport.lastReadTimeoutMillis <= 1000);
+    }
+
+    @Test
+    public void testBudgetStopsRetries() {
+        transport.respond(500, "{}");
+        transport.respond(500, "{}");
+        try {
+            newClient(new RetryPolicy().setRetryBudget(new RetryBudget(5, 5)))
+                .doAction(new GetServiceRequest("svc"), "application/json", "GET");
+            fail("expected a ServerException");
+        } catch (ServerException e) {
+            assertEquals(500, e.getStatusCode());
+        }
+        assertEquals(2, transport.attempts);
+    }
+
+    @Test
+    public void testAsyncRetries() throws Exception {
+        transport.respond(503, "{}");
+        transport.respond(200, "{}");
+        HttpResponse response = newClient(new RetryPolicy())
+            .doActionAsync(new GetServiceRequest("svc"), "application/json", "GET").get();
+        assertEquals(200, response.getStatus());
+        assertEquals(2, transport.attempts);
+
+        transport.attempts = 0;
+        transport.respond(404, "{\"ErrorCode\":\"ServiceNotFound\"}");
+        try {
+            newClient(new RetryPolicy())
+                .doActionAsync(new GetServiceRequest("svc"), "application/json", "GET").get();
+            fail("expected a ClientException");
+        } catch (ExecutionException e) {
+            assertEquals("ServiceNotFound", ((ClientException) e.getCause()).getErrorCode());
+        }
+        assertEquals(1, transport.attempts);
+    }
+
+    private static InvokeFunctionRequest invokeRequest() {
+        InvokeFunctionRequest request = new InvokeFunctionRequest("svc", "func");
+        request.setPayload("{}".getBytes(Charsets.UTF_8));
+        return request;
+    }
+
+    /**
+     * Replays queued responses and failures, for both blocking and asynchronous calls.
+     */
+    static class ScriptedTransport implements AsyncTransport {
+
+        final LinkedList<Object> script = new LinkedList<Object>();
+        int attempts;
+        int lastReadTimeoutMillis;
+        TransportRequest lastRequest;
+
+        void respond(int status, String body, String... headers) {
+            HttpResponse response = new HttpResponse();
+            response.setStatus(status);
+            response.setContent(body.getBytes(Charsets.UTF_8));
+            response.putHeaderParameter("X-Fc-Request-Id", "req-" + script.size());
+            for (int i = 0; i + 1 < headers.length; i += 2) {
+                response.putHeaderParameter(headers[i], headers[i + 1]);
+            }
+            script.add(response);
+        }
+
+        void fail(IOException e) {
+            script.add(e);
+        }
+
+        public synchronized HttpResponse execute(TransportRequest request) throws IOException {
+            attempts++;
+            lastReadTimeoutMillis = request.getReadTimeoutMillis();
+            lastRequest = request;
+            Object next = script.removeFirst();
+            if (next instanceof IOException) {
+                throw (IOException) next;
+            }
+            return (HttpResponse) next;
+        }
+
+        public ListenableFuture<HttpResponse> executeAsync(TransportRequest request) {
+            try {
+                return Futures.immediateFuture(execute(request));
+            } catch (IOException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+        }
+
+        public void close() {
+        }
+    }
+}
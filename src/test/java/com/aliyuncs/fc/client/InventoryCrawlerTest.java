@@ -0,0 +1,75 @@
+package com.aliyuncs.fc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.aliyuncs.fc.client.InventoryCrawler.InventoryListener;
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.model.FunctionInventory;
+import com.aliyuncs.fc.model.ServiceInventory;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class InventoryCrawlerTest {
+
+    static FunctionComputeClient newClient(SimulatedAccountTransport transport) {
+        Config config = new Config("cn-shanghai", "1234", "ak", "secret", null, false)
+            .setEndpoint("http://127.0.0.1:1")
+            .setListPageSize(4);
+        return new FunctionComputeClient(config, transport);
+    }
+
+    @Test
+    public void testCollectsTheWholeTree() throws IOException {
+        SimulatedAccountTransport transport = new SimulatedAccountTransport(5, 9, 3, 1);
+        FunctionComputeClient client = newClient(transport);
+        final AtomicInteger functionEvents = new AtomicInteger();
+        final AtomicInteger serviceEvents = new AtomicInteger();
+        List<ServiceInventory> services = new InventoryCrawler(client, 4)
+            .setListener(new InventoryListener() {
+                public void onFunction(ServiceInventory service, FunctionInventory function,
+                    int functionsDone, int functionsListed) {
+                    functionEvents.incrementAndGet();
+                    assertEquals(3, function.getTriggers().size());
+                    assertTrue(functionsDone <= functionsListed);
+                }
+
+                public void onService(ServiceInventory service, int servicesDone,
+                    int servicesListed) {
+                    serviceEvents.incrementAndGet();
+                    assertEquals(9, service.getFunctions().size());
+                }
+            })
+            .crawl();
+        client.close();
+
+        assertEquals(5, services.size());
+        for (int i = 0; i < services.size(); i++) {
+            ServiceInventory service = services.get(i);
+            assertEquals("svc-" + i, service.getService().getServiceName());
+            assertEquals(9, service.getFunctions().size());
+            FunctionInventory last = service.getFunctions().get(8);
+            assertEquals("svc-" + i + "-fn-8", last.getFunction().getFunctionName());
+            assertEquals("svc-" + i + "-fn-8-tr-2", last.getTriggers().get(2).getTriggerName());
+        }
+        assertEquals(45, functionEvents.get());
+        assertEquals(5, serviceEvents.get());
+    }
+
+    @Test
+    public void testParallelismShortensTheCrawl() throws IOException {
+        SimulatedAccountTransport transport = new SimulatedAccountTransport(4, 8, 1, 20);
+        FunctionComputeClient client = newClient(transport);
+        long start = System.nanoTime();
+        new InventoryCrawler(client, 1).crawl();
+        long sequential = System.nanoTime() - start;
+        start = System.nanoTime();
+        new InventoryCrawler(client, 16).crawl();
+        long parallel = System.nanoTime() - start;
+        client.close();
+        assertTrue("parallel " + parallel + " vs sequential " + sequential,
+            parallel * 3 < sequential);
+    }
+}
@@ -0,0 +1,148 @@
+package com.aliyuncs.fc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.emulator.FcEmulator;
+import com.aliyuncs.fc.emulator.InvocationHandler;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.exceptions.InvokeAllException;
+import com.google.common.base.Charsets;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InvokeAllTest {
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private FcEmulator emulator;
+    private FunctionComputeClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        emulator = new FcEmulator().start();
+        emulator.addFunction("svc", "fn");
+        emulator.setHandler("svc", "fn", new InvocationHandler() {
+            public byte[] invoke(String serviceName, String functionName, byte[] payload)
+                throws Exception {
+                int now = running.incrementAndGet();
+                while (now > maxRunning.get() && !maxRunning.compareAndSet(maxRunning.get(), now)) {
+                }
+                try {
+                    String text = new String(payload, Charsets.UTF_8);
+                    Thread.sleep(text.startsWith("slow") ? 1000 : 5 + (text.hashCode() & 7));
+                    return ("done " + text).getBytes(Charsets.UTF_8);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        });
+        client = new FunctionComputeClient(new Config("cn-shanghai", "1234", "ak", "secret",
+            null, false).setEndpoint(emulator.getEndpoint()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        emulator.close();
+    }
+
+    private static List<byte[]> payloads(int count) {
+        List<byte[]> payloads = new ArrayList<byte[]>();
+        for (int i = 0; i < count; i++) {
+            payloads.add(("item " + i).getBytes(Charsets.UTF_8));
+        }
+        return payloads;
+    }
+
+    @Test
+    public void testResultsInInputOrderWithBoundedConcurrency() {
+        InvokeAllResults results = client.invokeAll("svc", "fn", payloads(100),
+            new InvokeAllOptions().setMaxInFlight(8));
+        assertEquals(0, emulator.getInvocationCount());
+        int index = 0;
+        while (results.hasNext()) {
+            InvokeResult result = results.next();
+            assertEquals(index, result.getIndex());
+            assertEquals("done item " + index, new String(result.getPayload(), Charsets.UTF_8));
+            assertTrue(results.getInFlightCount() <= 8);
+            index++;
+        }
+        assertEquals(100, index);
+        assertEquals(100, results.getCompletedCount());
+        assertEquals(0, results.getFailedCount());
+        assertTrue(maxRunning.get() <= 8);
+        assertTrue(maxRunning.get() > 1);
+        results.throwIfFailed();
+    }
+
+    @Test
+    public void testReadsPayloadsLazily() {
+        final AtomicInteger read = new AtomicInteger();
+        final List<byte[]> source = payloads(1000);
+        Iterable<byte[]> counted = new Iterable<byte[]>() {
+            public java.util.Iterator<byte[]> iterator() {
+                final java.util.Iterator<byte[]> it = source.iterator();
+                return new java.util.Iterator<byte[]>() {
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    public byte[] next() {
+                        read.incrementAndGet();
+                        return it.next();
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+        InvokeAllResults results = client.invokeAll("svc", "fn", counted,
+            new InvokeAllOptions().setMaxInFlight(4).setMaxBufferedResults(2));
+        results.next();
+        assertTrue(read.get() <= 1 + 4 + 2);
+        results.close();
+        assertFalse(results.hasNext());
+    }
+
+    @Test
+    public void testFailuresAreAggregated() {
+        List<byte[]> payloads = payloads(20);
+        payloads.set(3, "slow 3".getBytes(Charsets.UTF_8));
+        payloads.set(11, "slow 11".getBytes(Charsets.UTF_8));
+        InvokeAllResults results = client.invokeAll("svc", "fn", payloads,
+            new InvokeAllOptions().setMaxInFlight(4).setTimeoutMillis(300)
+                .setRetryPolicy(RetryPolicy.noRetry()));
+        try {
+            results.throwIfFailed();
+            fail();
+        } catch (InvokeAllException e) {
+            assertEquals(20, e.getInvocationCount());
+            assertEquals("[3, 11]", e.getFailures().keySet().toString());
+            assertTrue(e.getCause() instanceof ClientException);
+        }
+        assertEquals(2, results.getFailedCount());
+    }
+
+    @Test
+    public void testItemsAreRetried() {
+        emulator.setSeed(7).setThrottleRate(0.3);
+        InvokeAllResults results = client.invokeAll("svc", "fn", payloads(50),
+            new InvokeAllOptions().setMaxInFlight(8).setRetryPolicy(new RetryPolicy()
+                .setMaxAttempts(20).setBaseDelayMillis(1).setMaxDelayMillis(5)));
+        results.throwIfFailed();
+        assertEquals(50, results.getCompletedCount());
+        assertTrue(emulator.getThrottledCount() > 0);
+    }
+}
@@ -0,0 +1,92 @@
+package com.aliyuncs.fc.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.http.ConnectionPool;
+import com.aliyuncs.fc.http.PooledTransport;
+import com.aliyuncs.fc.request.InvokeFunctionRequest;
+import com.aliyuncs.fc.response.InvokeFunctionStreamResponse;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InvokeFunctionStreamingTest {
+
+    private HttpServer server;
+    private FunctionComputeClient client;
+    private final byte[] result = new byte[1024 * 1024];
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(3).nextBytes(result);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("X-Fc-Request-Id", "req-1");
+                byte[] body = result;
+                int status = 200;
+                if (exchange.getRequestURI().getPath().endsWith("/missing/invocations")) {
+                    body = "{\"ErrorCode\":\"FunctionNotFound\"}".getBytes(Charsets.UTF_8);
+                    status = 404;
+                }
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        Config config = new Config("cn-shanghai", "1234", "ak", "secret", null, false)
+            .setEndpoint("http://127.0.0.1:" + server.getAddress().getPort())
+            .setRetryPolicy(RetryPolicy.noRetry());
+        client = new FunctionComputeClient(config,
+            new PooledTransport(new ConnectionPool(2, 60000, 0)));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testTransfersPayloadToFile() throws IOException {
+        File file = File.createTempFile("fc-result", ".bin");
+        try {
+            InvokeFunctionStreamResponse response =
+                client.invokeFunctionStreaming(new InvokeFunctionRequest("svc", "fn"));
+            assertEquals(200, response.getStatus());
+            assertEquals("req-1", response.getHeader().get("X-fc-request-id"));
+            assertEquals(result.length, response.getContentLength());
+            assertEquals(result.length, response.transferTo(file));
+            assertArrayEquals(result, Files.toByteArray(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testErrorResponsesAreThrown() {
+        try {
+            client.invokeFunctionStreaming(new InvokeFunctionRequest("svc", "missing"));
+            fail("expected a ClientException");
+        } catch (ClientException e) {
+            assertEquals("FunctionNotFound", e.getErrorCode());
+        }
+    }
+}
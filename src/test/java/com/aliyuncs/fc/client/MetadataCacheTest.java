@@ -0,0 +1,134 @@
+package com.aliyuncs.fc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.aliyuncs.fc.client.DefaultFcClientRetryTest.ScriptedTransport;
+import com.aliyuncs.fc.client.RequestCoalescerTest.HeldTransport;
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.request.DeleteServiceRequest;
+import com.aliyuncs.fc.request.GetFunctionRequest;
+import com.aliyuncs.fc.request.GetServiceRequest;
+import com.aliyuncs.fc.request.UpdateFunctionRequest;
+import com.aliyuncs.fc.response.GetFunctionResponse;
+import com.aliyuncs.fc.response.UpdateFunctionResponse;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+
+public class MetadataCacheTest {
+
+    private static final String FUNCTION = "{\"functionName\":\"fn\",\"handler\":\"%s\"}";
+
+    private final ScriptedTransport transport = new ScriptedTransport();
+
+    private FunctionComputeClient newClient(MetadataCache cache) {
+        Config config = new Config("cn-shanghai", "1234", "ak", "secret", null, false)
+            .setEndpoint("http://127.0.0.1:1")
+            .setRetryPolicy(RetryPolicy.noRetry());
+        FunctionComputeClient client = new FunctionComputeClient(config, transport);
+        client.setMetadataCache(cache);
+        return client;
+    }
+
+    @Test
+    public void testServesFreshEntriesWithoutRoundTrip() {
+        MetadataCache cache = new MetadataCache(10, 60000);
+        FunctionComputeClient client = newClient(cache);
+        transport.respond(200, String.format(FUNCTION, "a.handler"), "ETag", "e1");
+
+        for (int i = 0; i < 3; i++) {
+            GetFunctionResponse response = client.getFunction(new GetFunctionRequest("svc", "fn"));
+            assertEquals("a.handler", response.getFunctionMetadata().getHandler());
+        }
+        assertEquals(1, transport.attempts);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testRevalidatesExpiredEntries() throws Exception {
+        MetadataCache cache = new MetadataCache(10, 0);
+        FunctionComputeClient client = newClient(cache);
+        transport.respond(200, String.format(FUNCTION, "a.handler"), "ETag", "e1");
+        transport.respond(304, "", "ETag", "e1");
+        transport.respond(200, String.format(FUNCTION, "b.handler"), "ETag", "e2");
+
+        GetFunctionRequest request = new GetFunctionRequest("svc", "fn");
+        client.getFunction(request);
+        assertNull(transport.lastRequest.getHeaders().get("If-None-Match"));
+
+        GetFunctionResponse response = client.getFunctionAsync(request).get();
+        assertEquals("e1", transport.lastRequest.getHeaders().get("If-None-Match"));
+        assertNull(request.getHeaders().get("If-None-Match"));
+        assertEquals("a.handler", response.getFunctionMetadata().getHandler());
+        assertEquals(200, response.getStatus());
+
+        response = client.getFunction(request);
+        assertEquals("b.handler", response.getFunctionMetadata().getHandler());
+        assertEquals(3, transport.attempts);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getRevalidationCount());
+    }
+
+    @Test
+    public void testUpdatesAndDeletesInvalidate() throws Exception {
+        MetadataCache cache = new MetadataCache(10, 60000);
+        FunctionComputeClient client = newClient(cache);
+        transport.respond(200, "{\"serviceName\":\"svc\"}", "ETag", "s1");
+        transport.respond(200, String.format(FUNCTION, "a.handler"), "ETag", "e1");
+        client.getService(new GetServiceRequest("svc"));
+        client.getFunction(new GetFunctionRequest("svc", "fn"));
+        assertEquals(2, cache.size());
+
+        transport.respond(200, String.format(FUNCTION, "b.handler"), "ETag", "e2");
+        client.updateFunctionAsync(new UpdateFunctionRequest("svc", "fn")).get();
+        assertEquals(1, cache.size());
+
+        transport.respond(200, String.format(FUNCTION, "b.handler"), "ETag", "e2");
+        client.getFunction(new GetFunctionRequest("svc", "fn"));
+        assertEquals(2, cache.size());
+
+        transport.respond(204, "");
+        client.deleteService(new DeleteServiceRequest("svc"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testReadInFlightDuringInvalidationIsNotStored() throws Exception {
+        HeldTransport held = new HeldTransport();
+        MetadataCache cache = new MetadataCache(10, 60000);
+        FunctionComputeClient client = new FunctionComputeClient(
+            new Config("cn-shanghai", "1234", "ak", "secret", null, false)
+                .setEndpoint("http://127.0.0.1:1")
+                .setRetryPolicy(RetryPolicy.noRetry()), held);
+        client.setMetadataCache(cache);
+
+        ListenableFuture<GetFunctionResponse> stale =
+            client.getFunctionAsync(new GetFunctionRequest("svc", "fn"));
+        ListenableFuture<UpdateFunctionResponse> update =
+            client.updateFunctionAsync(new UpdateFunctionRequest("svc", "fn"));
+        held.complete(1, 200, String.format(FUNCTION, "b.handler"));
+        update.get();
+        held.complete(0, 200, String.format(FUNCTION, "a.handler"));
+        assertEquals("a.handler", stale.get().getFunctionMetadata().getHandler());
+        assertEquals(0, cache.size());
+
+        client.getFunctionAsync(new GetFunctionRequest("svc", "fn"));
+        assertEquals(3, held.calls.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        MetadataCache cache = new MetadataCache(2, 60000);
+        FunctionComputeClient client = newClient(cache);
+        for (int i = 0; i < 3; i++) {
+            transport.respond(200, String.format(FUNCTION, "h" + i), "ETag", "e" + i);
+            client.getFunction(new GetFunctionRequest("svc", "fn" + i));
+        }
+        assertEquals(2, cache.size());
+        client.getFunction(new GetFunctionRequest("svc", "fn2"));
+        assertEquals(1, cache.getHitCount());
+    }
+}
@@ -0,0 +1,111 @@
+package com.aliyuncs.fc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.client.PagedIterable.Page;
+import com.aliyuncs.fc.client.PagedIterable.PageFetcher;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+
+public class PagedIterableTest {
+
+    /**
+     * Serves pages of three numbers; page n has token "n" and the last page none.
+     */
+    private static class NumberPages implements PageFetcher<Integer> {
+
+        final int pageCount;
+        final List<String> requested = new ArrayList<String>();
+        final List<SettableFuture<Page<Integer>>> pending =
+            new ArrayList<SettableFuture<Page<Integer>>>();
+        boolean completeImmediately = true;
+
+        NumberPages(int pageCount) {
+            this.pageCount = pageCount;
+        }
+
+        public synchronized ListenableFuture<Page<Integer>> fetch(String nextToken) {
+            requested.add(nextToken);
+            SettableFuture<Page<Integer>> future = SettableFuture.create();
+            if (completeImmediately) {
+                future.set(page(nextToken));
+            } else {
+                pending.add(future);
+            }
+            return future;
+        }
+
+        Page<Integer> page(String token) {
+            int index = token == null ? 0 : Integer.parseInt(token);
+            Integer[] items = {index * 3, index * 3 + 1, index * 3 + 2};
+            return new Page<Integer>(items, index + 1 < pageCount ? String.valueOf(index + 1) : null);
+        }
+    }
+
+    @Test
+    public void testIteratesAllPagesInOrder() {
+        NumberPages pages = new NumberPages(4);
+        List<Integer> items = new ArrayList<Integer>();
+        for (Integer item : new PagedIterable<Integer>(pages, 1)) {
+            items.add(item);
+        }
+        assertEquals(12, items.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(i, (int) items.get(i));
+        }
+        assertEquals(4, pages.requested.size());
+    }
+
+    @Test
+    public void testPrefetchIsBounded() {
+        NumberPages pages = new NumberPages(10);
+        Iterator<Integer> it = new PagedIterable<Integer>(pages, 2).iterator();
+        assertEquals(3, pages.requested.size());
+        it.next();
+        it.next();
+        it.next();
+        assertEquals(3, pages.requested.size());
+        it.next();
+        assertEquals(4, pages.requested.size());
+    }
+
+    @Test
+    public void testRequestsNextPageWhenCurrentArrives() {
+        NumberPages pages = new NumberPages(3);
+        pages.completeImmediately = false;
+        new PagedIterable<Integer>(pages, 1).iterator();
+        assertEquals(1, pages.requested.size());
+        pages.pending.get(0).set(pages.page(null));
+        assertEquals(2, pages.requested.size());
+        assertEquals("1", pages.requested.get(1));
+    }
+
+    @Test
+    public void testPropagatesErrors() {
+        Iterable<Integer> failing = new PagedIterable<Integer>(new PageFetcher<Integer>() {
+            public ListenableFuture<Page<Integer>> fetch(String nextToken) {
+                return Futures.immediateFailedFuture(new ClientException("SDK.Test", "failed"));
+            }
+        }, 1);
+        try {
+            failing.iterator().hasNext();
+            fail("expected a ClientException");
+        } catch (ClientException e) {
+            assertEquals("SDK.Test", e.getErrorCode());
+        }
+        assertTrue(!new PagedIterable<Integer>(new NumberPages(1) {
+            @Override
+            Page<Integer> page(String token) {
+                return new Page<Integer>(null, null);
+            }
+        }, 1).iterator().hasNext());
+    }
+}
@@ -0,0 +1,191 @@
+package com.aliyuncs.fc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.http.AsyncTransport;
+import com.aliyuncs.fc.http.HttpResponse;
+import com.aliyuncs.fc.http.TransportRequest;
+import com.aliyuncs.fc.request.GetFunctionRequest;
+import com.aliyuncs.fc.response.GetFunctionResponse;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class RequestCoalescerTest {
+
+    private final HeldTransport transport = new HeldTransport();
+
+    private FunctionComputeClient newClient(boolean coalesce) {
+        Config config = new Config("cn-shanghai", "1234", "ak", "secret", null, false)
+            .setEndpoint("http://127.0.0.1:1")
+            .setRetryPolicy(RetryPolicy.noRetry())
+            .setCoalesceReads(coalesce);
+        return new FunctionComputeClient(config, transport);
+    }
+
+    @Test
+    public void testIdenticalAsyncReadsShareOneCall() throws Exception {
+        FunctionComputeClient client = newClient(true);
+        List<ListenableFuture<GetFunctionResponse>> futures =
+            new ArrayList<ListenableFuture<GetFunctionResponse>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(client.getFunctionAsync(new GetFunctionRequest("svc", "fn")));
+        }
+        futures.add(client.getFunctionAsync(new GetFunctionRequest("svc", "other")));
+        assertEquals(2, transport.calls.size());
+
+        transport.complete(0, 200, "{\"functionName\":\"fn\"}");
+        transport.complete(1, 200, "{\"functionName\":\"other\"}");
+        for (int i = 0; i < 10; i++) {
+            assertEquals("fn", futures.get(i).get().getFunctionMetadata().getFunctionName());
+        }
+        assertEquals("other", futures.get(10).get().getFunctionMetadata().getFunctionName());
+        assertEquals(2, client.getRequestCoalescer().getSentCount());
+        assertEquals(9, client.getRequestCoalescer().getCollapsedCount());
+        assertEquals(0, client.getRequestCoalescer().getInFlightCount());
+
+        client.getFunctionAsync(new GetFunctionRequest("svc", "fn"));
+        assertEquals(3, transport.calls.size());
+    }
+
+    @Test
+    public void testSyncReadersJoinCallInFlight() throws Exception {
+        final FunctionComputeClient client = newClient(true);
+        final List<Object> results = new CopyOnWriteArrayList<Object>();
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        results.add(client.getFunction(new GetFunctionRequest("svc", "fn")));
+                    } catch (RuntimeException e) {
+                        results.add(e);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getRequestCoalescer().getCollapsedCount() < 3
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, transport.calls.size());
+        transport.complete(0, 404, "{\"ErrorCode\":\"FunctionNotFound\"}");
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(4, results.size());
+        for (Object result : results) {
+            assertEquals("FunctionNotFound", ((ClientException) result).getErrorCode());
+        }
+    }
+
+    @Test
+    public void testCoalescingCanBeTurnedOff() throws Exception {
+        FunctionComputeClient client = newClient(false);
+        client.getFunctionAsync(new GetFunctionRequest("svc", "fn"));
+        ListenableFuture<GetFunctionResponse> second =
+            client.getFunctionAsync(new GetFunctionRequest("svc", "fn"));
+        assertEquals(2, transport.calls.size());
+        transport.complete(1, 500, "{\"ErrorCode\":\"InternalServerError\"}");
+        try {
+            second.get();
+            fail("expected a failure");
+        } catch (ExecutionException e) {
+            assertEquals(0, client.getRequestCoalescer().getCollapsedCount());
+        }
+    }
+
+    @Test
+    public void testLeaderErrorDoesNotStrandLaterReads() throws Exception {
+        FunctionComputeClient client = newClient(true);
+        transport.failure = new Error("transport broke");
+        try {
+            client.getFunction(new GetFunctionRequest("svc", "fn"));
+            fail("expected the error");
+        } catch (Error e) {
+            assertEquals("transport broke", e.getMessage());
+        }
+        try {
+            client.getFunctionAsync(new GetFunctionRequest("svc", "fn"));
+            fail("expected the error");
+        } catch (Error e) {
+            assertEquals("transport broke", e.getMessage());
+        }
+        assertEquals(0, client.getRequestCoalescer().getInFlightCount());
+
+        transport.failure = null;
+        ListenableFuture<GetFunctionResponse> future =
+            client.getFunctionAsync(new GetFunctionRequest("svc", "fn"));
+        assertEquals(1, transport.calls.size());
+        transport.complete(0, 200, "{\"functionName\":\"fn\"}");
+        assertEquals("fn", future.get(5, TimeUnit.SECONDS).getFunctionMetadata().getFunctionName());
+    }
+
+    @Test
+    public void testSigningHeadersDoNotSplitReads() throws Exception {
+        FunctionComputeClient client = newClient(true);
+        GetFunctionRequest request = new GetFunctionRequest("svc", "fn");
+        client.getFunctionAsync(request);
+        assertFalse(request.getHeaders().containsKey("Authorization"));
+        client.getFunctionAsync(request);
+
+        GetFunctionRequest signedBefore = new GetFunctionRequest("svc", "fn");
+        signedBefore.getHeaders().put("Date", "Thu, 01 Jan 1970 00:00:00 GMT");
+        signedBefore.getHeaders().put("Authorization", "FC ak:stale");
+        client.getFunctionAsync(signedBefore);
+        assertEquals(1, transport.calls.size());
+        assertEquals(2, client.getRequestCoalescer().getCollapsedCount());
+    }
+
+    /**
+     * Holds every request until the test completes it.
+     */
+    static class HeldTransport implements AsyncTransport {
+
+        final List<SettableFuture<HttpResponse>> calls =
+            new CopyOnWriteArrayList<SettableFuture<HttpResponse>>();
+        volatile Error failure;
+
+        void complete(int call, int status, String body) {
+            HttpResponse response = new HttpResponse();
+            response.setStatus(status);
+            response.setContent(body.getBytes(Charsets.UTF_8));
+            response.putHeaderParameter("X-Fc-Request-Id", "req-" + call);
+            calls.get(call).set(response);
+        }
+
+        public HttpResponse execute(TransportRequest request) throws IOException {
+            try {
+                return executeAsync(request).get();
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+
+        public ListenableFuture<HttpResponse> executeAsync(TransportRequest request) {
+            if (failure != null) {
+                throw failure;
+            }
+            SettableFuture<HttpResponse> call = SettableFuture.create();
+            calls.add(call);
+            return call;
+        }
+
+        public void close() {
+        }
+    }
+}
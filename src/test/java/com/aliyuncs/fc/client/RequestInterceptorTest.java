@@ -0,0 +1,164 @@
+package com.aliyuncs.fc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.emulator.FcEmulator;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.http.HttpRequest;
+import com.aliyuncs.fc.http.HttpResponse;
+import com.aliyuncs.fc.http.RequestInterceptor;
+import com.aliyuncs.fc.request.GetServiceRequest;
+import com.aliyuncs.fc.request.InvokeFunctionRequest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestInterceptorTest {
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    private FcEmulator emulator;
+
+    @Before
+    public void setUp() throws IOException {
+        emulator = new FcEmulator().setCredentials("ak", "secret").start();
+        emulator.addFunction("svc", "fn");
+    }
+
+    @After
+    public void tearDown() {
+        emulator.close();
+    }
+
+    private FunctionComputeClient newClient(RetryPolicy retryPolicy,
+        RequestInterceptor... interceptors) {
+        Config config = new Config("cn-shanghai", "1234", "ak", "secret", null, false)
+            .setEndpoint(emulator.getEndpoint())
+            .setRetryPolicy(retryPolicy);
+        for (RequestInterceptor interceptor : interceptors) {
+            config.addInterceptor(interceptor);
+        }
+        return new FunctionComputeClient(config);
+    }
+
+    @Test
+    public void testStagesRunInOrderAndHeadersAreSigned() throws Exception {
+        FunctionComputeClient client = newClient(RetryPolicy.noRetry(),
+            new Recorder("outer", "x-fc-outer"), new Recorder("inner", "x-fc-inner"));
+        try {
+            client.invokeFunction(new InvokeFunctionRequest("svc", "fn"));
+            assertEquals("[outer request 1, inner request 1, inner response 200, "
+                + "outer response 200]", events.toString());
+
+            events.clear();
+            client.getServiceAsync(new GetServiceRequest("svc")).get();
+            assertEquals("[outer request 1, inner request 1, inner response 200, "
+                + "outer response 200]", events.toString());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testStagesSeeEveryAttempt() throws IOException {
+        emulator.setThrottleRate(1);
+        FunctionComputeClient client = newClient(new RetryPolicy().setMaxAttempts(2)
+            .setBaseDelayMillis(1).setMaxDelayMillis(1), new Recorder("stage", null));
+        try {
+            client.invokeFunction(new InvokeFunctionRequest("svc", "fn"));
+            fail();
+        } catch (ClientException e) {
+            assertEquals(429, e.getStatusCode());
+        } finally {
+            client.close();
+        }
+        assertEquals("[stage request 1, stage response 429, stage request 2, "
+            + "stage response 429]", events.toString());
+    }
+
+    @Test
+    public void testStagesMayRewriteResponses() throws IOException {
+        FunctionComputeClient client = newClient(RetryPolicy.noRetry(), new Recorder("stage", null) {
+            @Override
+            public void onResponse(HttpRequest request, HttpResponse response, int attempt) {
+                response.setContent("rewritten".getBytes());
+            }
+        });
+        try {
+            assertEquals("rewritten", new String(client.invokeFunction(
+                new InvokeFunctionRequest("svc", "fn")).getPayload()));
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testFailuresAndThrowingStages() throws IOException {
+        final RuntimeException rejected = new IllegalStateException("rejected");
+        FunctionComputeClient client = newClient(new RetryPolicy().setMaxAttempts(3),
+            new Recorder("stage", null) {
+                @Override
+                public void onRequest(HttpRequest request, int attempt) {
+                    super.onRequest(request, attempt);
+                    throw rejected;
+                }
+            });
+        try {
+            client.invokeFunction(new InvokeFunctionRequest("svc", "fn"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(rejected, e);
+        } finally {
+            client.close();
+        }
+        assertEquals("[stage request 1]", events.toString());
+
+        events.clear();
+        client = newClient(RetryPolicy.noRetry(), new Recorder("stage", null));
+        emulator.close();
+        try {
+            client.getService(new GetServiceRequest("svc"));
+            fail();
+        } catch (ClientException e) {
+            assertNotNull(e.getErrorCode());
+        } finally {
+            client.close();
+        }
+        assertEquals(2, events.size());
+        assertEquals("stage failure 1", events.get(1));
+    }
+
+    private class Recorder implements RequestInterceptor {
+
+        private final String name;
+        private final String header;
+
+        Recorder(String name, String header) {
+            this.name = name;
+            this.header = header;
+        }
+
+        public void onRequest(HttpRequest request, int attempt) {
+            events.add(name + " request " + attempt);
+            if (header != null) {
+                request.setHeader(header, name);
+            }
+        }
+
+        public void onResponse(HttpRequest request, HttpResponse response, int attempt) {
+            events.add(name + " response " + response.getStatus());
+        }
+
+        public void onFailure(HttpRequest request, IOException failure, int attempt) {
+            events.add(name + " failure " + attempt);
+        }
+    }
+}
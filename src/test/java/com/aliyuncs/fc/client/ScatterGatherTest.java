@@ -0,0 +1,187 @@
+package com.aliyuncs.fc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.emulator.FcEmulator;
+import com.aliyuncs.fc.emulator.InvocationHandler;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.google.common.base.Charsets;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScatterGatherTest {
+
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private FcEmulator emulator;
+    private FunctionComputeClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        emulator = new FcEmulator().start();
+        emulator.addFunction("svc", "sum");
+        emulator.addFunction("svc", "add");
+        // Sums the numbers of a chunk, one per line
+        emulator.setHandler("svc", "sum", new InvocationHandler() {
+            public byte[] invoke(String serviceName, String functionName, byte[] payload)
+                throws Exception {
+                String text = new String(payload, Charsets.UTF_8);
+                if (text.contains("boom") && failuresLeft.getAndDecrement() > 0) {
+                    throw new IllegalStateException("boom");
+                }
+                long sum = 0;
+                for (String line : text.split("\n")) {
+                    if (!line.equals("boom")) {
+                        sum += Long.parseLong(line);
+                    }
+                }
+                return String.valueOf(sum).getBytes(Charsets.UTF_8);
+            }
+        });
+        emulator.setHandler("svc", "add", new InvocationHandler() {
+            public byte[] invoke(String serviceName, String functionName, byte[] payload) {
+                long sum = 0;
+                for (String line : new String(payload, Charsets.UTF_8).split("\n")) {
+                    sum += Long.parseLong(line);
+                }
+                return String.valueOf(sum).getBytes(Charsets.UTF_8);
+            }
+        });
+        client = new FunctionComputeClient(new Config("cn-shanghai", "1234", "ak", "secret",
+            null, false).setEndpoint(emulator.getEndpoint()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        emulator.close();
+    }
+
+    private static final ScatterGather.Reducer<Long> SUM = new ScatterGather.Reducer<Long>() {
+        public Long reduce(Long accumulated, byte[] output) {
+            return accumulated + Long.parseLong(new String(output, Charsets.UTF_8));
+        }
+    };
+
+    private static List<byte[]> numbers(int count) {
+        List<byte[]> records = new ArrayList<byte[]>();
+        for (int i = 1; i <= count; i++) {
+            records.add(String.valueOf(i).getBytes(Charsets.UTF_8));
+        }
+        return records;
+    }
+
+    @Test
+    public void testChunksAreBoundedAndReducedInOrder() {
+        final List<Integer> reduced = new ArrayList<Integer>();
+        ScatterGather job = new ScatterGather(client, "svc", "sum")
+            .setMaxChunkBytes(64)
+            .setMaxInFlight(4)
+            .setMaxBufferedChunks(2)
+            .setListener(new ScatterGather.ProgressListener() {
+                public void onChunkReduced(int chunkIndex, ScatterGather.Progress progress) {
+                    reduced.add(chunkIndex);
+                    // Running, buffered, and the one just reduced
+                    assertTrue(progress.getChunksPending() <= 4 + 2 + 1);
+                }
+            });
+
+        long sum = job.run(numbers(1000).iterator(), 0L, SUM);
+
+        assertEquals(500500L, sum);
+        ScatterGather.Progress progress = job.getProgress();
+        assertEquals(1000, progress.getRecordsRead());
+        assertEquals(2893, progress.getBytesRead());
+        // The records and their separators, in chunks of at most 64 bytes
+        assertTrue(progress.getChunksStarted() >= (2893 + 999) / 64);
+        assertEquals(progress.getChunksStarted(), progress.getChunksReduced());
+        assertEquals(0, progress.getChunksRetried());
+        assertEquals(progress.getChunksStarted(), emulator.getInvocationCount());
+        for (int i = 0; i < reduced.size(); i++) {
+            assertEquals(i, (int) reduced.get(i));
+        }
+    }
+
+    @Test
+    public void testOversizedRecordIsSentAlone() {
+        List<byte[]> records = numbers(3);
+        records.add(1, "1000000000".getBytes(Charsets.UTF_8));
+        ScatterGather job = new ScatterGather(client, "svc", "sum").setMaxChunkBytes(4);
+
+        assertEquals(1000000006L, (long) job.run(records.iterator(), 0L, SUM));
+        // "1", the oversized record, then "2\n3"
+        assertEquals(3, job.getProgress().getChunksStarted());
+    }
+
+    @Test
+    public void testRemoteReducer() {
+        ScatterGather job = new ScatterGather(client, "svc", "sum").setMaxChunkBytes(32);
+
+        byte[] sum = job.run(numbers(100).iterator(), null, job.remoteReducer("add"));
+
+        assertEquals("5050", new String(sum, Charsets.UTF_8));
+    }
+
+    @Test
+    public void testStreamAndFileInputs() throws IOException {
+        ScatterGather job = new ScatterGather(client, "svc", "sum").setMaxChunkBytes(16);
+        byte[] lines = "1\r\n2\n3\n\n4\n5".replace("\n\n", "\n0\n").getBytes(Charsets.UTF_8);
+
+        assertEquals(15L, (long) job.run(new ByteArrayInputStream(lines), 0L, SUM));
+        assertEquals(6, job.getProgress().getRecordsRead());
+
+        File file = File.createTempFile("scatter", ".txt");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                for (byte[] record : numbers(200)) {
+                    out.write(record);
+                    out.write('\n');
+                }
+            } finally {
+                out.close();
+            }
+            assertEquals(20100L, (long) job.run(file, 0L, SUM));
+            assertEquals(200, job.getProgress().getRecordsRead());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFailedChunkIsRunAgain() {
+        List<byte[]> records = numbers(10);
+        records.add(5, "boom".getBytes(Charsets.UTF_8));
+        failuresLeft.set(2);
+        ScatterGather job = new ScatterGather(client, "svc", "sum").setMaxChunkBytes(8);
+
+        assertEquals(55L, (long) job.run(records.iterator(), 0L, SUM));
+        assertEquals(2, job.getProgress().getChunksRetried());
+    }
+
+    @Test
+    public void testChunkFailingEveryAttemptFailsTheJob() {
+        failuresLeft.set(Integer.MAX_VALUE);
+        ScatterGather job = new ScatterGather(client, "svc", "sum").setChunkAttempts(2);
+        try {
+            job.run(Collections.singletonList("boom".getBytes(Charsets.UTF_8)).iterator(), 0L,
+                SUM);
+            fail();
+        } catch (ClientException e) {
+            assertEquals("SDK.ChunkFailed", e.getErrorCode());
+            assertTrue(e.getMessage(), e.getMessage().contains("after 2 attempts"));
+        }
+        assertEquals(2, emulator.getInvocationCount());
+    }
+}
@@ -0,0 +1,113 @@
+package com.aliyuncs.fc.client;
+
+import com.aliyuncs.fc.http.AsyncTransport;
+import com.aliyuncs.fc.http.HttpResponse;
+import com.aliyuncs.fc.http.TransportRequest;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers the list APIs for an account of {@code services} services with
+ * {@code functions} functions each and {@code triggers} triggers per function,
+ * after a fixed latency per call.
+ */
+class SimulatedAccountTransport implements AsyncTransport {
+
+    final int services;
+    final int functions;
+    final int triggers;
+    final long latencyMillis;
+    final AtomicInteger calls = new AtomicInteger();
+    private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(4);
+
+    SimulatedAccountTransport(int services, int functions, int triggers, long latencyMillis) {
+        this.services = services;
+        this.functions = functions;
+        this.triggers = triggers;
+        this.latencyMillis = latencyMillis;
+    }
+
+    public HttpResponse execute(TransportRequest request) throws IOException {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return respond(request);
+    }
+
+    public ListenableFuture<HttpResponse> executeAsync(final TransportRequest request) {
+        final SettableFuture<HttpResponse> future = SettableFuture.create();
+        timer.schedule(new Runnable() {
+            public void run() {
+                try {
+                    future.set(respond(request));
+                } catch (Exception e) {
+                    future.setException(e);
+                }
+            }
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private HttpResponse respond(TransportRequest request) throws IOException {
+        calls.incrementAndGet();
+        URL url = new URL(request.getUrl());
+        Map<String, String> query = new HashMap<String, String>();
+        if (url.getQuery() != null) {
+            for (String pair : url.getQuery().split("&")) {
+                String[] kv = pair.split("=", 2);
+                query.put(kv[0], kv.length > 1 ? URLDecoder.decode(kv[1], "UTF-8") : "");
+            }
+        }
+        int offset = query.containsKey("nextToken") ? Integer.parseInt(query.get("nextToken")) : 0;
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : 100;
+        String[] path = url.getPath().split("/");
+        // /<version>/services[/<service>/functions[/<function>/triggers]]
+        String body;
+        if (path.length == 3) {
+            body = page("services", "serviceName", "svc-", services, offset, limit);
+        } else if (path.length == 5) {
+            body = page("functions", "functionName", path[3] + "-fn-", functions, offset, limit);
+        } else {
+            body = page("triggers", "triggerName", path[5] + "-tr-", triggers, offset, limit);
+        }
+        HttpResponse response = new HttpResponse();
+        response.setStatus(200);
+        response.putHeaderParameter("X-Fc-Request-Id", "req-" + calls.get());
+        response.setContent(body.getBytes(Charsets.UTF_8));
+        return response;
+    }
+
+    private static String page(String field, String nameField, String namePrefix, int total,
+        int offset, int limit) {
+        StringBuilder sb = new StringBuilder("{\"").append(field).append("\":[");
+        int end = Math.min(total, offset + limit);
+        for (int i = offset; i < end; i++) {
+            if (i > offset) {
+                sb.append(',');
+            }
+            sb.append("{\"").append(nameField).append("\":\"").append(namePrefix).append(i)
+                .append("\"}");
+        }
+        sb.append(']');
+        if (end < total) {
+            sb.append(",\"nextToken\":\"").append(end).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    public void close() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,77 @@
+package com.aliyuncs.fc.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.config.AdaptiveConcurrencyLimiter.Permit;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void testQueuesBeyondLimitAndGrantsOnRelease() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter()
+            .setInitialLimit(2).setLatencyTolerance(0);
+        Permit first = limiter.acquire("svc/func");
+        limiter.acquire("svc/func");
+        ListenableFuture<Permit> waiting = limiter.acquireAsync("svc/func");
+        assertFalse(waiting.isDone());
+        assertEquals(2, limiter.getInFlight("svc/func"));
+
+        first.cancel();
+        assertTrue(waiting.isDone());
+        assertEquals(2, limiter.getInFlight("svc/func"));
+        assertEquals(0, limiter.getInFlight("svc/other"));
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFullOrWaitTimesOut() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter()
+            .setInitialLimit(1).setMaxQueueLength(1).setMaxWaitMillis(10);
+        limiter.acquire("svc/func");
+        try {
+            limiter.acquire("svc/func");
+            fail("expected a ClientException");
+        } catch (ClientException e) {
+            assertEquals("SDK.ConcurrencyLimitExceeded", e.getErrorCode());
+        }
+        limiter.acquireAsync("svc/func");
+        assertTrue(limiter.acquireAsync("svc/func").isDone());
+    }
+
+    @Test
+    public void testThrottlingShrinksAndSuccessGrowsTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter()
+            .setInitialLimit(10).setBackoffRatio(0.5).setLatencyTolerance(0);
+        limiter.acquire("svc/func").onThrottled();
+        assertEquals(5, limiter.getLimit("svc/func"));
+
+        for (int round = 0; round < 20; round++) {
+            List<Permit> permits = new ArrayList<Permit>();
+            for (int i = 0; i < limiter.getLimit("svc/func"); i++) {
+                permits.add(limiter.acquire("svc/func"));
+            }
+            for (Permit permit : permits) {
+                permit.onSuccess();
+            }
+        }
+        assertTrue(limiter.getLimit("svc/func") > 5);
+        assertEquals(0, limiter.getInFlight("svc/func"));
+    }
+
+    @Test
+    public void testNeverDropsBelowMinLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter()
+            .setInitialLimit(2).setMinLimit(1);
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire("svc/func").onThrottled();
+        }
+        assertEquals(1, limiter.getLimit("svc/func"));
+    }
+}
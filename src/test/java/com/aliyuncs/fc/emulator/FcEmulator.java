@@ -0,0 +1,754 @@
+package com.aliyuncs.fc.emulator;
+
+import com.aliyuncs.fc.auth.FcSignatureComposer;
+import com.aliyuncs.fc.constants.Const;
+import com.aliyuncs.fc.constants.HeaderKeys;
+import com.aliyuncs.fc.utils.Base64Helper;
+import com.aliyuncs.fc.utils.ParameterHelper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An in-process stand-in for the Function Compute API, for integration and load
+ * tests that should not need an account. It serves the service, function, trigger
+ * and invocation paths of {@link Const} from memory over plain HTTP on a local port.
+ *
+ * Functions run through an {@link InvocationHandler}; by default they echo their
+ * payload. Every request can be delayed and failed at random with a 500 or a 429, and
+ * invocations beyond a concurrency limit are throttled, to exercise the client's
+ * retries and limiter. Single resources carry an ETag and answer If-None-Match with
+ * 304 and a stale If-Match with 412. Signatures are checked once
+ * {@link #setCredentials(String, String)} is called.
+ *
+ * <pre>
+ * FcEmulator emulator = new FcEmulator().setLatencyMillis(5, 20).setThrottleRate(0.05);
+ * emulator.start();
+ * Config config = new Config("cn-shanghai", "1234", "ak", "secret", null, false)
+ *     .setEndpoint(emulator.getEndpoint());
+ * </pre>
+ */
+public class FcEmulator implements Closeable {
+
+    private static final int DEFAULT_LIST_LIMIT = 100;
+    private static final String ERROR_TYPE = "X-Fc-Error-Type";
+
+    private final Gson gson = new Gson();
+    private final JsonParser parser = new JsonParser();
+    private final Map<String, Resource> services = new TreeMap<String, Resource>();
+    private final Map<String, InvocationHandler> handlers =
+        new ConcurrentHashMap<String, InvocationHandler>();
+    private final AtomicInteger runningInvocations = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong invocationCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+    private volatile Random random = new Random();
+    private volatile InvocationHandler defaultHandler = new InvocationHandler() {
+        public byte[] invoke(String serviceName, String functionName, byte[] payload) {
+            return payload;
+        }
+    };
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double errorRate;
+    private volatile double throttleRate;
+    private volatile int retryAfterSeconds;
+    private volatile int maxConcurrentInvocations = Integer.MAX_VALUE;
+    private volatile boolean etagsEnabled = true;
+    private volatile String accessKeyId;
+    private volatile String accessKeySecret;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Starts serving on a free local port.
+     */
+    public synchronized FcEmulator start() throws IOException {
+        Preconditions.checkState(server == null, "Emulator is already started");
+        executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setDaemon(true).setNameFormat("fc-emulator-%d").build());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                FcEmulator.this.handle(exchange);
+            }
+        });
+        server.start();
+        return this;
+    }
+
+    /**
+     * @return the base URL to use as the endpoint of a client Config
+     */
+    public synchronized String getEndpoint() {
+        Preconditions.checkState(server != null, "Emulator is not started");
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Delays every request by the given latency.
+     * @param latencyMillis
+     * @return
+     */
+    public FcEmulator setLatencyMillis(long latencyMillis) {
+        return setLatencyMillis(latencyMillis, latencyMillis);
+    }
+
+    /**
+     * Delays every request by a latency drawn evenly from the given range.
+     * @param minLatencyMillis
+     * @param maxLatencyMillis
+     * @return
+     */
+    public FcEmulator setLatencyMillis(long minLatencyMillis, long maxLatencyMillis) {
+        Preconditions.checkArgument(minLatencyMillis >= 0 && maxLatencyMillis >= minLatencyMillis,
+            "Latency range is invalid");
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        return this;
+    }
+
+    /**
+     * Sets the share of requests, between 0 and 1, that fail with 500 InternalServerError.
+     * @param errorRate
+     * @return
+     */
+    public FcEmulator setErrorRate(double errorRate) {
+        Preconditions.checkArgument(errorRate >= 0 && errorRate <= 1, "Error rate must be in [0, 1]");
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Sets the share of requests, between 0 and 1, that are throttled with 429.
+     * @param throttleRate
+     * @return
+     */
+    public FcEmulator setThrottleRate(double throttleRate) {
+        Preconditions.checkArgument(throttleRate >= 0 && throttleRate <= 1,
+            "Throttle rate must be in [0, 1]");
+        this.throttleRate = throttleRate;
+        return this;
+    }
+
+    /**
+     * Sets the Retry-After header of throttled responses, 0, the default, to send none.
+     * @param retryAfterSeconds
+     * @return
+     */
+    public FcEmulator setRetryAfterSeconds(int retryAfterSeconds) {
+        Preconditions.checkArgument(retryAfterSeconds >= 0, "Retry-After cannot be negative");
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * Throttles invocations with 429 while this many are already running.
+     * @param maxConcurrentInvocations
+     * @return
+     */
+    public FcEmulator setMaxConcurrentInvocations(int maxConcurrentInvocations) {
+        Preconditions.checkArgument(maxConcurrentInvocations > 0,
+            "Max concurrent invocations must be positive");
+        this.maxConcurrentInvocations = maxConcurrentInvocations;
+        return this;
+    }
+
+    /**
+     * Sets whether resources carry ETags and conditional requests are honored. On by default.
+     * @param etagsEnabled
+     * @return
+     */
+    public FcEmulator setEtagsEnabled(boolean etagsEnabled) {
+        this.etagsEnabled = etagsEnabled;
+        return this;
+    }
+
+    /**
+     * Seeds the random draws of latency and faults, for repeatable runs.
+     * @param seed
+     * @return
+     */
+    public FcEmulator setSeed(long seed) {
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Rejects requests not signed with this key with 403 SignatureNotMatch.
+     * @param accessKeyId
+     * @param accessKeySecret
+     * @return
+     */
+    public FcEmulator setCredentials(String accessKeyId, String accessKeySecret) {
+        this.accessKeyId = accessKeyId;
+        this.accessKeySecret = accessKeySecret;
+        return this;
+    }
+
+    /**
+     * Sets what runs functions without a handler of their own.
+     * @param handler
+     * @return
+     */
+    public FcEmulator setDefaultHandler(InvocationHandler handler) {
+        Preconditions.checkArgument(handler != null, "Handler cannot be null");
+        this.defaultHandler = handler;
+        return this;
+    }
+
+    /**
+     * Sets what runs the given function. The function does not have to exist.
+     * @param serviceName
+     * @param functionName
+     * @param handler
+     * @return
+     */
+    public FcEmulator setHandler(String serviceName, String functionName,
+        InvocationHandler handler) {
+        Preconditions.checkArgument(handler != null, "Handler cannot be null");
+        handlers.put(serviceName + "/" + functionName, handler);
+        return this;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return invocations that reached a handler
+     */
+    public long getInvocationCount() {
+        return invocationCount.get();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * @return requests failed with an injected 500
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /**
+     * Creates a function, and its service if needed, without going through HTTP, to
+     * set up load tests.
+     * @param serviceName
+     * @param functionName
+     * @return
+     */
+    public synchronized FcEmulator addFunction(String serviceName, String functionName) {
+        Resource service = services.get(serviceName);
+        if (service == null) {
+            JsonObject object = new JsonObject();
+            object.addProperty("serviceName", serviceName);
+            service = create(object, "serviceId");
+            services.put(serviceName, service);
+        }
+        if (!service.children.containsKey(functionName)) {
+            JsonObject object = new JsonObject();
+            object.addProperty("functionName", functionName);
+            object.addProperty("runtime", "nodejs6");
+            object.addProperty("handler", "index.handler");
+            service.children.put(functionName, create(object, "functionId"));
+        }
+        return this;
+    }
+
+    /**
+     * Drops all services, functions and triggers.
+     */
+    public synchronized void reset() {
+        services.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        String requestId = UUID.randomUUID().toString();
+        try {
+            byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+            Response response = respond(exchange, body);
+            if (response.invokeService != null) {
+                response = invoke(exchange, response.invokeService, response.invokeFunction, body);
+            }
+            send(exchange, response, requestId);
+        } catch (Exception e) {
+            send(exchange, error(500, "InternalServerError", String.valueOf(e)), requestId);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response respond(HttpExchange exchange, byte[] body) throws Exception {
+        delay();
+        Random random = this.random;
+        if (throttleRate > 0 && random.nextDouble() < throttleRate) {
+            return throttled();
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            failedCount.incrementAndGet();
+            return error(500, "InternalServerError", "Injected failure");
+        }
+        Map<String, String> headers = headers(exchange);
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        Response denied = authenticate(method, path, headers, body);
+        if (denied != null) {
+            return denied;
+        }
+        String[] parts = path.split("/");
+        // "", version, "services", service, "functions", function, "triggers", trigger
+        if (parts.length < 3 || !Const.API_VERSION.equals(parts[1])
+            || !"services".equals(parts[2])) {
+            return error(404, "NotFound", "No such path: " + path);
+        }
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        if (parts.length == 3) {
+            return collection(method, services, "services", "serviceName", query, body);
+        }
+        synchronized (this) {
+            Resource service = services.get(parts[3]);
+            if (parts.length == 4) {
+                return single(method, services, parts[3], service, "Service", headers, body);
+            }
+            if (service == null) {
+                return notFound("Service", parts[3]);
+            }
+            if (!"functions".equals(parts[4])) {
+                return error(404, "NotFound", "No such path: " + path);
+            }
+            if (parts.length == 5) {
+                return collection(method, service.children, "functions", "functionName", query,
+                    body);
+            }
+            Resource function = service.children.get(parts[5]);
+            if (parts.length == 6) {
+                return single(method, service.children, parts[5], function, "Function", headers,
+                    body);
+            }
+            if (function == null) {
+                return notFound("Function", parts[5]);
+            }
+            if (parts.length == 7 && "code".equals(parts[6])) {
+                return code(method, function);
+            }
+            if (parts.length == 7 && "invocations".equals(parts[6])) {
+                if (!"POST".equals(method)) {
+                    return error(405, "MethodNotAllowed", method + " " + path);
+                }
+                // Invoked outside the lock, functions run concurrently
+                return Response.invocation(parts[3], parts[5]);
+            }
+            if (!"triggers".equals(parts[6])) {
+                return error(404, "NotFound", "No such path: " + path);
+            }
+            if (parts.length == 7) {
+                return collection(method, function.children, "triggers", "triggerName", query,
+                    body);
+            }
+            if (parts.length == 8) {
+                return single(method, function.children, parts[7], function.children.get(parts[7]),
+                    "Trigger", headers, body);
+            }
+            return error(404, "NotFound", "No such path: " + path);
+        }
+    }
+
+    private void send(HttpExchange exchange, Response response, String requestId)
+        throws IOException {
+        exchange.getResponseHeaders().add(HeaderKeys.REQUEST_ID, requestId);
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            exchange.getResponseHeaders().add(header.getKey(), header.getValue());
+        }
+        byte[] content = response.content;
+        if (content == null || response.status == 204 || response.status == 304) {
+            exchange.sendResponseHeaders(response.status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(response.status, content.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(content);
+        out.close();
+    }
+
+    /**
+     * Lists, or creates, the resources of a collection in name order, paged by the
+     * limit, nextToken, prefix and startKey parameters like the service.
+     */
+    private synchronized Response collection(String method, Map<String, Resource> resources,
+        String field, String nameField, Map<String, String> query, byte[] body) {
+        if ("POST".equals(method)) {
+            JsonObject object = parse(body);
+            if (object == null || !object.has(nameField)) {
+                return error(400, "InvalidArgument", nameField + " is required");
+            }
+            String name = object.get(nameField).getAsString();
+            if (resources.containsKey(name)) {
+                return error(409, kind(field) + "AlreadyExists",
+                    kind(field) + " " + name + " already exists");
+            }
+            object.remove("code");
+            if ("functions".equals(field)) {
+                addCodeInfo(object, body);
+            }
+            Resource resource = create(object, kind(field).toLowerCase() + "Id");
+            resources.put(name, resource);
+            return resource.response(200);
+        }
+        if (!"GET".equals(method)) {
+            return error(405, "MethodNotAllowed", method);
+        }
+        int limit = DEFAULT_LIST_LIMIT;
+        if (query.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(query.get("limit"));
+            } catch (NumberFormatException e) {
+                return error(400, "InvalidArgument", "limit must be a number");
+            }
+        }
+        String prefix = query.get("prefix");
+        String from = query.containsKey("nextToken") ? query.get("nextToken")
+            : query.get("startKey");
+        JsonArray items = new JsonArray();
+        String nextToken = null;
+        for (Map.Entry<String, Resource> entry : resources.entrySet()) {
+            String name = entry.getKey();
+            if ((prefix != null && !name.startsWith(prefix))
+                || (from != null && name.compareTo(from) < 0)) {
+                continue;
+            }
+            if (items.size() == limit) {
+                nextToken = name;
+                break;
+            }
+            items.add(parser.parse(entry.getValue().json));
+        }
+        JsonObject page = new JsonObject();
+        page.add(field, items);
+        if (nextToken != null) {
+            page.addProperty("nextToken", nextToken);
+        }
+        return new Response(200, gson.toJson(page).getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Gets, updates or deletes one resource.
+     */
+    private synchronized Response single(String method, Map<String, Resource> resources,
+        String name, Resource resource, String kind, Map<String, String> headers, byte[] body) {
+        if (resource == null) {
+            return notFound(kind, name);
+        }
+        if ("GET".equals(method)) {
+            String ifNoneMatch = headers.get(HeaderKeys.IF_NONE_MATCH);
+            if (resource.etag != null && resource.etag.equals(ifNoneMatch)) {
+                notModifiedCount.incrementAndGet();
+                Response response = new Response(304, null);
+                response.headers.put(HeaderKeys.ETAG, resource.etag);
+                return response;
+            }
+            return resource.response(200);
+        }
+        String ifMatch = headers.get("If-Match");
+        if (resource.etag != null && ifMatch != null && !resource.etag.equals(ifMatch)) {
+            return error(412, "PreconditionFailed", kind + " " + name + " has changed");
+        }
+        if ("PUT".equals(method)) {
+            JsonObject update = parse(body);
+            if (update == null) {
+                return error(400, "InvalidArgument", "Body is not a JSON object");
+            }
+            JsonObject object = parser.parse(resource.json).getAsJsonObject();
+            for (Map.Entry<String, JsonElement> field : update.entrySet()) {
+                if (!field.getValue().isJsonNull() && !"code".equals(field.getKey())) {
+                    object.add(field.getKey(), field.getValue());
+                }
+            }
+            if ("Function".equals(kind)) {
+                addCodeInfo(object, body);
+            }
+            object.addProperty("lastModifiedTime", ParameterHelper.getISO8601Time(null));
+            Resource updated = new Resource(object);
+            updated.children.putAll(resource.children);
+            resources.put(name, updated);
+            return updated.response(200);
+        }
+        if ("DELETE".equals(method)) {
+            if (!resource.children.isEmpty()) {
+                return error(412, kind + "NotEmpty", kind + " " + name + " is not empty");
+            }
+            resources.remove(name);
+            return new Response(204, null);
+        }
+        return error(405, "MethodNotAllowed", method);
+    }
+
+    private Response code(String method, Resource function) {
+        if (!"GET".equals(method)) {
+            return error(405, "MethodNotAllowed", method);
+        }
+        JsonObject metadata = parser.parse(function.json).getAsJsonObject();
+        JsonObject code = new JsonObject();
+        code.addProperty("url", getEndpoint() + "/code/"
+            + metadata.get("functionId").getAsString() + ".zip");
+        if (metadata.has("codeChecksum")) {
+            code.add("checksum", metadata.get("codeChecksum"));
+        }
+        return new Response(200, gson.toJson(code).getBytes(Charsets.UTF_8));
+    }
+
+    private Response invoke(HttpExchange exchange, final String serviceName,
+        final String functionName, final byte[] payload) {
+        if (runningInvocations.incrementAndGet() > maxConcurrentInvocations) {
+            runningInvocations.decrementAndGet();
+            return throttled();
+        }
+        final InvocationHandler handler = handlerFor(serviceName, functionName);
+        String invocationType = exchange.getRequestHeaders().getFirst(HeaderKeys.INVOCATION_TYPE);
+        if (Const.INVOCATION_TYPE_ASYNC.equalsIgnoreCase(invocationType)) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        invocationCount.incrementAndGet();
+                        handler.invoke(serviceName, functionName, payload);
+                    } catch (Exception e) {
+                        // nobody waits for the result of an async invocation
+                    } finally {
+                        runningInvocations.decrementAndGet();
+                    }
+                }
+            });
+            return new Response(202, new byte[0]);
+        }
+        Response response;
+        try {
+            invocationCount.incrementAndGet();
+            byte[] result = handler.invoke(serviceName, functionName, payload);
+            response = new Response(200, result == null ? new byte[0] : result);
+        } catch (Exception e) {
+            JsonObject error = new JsonObject();
+            error.addProperty("errorMessage", String.valueOf(e.getMessage()));
+            error.addProperty("errorType", e.getClass().getName());
+            response = new Response(200, gson.toJson(error).getBytes(Charsets.UTF_8));
+            response.headers.put(ERROR_TYPE, "UnhandledInvocationError");
+        } finally {
+            runningInvocations.decrementAndGet();
+        }
+        String logType = exchange.getRequestHeaders().getFirst(HeaderKeys.INVOCATION_LOG_TYPE);
+        if ("Tail".equalsIgnoreCase(logType)) {
+            response.headers.put(HeaderKeys.INVOCATION_LOG_RESULT, Base64Helper.encode(
+                ("FC Invoke Start " + serviceName + "/" + functionName + "\nFC Invoke End\n")
+                    .getBytes(Charsets.UTF_8)));
+        }
+        return response;
+    }
+
+    private InvocationHandler handlerFor(String serviceName, String functionName) {
+        InvocationHandler handler = handlers.get(serviceName + "/" + functionName);
+        return handler != null ? handler : defaultHandler;
+    }
+
+    private Response throttled() {
+        throttledCount.incrementAndGet();
+        Response response = error(429, "ResourceThrottled", "Request was throttled");
+        if (retryAfterSeconds > 0) {
+            response.headers.put(HeaderKeys.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        }
+        return response;
+    }
+
+    private void delay() throws InterruptedException {
+        long min = minLatencyMillis;
+        long max = maxLatencyMillis;
+        long latency = max > min ? min + (long) (random.nextDouble() * (max - min)) : min;
+        if (latency > 0) {
+            TimeUnit.MILLISECONDS.sleep(latency);
+        }
+    }
+
+    /**
+     * Checks the Authorization header the way the service does, when credentials are set.
+     */
+    private Response authenticate(String method, String path, Map<String, String> headers,
+        byte[] body) throws Exception {
+        String id = accessKeyId;
+        if (id == null) {
+            return null;
+        }
+        String contentMd5 = headers.get("Content-MD5");
+        if (contentMd5 != null && !contentMd5.equals(ParameterHelper.md5Sum(body))) {
+            return error(400, "InvalidArgument", "Content-MD5 does not match the body");
+        }
+        String expected = "FC " + id + ":" + FcSignatureComposer.signString(
+            FcSignatureComposer.composeStringToSign(method, path, headers), accessKeySecret);
+        if (!expected.equals(headers.get("Authorization"))) {
+            return error(403, "SignatureNotMatch", "The request signature does not match");
+        }
+        return null;
+    }
+
+    private Resource create(JsonObject object, String idField) {
+        String now = ParameterHelper.getISO8601Time(null);
+        object.addProperty(idField, UUID.randomUUID().toString());
+        object.addProperty("createdTime", now);
+        object.addProperty("lastModifiedTime", now);
+        return new Resource(object);
+    }
+
+    private void addCodeInfo(JsonObject object, byte[] body) {
+        JsonObject request = parse(body);
+        if (request == null || !request.has("code") || !request.get("code").isJsonObject()) {
+            return;
+        }
+        JsonObject code = request.getAsJsonObject("code");
+        byte[] zip = code.has("zipFile") ? Base64Helper.decode(code.get("zipFile").getAsString())
+            : gson.toJson(code).getBytes(Charsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(zip);
+        object.addProperty("codeSize", zip.length);
+        object.addProperty("codeChecksum", String.valueOf(crc.getValue()));
+    }
+
+    private JsonObject parse(byte[] body) {
+        try {
+            JsonElement element = parser.parse(new String(body, Charsets.UTF_8));
+            return element.isJsonObject() ? element.getAsJsonObject() : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    private Response notFound(String kind, String name) {
+        return error(404, kind + "NotFound", kind + " " + name + " does not exist");
+    }
+
+    private Response error(int status, String code, String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("ErrorCode", code);
+        error.addProperty("ErrorMessage", message);
+        return new Response(status, gson.toJson(error).getBytes(Charsets.UTF_8));
+    }
+
+    private static String kind(String field) {
+        // services -> Service
+        return Character.toUpperCase(field.charAt(0)) + field.substring(1, field.length() - 1);
+    }
+
+    private static Map<String, String> headers(HttpExchange exchange) {
+        Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> entry : exchange.getRequestHeaders().entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                headers.put(entry.getKey(), entry.getValue().get(0));
+            }
+        }
+        return headers;
+    }
+
+    private static Map<String, String> query(String rawQuery)
+        throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                    URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    private final class Resource {
+
+        final String json;
+        final String etag;
+        final Map<String, Resource> children = new TreeMap<String, Resource>();
+
+        Resource(JsonObject object) {
+            this.json = gson.toJson(object);
+            this.etag = etagsEnabled ? ParameterHelper.md5Sum(json.getBytes(Charsets.UTF_8)) : null;
+        }
+
+        Response response(int status) {
+            Response response = new Response(status, json.getBytes(Charsets.UTF_8));
+            if (etag != null) {
+                response.headers.put(HeaderKeys.ETAG, etag);
+            }
+            return response;
+        }
+    }
+
+    private static final class Response {
+
+        final int status;
+        final byte[] content;
+        final Map<String, String> headers = new HashMap<String, String>();
+        String invokeService;
+        String invokeFunction;
+
+        Response(int status, byte[] content) {
+            this.status = status;
+            this.content = content;
+        }
+
+        /**
+         * Stands for the result of an invocation, which is run after the state lock
+         * is released.
+         */
+        static Response invocation(String serviceName, String functionName) {
+            Response response = new Response(0, null);
+            response.invokeService = serviceName;
+            response.invokeFunction = functionName;
+            return response;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.aliyuncs.fc.emulator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.client.FunctionComputeClient;
+import com.aliyuncs.fc.client.MetadataCache;
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.model.Code;
+import com.aliyuncs.fc.model.FunctionMetadata;
+import com.aliyuncs.fc.request.CreateFunctionRequest;
+import com.aliyuncs.fc.request.CreateServiceRequest;
+import com.aliyuncs.fc.request.CreateTriggerRequest;
+import com.aliyuncs.fc.request.DeleteFunctionRequest;
+import com.aliyuncs.fc.request.DeleteServiceRequest;
+import com.aliyuncs.fc.request.GetFunctionRequest;
+import com.aliyuncs.fc.request.GetServiceRequest;
+import com.aliyuncs.fc.request.InvokeFunctionRequest;
+import com.aliyuncs.fc.request.ListTriggersRequest;
+import com.aliyuncs.fc.request.UpdateServiceRequest;
+import com.aliyuncs.fc.response.GetFunctionResponse;
+import com.aliyuncs.fc.response.GetServiceResponse;
+import com.aliyuncs.fc.response.InvokeFunctionResponse;
+import com.google.common.base.Charsets;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FcEmulatorTest {
+
+    private FcEmulator emulator;
+    private FunctionComputeClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        emulator = new FcEmulator().setCredentials("ak", "secret").start();
+        client = newClient(RetryPolicy.noRetry());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        emulator.close();
+    }
+
+    private FunctionComputeClient newClient(RetryPolicy retryPolicy) {
+        Config config = new Config("cn-shanghai", "1234", "ak", "secret", null, false)
+            .setEndpoint(emulator.getEndpoint())
+            .setRetryPolicy(retryPolicy);
+        return new FunctionComputeClient(config);
+    }
+
+    @Test
+    public void testServiceFunctionAndTriggerLifecycle() {
+        client.createService(new CreateServiceRequest().setServiceName("svc")
+            .setDescription("first"));
+        client.createFunction(new CreateFunctionRequest("svc").setFunctionName("fn")
+            .setRuntime("nodejs6").setHandler("index.handler")
+            .setCode(new Code().setZipFile(new byte[100])));
+        client.createTrigger(new CreateTriggerRequest("svc", "fn").setTriggerName("tr")
+            .setTriggerType("oss").setSourceArn("acs:oss:cn-shanghai:1234:bucket"));
+
+        GetServiceResponse service = client.getService(new GetServiceRequest("svc"));
+        assertEquals("first", service.getDescription());
+        assertNotNull(service.getServiceId());
+        client.updateService(new UpdateServiceRequest("svc").setDescription("second"));
+        assertEquals("second", client.getService(new GetServiceRequest("svc")).getDescription());
+
+        GetFunctionResponse function = client.getFunction(new GetFunctionRequest("svc", "fn"));
+        assertEquals("nodejs6", function.getRuntime());
+        assertEquals(100, function.getCodeSize());
+        assertEquals(1, client.listTriggers(new ListTriggersRequest("svc", "fn"))
+            .getTriggers().length);
+
+        try {
+            client.deleteService(new DeleteServiceRequest("svc"));
+            fail();
+        } catch (ClientException e) {
+            assertEquals("ServiceNotEmpty", e.getErrorCode());
+        }
+        try {
+            client.getFunction(new GetFunctionRequest("svc", "missing"));
+            fail();
+        } catch (ClientException e) {
+            assertEquals(404, e.getStatusCode());
+            assertEquals("FunctionNotFound", e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testListsArePaged() {
+        for (int i = 0; i < 25; i++) {
+            emulator.addFunction("svc", String.format("fn-%02d", i));
+        }
+        emulator.addFunction("svc", "other");
+        List<String> names = new ArrayList<String>();
+        for (FunctionMetadata function : client.iterateFunctions("svc", "fn-")) {
+            names.add(function.getFunctionName());
+        }
+        assertEquals(25, names.size());
+        assertEquals("fn-00", names.get(0));
+        assertEquals("fn-24", names.get(24));
+    }
+
+    @Test
+    public void testInvokesHandlers() {
+        emulator.addFunction("svc", "echo").addFunction("svc", "upper").addFunction("svc", "bad");
+        emulator.setHandler("svc", "upper", new InvocationHandler() {
+            public byte[] invoke(String serviceName, String functionName, byte[] payload) {
+                return new String(payload, Charsets.UTF_8).toUpperCase().getBytes(Charsets.UTF_8);
+            }
+        });
+        emulator.setHandler("svc", "bad", new InvocationHandler() {
+            public byte[] invoke(String serviceName, String functionName, byte[] payload)
+                throws Exception {
+                throw new IllegalStateException("broken");
+            }
+        });
+        byte[] hello = "hello".getBytes(Charsets.UTF_8);
+        assertArrayEquals(hello, client.invokeFunction(
+            new InvokeFunctionRequest("svc", "echo").setPayload(hello)).getPayload());
+        InvokeFunctionResponse upper = client.invokeFunction(
+            new InvokeFunctionRequest("svc", "upper").setPayload(hello).setLogType("Tail"));
+        assertEquals("HELLO", new String(upper.getPayload(), Charsets.UTF_8));
+        // com.sun.net.httpserver sends header names in its own case
+        assertNotNull(upper.getHeader().get("X-fc-log-result"));
+        InvokeFunctionResponse bad = client.invokeFunction(
+            new InvokeFunctionRequest("svc", "bad").setPayload(hello));
+        assertEquals(200, bad.getStatus());
+        assertTrue(new String(bad.getPayload(), Charsets.UTF_8).contains("broken"));
+        assertEquals(3, emulator.getInvocationCount());
+    }
+
+    @Test
+    public void testRejectsBadSignatures() throws IOException {
+        Config config = new Config("cn-shanghai", "1234", "ak", "wrong", null, false)
+            .setEndpoint(emulator.getEndpoint())
+            .setRetryPolicy(RetryPolicy.noRetry());
+        FunctionComputeClient wrong = new FunctionComputeClient(config);
+        try {
+            wrong.createService(new CreateServiceRequest().setServiceName("svc"));
+            fail();
+        } catch (ClientException e) {
+            assertEquals(403, e.getStatusCode());
+            assertEquals("SignatureNotMatch", e.getErrorCode());
+        } finally {
+            wrong.close();
+        }
+    }
+
+    @Test
+    public void testThrottledRequestsAreRetried() throws IOException {
+        emulator.addFunction("svc", "fn");
+        emulator.setThrottleRate(1);
+        try {
+            client.invokeFunction(new InvokeFunctionRequest("svc", "fn"));
+            fail();
+        } catch (ClientException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+
+        emulator.setSeed(42).setThrottleRate(0.3).setErrorRate(0.2);
+        FunctionComputeClient retrying = newClient(new RetryPolicy().setMaxAttempts(20)
+            .setBaseDelayMillis(1).setMaxDelayMillis(1));
+        try {
+            for (int i = 0; i < 20; i++) {
+                retrying.invokeFunction(new InvokeFunctionRequest("svc", "fn"));
+            }
+        } finally {
+            retrying.close();
+        }
+        assertEquals(20, emulator.getInvocationCount());
+        assertTrue(emulator.getThrottledCount() > 1);
+        assertTrue(emulator.getFailedCount() > 0);
+    }
+
+    @Test
+    public void testConditionalRequests() {
+        emulator.addFunction("svc", "fn");
+        client.setMetadataCache(new MetadataCache(100, 0));
+        client.getService(new GetServiceRequest("svc"));
+        client.getService(new GetServiceRequest("svc"));
+        assertEquals(1, emulator.getNotModifiedCount());
+
+        try {
+            client.updateService(new UpdateServiceRequest("svc").setIfMatch("stale"));
+            fail();
+        } catch (ClientException e) {
+            assertEquals(412, e.getStatusCode());
+        }
+        client.deleteFunction(new DeleteFunctionRequest("svc", "fn"));
+        client.deleteService(new DeleteServiceRequest("svc"));
+    }
+}
@@ -0,0 +1,14 @@
+package com.aliyuncs.fc.emulator;
+
+/**
+ * Runs the functions of an {@link FcEmulator}.
+ */
+public interface InvocationHandler {
+
+    /**
+     * @return the result returned to the caller
+     * @throws Exception reported to the caller as an unhandled function error, with
+     * status 200 and an X-Fc-Error-Type header, as the service does
+     */
+    byte[] invoke(String serviceName, String functionName, byte[] payload) throws Exception;
+}
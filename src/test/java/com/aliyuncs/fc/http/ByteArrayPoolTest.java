@@ -0,0 +1,130 @@
+package com.aliyuncs.fc.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+
+public class ByteArrayPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+        ByteArrayPool pool = new ByteArrayPool();
+        assertEquals(1024, pool.acquire(0).length);
+        assertEquals(1024, pool.acquire(1024).length);
+        assertEquals(2048, pool.acquire(1025).length);
+        assertEquals(ByteArrayPool.MAX_SIZE, pool.acquire(ByteArrayPool.MAX_SIZE).length);
+        assertEquals(ByteArrayPool.MAX_SIZE + 1, pool.acquire(ByteArrayPool.MAX_SIZE + 1).length);
+        assertEquals(5, pool.getAllocationCount());
+        assertEquals(0, pool.getReuseCount());
+    }
+
+    @Test
+    public void testReleasedArraysAreReused() {
+        ByteArrayPool pool = new ByteArrayPool();
+        byte[] array = pool.acquire(3000);
+        pool.release(array);
+        assertEquals(4096, pool.getPooledBytes());
+        assertSame(array, pool.acquire(4000));
+        assertEquals(1, pool.getReuseCount());
+        assertEquals(4096, pool.getReusedBytes());
+        assertEquals(0, pool.getPooledBytes());
+
+        // An array of any length serves requests up to the class below it
+        byte[] odd = new byte[5000];
+        pool.release(odd);
+        assertSame(odd, pool.acquire(4096));
+        pool.release(odd);
+        assertEquals(8192, pool.acquire(4097).length);
+        assertEquals(5000, pool.getPooledBytes());
+
+        pool.release(new byte[100]);
+        assertEquals(5000, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testPoolIsBounded() {
+        ByteArrayPool pool = new ByteArrayPool(10000);
+        pool.release(new byte[8192]);
+        pool.release(new byte[8192]);
+        assertEquals(8192, pool.getPooledBytes());
+        assertEquals(1, pool.getDiscardCount());
+        pool.clear();
+        assertEquals(0, pool.getPooledBytes());
+
+        ByteArrayPool none = new ByteArrayPool(0);
+        none.release(new byte[1024]);
+        assertEquals(0, none.getPooledBytes());
+        none.acquire(1024);
+        assertEquals(1, none.getAllocationCount());
+        assertEquals(1024, none.getAllocatedBytes());
+    }
+
+    @Test
+    public void testPooledOutputStream() {
+        ByteArrayPool pool = new ByteArrayPool();
+        byte[] data = new byte[100000];
+        new Random(3).nextBytes(data);
+        PooledOutputStream out = new PooledOutputStream(pool);
+        out.write(data[0]);
+        out.write(data, 1, data.length - 1);
+        assertEquals(data.length, out.size());
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(0, out.size());
+        assertTrue(pool.getPooledBytes() >= data.length);
+
+        long allocated = pool.getAllocatedBytes();
+        out.write(data, 0, data.length);
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(allocated, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void testTransportReadsChunkedBodiesThroughPool() throws IOException {
+        final byte[] content = new byte[300 * 1024];
+        new Random(5).nextBytes(content);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                out.write(content);
+                out.close();
+            }
+        });
+        server.start();
+        ByteArrayPool pool = new ByteArrayPool();
+        PooledTransport transport = new PooledTransport(new ConnectionPool(2, 60000, 0), pool);
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+            HttpResponse response = transport.execute(
+                new TransportRequest("GET", url, new HashMap<String, String>(), null));
+            assertArrayEquals(content, response.getContent());
+            assertSame(pool, response.getContentPool());
+            long allocated = pool.getAllocatedBytes();
+
+            // The second read collects into the segments the first one gave back
+            response.release();
+            assertNull(response.getContent());
+            response = transport.execute(
+                new TransportRequest("GET", url, new HashMap<String, String>(), null));
+            assertArrayEquals(content, response.getContent());
+            assertEquals(allocated, pool.getAllocatedBytes());
+            assertTrue(pool.getReuseCount() > 0);
+        } finally {
+            transport.close();
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.aliyuncs.fc.http;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers the first request on every connection with keep-alive, then reads the
+ * next request on it to the end and closes the connection without responding, the
+ * way a server does that dropped an idle connection just as a request arrived.
+ * Alternatively it closes the connection right after the first response, as a server
+ * with a short idle timeout does.
+ */
+class DroppingServer {
+
+    private final ServerSocket serverSocket;
+    private final boolean closeIdle;
+    private final AtomicInteger received = new AtomicInteger();
+
+    DroppingServer() throws IOException {
+        this(false);
+    }
+
+    /**
+     * @param closeIdle whether to close each connection once its first response is sent
+     */
+    DroppingServer(boolean closeIdle) throws IOException {
+        this.closeIdle = closeIdle;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        serve(serverSocket.accept());
+                    } catch (IOException e) {
+                        // Closed
+                    }
+                }
+            }
+        }, "dropping-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    /**
+     * @return the requests received to the end, answered or not
+     */
+    int getReceivedCount() {
+        return received.get();
+    }
+
+    void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void serve(final Socket socket) {
+        Thread handler = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    InputStream in = new BufferedInputStream(socket.getInputStream());
+                    readRequest(in);
+                    OutputStream out = socket.getOutputStream();
+                    out.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok"
+                        .getBytes(Charsets.ISO_8859_1));
+                    out.flush();
+                    if (!closeIdle) {
+                        readRequest(in);
+                    }
+                } catch (IOException e) {
+                    // The client went away
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // Ignored
+                    }
+                }
+            }
+        });
+        handler.setDaemon(true);
+        handler.start();
+    }
+
+    private void readRequest(InputStream in) throws IOException {
+        long length = 0;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (line.toLowerCase(Locale.ENGLISH).startsWith("content-length:")) {
+                length = Long.parseLong(line.substring(15).trim());
+            }
+        }
+        ByteStreams.skipFully(in, length);
+        received.incrementAndGet();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new IOException("Connection closed");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), Charsets.ISO_8859_1);
+    }
+}
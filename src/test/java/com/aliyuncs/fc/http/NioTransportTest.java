@@ -0,0 +1,242 @@
+package com.aliyuncs.fc.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NioTransportTest {
+
+    private HttpServer server;
+    private NioTransport transport;
+    private String baseUrl;
+    private final Set<Integer> clientPorts =
+        Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/echo", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+                exchange.getResponseHeaders().add("X-Fc-Request-Id", "req-1");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.createContext("/chunked", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                for (int i = 0; i < 1000; i++) {
+                    out.write(("line " + i + "\n").getBytes(Charsets.UTF_8));
+                }
+                out.close();
+            }
+        });
+        server.createContext("/slow", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.sendResponseHeaders(204, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        transport = new NioTransport(2, 60000, 0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testConcurrentRequestsReuseConnections() throws Exception {
+        for (int round = 0; round < 3; round++) {
+            List<ListenableFuture<HttpResponse>> futures =
+                new ArrayList<ListenableFuture<HttpResponse>>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(transport.executeAsync(post("/echo", "payload-" + i)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                HttpResponse response = futures.get(i).get();
+                assertEquals(200, response.getStatus());
+                assertEquals("req-1", response.getHeaders().get("X-fc-request-id"));
+                assertEquals("payload-" + i, new String(response.getContent(), Charsets.UTF_8));
+            }
+        }
+        assertTrue(transport.getIdleCount() > 0);
+        assertTrue("connections were not reused: " + clientPorts.size(),
+            clientPorts.size() <= 100);
+    }
+
+    @Test
+    public void testLargeBodyAndChunkedResponse() throws Exception {
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 300 * 1024) {
+            large.append("0123456789abcdef");
+        }
+        HttpResponse echo = transport.execute(post("/echo", large.toString()));
+        assertEquals(large.toString(), new String(echo.getContent(), Charsets.UTF_8));
+
+        HttpResponse chunked = transport.execute(
+            new TransportRequest("GET", baseUrl + "/chunked", new HashMap<String, String>(),
+                null));
+        String body = new String(chunked.getContent(), Charsets.UTF_8);
+        assertTrue(body.startsWith("line 0\n"));
+        assertTrue(body.endsWith("line 999\n"));
+    }
+
+    @Test
+    public void testReadTimeout() throws Exception {
+        try {
+            transport.execute(new TransportRequest("GET", baseUrl + "/slow",
+                new HashMap<String, String>(), null).setReadTimeoutMillis(200));
+            fail("expected a timeout");
+        } catch (SocketTimeoutException e) {
+            assertEquals("Read timed out", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testClosedTransportRejectsRequests() throws Exception {
+        transport.close();
+        try {
+            transport.execute(post("/echo", "x"));
+            fail("expected the closed transport to fail");
+        } catch (IOException e) {
+            assertEquals("Transport has been closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testIdempotentRequestIsResentOnDroppedConnection() throws Exception {
+        DroppingServer dropping = new DroppingServer();
+        NioTransport single = new NioTransport(1, 60000, 0);
+        try {
+            for (int i = 0; i < 2; i++) {
+                assertEquals(200, single.execute(new TransportRequest("GET", dropping.getUrl(),
+                    new HashMap<String, String>(), null)).getStatus());
+            }
+            assertEquals(3, dropping.getReceivedCount());
+        } finally {
+            single.close();
+            dropping.close();
+        }
+    }
+
+    @Test
+    public void testWrittenPostIsNotResent() throws Exception {
+        DroppingServer dropping = new DroppingServer();
+        NioTransport single = new NioTransport(1, 60000, 0);
+        try {
+            TransportRequest request = new TransportRequest("POST", dropping.getUrl(),
+                new HashMap<String, String>(), "payload".getBytes(Charsets.UTF_8));
+            assertEquals(200, single.execute(request).getStatus());
+            try {
+                single.execute(new TransportRequest("POST", dropping.getUrl(),
+                    new HashMap<String, String>(), "payload".getBytes(Charsets.UTF_8)));
+                fail("expected the dropped POST to fail");
+            } catch (IOException expected) {
+            }
+            assertEquals(2, dropping.getReceivedCount());
+        } finally {
+            single.close();
+            dropping.close();
+        }
+    }
+
+    @Test
+    public void testFailingBodyStreamFailsOnlyItsRequest() throws Exception {
+        InputStream failing = new InputStream() {
+            public int read() {
+                throw new IllegalStateException("broken body");
+            }
+
+            public int read(byte[] b, int off, int len) {
+                throw new IllegalStateException("broken body");
+            }
+        };
+        TransportRequest request = new TransportRequest("POST", baseUrl + "/echo",
+            new HashMap<String, String>(), null).setBody(RequestBody.create(failing, 10));
+        try {
+            transport.execute(request);
+            fail("expected the body stream's error");
+        } catch (IllegalStateException e) {
+            assertEquals("broken body", e.getMessage());
+        }
+        assertEquals("after", new String(transport.execute(post("/echo", "after")).getContent(),
+            Charsets.UTF_8));
+    }
+
+    @Test
+    public void testRequestsRacingCloseAlwaysComplete() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            final NioTransport racing = new NioTransport(1, 60000, 0);
+            List<ListenableFuture<HttpResponse>> futures =
+                new ArrayList<ListenableFuture<HttpResponse>>();
+            Thread closer = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        racing.close();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            closer.start();
+            for (int i = 0; i < 200; i++) {
+                futures.add(racing.executeAsync(post("/echo", "x")));
+            }
+            closer.join();
+            for (ListenableFuture<HttpResponse> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    // Failed because the transport closed
+                }
+            }
+        }
+    }
+
+    private TransportRequest post(String path, String body) {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/octet-stream");
+        return new TransportRequest("POST", baseUrl + path, headers,
+            body.getBytes(Charsets.UTF_8));
+    }
+}
@@ -0,0 +1,229 @@
+package com.aliyuncs.fc.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Charsets;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledTransportTest {
+
+    private DroppingServer server;
+    private PooledTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new DroppingServer();
+        transport = new PooledTransport(new ConnectionPool(4, 60000, 0));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.close();
+        server.close();
+    }
+
+    private TransportRequest request(String method) {
+        TransportRequest request = new TransportRequest(method, server.getUrl(),
+            new HashMap<String, String>(), null);
+        if ("POST".equals(method)) {
+            request.setBody(RequestBody.create("payload".getBytes(Charsets.UTF_8)));
+        }
+        return request;
+    }
+
+    @Test
+    public void testIdempotentRequestIsResentOnDroppedConnection() throws IOException {
+        assertEquals(200, transport.execute(request("GET")).getStatus());
+        assertEquals(200, transport.execute(request("GET")).getStatus());
+        assertEquals(3, server.getReceivedCount());
+    }
+
+    @Test
+    public void testWrittenPostIsNotResent() throws IOException {
+        assertEquals(200, transport.execute(request("POST")).getStatus());
+        try {
+            transport.execute(request("POST"));
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(2, server.getReceivedCount());
+    }
+
+    @Test
+    public void testWrittenPostIsNotResentWhenStreaming() throws IOException {
+        assertEquals(200, transport.execute(request("POST")).getStatus());
+        try {
+            transport.executeStreaming(request("POST"));
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(2, server.getReceivedCount());
+    }
+
+    @Test
+    public void testConnectionClosedWhileIdleIsNotReused() throws Exception {
+        DroppingServer closing = new DroppingServer(true);
+        try {
+            TransportRequest first = new TransportRequest("POST", closing.getUrl(),
+                new HashMap<String, String>(), null)
+                .setBody(RequestBody.create("payload".getBytes(Charsets.UTF_8)));
+            assertEquals(200, transport.execute(first).getStatus());
+            assertEquals(1, transport.getConnectionPool().getIdleCount());
+            Thread.sleep(500);
+            TransportRequest second = new TransportRequest("POST", closing.getUrl(),
+                new HashMap<String, String>(), null)
+                .setBody(RequestBody.create("payload".getBytes(Charsets.UTF_8)));
+            assertEquals(200, transport.execute(second).getStatus());
+            assertEquals(2, closing.getReceivedCount());
+        } finally {
+            closing.close();
+        }
+    }
+
+    @Test
+    public void testHeadersThatWouldSplitTheRequestAreRejected() throws Exception {
+        String[][] invalid = {{"X-Fc-Note", "a\r\nX-Injected: 1"}, {"X-Fc-Note", "line\n"},
+            {"X-Fc-Note\r\nX-Injected", "1"}, {"X-Fc-Note", "\u4e2d\u6587"}};
+        for (String[] header : invalid) {
+            TransportRequest request = request("GET");
+            request.getHeaders().put(header[0], header[1]);
+            try {
+                transport.execute(request);
+                fail(header[0] + ": " + header[1]);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertEquals(0, server.getReceivedCount());
+
+        TransportRequest latin1 = request("GET");
+        latin1.getHeaders().put("X-Fc-Note", "caf\u00e9");
+        assertEquals(200, transport.execute(latin1).getStatus());
+    }
+
+    @Test
+    public void testFailedStreamingRequestGivesBackItsConnection() throws Exception {
+        PooledTransport single = new PooledTransport(new ConnectionPool(1, 60000, 0));
+        try {
+            TransportRequest invalid = request("GET");
+            invalid.getHeaders().put("X-Fc-Note", "a\r\nX-Injected: 1");
+            try {
+                single.executeStreaming(invalid);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+            HttpResponse response = single.executeStreaming(request("GET")
+                .setConnectTimeoutMillis(2000));
+            assertEquals(200, response.getStatus());
+            response.getContentStream().close();
+        } finally {
+            single.close();
+        }
+    }
+
+    @Test
+    public void testPlainRequestIsForwardedByHttpProxy() throws Exception {
+        ServerSocket proxy = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        BlockingQueue<String> requestLines = answerOnce(proxy,
+            "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+        ProxySelector previous = ProxySelector.getDefault();
+        ProxySelector.setDefault(selector(proxy.getLocalPort()));
+        try {
+            HttpResponse response = transport.execute(new TransportRequest("GET",
+                "http://fc.invalid:8080/services?limit=1", new HashMap<String, String>(), null));
+            assertEquals(200, response.getStatus());
+            assertEquals("GET http://fc.invalid:8080/services?limit=1 HTTP/1.1",
+                requestLines.poll(5, TimeUnit.SECONDS));
+        } finally {
+            ProxySelector.setDefault(previous);
+            proxy.close();
+        }
+    }
+
+    @Test
+    public void testHttpsIsTunneledThroughHttpProxy() throws Exception {
+        ServerSocket proxy = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        BlockingQueue<String> requestLines = answerOnce(proxy,
+            "HTTP/1.1 407 Proxy Authentication Required\r\nContent-Length: 0\r\n\r\n");
+        ProxySelector previous = ProxySelector.getDefault();
+        ProxySelector.setDefault(selector(proxy.getLocalPort()));
+        try {
+            transport.execute(new TransportRequest("GET", "https://fc.invalid/services",
+                new HashMap<String, String>(), null));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("407"));
+            assertEquals("CONNECT fc.invalid:443 HTTP/1.1", requestLines.poll(5, TimeUnit.SECONDS));
+        } finally {
+            ProxySelector.setDefault(previous);
+            proxy.close();
+        }
+    }
+
+    private static ProxySelector selector(final int port) {
+        return new ProxySelector() {
+            public List<Proxy> select(URI uri) {
+                return Collections.singletonList(new Proxy(Proxy.Type.HTTP,
+                    new InetSocketAddress("127.0.0.1", port)));
+            }
+
+            public void connectFailed(URI uri, SocketAddress address, IOException e) {
+            }
+        };
+    }
+
+    /**
+     * Accepts one connection, hands over its request line and answers with the given
+     * response.
+     */
+    private static BlockingQueue<String> answerOnce(final ServerSocket server,
+        final String response) {
+        final BlockingQueue<String> requestLines = new ArrayBlockingQueue<String>(1);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Socket socket = server.accept();
+                    try {
+                        BufferedReader in = new BufferedReader(new InputStreamReader(
+                            socket.getInputStream(), Charsets.ISO_8859_1));
+                        requestLines.add(in.readLine());
+                        String line;
+                        while ((line = in.readLine()) != null && line.length() > 0) {
+                        }
+                        OutputStream out = socket.getOutputStream();
+                        out.write(response.getBytes(Charsets.ISO_8859_1));
+                        out.flush();
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // Closed
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return requestLines;
+    }
+}
@@ -0,0 +1,162 @@
+package com.aliyuncs.fc.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.utils.ParameterHelper;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestBodyTest {
+
+    private HttpServer server;
+    private String url;
+    private final Map<String, String> received = new HashMap<String, String>();
+    private final byte[] content = new byte[200 * 1024 + 17];
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(7).nextBytes(content);
+        file = File.createTempFile("fc-body", ".bin");
+        Files.write(content, file);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/echo", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                synchronized (received) {
+                    received.put("Transfer-Encoding",
+                        exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+                    received.put("Content-Length",
+                        exchange.getRequestHeaders().getFirst("Content-Length"));
+                }
+                byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/echo";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        file.delete();
+    }
+
+    @Test
+    public void testContentMd5MatchesBytes() throws IOException {
+        String expected = ParameterHelper.md5Sum(content);
+        assertEquals(expected, RequestBody.create(content).contentMd5());
+        assertEquals(expected, RequestBody.create(file).contentMd5());
+        ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+        direct.put(content).flip();
+        assertEquals(expected, RequestBody.create(direct).contentMd5());
+        assertEquals(0, direct.position());
+        assertEquals(null,
+            RequestBody.create(new ByteArrayInputStream(content), content.length).contentMd5());
+    }
+
+    @Test
+    public void testStreamCanBeSentOnce() throws IOException {
+        RequestBody body = RequestBody.create(new ByteArrayInputStream(content), -1);
+        assertFalse(body.isRepeatable());
+        assertArrayEquals(content, body.toByteArray());
+        try {
+            body.open();
+            fail("expected the stream to be consumed");
+        } catch (IOException e) {
+            assertEquals("Request body stream has already been sent", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testNioTransportStreamsBodies() throws Exception {
+        NioTransport transport = new NioTransport(1, 60000, 0);
+        try {
+            checkStreamsBodies(transport);
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPooledTransportStreamsBodies() throws Exception {
+        PooledTransport transport = new PooledTransport(new ConnectionPool(4, 60000, 0));
+        try {
+            checkStreamsBodies(transport);
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testUrlConnectionTransportStreamsBodies() throws Exception {
+        checkStreamsBodies(new UrlConnectionTransport());
+    }
+
+    @Test
+    public void testShortStreamFails() throws Exception {
+        NioTransport transport = new NioTransport(1, 60000, 0);
+        try {
+            transport.execute(post(
+                RequestBody.create(new ByteArrayInputStream(content), content.length + 1)));
+            fail("expected the short body to fail");
+        } catch (IOException e) {
+            assertEquals("Request body has " + content.length + " bytes but a content length of "
+                + (content.length + 1), e.getMessage());
+        } finally {
+            transport.close();
+        }
+    }
+
+    private void checkStreamsBodies(Transport transport) throws IOException {
+        ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+        direct.put(content).flip();
+        RequestBody[] bodies = {
+            RequestBody.create(file),
+            RequestBody.create(direct),
+            RequestBody.create(new ByteArrayInputStream(content), content.length),
+            RequestBody.create(new ByteArrayInputStream(content), -1)
+        };
+        for (RequestBody body : bodies) {
+            HttpResponse response = transport.execute(post(body));
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(content, response.getContent());
+            synchronized (received) {
+                if (body.getContentLength() < 0) {
+                    assertEquals("chunked", received.get("Transfer-Encoding"));
+                } else {
+                    assertEquals(String.valueOf(content.length), received.get("Content-Length"));
+                }
+            }
+        }
+    }
+
+    private TransportRequest post(RequestBody body) {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/octet-stream");
+        return new TransportRequest("POST", url, headers, null).setBody(body);
+    }
+}
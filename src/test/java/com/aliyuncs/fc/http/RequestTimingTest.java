@@ -0,0 +1,86 @@
+package com.aliyuncs.fc.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.aliyuncs.fc.client.FunctionComputeClient;
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.emulator.FcEmulator;
+import com.aliyuncs.fc.http.RequestTiming.Phase;
+import com.aliyuncs.fc.request.GetServiceRequest;
+import com.aliyuncs.fc.request.InvokeFunctionRequest;
+import com.aliyuncs.fc.response.GetServiceResponse;
+import com.aliyuncs.fc.response.InvokeFunctionResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestTimingTest {
+
+    private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private FcEmulator emulator;
+    private FunctionComputeClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        emulator = new FcEmulator().start();
+        emulator.addFunction("svc", "fn");
+        client = new FunctionComputeClient(new Config("cn-shanghai", "1234", "ak", "secret",
+            null, false).setEndpoint(emulator.getEndpoint()));
+        emulator.setLatencyMillis(50);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        emulator.close();
+    }
+
+    @Test
+    public void testSyncPhases() {
+        InvokeFunctionResponse first = client.invokeFunction(
+            new InvokeFunctionRequest("svc", "fn").setPayload(new byte[100]));
+        RequestTiming timing = first.getTiming();
+        assertNotNull(timing);
+        assertEquals("InvokeFunction", timing.getOperation());
+        assertFalse(timing.isConnectionReused());
+        assertTrue(timing.getNanos(Phase.SIGN) > 0);
+        assertTrue(timing.getNanos(Phase.CONNECT) > 0);
+        assertTrue(timing.getNanos(Phase.WRITE) > 0);
+        assertTrue(timing.getNanos(Phase.TIME_TO_FIRST_BYTE) >= LATENCY_NANOS);
+        assertTrue(timing.getNanos(Phase.PARSE) > 0);
+        assertEquals(0, timing.getNanos(Phase.TLS));
+
+        RequestTiming second = client.invokeFunction(new InvokeFunctionRequest("svc", "fn"))
+            .getTiming();
+        assertTrue(second.isConnectionReused());
+        assertEquals(0, second.getNanos(Phase.CONNECT));
+        assertTrue(second.getTotalNanos() >= LATENCY_NANOS);
+    }
+
+    @Test
+    public void testAsyncPhases() throws Exception {
+        InvokeFunctionResponse response = client.invokeFunctionAsync(
+            new InvokeFunctionRequest("svc", "fn").setPayload(new byte[100])).get();
+        RequestTiming timing = response.getTiming();
+        assertFalse(timing.isConnectionReused());
+        assertTrue(timing.getNanos(Phase.SIGN) > 0);
+        assertTrue(timing.getNanos(Phase.WRITE) > 0);
+        assertTrue(timing.getNanos(Phase.TIME_TO_FIRST_BYTE) >= LATENCY_NANOS);
+        assertTrue(timing.getNanos(Phase.BODY_READ) >= 0);
+    }
+
+    @Test
+    public void testParsedResponsesHaveTheirOwnCopy() {
+        GetServiceResponse first = client.getService(new GetServiceRequest("svc"));
+        GetServiceResponse second = client.getService(new GetServiceRequest("svc"));
+        assertTrue(first.getTiming() != second.getTiming());
+        assertEquals("GetService", first.getTiming().getOperation());
+        assertTrue(first.getTiming().toString().contains("time_to_first_byte="));
+    }
+}
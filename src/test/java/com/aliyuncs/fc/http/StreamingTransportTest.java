@@ -0,0 +1,110 @@
+package com.aliyuncs.fc.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingTransportTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final byte[] content = new byte[500 * 1024 + 3];
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(11).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/fixed", new Sender(content.length));
+        server.createContext("/chunked", new Sender(0));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testPooledTransportStreamsAndReusesConnection() throws IOException {
+        PooledTransport transport = new PooledTransport(new ConnectionPool(4, 60000, 0));
+        try {
+            for (String path : new String[] {"/fixed", "/chunked", "/fixed"}) {
+                HttpResponse response = transport.executeStreaming(get(path));
+                assertEquals(200, response.getStatus());
+                InputStream in = response.getContentStream();
+                assertArrayEquals(content, ByteStreams.toByteArray(in));
+                assertEquals(1, transport.getConnectionPool().getIdleCount());
+                in.close();
+            }
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testClosingEarlyDropsConnection() throws IOException {
+        PooledTransport transport = new PooledTransport(new ConnectionPool(4, 60000, 0));
+        try {
+            HttpResponse response = transport.executeStreaming(get("/fixed"));
+            InputStream in = response.getContentStream();
+            assertEquals(1024, in.read(new byte[1024]));
+            in.close();
+            assertEquals(0, transport.getConnectionPool().getIdleCount());
+
+            HttpResponse buffered = transport.execute(get("/chunked"));
+            assertArrayEquals(content, buffered.getContent());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testUrlConnectionTransportStreams() throws IOException {
+        HttpResponse response = new UrlConnectionTransport().executeStreaming(get("/chunked"));
+        InputStream in = response.getContentStream();
+        try {
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(content, ByteStreams.toByteArray(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private TransportRequest get(String path) {
+        return new TransportRequest("GET", baseUrl + path, new HashMap<String, String>(), null);
+    }
+
+    private class Sender implements HttpHandler {
+
+        private final long length;
+
+        Sender(long length) {
+            this.length = length;
+        }
+
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.sendResponseHeaders(200, length);
+            OutputStream out = exchange.getResponseBody();
+            for (int offset = 0; offset < content.length; offset += 8192) {
+                out.write(content, offset, Math.min(8192, content.length - offset));
+            }
+            out.close();
+        }
+    }
+}
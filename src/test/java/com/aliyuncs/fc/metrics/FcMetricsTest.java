@@ -0,0 +1,119 @@
+package com.aliyuncs.fc.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aliyuncs.fc.client.FunctionComputeClient;
+import com.aliyuncs.fc.config.Config;
+import com.aliyuncs.fc.config.RetryPolicy;
+import com.aliyuncs.fc.emulator.FcEmulator;
+import com.aliyuncs.fc.exceptions.ClientException;
+import com.aliyuncs.fc.exceptions.ErrorCodes;
+import com.aliyuncs.fc.http.RequestTiming;
+import com.aliyuncs.fc.request.GetServiceRequest;
+import com.aliyuncs.fc.request.InvokeFunctionRequest;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FcMetricsTest {
+
+    private FcEmulator emulator;
+    private FcMetrics metrics;
+    private FunctionComputeClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        emulator = new FcEmulator().start();
+        emulator.addFunction("svc", "fn");
+        metrics = new FcMetrics();
+        Config config = new Config("cn-shanghai", "1234", "ak", "secret", null, false)
+            .setEndpoint(emulator.getEndpoint())
+            .setMetricsCollector(metrics)
+            .setRetryPolicy(new RetryPolicy().setMaxAttempts(3).setBaseDelayMillis(1)
+                .setMaxDelayMillis(1));
+        client = new FunctionComputeClient(config);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        emulator.close();
+    }
+
+    @Test
+    public void testRecordsEveryAttempt() throws Exception {
+        client.invokeFunction(new InvokeFunctionRequest("svc", "fn"));
+        client.invokeFunctionAsync(new InvokeFunctionRequest("svc", "fn")).get();
+        client.getService(new GetServiceRequest("svc"));
+        emulator.setThrottleRate(1);
+        try {
+            client.invokeFunction(new InvokeFunctionRequest("svc", "fn"));
+            fail();
+        } catch (ClientException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(6, snapshot.getAttemptCount());
+        assertEquals(3, snapshot.getFailedAttemptCount());
+        assertEquals(2, snapshot.getRetryCount());
+        assertEquals(Long.valueOf(3),
+            snapshot.getErrorCodeCounts().get(ErrorCodes.RESOURCE_THROTTLED));
+        List<MetricsSnapshot.Series> series = snapshot.getSeries();
+        assertEquals(5, series.size());
+        assertEquals("GetService svc 200 1", series.get(0).getName());
+        assertEquals("InvokeFunction svc/fn 200 1", series.get(1).getName());
+        assertEquals(2, series.get(1).getLatency().getCount());
+        assertEquals("InvokeFunction svc/fn 429 1", series.get(2).getName());
+        assertEquals("InvokeFunction svc/fn 429 3", series.get(4).getName());
+        assertEquals("fn", series.get(4).getFunctionName());
+        assertEquals(3, series.get(4).getAttempt());
+        assertTrue(series.get(1).getLatency().getValueAtQuantile(0.5) > 0);
+        assertEquals(3, snapshot.getPhases().get(RequestTiming.Phase.SIGN).getCount());
+        assertTrue(snapshot.getPhases().get(RequestTiming.Phase.PARSE).getMaxNanos() > 0);
+
+        metrics.reset();
+        assertEquals(0, metrics.snapshot().getAttemptCount());
+        assertTrue(metrics.snapshot().getSeries().isEmpty());
+    }
+
+    @Test
+    public void testRecordsAttemptsWithoutResponse() {
+        emulator.close();
+        try {
+            client.getService(new GetServiceRequest("svc"));
+            fail();
+        } catch (ClientException e) {
+            // expected
+        }
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.getAttemptCount());
+        assertEquals(0, snapshot.getSeries().get(0).getStatus());
+        assertEquals(3, snapshot.getFailedAttemptCount());
+    }
+
+    @Test
+    public void testPublishesOverJmx() throws JMException {
+        client.invokeFunction(new InvokeFunctionRequest("svc", "fn"));
+        ObjectName name = metrics.registerMBean("test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "AttemptCount"));
+            assertTrue((Double) server.getAttribute(name, "P99LatencyMillis") > 0);
+            assertTrue(server.getAttribute(name, "P99PhaseMillis") != null);
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "AttemptCount"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+        assertTrue(!ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
@@ -0,0 +1,98 @@
+package com.aliyuncs.fc.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class Base64HelperTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testRfc4648Vectors() {
+        String[][] vectors = {{"", ""}, {"f", "Zg=="}, {"fo", "Zm8="}, {"foo", "Zm9v"},
+            {"foob", "Zm9vYg=="}, {"fooba", "Zm9vYmE="}, {"foobar", "Zm9vYmFy"}};
+        for (String[] vector : vectors) {
+            byte[] data = vector[0].getBytes(Charsets.US_ASCII);
+            assertEquals(vector[1], Base64Helper.encode(data));
+            assertArrayEquals(data, Base64Helper.decode(vector[1]));
+        }
+        // The last two characters of the alphabet
+        byte[] high = {(byte) 0xfb, (byte) 0xff, (byte) 0xbf};
+        assertEquals("+/+/", Base64Helper.encode(high));
+        assertArrayEquals(high, Base64Helper.decode("+/+/"));
+    }
+
+    @Test
+    public void testRoundTripMatchesStreamingEncoder() throws IOException {
+        for (int length = 0; length < 200; length++) {
+            byte[] data = randomBytes(length);
+            String encoded = Base64Helper.encode(data);
+            assertEquals(Base64Helper.encodedLength(length), encoded.length());
+            assertArrayEquals(data, Base64Helper.decode(encoded));
+
+            ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            Base64OutputStream out = new Base64OutputStream(streamed);
+            out.write(data);
+            out.close();
+            assertEquals(encoded, streamed.toString("US-ASCII"));
+        }
+    }
+
+    @Test
+    public void testEncodeIntoArray() {
+        byte[] data = randomBytes(10);
+        char[] chars = new char[Base64Helper.encodedLength(7) + 2];
+        int written = Base64Helper.encode(data, 2, 7, chars, 1);
+        assertEquals(12, written);
+        assertEquals(Base64Helper.encode(Arrays.copyOfRange(data, 2, 9)),
+            new String(chars, 1, written));
+    }
+
+    @Test
+    public void testDecodeSkipsLineBreaksAndRejectsGarbage() throws Exception {
+        assertEquals("hello world", Base64Helper.decode("aGVsbG8g\r\nd29y\nbGQ=", "UTF-8"));
+        assertEquals("hello world", Base64Helper.decode("aGVsbG8gd29ybGQ", "UTF-8"));
+        try {
+            Base64Helper.decode("aGV*bG8=");
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testStreamingRoundTrip() throws IOException {
+        byte[] data = randomBytes(100 * 1024 + 1);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        Base64OutputStream out = new Base64OutputStream(encoded);
+        for (int offset = 0; offset < data.length; ) {
+            int count = Math.min(random.nextInt(5000), data.length - offset);
+            out.write(data, offset, count);
+            offset += count;
+            if (offset < data.length) {
+                out.write(data[offset++]);
+            }
+        }
+        out.close();
+        assertEquals(Base64Helper.encode(data), encoded.toString("US-ASCII"));
+
+        byte[] decoded = ByteStreams.toByteArray(
+            new Base64InputStream(new ByteArrayInputStream(encoded.toByteArray())));
+        assertArrayEquals(data, decoded);
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+}
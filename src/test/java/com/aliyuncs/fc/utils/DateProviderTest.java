@@ -0,0 +1,51 @@
+package com.aliyuncs.fc.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.SimpleTimeZone;
+import org.junit.Test;
+
+public class DateProviderTest {
+
+    @Test
+    public void testMatchesSimpleDateFormat() throws Exception {
+        SimpleDateFormat rfc2616 = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz",
+            Locale.ENGLISH);
+        rfc2616.setTimeZone(new SimpleTimeZone(0, "GMT"));
+        SimpleDateFormat iso8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        iso8601.setTimeZone(new SimpleTimeZone(0, "GMT"));
+
+        Random random = new Random(42);
+        long max = iso8601.parse("9999-12-31T23:59:59Z").getTime();
+        long min = iso8601.parse("1583-01-01T00:00:00Z").getTime();
+        for (int i = 0; i < 10000; i++) {
+            long millis = min + (long) (random.nextDouble() * (max - min));
+            Date date = new Date(millis);
+            assertEquals(rfc2616.format(date), DateProvider.formatRFC2616(millis));
+            assertEquals(iso8601.format(date), DateProvider.formatISO8601(millis));
+        }
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", DateProvider.formatRFC2616(0));
+        assertEquals("1969-12-31T23:59:59Z", DateProvider.formatISO8601(-1));
+    }
+
+    @Test
+    public void testCurrentDateIsCachedPerSecond() {
+        long second = 1500000000000L;
+        String value = DateProvider.rfc2616Date(second + 1);
+        assertSame(value, DateProvider.rfc2616Date(second + 999));
+        assertEquals(DateProvider.formatRFC2616(second + 1000),
+            DateProvider.rfc2616Date(second + 1000));
+    }
+
+    @Test
+    public void testParseRoundTrip() throws Exception {
+        Date date = new Date(1500000000000L);
+        assertEquals(date, ParameterHelper.parse(ParameterHelper.getISO8601Time(date)));
+        assertEquals(date, ParameterHelper.parse(ParameterHelper.getRFC2616Date(date)));
+    }
+}